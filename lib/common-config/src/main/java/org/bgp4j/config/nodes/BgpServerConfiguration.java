@@ -33,6 +33,27 @@ public interface BgpServerConfiguration {
 	 */
 	public ServerConfiguration getServerConfiguration();
 	
+	/**
+	 * check if path attributes in received UPDATE packets are decoded lazily
+	 * 
+	 * @return
+	 */
+	public boolean isLazyAttributeDecoding();
+	
+	/**
+	 * get the maximum number of decoded path attribute blocks held in the inbound attribute cache
+	 * 
+	 * @return the maximum number of cached blocks or 0 if received path attributes are not cached
+	 */
+	public int getDecodedAttributeCacheSize();
+	
+	/**
+	 * check if the prefixes in received UPDATE packets are decoded into packed prefix lists
+	 * 
+	 * @return
+	 */
+	public boolean isPackedPrefixDecoding();
+	
 	/**
 	 * 
 	 * @return
@@ -148,6 +148,70 @@ public interface PeerConfiguration {
 	 */
 	public boolean isHoldTimerDisabled();
 	
+	/**
+	 * get the maximum number of prefixes accepted from the peer per address family. The session is torn down with
+	 * a CEASE notification if the peer announces more prefixes.
+	 * 
+	 * @return the maximum number of prefixes or 0 if the number of prefixes is not limited
+	 */
+	public int getMaximumPrefixes();
+	
+	/**
+	 * get the percentage of the maximum number of prefixes at which a warning is logged.
+	 * 
+	 * @return the warning threshold in percent
+	 */
+	public int getMaximumPrefixesWarningThreshold();
+	
+	/**
+	 * get the minimum interval between two advertisements of routes to the peer (MinRouteAdvertisementIntervalTimer,
+	 * RFC 4271). Withdrawals are not subject to this interval. If no interval is configured, the default for internal
+	 * or external peers is used.
+	 * 
+	 * @return the interval in milliseconds
+	 */
+	public int getMinRouteAdvertisementInterval();
+	
+	/**
+	 * get the number of prefixes waiting to be advertised at which the pending advertisements are sent without waiting
+	 * for the minimum route advertisement interval to expire.
+	 * 
+	 * @return the number of prefixes or 0 if pending advertisements are always sent on expiry of the interval
+	 */
+	public int getRouteAdvertisementFlushThreshold();
+	
+	/**
+	 * get the maximum number of bytes of UPDATE packets which may be written to the peer connection without having
+	 * been acknowledged by the transport. Writing further packets is paused until the outstanding bytes drop below
+	 * this window or the connection becomes writable again.
+	 * 
+	 * @return the window in bytes
+	 */
+	public int getRouteAdvertisementWriteWindow();
+	
+	/**
+	 * check if the next hop of the routes advertised to the peer is replaced by the local address of the peer 
+	 * connection.
+	 * 
+	 * @return <code>true</code> if the local address is advertised as next hop
+	 */
+	public boolean isNextHopSelf();
+	
+	/**
+	 * get the multi exit discriminator set on all routes advertised to the peer.
+	 * 
+	 * @return the discriminator or -1 if the discriminator of the routes is passed on unchanged
+	 */
+	public long getOutboundMultiExitDisc();
+	
+	/**
+	 * get the local preference added to routes advertised to an internal peer which do not carry a LOCAL_PREF 
+	 * attribute.
+	 * 
+	 * @return the local preference
+	 */
+	public long getOutboundLocalPreference();
+	
 	/**
 	 * 
 	 * @return
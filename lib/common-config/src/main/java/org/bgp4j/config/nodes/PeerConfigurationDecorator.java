@@ -183,6 +183,14 @@ public class PeerConfigurationDecorator implements PeerConfiguration {
 				.append(isHoldTimerDisabled(), o.isHoldTimerDisabled())
 				.append(isPassiveTcpEstablishment(), o.isPassiveTcpEstablishment())
 				.append(getConnectRetryTime(), o.getConnectRetryTime())
+				.append(getMaximumPrefixes(), o.getMaximumPrefixes())
+				.append(getMaximumPrefixesWarningThreshold(), o.getMaximumPrefixesWarningThreshold())
+				.append(getMinRouteAdvertisementInterval(), o.getMinRouteAdvertisementInterval())
+				.append(getRouteAdvertisementFlushThreshold(), o.getRouteAdvertisementFlushThreshold())
+				.append(getRouteAdvertisementWriteWindow(), o.getRouteAdvertisementWriteWindow())
+				.append(isNextHopSelf(), o.isNextHopSelf())
+				.append(getOutboundMultiExitDisc(), o.getOutboundMultiExitDisc())
+				.append(getOutboundLocalPreference(), o.getOutboundLocalPreference())
 				.isEquals();
 	}
 
@@ -207,10 +215,18 @@ public class PeerConfigurationDecorator implements PeerConfiguration {
 				.append(getIdleHoldTime())				
 				.append(getLocalAS())
 				.append(getLocalBgpIdentifier())
+				.append(getMaximumPrefixes())
+				.append(getMaximumPrefixesWarningThreshold())
+				.append(getMinRouteAdvertisementInterval())
 				.append(isPassiveTcpEstablishment())				
 				.append(getPeerName())
 				.append(getRemoteAS())
 				.append(getRemoteBgpIdentifier())
+				.append(getRouteAdvertisementFlushThreshold())
+				.append(getRouteAdvertisementWriteWindow())
+				.append(isNextHopSelf())
+				.append(getOutboundMultiExitDisc())
+				.append(getOutboundLocalPreference())
 				.toHashCode();
 	}
 
@@ -239,4 +255,44 @@ public class PeerConfigurationDecorator implements PeerConfiguration {
 	public Capabilities getCapabilities() {
 		return decorated.getCapabilities();
 	}
+
+	@Override
+	public int getMaximumPrefixes() {
+		return decorated.getMaximumPrefixes();
+	}
+
+	@Override
+	public int getMaximumPrefixesWarningThreshold() {
+		return decorated.getMaximumPrefixesWarningThreshold();
+	}
+
+	@Override
+	public int getMinRouteAdvertisementInterval() {
+		return decorated.getMinRouteAdvertisementInterval();
+	}
+
+	@Override
+	public int getRouteAdvertisementFlushThreshold() {
+		return decorated.getRouteAdvertisementFlushThreshold();
+	}
+
+	@Override
+	public int getRouteAdvertisementWriteWindow() {
+		return decorated.getRouteAdvertisementWriteWindow();
+	}
+
+	@Override
+	public boolean isNextHopSelf() {
+		return decorated.isNextHopSelf();
+	}
+
+	@Override
+	public long getOutboundMultiExitDisc() {
+		return decorated.getOutboundMultiExitDisc();
+	}
+
+	@Override
+	public long getOutboundLocalPreference() {
+		return decorated.getOutboundLocalPreference();
+	}
 }
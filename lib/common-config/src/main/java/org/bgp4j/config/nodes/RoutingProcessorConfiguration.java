@@ -12,4 +12,12 @@ import java.util.Set;
 public interface RoutingProcessorConfiguration extends Comparable<RoutingProcessorConfiguration> {
 	
 	public Set<RoutingInstanceConfiguration> getRoutingInstances();
+	
+	/**
+	 * check if the Loc-RIB decision process is enabled. The Loc-RIB selects the best route per prefix among the routes
+	 * learned from all peers and publishes the selected routes to all peers.
+	 * 
+	 * @return <code>true</code> if the Loc-RIB is enabled
+	 */
+	public boolean isLocalRibEnabled();
 }
@@ -17,6 +17,7 @@
  */
 package org.bgp4j.config.nodes.impl;
 
+import org.apache.commons.configuration.ConfigurationException;
 import org.bgp4j.config.nodes.BgpServerConfiguration;
 import org.bgp4j.config.nodes.ServerConfiguration;
 
@@ -27,6 +28,9 @@ import org.bgp4j.config.nodes.ServerConfiguration;
 public class BgpServerConfigurationImpl implements BgpServerConfiguration {
 
 	private ServerConfiguration serverConfiguration;
+	private boolean lazyAttributeDecoding;
+	private int decodedAttributeCacheSize;
+	private boolean packedPrefixDecoding;
 	
 	public BgpServerConfigurationImpl() {}
 	
@@ -46,6 +50,36 @@ public class BgpServerConfigurationImpl implements BgpServerConfiguration {
 		this.serverConfiguration = config;
 	}
 
+	@Override
+	public boolean isLazyAttributeDecoding() {
+		return lazyAttributeDecoding;
+	}
+
+	void setLazyAttributeDecoding(boolean lazyAttributeDecoding) {
+		this.lazyAttributeDecoding = lazyAttributeDecoding;
+	}
+
+	@Override
+	public int getDecodedAttributeCacheSize() {
+		return decodedAttributeCacheSize;
+	}
+
+	void setDecodedAttributeCacheSize(int decodedAttributeCacheSize) throws ConfigurationException {
+		if(decodedAttributeCacheSize < 0)
+			throw new ConfigurationException("Illegal decoded attribute cache size given: " + decodedAttributeCacheSize);
+		
+		this.decodedAttributeCacheSize = decodedAttributeCacheSize;
+	}
+
+	@Override
+	public boolean isPackedPrefixDecoding() {
+		return packedPrefixDecoding;
+	}
+
+	void setPackedPrefixDecoding(boolean packedPrefixDecoding) {
+		this.packedPrefixDecoding = packedPrefixDecoding;
+	}
+
 	/* (non-Javadoc)
 	 * @see java.lang.Object#hashCode()
 	 */
@@ -53,6 +87,9 @@ public class BgpServerConfigurationImpl implements BgpServerConfiguration {
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
+		result = prime * result + decodedAttributeCacheSize;
+		result = prime * result + (lazyAttributeDecoding ? 1231 : 1237);
+		result = prime * result + (packedPrefixDecoding ? 1231 : 1237);
 		result = prime
 				* result
 				+ ((serverConfiguration == null) ? 0 : serverConfiguration
@@ -72,6 +109,12 @@ public class BgpServerConfigurationImpl implements BgpServerConfiguration {
 		if (getClass() != obj.getClass())
 			return false;
 		BgpServerConfigurationImpl other = (BgpServerConfigurationImpl) obj;
+		if (decodedAttributeCacheSize != other.decodedAttributeCacheSize)
+			return false;
+		if (lazyAttributeDecoding != other.lazyAttributeDecoding)
+			return false;
+		if (packedPrefixDecoding != other.packedPrefixDecoding)
+			return false;
 		if (serverConfiguration == null) {
 			if (other.serverConfiguration != null)
 				return false;
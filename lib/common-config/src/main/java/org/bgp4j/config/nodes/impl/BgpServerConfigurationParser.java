@@ -46,6 +46,10 @@ public class BgpServerConfigurationParser {
 		else
 			result.setServerConfiguration(new ServerConfigurationImpl());
 		
+		result.setLazyAttributeDecoding(config.getBoolean("Options[@lazyAttributeDecoding]", false));
+		result.setDecodedAttributeCacheSize(config.getInt("Options[@decodedAttributeCacheSize]", 0));
+		result.setPackedPrefixDecoding(config.getBoolean("Options[@packedPrefixDecoding]", false));
+		
 		return result;
 		
 	}
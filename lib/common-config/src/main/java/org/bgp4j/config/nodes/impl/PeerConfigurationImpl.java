@@ -31,6 +31,22 @@ import org.bgp4j.config.nodes.PeerConfiguration;
  */
 public class PeerConfigurationImpl implements PeerConfiguration {
 
+	public static final int DEFAULT_MAXIMUM_PREFIXES_WARNING_THRESHOLD = 75;
+	
+	/** default minimum route advertisement interval for internal peers in milliseconds (RFC 4271, section 10) */
+	public static final int DEFAULT_INTERNAL_MIN_ROUTE_ADVERTISEMENT_INTERVAL = 5000;
+	
+	/** default minimum route advertisement interval for external peers in milliseconds (RFC 4271, section 10) */
+	public static final int DEFAULT_EXTERNAL_MIN_ROUTE_ADVERTISEMENT_INTERVAL = 30000;
+	
+	public static final int DEFAULT_ROUTE_ADVERTISEMENT_FLUSH_THRESHOLD = 10000;
+	
+	/** default number of bytes of UPDATE packets which may be outstanding on the peer connection */
+	public static final int DEFAULT_ROUTE_ADVERTISEMENT_WRITE_WINDOW = 262144;
+	
+	/** default local preference added to routes advertised to an internal peer */
+	public static final long DEFAULT_OUTBOUND_LOCAL_PREFERENCE = 100;
+
 	private ClientConfiguration clientConfig;
 	private int localAS;
 	private int remoteAS;
@@ -49,6 +65,14 @@ public class PeerConfigurationImpl implements PeerConfiguration {
 	private int delayOpenTime;
 	private int connectRetryTime;
 	private int automaticStartInterval;
+	private int maximumPrefixes;
+	private int maximumPrefixesWarningThreshold = DEFAULT_MAXIMUM_PREFIXES_WARNING_THRESHOLD;
+	private int minRouteAdvertisementInterval = -1;
+	private int routeAdvertisementFlushThreshold = DEFAULT_ROUTE_ADVERTISEMENT_FLUSH_THRESHOLD;
+	private int routeAdvertisementWriteWindow = DEFAULT_ROUTE_ADVERTISEMENT_WRITE_WINDOW;
+	private boolean nextHopSelf;
+	private long outboundMultiExitDisc = -1;
+	private long outboundLocalPreference = DEFAULT_OUTBOUND_LOCAL_PREFERENCE;
 	private Capabilities capabilities = new CapabilitiesImpl();
 	
 	public PeerConfigurationImpl() {
@@ -294,10 +318,18 @@ public class PeerConfigurationImpl implements PeerConfiguration {
 				.append(idleHoldTime)
 				.append(localAS)
 				.append(localBgpIdentifier)
+				.append(maximumPrefixes)
+				.append(maximumPrefixesWarningThreshold)
+				.append(getMinRouteAdvertisementInterval())
 				.append(passiveTcpEstablishment)
 				.append(peerName)
 				.append(remoteAS)
 				.append(remoteBgpIdentifier)
+				.append(routeAdvertisementFlushThreshold)
+				.append(routeAdvertisementWriteWindow)
+				.append(nextHopSelf)
+				.append(outboundMultiExitDisc)
+				.append(outboundLocalPreference)
 				.toHashCode();
 				
 	}
@@ -356,10 +388,18 @@ public class PeerConfigurationImpl implements PeerConfiguration {
 				.append(idleHoldTime, o.getIdleHoldTime())	
 				.append(localAS, o.getLocalAS())
 				.append(localBgpIdentifier, o.getLocalBgpIdentifier())
+				.append(maximumPrefixes, o.getMaximumPrefixes())
+				.append(maximumPrefixesWarningThreshold, o.getMaximumPrefixesWarningThreshold())
+				.append(getMinRouteAdvertisementInterval(), o.getMinRouteAdvertisementInterval())
 				.append(passiveTcpEstablishment, o.isPassiveTcpEstablishment())
 				.append(peerName, o.getPeerName())
 				.append(remoteAS, o.getRemoteAS())
 				.append(remoteBgpIdentifier, o.getRemoteBgpIdentifier())
+				.append(routeAdvertisementFlushThreshold, o.getRouteAdvertisementFlushThreshold())
+				.append(routeAdvertisementWriteWindow, o.getRouteAdvertisementWriteWindow())
+				.append(nextHopSelf, o.isNextHopSelf())
+				.append(outboundMultiExitDisc, o.getOutboundMultiExitDisc())
+				.append(outboundLocalPreference, o.getOutboundLocalPreference())
 				.isEquals();
 	}
 
@@ -514,6 +554,143 @@ public class PeerConfigurationImpl implements PeerConfiguration {
 		this.holdTimerDisabled = holdTimerDisabled;
 	}
 
+	/**
+	 * @return the maximumPrefixes
+	 */
+	public int getMaximumPrefixes() {
+		return maximumPrefixes;
+	}
+
+	/**
+	 * @param maximumPrefixes the maximumPrefixes to set
+	 */
+	void setMaximumPrefixes(int maximumPrefixes) throws ConfigurationException {
+		if(maximumPrefixes < 0)
+			throw new ConfigurationException("Illegal maximum number of prefixes given: " + maximumPrefixes);
+		
+		this.maximumPrefixes = maximumPrefixes;
+	}
+
+	/**
+	 * @return the maximumPrefixesWarningThreshold
+	 */
+	public int getMaximumPrefixesWarningThreshold() {
+		return maximumPrefixesWarningThreshold;
+	}
+
+	/**
+	 * @param maximumPrefixesWarningThreshold the maximumPrefixesWarningThreshold to set
+	 */
+	void setMaximumPrefixesWarningThreshold(int maximumPrefixesWarningThreshold) throws ConfigurationException {
+		if(maximumPrefixesWarningThreshold < 1 || maximumPrefixesWarningThreshold > 100)
+			throw new ConfigurationException("Illegal maximum prefixes warning threshold given: " + maximumPrefixesWarningThreshold);
+		
+		this.maximumPrefixesWarningThreshold = maximumPrefixesWarningThreshold;
+	}
+
+	/**
+	 * @return the minRouteAdvertisementInterval. If no interval is configured, the default for internal peers is
+	 * returned if the local and the remote AS are equal, the default for external peers otherwise.
+	 */
+	public int getMinRouteAdvertisementInterval() {
+		if(minRouteAdvertisementInterval < 0)
+			return (localAS == remoteAS) ? DEFAULT_INTERNAL_MIN_ROUTE_ADVERTISEMENT_INTERVAL : DEFAULT_EXTERNAL_MIN_ROUTE_ADVERTISEMENT_INTERVAL;
+		
+		return minRouteAdvertisementInterval;
+	}
+
+	/**
+	 * @param minRouteAdvertisementInterval the minRouteAdvertisementInterval to set
+	 */
+	void setMinRouteAdvertisementInterval(int minRouteAdvertisementInterval) throws ConfigurationException {
+		if(minRouteAdvertisementInterval < 0)
+			throw new ConfigurationException("Illegal minimum route advertisement interval given: " + minRouteAdvertisementInterval);
+		
+		this.minRouteAdvertisementInterval = minRouteAdvertisementInterval;
+	}
+
+	/**
+	 * @return the routeAdvertisementFlushThreshold
+	 */
+	public int getRouteAdvertisementFlushThreshold() {
+		return routeAdvertisementFlushThreshold;
+	}
+
+	/**
+	 * @param routeAdvertisementFlushThreshold the routeAdvertisementFlushThreshold to set
+	 */
+	void setRouteAdvertisementFlushThreshold(int routeAdvertisementFlushThreshold) throws ConfigurationException {
+		if(routeAdvertisementFlushThreshold < 0)
+			throw new ConfigurationException("Illegal route advertisement flush threshold given: " + routeAdvertisementFlushThreshold);
+		
+		this.routeAdvertisementFlushThreshold = routeAdvertisementFlushThreshold;
+	}
+
+	/**
+	 * @return the routeAdvertisementWriteWindow
+	 */
+	public int getRouteAdvertisementWriteWindow() {
+		return routeAdvertisementWriteWindow;
+	}
+
+	/**
+	 * @param routeAdvertisementWriteWindow the routeAdvertisementWriteWindow to set
+	 */
+	void setRouteAdvertisementWriteWindow(int routeAdvertisementWriteWindow) throws ConfigurationException {
+		if(routeAdvertisementWriteWindow <= 0)
+			throw new ConfigurationException("Illegal route advertisement write window given: " + routeAdvertisementWriteWindow);
+		
+		this.routeAdvertisementWriteWindow = routeAdvertisementWriteWindow;
+	}
+
+	/**
+	 * @return the nextHopSelf
+	 */
+	public boolean isNextHopSelf() {
+		return nextHopSelf;
+	}
+
+	/**
+	 * @param nextHopSelf the nextHopSelf to set
+	 */
+	void setNextHopSelf(boolean nextHopSelf) {
+		this.nextHopSelf = nextHopSelf;
+	}
+
+	/**
+	 * @return the outboundMultiExitDisc
+	 */
+	public long getOutboundMultiExitDisc() {
+		return outboundMultiExitDisc;
+	}
+
+	/**
+	 * @param outboundMultiExitDisc the outboundMultiExitDisc to set
+	 */
+	void setOutboundMultiExitDisc(long outboundMultiExitDisc) throws ConfigurationException {
+		if(outboundMultiExitDisc < -1 || outboundMultiExitDisc > 0xffffffffL)
+			throw new ConfigurationException("Illegal outbound multi exit discriminator given: " + outboundMultiExitDisc);
+		
+		this.outboundMultiExitDisc = outboundMultiExitDisc;
+	}
+
+	/**
+	 * @return the outboundLocalPreference
+	 */
+	public long getOutboundLocalPreference() {
+		return outboundLocalPreference;
+	}
+
+	/**
+	 * @param outboundLocalPreference the outboundLocalPreference to set
+	 */
+	void setOutboundLocalPreference(long outboundLocalPreference) throws ConfigurationException {
+		if(outboundLocalPreference < 0 || outboundLocalPreference > 0xffffffffL)
+			throw new ConfigurationException("Illegal outbound local preference given: " + outboundLocalPreference);
+		
+		this.outboundLocalPreference = outboundLocalPreference;
+	}
+
 	/**
 	 * @return the capabilities
 	 */
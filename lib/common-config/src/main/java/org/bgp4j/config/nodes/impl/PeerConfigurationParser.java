@@ -107,6 +107,21 @@ public class PeerConfigurationParser {
 		peerConfig.setPassiveTcpEstablishment(config.getBoolean("Options[@passiveTcpEstablishment]", false));
 		peerConfig.setHoldTimerDisabled(config.getBoolean("Options[@holdTimerDisabled]", false));
 
+		peerConfig.setMaximumPrefixes(config.getInt("MaximumPrefixes[@limit]", 0));
+		peerConfig.setMaximumPrefixesWarningThreshold(config.getInt("MaximumPrefixes[@warningThreshold]", 
+				PeerConfigurationImpl.DEFAULT_MAXIMUM_PREFIXES_WARNING_THRESHOLD));
+
+		if(config.containsKey("RouteAdvertisement[@interval]"))
+			peerConfig.setMinRouteAdvertisementInterval(config.getInt("RouteAdvertisement[@interval]"));
+		peerConfig.setRouteAdvertisementFlushThreshold(config.getInt("RouteAdvertisement[@flushThreshold]", 
+				PeerConfigurationImpl.DEFAULT_ROUTE_ADVERTISEMENT_FLUSH_THRESHOLD));
+		peerConfig.setRouteAdvertisementWriteWindow(config.getInt("RouteAdvertisement[@writeWindow]", 
+				PeerConfigurationImpl.DEFAULT_ROUTE_ADVERTISEMENT_WRITE_WINDOW));
+		peerConfig.setNextHopSelf(config.getBoolean("RouteAdvertisement[@nextHopSelf]", false));
+		peerConfig.setOutboundMultiExitDisc(config.getLong("RouteAdvertisement[@med]", -1));
+		peerConfig.setOutboundLocalPreference(config.getLong("RouteAdvertisement[@localPref]", 
+				PeerConfigurationImpl.DEFAULT_OUTBOUND_LOCAL_PREFERENCE));
+
 		return peerConfig;
 	}
 	
@@ -20,6 +20,7 @@ import org.bgp4j.config.nodes.RoutingProcessorConfiguration;
 class RoutingProcessorConfigurationImpl implements RoutingProcessorConfiguration {
 
 	private Set<RoutingInstanceConfiguration> routingInstances = new TreeSet<RoutingInstanceConfiguration>();
+	private boolean localRibEnabled;
 	
 	/* (non-Javadoc)
 	 * @see org.bgp4j.config.nodes.RoutingProcessorConfiguration#getRoutingInstances()
@@ -40,12 +41,30 @@ class RoutingProcessorConfigurationImpl implements RoutingProcessorConfiguration
 			this.routingInstances.addAll(routingInstances);
 	}
 
+	/* (non-Javadoc)
+	 * @see org.bgp4j.config.nodes.RoutingProcessorConfiguration#isLocalRibEnabled()
+	 */
+	@Override
+	public boolean isLocalRibEnabled() {
+		return localRibEnabled;
+	}
+
+
+	/**
+	 * @param localRibEnabled the localRibEnabled to set
+	 */
+	void setLocalRibEnabled(boolean localRibEnabled) {
+		this.localRibEnabled = localRibEnabled;
+	}
+
+
 	/* (non-Javadoc)
 	 * @see java.lang.Comparable#compareTo(java.lang.Object)
 	 */
 	@Override
 	public int compareTo(RoutingProcessorConfiguration o) {
 		CompareToBuilder builder = (new CompareToBuilder())
+				.append(isLocalRibEnabled(), o.isLocalRibEnabled())
 				.append(getRoutingInstances().size(), o.getRoutingInstances().size());
 		
 		if(builder.toComparison() == 0) {
@@ -65,7 +84,7 @@ class RoutingProcessorConfigurationImpl implements RoutingProcessorConfiguration
 	 */
 	@Override
 	public int hashCode() {
-		HashCodeBuilder builder = new HashCodeBuilder();
+		HashCodeBuilder builder = (new HashCodeBuilder()).append(isLocalRibEnabled());
 		
 		for(RoutingInstanceConfiguration instance : getRoutingInstances())
 			builder.append(instance);
@@ -85,6 +104,7 @@ class RoutingProcessorConfigurationImpl implements RoutingProcessorConfiguration
 		RoutingProcessorConfiguration o = (RoutingProcessorConfiguration)obj;
 
 		EqualsBuilder builder = (new EqualsBuilder())
+				.append(isLocalRibEnabled(), o.isLocalRibEnabled())
 				.append(getRoutingInstances().size(), o.getRoutingInstances().size());
 		
 		if(builder.isEquals()) {
@@ -27,6 +27,8 @@ public class RoutingProcessorConfigurationParser {
 		RoutingProcessorConfigurationImpl result = new RoutingProcessorConfigurationImpl();
 		Set<String> instanceKeys = new HashSet<String>();
 		
+		result.setLocalRibEnabled(config.getBoolean("[@localRib]", false));
+		
 		for(HierarchicalConfiguration subConfig : config.configurationsAt("RoutingInstance")) {
 			RoutingInstanceConfiguration instance = instanceParser.parseConfiguration(subConfig);
 			String key = instance.getFirstPeer().getPeerName() + "/" + instance.getSecondPeer().getPeerName();
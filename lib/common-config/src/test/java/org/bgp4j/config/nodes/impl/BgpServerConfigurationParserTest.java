@@ -56,6 +56,9 @@ public class BgpServerConfigurationParserTest extends ConfigTestBase {
 		
 		Assert.assertEquals(179, bgpServerConfig.getServerConfiguration().getListenAddress().getPort());
 		Assert.assertEquals(InetAddress.getByName("0.0.0.0"), bgpServerConfig.getServerConfiguration().getListenAddress().getAddress());
+		Assert.assertFalse(bgpServerConfig.isLazyAttributeDecoding());
+		Assert.assertEquals(0, bgpServerConfig.getDecodedAttributeCacheSize());
+		Assert.assertFalse(bgpServerConfig.isPackedPrefixDecoding());
 	}
 	
 	@Test
@@ -78,5 +81,35 @@ public class BgpServerConfigurationParserTest extends ConfigTestBase {
 	public void testBgpServerConfigurationDuplicateServerConfiguration() throws Exception {
 		parser.parseConfiguration(config.configurationAt("BgpServer(3)"));
 	}
+
+	@Test
+	public void testBgpServerConfigurationWithLazyAttributeDecoding() throws Exception {
+		BgpServerConfiguration bgpServerConfig = parser.parseConfiguration(config.configurationAt("BgpServer(4)"));
+		
+		Assert.assertEquals(179, bgpServerConfig.getServerConfiguration().getListenAddress().getPort());
+		Assert.assertTrue(bgpServerConfig.isLazyAttributeDecoding());
+	}
 	
+
+	@Test
+	public void testBgpServerConfigurationWithDecodedAttributeCache() throws Exception {
+		BgpServerConfiguration bgpServerConfig = parser.parseConfiguration(config.configurationAt("BgpServer(5)"));
+		
+		Assert.assertFalse(bgpServerConfig.isLazyAttributeDecoding());
+		Assert.assertEquals(4096, bgpServerConfig.getDecodedAttributeCacheSize());
+	}
+
+	@Test(expected=ConfigurationException.class)
+	public void testBgpServerConfigurationNegativeDecodedAttributeCacheSize() throws Exception {
+		parser.parseConfiguration(config.configurationAt("BgpServer(6)"));
+	}
+
+	@Test
+	public void testBgpServerConfigurationWithPackedPrefixDecoding() throws Exception {
+		BgpServerConfiguration bgpServerConfig = parser.parseConfiguration(config.configurationAt("BgpServer(7)"));
+		
+		Assert.assertFalse(bgpServerConfig.isLazyAttributeDecoding());
+		Assert.assertEquals(0, bgpServerConfig.getDecodedAttributeCacheSize());
+		Assert.assertTrue(bgpServerConfig.isPackedPrefixDecoding());
+	}
 }
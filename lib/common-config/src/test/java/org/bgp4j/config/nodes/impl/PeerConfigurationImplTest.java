@@ -78,6 +78,19 @@ public class PeerConfigurationImplTest {
 		Assert.assertTrue(config.isDelayOpen());
 		Assert.assertEquals(180, config.getDelayOpenTime());
 		Assert.assertTrue(config.isCollisionDetectEstablishedState());
+		Assert.assertEquals(PeerConfigurationImpl.DEFAULT_EXTERNAL_MIN_ROUTE_ADVERTISEMENT_INTERVAL, config.getMinRouteAdvertisementInterval());
+	}
+
+	@Test
+	public void testInternalPeerMinRouteAdvertisementInterval() throws Exception {
+		PeerConfigurationImpl config =  new PeerConfigurationImpl("foo", 
+				new ClientConfigurationImpl(InetAddress.getByName("192.168.4.1")), 24576, 24576); 
+		
+		Assert.assertEquals(PeerConfigurationImpl.DEFAULT_INTERNAL_MIN_ROUTE_ADVERTISEMENT_INTERVAL, config.getMinRouteAdvertisementInterval());
+		
+		config.setMinRouteAdvertisementInterval(100);
+		
+		Assert.assertEquals(100, config.getMinRouteAdvertisementInterval());
 	}
 
 	@Test(expected=ConfigurationException.class)
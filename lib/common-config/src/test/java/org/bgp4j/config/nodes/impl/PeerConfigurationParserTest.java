@@ -75,6 +75,8 @@ public class PeerConfigurationParserTest extends ConfigTestBase {
 		Assert.assertEquals(300, peerConfig.getRemoteBgpIdentifier());
 		Assert.assertEquals(0, peerConfig.getHoldTime());
 		Assert.assertEquals(0, peerConfig.getIdleHoldTime());		
+		Assert.assertEquals(0, peerConfig.getMaximumPrefixes());
+		Assert.assertEquals(PeerConfigurationImpl.DEFAULT_MAXIMUM_PREFIXES_WARNING_THRESHOLD, peerConfig.getMaximumPrefixesWarningThreshold());
 	}
 	
 	@Test(expected=ConfigurationException.class)
@@ -213,4 +215,62 @@ public class PeerConfigurationParserTest extends ConfigTestBase {
 
 	}
 	
+	@Test
+	public void testAcceptedConfigurationWithMaximumPrefixes() throws Exception {
+		PeerConfiguration peerConfig = parser.parseConfiguration(config.configurationAt("BgpPeer(11)"));
+		
+		Assert.assertEquals("foo", peerConfig.getPeerName());
+		Assert.assertEquals(1000, peerConfig.getMaximumPrefixes());
+		Assert.assertEquals(80, peerConfig.getMaximumPrefixesWarningThreshold());
+		Assert.assertEquals(PeerConfigurationImpl.DEFAULT_EXTERNAL_MIN_ROUTE_ADVERTISEMENT_INTERVAL, peerConfig.getMinRouteAdvertisementInterval());
+		Assert.assertEquals(PeerConfigurationImpl.DEFAULT_ROUTE_ADVERTISEMENT_FLUSH_THRESHOLD, peerConfig.getRouteAdvertisementFlushThreshold());
+		Assert.assertEquals(PeerConfigurationImpl.DEFAULT_ROUTE_ADVERTISEMENT_WRITE_WINDOW, peerConfig.getRouteAdvertisementWriteWindow());
+		Assert.assertFalse(peerConfig.isNextHopSelf());
+		Assert.assertEquals(-1, peerConfig.getOutboundMultiExitDisc());
+		Assert.assertEquals(PeerConfigurationImpl.DEFAULT_OUTBOUND_LOCAL_PREFERENCE, peerConfig.getOutboundLocalPreference());
+	}
+	
+	@Test(expected=ConfigurationException.class)
+	public void testBogusConfigurationInvalidMaximumPrefixesWarningThreshold() throws Exception {
+		@SuppressWarnings("unused")
+		PeerConfiguration peerConfig = parser.parseConfiguration(config.configurationAt("BgpPeer(12)"));
+	}
+
+	@Test
+	public void testRouteAdvertisement() throws Exception {
+		PeerConfiguration peerConfig = parser.parseConfiguration(config.configurationAt("BgpPeer(13)"));
+		
+		Assert.assertEquals("foo", peerConfig.getPeerName());
+		Assert.assertEquals(250, peerConfig.getMinRouteAdvertisementInterval());
+		Assert.assertEquals(500, peerConfig.getRouteAdvertisementFlushThreshold());
+		Assert.assertEquals(65536, peerConfig.getRouteAdvertisementWriteWindow());
+		Assert.assertTrue(peerConfig.isNextHopSelf());
+		Assert.assertEquals(50, peerConfig.getOutboundMultiExitDisc());
+		Assert.assertEquals(200, peerConfig.getOutboundLocalPreference());
+	}
+	
+	@Test(expected=ConfigurationException.class)
+	public void testBogusConfigurationInvalidRouteAdvertisementInterval() throws Exception {
+		@SuppressWarnings("unused")
+		PeerConfiguration peerConfig = parser.parseConfiguration(config.configurationAt("BgpPeer(14)"));
+	}
+
+	@Test(expected=ConfigurationException.class)
+	public void testBogusConfigurationInvalidRouteAdvertisementWriteWindow() throws Exception {
+		@SuppressWarnings("unused")
+		PeerConfiguration peerConfig = parser.parseConfiguration(config.configurationAt("BgpPeer(15)"));
+	}
+
+	@Test(expected=ConfigurationException.class)
+	public void testBogusConfigurationInvalidOutboundMultiExitDisc() throws Exception {
+		@SuppressWarnings("unused")
+		PeerConfiguration peerConfig = parser.parseConfiguration(config.configurationAt("BgpPeer(16)"));
+	}
+
+	@Test(expected=ConfigurationException.class)
+	public void testBogusConfigurationInvalidOutboundLocalPreference() throws Exception {
+		@SuppressWarnings("unused")
+		PeerConfiguration peerConfig = parser.parseConfiguration(config.configurationAt("BgpPeer(17)"));
+	}
+	
 }
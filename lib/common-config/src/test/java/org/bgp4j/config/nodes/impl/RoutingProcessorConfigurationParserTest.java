@@ -47,6 +47,15 @@ public class RoutingProcessorConfigurationParserTest extends ConfigTestBase {
 		Assert.assertEquals(2, prc.getRoutingInstances().size());
 		Assert.assertTrue(prc.getRoutingInstances().contains(firstInstance));
 		Assert.assertTrue(prc.getRoutingInstances().contains(secondInstance));
+		Assert.assertFalse(prc.isLocalRibEnabled());
+	}
+
+	@Test
+	public void testLocalRibEnabled() throws Exception {
+		RoutingProcessorConfiguration prc = parser.parseConfiguration(config.configurationAt("RoutingProcessor(1)"));
+
+		Assert.assertEquals(0, prc.getRoutingInstances().size());
+		Assert.assertTrue(prc.isLocalRibEnabled());
 	}
 
 }
@@ -0,0 +1,144 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * File: org.bgp4j.net.IPv4PrefixKey.java
+ */
+package org.bgp4j.net;
+
+/**
+ * Packed primitive representation of an IPv4 prefix. The prefix is held in a single <code>long</code> value:
+ *
+ * <pre>
+ *  bits 63..40: zero
+ *  bits 39..8:  the 32 address bits, trailing bits beyond the prefix length masked out to 0
+ *  bits  7..0:  the prefix length (0 to 32)
+ * </pre>
+ *
+ * A packed key is always positive. Sorting packed keys numerically orders the prefixes by address first and
+ * prefix length second, thus a less specific prefix is always sorted before the more specific prefixes it covers.
+ *
+ * All operations work on primitive values only. NetworkLayerReachabilityInformation instances are only created
+ * or inspected when converting from or to the packed representation.
+ *
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public final class IPv4PrefixKey {
+
+	/** the maximum prefix length of an IPv4 prefix */
+	public static final int MAX_PREFIX_LENGTH = 32;
+
+	private IPv4PrefixKey() {}
+
+	/**
+	 * pack an IPv4 address and a prefix length into a key. Address bits beyond the prefix length are masked out.
+	 *
+	 * @param address the address bits
+	 * @param prefixLength the prefix length
+	 * @return the packed key
+	 */
+	public static long pack(int address, int prefixLength) {
+		if(prefixLength < 0 || prefixLength > MAX_PREFIX_LENGTH)
+			throw new IllegalArgumentException("invalid IPv4 prefix length: " + prefixLength);
+
+		return ((address & mask(prefixLength) & 0xffffffffL) << 8) | prefixLength;
+	}
+
+	/**
+	 * @param key the packed key
+	 * @return the address bits of the packed key
+	 */
+	public static int address(long key) {
+		return (int)(key >>> 8);
+	}
+
+	/**
+	 * @param key the packed key
+	 * @return the prefix length of the packed key
+	 */
+	public static int prefixLength(long key) {
+		return (int)(key & 0xff);
+	}
+
+	/**
+	 * calculate the network mask for a prefix length
+	 *
+	 * @param prefixLength the prefix length (0 to 32)
+	 * @return the network mask
+	 */
+	public static int mask(int prefixLength) {
+		return (int)(0xffffffff00000000L >>> prefixLength);
+	}
+
+	/**
+	 * convert a NLRI into a packed key.
+	 *
+	 * @param nlri the NLRI
+	 * @return the packed key
+	 * @throws IllegalArgumentException if the NLRI prefix length exceeds 32 bits
+	 */
+	public static long fromNLRI(NetworkLayerReachabilityInformation nlri) {
+		int prefixLength = nlri.getPrefixLength();
+
+		if(prefixLength > MAX_PREFIX_LENGTH)
+			throw new IllegalArgumentException("NLRI is not an IPv4 prefix: " + nlri);
+
+		byte[] prefix = nlri.getPrefix();
+		int octets = NetworkLayerReachabilityInformation.calculateOctetsForPrefixLength(prefixLength);
+		int address = 0;
+
+		for(int i=0; i<octets; i++)
+			address |= (prefix[i] & 0xff) << (24 - 8*i);
+
+		return pack(address, prefixLength);
+	}
+
+	/**
+	 * convert a packed key into a NLRI.
+	 *
+	 * @param key the packed key
+	 * @return the NLRI
+	 */
+	public static NetworkLayerReachabilityInformation toNLRI(long key) {
+		int prefixLength = prefixLength(key);
+		int address = address(key);
+		byte[] prefix = null;
+
+		if(prefixLength > 0) {
+			prefix = new byte[NetworkLayerReachabilityInformation.calculateOctetsForPrefixLength(prefixLength)];
+
+			for(int i=0; i<prefix.length; i++)
+				prefix[i] = (byte)(address >>> (24 - 8*i));
+		}
+
+		return new NetworkLayerReachabilityInformation(prefixLength, prefix);
+	}
+
+	/**
+	 * check if the first prefix is a prefix of the second prefix. The semantics are the same as in
+	 * {@link NetworkLayerReachabilityInformation#isPrefixOf(NetworkLayerReachabilityInformation)}: The prefix
+	 * length of the second prefix must be longer than the prefix length of the first prefix.
+	 *
+	 * @param key the packed key of the first prefix
+	 * @param other the packed key of the second prefix
+	 * @return
+	 */
+	public static boolean isPrefixOf(long key, long other) {
+		int prefixLength = prefixLength(key);
+
+		return prefixLength < prefixLength(other)
+				&& ((address(key) ^ address(other)) & mask(prefixLength)) == 0;
+	}
+}
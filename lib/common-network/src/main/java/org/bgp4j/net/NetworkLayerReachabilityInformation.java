@@ -18,14 +18,12 @@ package org.bgp4j.net;
 
 import java.io.Serializable;
 import java.net.InetAddress;
+import java.util.Arrays;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlRootElement;
 
-import org.apache.commons.lang3.builder.CompareToBuilder;
-import org.apache.commons.lang3.builder.EqualsBuilder;
-import org.apache.commons.lang3.builder.HashCodeBuilder;
 
 
 /**
@@ -111,10 +109,8 @@ public class NetworkLayerReachabilityInformation implements Serializable, Compar
 				// mask out trailing bits
 				int trailingBits = (8*prefixSize - prefixLength);
 				
-				if(trailingBits > 0) {
-					for(int bit = 0; bit < trailingBits; bit++)
-						prefix[prefixSize-1] &= ~(1<<bit);
-				}
+				if(trailingBits > 0)
+					prefix[prefixSize-1] &= (0xff << trailingBits);
 			}
 		}
 	}
@@ -180,10 +176,7 @@ public class NetworkLayerReachabilityInformation implements Serializable, Compar
 	 */
 	@Override
 	public int hashCode() {
-		return (new HashCodeBuilder())
-				.append(getPrefixLength())
-				.append(getPrefix())
-				.toHashCode();
+		return 31 * prefixLength + Arrays.hashCode(prefix);
 	}
 
 	/* (non-Javadoc)
@@ -191,57 +184,51 @@ public class NetworkLayerReachabilityInformation implements Serializable, Compar
 	 */
 	@Override
 	public boolean equals(Object obj) {
+		if(this == obj)
+			return true;
 		if(!(obj instanceof NetworkLayerReachabilityInformation))
 			return false;
 		
 		NetworkLayerReachabilityInformation o =(NetworkLayerReachabilityInformation)obj;
 		
-		return (new EqualsBuilder())
-				.append(getPrefixLength(), o.getPrefixLength())
-				.append(getPrefix(), o.getPrefix())
-				.isEquals();
+		return prefixLength == o.prefixLength && Arrays.equals(prefix, o.prefix);
 	}
 
+	/**
+	 * Compare by prefix length first, then by the prefix octets. Full prefix octets are compared as signed values, 
+	 * the trailing bits of a partial last octet are compared as unsigned value.
+	 * 
+	 * The comparison works on primitive values only and does not allocate any objects.
+	 */
 	@Override
 	public int compareTo(NetworkLayerReachabilityInformation other) {
-		CompareToBuilder builder = new CompareToBuilder();
+		if(prefixLength != other.prefixLength)
+			return (prefixLength < other.prefixLength) ? -1 : 1;
 		
-		builder.append(getPrefixLength(), other.getPrefixLength());
+		int byteLen = calculateOctetsForPrefixLength(prefixLength);
 		
-		if(builder.toComparison() == 0) {
-			int byteLen = calculateOctetsForPrefixLength(this.prefixLength);
-			int otherByteLen = calculateOctetsForPrefixLength(other.prefixLength);
-			int commonByteLen = (byteLen > otherByteLen) ? otherByteLen : byteLen;
-			int commonPrefixLen = (prefixLength > other.prefixLength) ? other.prefixLength : prefixLength;
-			
-			for (int i = 0; i < commonByteLen - 1; i++) {
-				builder.append(getPrefix()[i], other.getPrefix()[i]);
-			}
+		for (int i = 0; i < byteLen - 1; i++) {
+			if(prefix[i] != other.prefix[i])
+				return (prefix[i] < other.prefix[i]) ? -1 : 1;
+		}
+		
+		if(byteLen > 0) {
+			int bitsToCheck = prefixLength % 8;
+			int mine = prefix[byteLen - 1];
+			int theirs = other.prefix[byteLen - 1];
 			
-			if(builder.toComparison() == 0) {
-				int bitsToCheck = commonPrefixLen% 8;
-
-				if (bitsToCheck == 0) {
-					if(commonByteLen > 0)
-						builder.append(getPrefix()[commonByteLen-1], other.getPrefix()[commonByteLen-1]);
-				} else {
-					for (int i = 0; i < bitsToCheck; i++) {
-						int mask = 1 << (7 - i);
-
-						builder.append(getPrefix()[commonByteLen - 1] & mask, other.getPrefix()[commonByteLen - 1] & mask);
-						if(builder.toComparison() != 0)
-							break;
-					}
-				}
+			if(bitsToCheck != 0) {
+				int mask = (0xff << (8 - bitsToCheck)) & 0xff;
 				
-				if(builder.toComparison() == 0) {
-					builder.append(getPrefixLength(), other.getPrefixLength());
-				}
+				mine &= mask;
+				theirs &= mask;
 			}
-
+			
+			if(mine != theirs)
+				return (mine < theirs) ? -1 : 1;
 		}
 		
-		return builder.toComparison();
+		return 0;
 	}
 
 	public static final int calculateOctetsForPrefixLength(int prefixLength) {
@@ -0,0 +1,285 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.net.PackedPrefixList.java
+ */
+package org.bgp4j.net;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A list of IPv4 or IPv6 prefixes held in primitive arrays. The list is meant to be filled by a batch decoder and
+ * to be reused by calling {@link #clear()}: Once the arrays have grown to the number of prefixes decoded at once,
+ * adding prefixes does not allocate any objects.
+ *
+ * <ul>
+ * <li>An IPv4 prefix is held in one <code>long</code> value in the {@link IPv4PrefixKey} format.</li>
+ * <li>An IPv6 prefix is held in two <code>long</code> values carrying the upper and the lower 64 address bits and the 
+ * prefix length in a separate array.</li>
+ * </ul>
+ * 
+ * Address bits beyond the prefix length are masked out to 0 when a prefix is added. 
+ * NetworkLayerReachabilityInformation instances are only created when converting prefixes from the list.
+ *
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class PackedPrefixList {
+
+	/** the maximum prefix length of an IPv6 prefix */
+	public static final int MAX_IPV6_PREFIX_LENGTH = 128;
+
+	private static final int DEFAULT_CAPACITY = 16;
+	
+	private AddressFamily addressFamily;
+	private int size;
+	private long[] words;
+	private int[] prefixLengths;
+	
+	public PackedPrefixList(AddressFamily addressFamily) {
+		this(addressFamily, DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * @param addressFamily the address family of the prefixes, either IPv4 or IPv6
+	 * @param capacity the initial number of prefixes the list can hold
+	 * @throws IllegalArgumentException if the address family is neither IPv4 nor IPv6
+	 */
+	public PackedPrefixList(AddressFamily addressFamily, int capacity) {
+		if(addressFamily != AddressFamily.IPv4 && addressFamily != AddressFamily.IPv6)
+			throw new IllegalArgumentException("cannot hold prefixes of address family " + addressFamily);
+		
+		this.addressFamily = addressFamily;
+		
+		if(addressFamily == AddressFamily.IPv4) {
+			words = new long[capacity];
+		} else {
+			words = new long[2*capacity];
+			prefixLengths = new int[capacity];
+		}
+	}
+	
+	/**
+	 * check if a list can hold prefixes of the given address family
+	 * 
+	 * @param addressFamily the address family
+	 * @return
+	 */
+	public static boolean isSupported(AddressFamily addressFamily) {
+		return addressFamily == AddressFamily.IPv4 || addressFamily == AddressFamily.IPv6;
+	}
+	
+	/**
+	 * @return the address family of the prefixes
+	 */
+	public AddressFamily getAddressFamily() {
+		return addressFamily;
+	}
+	
+	/**
+	 * @return the number of prefixes held in the list
+	 */
+	public int size() {
+		return size;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * remove all prefixes from the list. The arrays are kept for reuse.
+	 */
+	public void clear() {
+		size = 0;
+	}
+	
+	/**
+	 * make sure the list can hold the given number of additional prefixes without growing the arrays
+	 * 
+	 * @param additionalPrefixes the number of prefixes to be added
+	 */
+	public void ensureCapacity(int additionalPrefixes) {
+		int capacity = (prefixLengths != null) ? prefixLengths.length : words.length;
+		int required = size + additionalPrefixes;
+		
+		if(required > capacity) {
+			int newCapacity = Math.max(required, 2*capacity);
+			
+			if(prefixLengths != null) {
+				words = Arrays.copyOf(words, 2*newCapacity);
+				prefixLengths = Arrays.copyOf(prefixLengths, newCapacity);
+			} else
+				words = Arrays.copyOf(words, newCapacity);
+		}
+	}
+	
+	/**
+	 * add an IPv4 prefix
+	 * 
+	 * @param address the address bits
+	 * @param prefixLength the prefix length
+	 * @throws IllegalArgumentException if the prefix length exceeds 32 bits or the list holds IPv6 prefixes
+	 */
+	public void addIPv4(int address, int prefixLength) {
+		if(prefixLengths != null)
+			throw new IllegalArgumentException("cannot add IPv4 prefix to list of " + addressFamily + " prefixes");
+		
+		long key = IPv4PrefixKey.pack(address, prefixLength);
+		
+		ensureCapacity(1);
+		words[size++] = key;
+	}
+	
+	/**
+	 * add an IPv6 prefix
+	 * 
+	 * @param high the upper 64 address bits
+	 * @param low the lower 64 address bits
+	 * @param prefixLength the prefix length
+	 * @throws IllegalArgumentException if the prefix length exceeds 128 bits or the list holds IPv4 prefixes
+	 */
+	public void addIPv6(long high, long low, int prefixLength) {
+		if(prefixLengths == null)
+			throw new IllegalArgumentException("cannot add IPv6 prefix to list of " + addressFamily + " prefixes");
+		if(prefixLength < 0 || prefixLength > MAX_IPV6_PREFIX_LENGTH)
+			throw new IllegalArgumentException("invalid IPv6 prefix length: " + prefixLength);
+		
+		ensureCapacity(1);
+		words[2*size] = high & mask(prefixLength);
+		words[2*size+1] = low & mask(prefixLength - 64);
+		prefixLengths[size++] = prefixLength;
+	}
+	
+	/**
+	 * @param index the prefix index
+	 * @return the prefix length of the prefix
+	 */
+	public int getPrefixLength(int index) {
+		checkIndex(index);
+		
+		return (prefixLengths != null) ? prefixLengths[index] : IPv4PrefixKey.prefixLength(words[index]);
+	}
+	
+	/**
+	 * @param index the prefix index
+	 * @return the packed key of an IPv4 prefix 
+	 */
+	public long getIPv4Key(int index) {
+		checkIndex(index);
+		
+		if(prefixLengths != null)
+			throw new IllegalArgumentException("list holds " + addressFamily + " prefixes");
+		
+		return words[index];
+	}
+	
+	/**
+	 * @param index the prefix index
+	 * @return the upper 64 address bits of an IPv6 prefix
+	 */
+	public long getHighWord(int index) {
+		checkIndex(index);
+		
+		if(prefixLengths == null)
+			throw new IllegalArgumentException("list holds " + addressFamily + " prefixes");
+		
+		return words[2*index];
+	}
+	
+	/**
+	 * @param index the prefix index
+	 * @return the lower 64 address bits of an IPv6 prefix
+	 */
+	public long getLowWord(int index) {
+		checkIndex(index);
+		
+		if(prefixLengths == null)
+			throw new IllegalArgumentException("list holds " + addressFamily + " prefixes");
+		
+		return words[2*index+1];
+	}
+	
+	/**
+	 * convert a prefix into a NLRI
+	 * 
+	 * @param index the prefix index
+	 * @return the NLRI
+	 */
+	public NetworkLayerReachabilityInformation toNLRI(int index) {
+		if(prefixLengths == null)
+			return IPv4PrefixKey.toNLRI(getIPv4Key(index));
+		
+		int prefixLength = getPrefixLength(index);
+		byte[] prefix = null;
+		
+		if(prefixLength > 0) {
+			long high = words[2*index];
+			long low = words[2*index+1];
+			
+			prefix = new byte[NetworkLayerReachabilityInformation.calculateOctetsForPrefixLength(prefixLength)];
+			
+			for(int i=0; i<prefix.length; i++)
+				prefix[i] = (byte)((i < 8) ? (high >>> (56 - 8*i)) : (low >>> (120 - 8*i)));
+		}
+		
+		return new NetworkLayerReachabilityInformation(prefixLength, prefix);
+	}
+	
+	/**
+	 * convert all prefixes into NLRI and add them to a collection in list order
+	 * 
+	 * @param nlris the collection the NLRI are added to
+	 */
+	public void toNLRIs(Collection<NetworkLayerReachabilityInformation> nlris) {
+		for(int i=0; i<size; i++)
+			nlris.add(toNLRI(i));
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		
+		builder.append(addressFamily).append('[');
+		for(int i=0; i<size; i++) {
+			if(i > 0)
+				builder.append(", ");
+			builder.append(toNLRI(i));
+		}
+		
+		return builder.append(']').toString();
+	}
+	
+	/**
+	 * calculate the network mask for a 64 bit word
+	 * 
+	 * @param bits the number of leading one bits, values outside 0 to 64 are clamped 
+	 * @return the mask
+	 */
+	private static long mask(int bits) {
+		if(bits <= 0)
+			return 0L;
+		if(bits >= 64)
+			return -1L;
+		
+		return -1L << (64 - bits);
+	}
+	
+	private void checkIndex(int index) {
+		if(index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+	}
+}
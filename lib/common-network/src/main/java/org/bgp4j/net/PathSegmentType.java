@@ -4,5 +4,35 @@ public enum PathSegmentType {
 	AS_SET,             // unordered set of ASes a route in the UPDATE message has traversed
 	AS_SEQUENCE,        // ordered set of ASes a route in the UPDATE message has traversed
 	AS_CONFED_SET,      // unordered set of ASes in a confederation a route in the UPDATE message has traversed
-	AS_CONFED_SEQUENCE, // ordered set of ASes in a confederation a route in the UPDATE message has traversed
+	AS_CONFED_SEQUENCE; // ordered set of ASes in a confederation a route in the UPDATE message has traversed
+	
+	public int toCode() {
+		switch(this) {
+		case AS_SET:
+			return 1;
+		case AS_SEQUENCE:
+			return 2;
+		case AS_CONFED_SEQUENCE:
+			return 3;
+		case AS_CONFED_SET:
+			return 4;
+		default:
+			throw new IllegalArgumentException("illegal AS_PATH type" + this);
+		}
+	}
+	
+	public static PathSegmentType fromCode(int code) {
+		switch(code) {
+		case 1:
+			return AS_SET;
+		case 2:
+			return AS_SEQUENCE;
+		case 3:
+			return AS_CONFED_SEQUENCE;
+		case 4:
+			return AS_CONFED_SET;
+		default:
+			throw new IllegalArgumentException("illegal AS_PATH type" + code);
+		}
+	}
 }
\ No newline at end of file
@@ -16,6 +16,9 @@
  */
 package org.bgp4j.net.attributes;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -27,8 +30,15 @@ import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.bgp4j.net.ASType;
 import org.bgp4j.net.ASTypeAware;
 import org.bgp4j.net.PathSegment;
+import org.bgp4j.net.PathSegmentType;
 
 /**
+ * AS_PATH (or AS4_PATH) path attribute. 
+ * 
+ * An attribute may be backed by its encoded value as received from the peer. In this case the path segments 
+ * are decoded on first access and are read-only, equality and hash code are computed from the encoded octets
+ * and the encoded value can be written out again unchanged.
+ * 
  * @author Rainer Bieniek (Rainer.Bieniek@web.de)
  *
  */
@@ -36,6 +46,9 @@ public class ASPathAttribute extends PathAttribute implements ASTypeAware {
 
 	private ASType asType;
 	private List<PathSegment> pathSegments = new LinkedList<PathSegment>(); 
+	private byte[] encodedValue;
+	private int encodedOffset;
+	private int encodedLength;
 
 	public ASPathAttribute(ASType asType) {
 		super(Category.WELL_KNOWN_MANDATORY);
@@ -60,6 +73,24 @@ public class ASPathAttribute extends PathAttribute implements ASTypeAware {
 			this.pathSegments = new LinkedList<PathSegment>(pathSegments);
 	}
 
+	/**
+	 * create an attribute backed by the encoded attribute value (the sequence of path segments). The encoded value
+	 * must have been validated by the caller and must not be modified afterwards.
+	 * 
+	 * @param asType the AS number size used in the encoded value
+	 * @param encodedValue the array holding the encoded value
+	 * @param offset the offset of the encoded value in the array
+	 * @param length the length of the encoded value
+	 */
+	public ASPathAttribute(ASType asType, byte[] encodedValue, int offset, int length) {
+		this(asType);
+		
+		this.pathSegments = null;
+		this.encodedValue = encodedValue;
+		this.encodedOffset = offset;
+		this.encodedLength = length;
+	}
+
 	/**
 	 * @return the fourByteASNumber
 	 */
@@ -70,18 +101,81 @@ public class ASPathAttribute extends PathAttribute implements ASTypeAware {
 	/**
 	 * @return the pathSegments
 	 */
-	public List<PathSegment> getPathSegments() {
+	public synchronized List<PathSegment> getPathSegments() {
+		if(pathSegments == null)
+			pathSegments = decodePathSegments();
+		
 		return pathSegments;
 	}
 
 	/**
 	 * @param pathSegments the pathSegments to set
 	 */
-	public void setPathSegments(List<PathSegment> pathSegments) {
+	public synchronized void setPathSegments(List<PathSegment> pathSegments) {
 		if(pathSegments != null)
 			this.pathSegments = pathSegments;
 		else
 			this.pathSegments = new LinkedList<PathSegment>();
+		
+		this.encodedValue = null;
+	}
+
+	/**
+	 * check if the attribute is backed by its encoded value
+	 * 
+	 * @return
+	 */
+	public synchronized boolean hasEncodedValue() {
+		return (encodedValue != null);
+	}
+	
+	/**
+	 * get a read-only view on the encoded value
+	 * 
+	 * @return the encoded value or <code>null</code> if the attribute is not backed by an encoded value
+	 */
+	public synchronized ByteBuffer getEncodedValue() {
+		if(encodedValue == null)
+			return null;
+		
+		return ByteBuffer.wrap(encodedValue, encodedOffset, encodedLength).asReadOnlyBuffer();
+	}
+	
+	private List<PathSegment> decodePathSegments() {
+		List<PathSegment> segments = new ArrayList<PathSegment>();
+		int index = encodedOffset;
+		int end = encodedOffset + encodedLength;
+		
+		while(index < end) {
+			PathSegment segment = new PathSegment(asType);
+			int pathLength = encodedValue[index+1] & 0xff;
+			List<Integer> ases = new ArrayList<Integer>(pathLength);
+			
+			segment.setPathSegmentType(PathSegmentType.fromCode(encodedValue[index] & 0xff));
+			index += 2;
+			
+			for(int i=0; i<pathLength; i++) {
+				ases.add(encodedAS(index));
+				index += asOctets();
+			}
+			segment.setAses(Collections.unmodifiableList(ases));
+			segments.add(segment);
+		}
+		
+		return Collections.unmodifiableList(segments);
+	}
+	
+	private int encodedAS(int index) {
+		int as = ((encodedValue[index] & 0xff) << 8) | (encodedValue[index+1] & 0xff);
+		
+		if(asType == ASType.AS_NUMBER_4OCTETS)
+			as = (as << 16) | ((encodedValue[index+2] & 0xff) << 8) | (encodedValue[index+3] & 0xff);
+		
+		return as;
+	}
+	
+	private int asOctets() {
+		return (asType == ASType.AS_NUMBER_4OCTETS ? 4 : 2);
 	}
 
 	/* (non-Javadoc)
@@ -100,6 +194,11 @@ public class ASPathAttribute extends PathAttribute implements ASTypeAware {
 	@Override
 	protected boolean subclassEquals(PathAttribute obj) {
 		ASPathAttribute o = (ASPathAttribute)obj;
+		ByteBuffer encoded = getEncodedValue();
+		ByteBuffer otherEncoded = o.getEncodedValue();
+		
+		if(encoded != null && otherEncoded != null)
+			return (getAsType() == o.getAsType()) && encoded.equals(otherEncoded);
 
 		EqualsBuilder builder = (new EqualsBuilder())
 				.append(getAsType(), o.getAsType())
@@ -120,6 +219,31 @@ public class ASPathAttribute extends PathAttribute implements ASTypeAware {
 	protected int subclassHashCode() {
 		HashCodeBuilder builder = (new HashCodeBuilder())
 				.append(getAsType());
+		
+		synchronized (this) {
+			if(encodedValue != null) {
+				// same hash code as computed from the decoded path segments
+				int index = encodedOffset;
+				int end = encodedOffset + encodedLength;
+				
+				while(index < end) {
+					HashCodeBuilder segmentBuilder = (new HashCodeBuilder())
+							.append(getAsType())
+							.append(PathSegmentType.fromCode(encodedValue[index] & 0xff));
+					int pathLength = encodedValue[index+1] & 0xff;
+					
+					index += 2;
+					for(int i=0; i<pathLength; i++) {
+						segmentBuilder.append(encodedAS(index));
+						index += asOctets();
+					}
+					builder.append(segmentBuilder.toHashCode());
+				}
+				
+				return builder.toHashCode();
+			}
+		}
+		
 		Iterator<PathSegment> it = getPathSegments().iterator();
 		
 		while(it.hasNext())
@@ -151,7 +275,7 @@ public class ASPathAttribute extends PathAttribute implements ASTypeAware {
 	protected ToStringBuilder subclassToString() {
 		ToStringBuilder builder = new ToStringBuilder(this).append("asType", asType);
 		
-		for(PathSegment ps : this.pathSegments)
+		for(PathSegment ps : getPathSegments())
 			builder.append("pathSegment", ps);
 		
 		return builder;
@@ -17,6 +17,9 @@
  */
 package org.bgp4j.net.attributes;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -27,6 +30,11 @@ import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
 /**
+ * COMMUNITIES path attribute.
+ * 
+ * An attribute may be backed by its encoded value as received from the peer. In this case the members 
+ * are decoded on first access and are read-only.
+ * 
  * @author Rainer Bieniek (Rainer.Bieniek@web.de)
  *
  */
@@ -34,6 +42,9 @@ public class CommunityPathAttribute extends PathAttribute {
 
 	private int community;
 	private List<CommunityMember> members = new LinkedList<CommunityMember>();
+	private byte[] encodedValue;
+	private int encodedOffset;
+	private int encodedLength;
 
 	public CommunityPathAttribute() {
 		super(Category.OPTIONAL_TRANSITIVE);
@@ -51,35 +62,107 @@ public class CommunityPathAttribute extends PathAttribute {
 		if(members != null)
 			this.members = new LinkedList<CommunityMember>(members);
 	}
+
+	/**
+	 * create an attribute backed by the encoded attribute value. The encoded value must have been validated by 
+	 * the caller and must not be modified afterwards.
+	 * 
+	 * @param encodedValue the array holding the encoded value
+	 * @param offset the offset of the encoded value in the array
+	 * @param length the length of the encoded value
+	 */
+	public CommunityPathAttribute(byte[] encodedValue, int offset, int length) {
+		this();
+		
+		this.members = null;
+		this.encodedValue = encodedValue;
+		this.encodedOffset = offset;
+		this.encodedLength = length;
+	}
+	
 	/**
 	 * @return the community
 	 */
-	public int getCommunity() {
+	public synchronized int getCommunity() {
+		if(encodedValue != null)
+			return encodedInt(encodedOffset);
+		
 		return community;
 	}
 
 	/**
 	 * @param community the community to set
 	 */
-	public void setCommunity(int community) {
+	public synchronized void setCommunity(int community) {
+		decodeMembers();
+		
 		this.community = community;
+		this.encodedValue = null;
 	}
 
 	/**
 	 * @return the members
 	 */
-	public List<CommunityMember> getMembers() {
+	public synchronized List<CommunityMember> getMembers() {
+		decodeMembers();
+		
 		return members;
 	}
 
 	/**
 	 * @param members the members to set
 	 */
-	public void setMembers(List<CommunityMember> members) {
+	public synchronized void setMembers(List<CommunityMember> members) {
+		if(encodedValue != null)
+			this.community = encodedInt(encodedOffset);
+		
 		if(members != null)
 			this.members = members;
 		else
 			this.members = new LinkedList<CommunityMember>();
+		
+		this.encodedValue = null;
+	}
+
+	/**
+	 * check if the attribute is backed by its encoded value
+	 * 
+	 * @return
+	 */
+	public synchronized boolean hasEncodedValue() {
+		return (encodedValue != null);
+	}
+	
+	/**
+	 * get a read-only view on the encoded value
+	 * 
+	 * @return the encoded value or <code>null</code> if the attribute is not backed by an encoded value
+	 */
+	public synchronized ByteBuffer getEncodedValue() {
+		if(encodedValue == null)
+			return null;
+		
+		return ByteBuffer.wrap(encodedValue, encodedOffset, encodedLength).asReadOnlyBuffer();
+	}
+	
+	private void decodeMembers() {
+		if(members == null) {
+			List<CommunityMember> decoded = new ArrayList<CommunityMember>(encodedLength / 4);
+			
+			this.community = encodedInt(encodedOffset);
+			for(int index = encodedOffset + 4; index < encodedOffset + encodedLength; index += 4)
+				decoded.add(new CommunityMember(encodedShort(index), encodedShort(index+2)));
+			
+			this.members = Collections.unmodifiableList(decoded);
+		}
+	}
+
+	private int encodedShort(int index) {
+		return ((encodedValue[index] & 0xff) << 8) | (encodedValue[index+1] & 0xff);
+	}
+	
+	private int encodedInt(int index) {
+		return (encodedShort(index) << 16) | encodedShort(index+2);
 	}
 
 	@Override
@@ -90,6 +173,11 @@ public class CommunityPathAttribute extends PathAttribute {
 	@Override
 	protected boolean subclassEquals(PathAttribute obj) {
 		CommunityPathAttribute o = (CommunityPathAttribute)obj;
+		ByteBuffer encoded = getEncodedValue();
+		ByteBuffer otherEncoded = o.getEncodedValue();
+		
+		if(encoded != null && otherEncoded != null)
+			return encoded.equals(otherEncoded);
 		
 		EqualsBuilder builder = (new EqualsBuilder())
 			.append(getCommunity(), o.getCommunity())
@@ -110,6 +198,20 @@ public class CommunityPathAttribute extends PathAttribute {
 	protected int subclassHashCode() {
 		HashCodeBuilder builder = (new HashCodeBuilder())
 				.append(getCommunity());
+		
+		synchronized (this) {
+			if(encodedValue != null) {
+				// same hash code as computed from the decoded members
+				for(int index = encodedOffset + 4; index < encodedOffset + encodedLength; index += 4)
+					builder.append((new HashCodeBuilder())
+							.append(encodedShort(index))
+							.append(encodedShort(index+2))
+							.toHashCode());
+				
+				return builder.toHashCode();
+			}
+		}
+		
 		Iterator<CommunityMember> it = getMembers().iterator();
 		
 		while(it.hasNext())
@@ -139,9 +241,9 @@ public class CommunityPathAttribute extends PathAttribute {
 	@Override
 	protected ToStringBuilder subclassToString() {
 		ToStringBuilder builder = new ToStringBuilder(this)
-			.append("community", community);
+			.append("community", getCommunity());
 		
-		for(CommunityMember c : members)
+		for(CommunityMember c : getMembers())
 			builder.append("member", c);
 		
 		return builder;
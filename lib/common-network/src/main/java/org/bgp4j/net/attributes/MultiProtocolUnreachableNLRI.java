@@ -28,6 +28,7 @@ import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.bgp4j.net.AddressFamily;
 import org.bgp4j.net.AddressFamilyKey;
 import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.PackedPrefixList;
 import org.bgp4j.net.SubsequentAddressFamily;
 
 /**
@@ -39,6 +40,7 @@ public class MultiProtocolUnreachableNLRI extends PathAttribute {
 	private AddressFamily addressFamily;
 	private SubsequentAddressFamily subsequentAddressFamily;
 	private List<NetworkLayerReachabilityInformation> nlris = new LinkedList<NetworkLayerReachabilityInformation>();
+	private PackedPrefixList packedNlris;
 	
 	/**
 	 * @param category
@@ -107,17 +109,40 @@ public class MultiProtocolUnreachableNLRI extends PathAttribute {
 	}
 
 	/**
-	 * @return the nlris
+	 * @return the nlris. Packed NLRI are converted into the list on first access.
 	 */
-	public List<NetworkLayerReachabilityInformation> getNlris() {
+	public synchronized List<NetworkLayerReachabilityInformation> getNlris() {
+		if(packedNlris != null) {
+			packedNlris.toNLRIs(nlris);
+			packedNlris = null;
+		}
+		
 		return nlris;
 	}
 
 	/**
 	 * @param nlris the nlris to set
 	 */
-	public void setNlris(List<NetworkLayerReachabilityInformation> nlris) {
+	public synchronized void setNlris(List<NetworkLayerReachabilityInformation> nlris) {
 		this.nlris = nlris;
+		this.packedNlris = null;
+	}
+
+	/**
+	 * @return the NLRI as a packed prefix list or <code>null</code> if the NLRI are not held packed
+	 */
+	public synchronized PackedPrefixList getPackedNlris() {
+		return packedNlris;
+	}
+
+	/**
+	 * Set the NLRI as a packed prefix list. The list replaces the content of the NLRI list.
+	 * 
+	 * @param packedNlris the packed NLRI
+	 */
+	public synchronized void setPackedNlris(PackedPrefixList packedNlris) {
+		this.nlris = new LinkedList<NetworkLayerReachabilityInformation>();
+		this.packedNlris = packedNlris;
 	}
 
 	public AddressFamilyKey addressFamilyKey() {
@@ -189,8 +214,13 @@ public class MultiProtocolUnreachableNLRI extends PathAttribute {
 			.append(addressFamily)
 			.append(subsequentAddressFamily);
 
-		for(NetworkLayerReachabilityInformation n : nlris)
-			builder.append("nlri", n);
+		synchronized (this) {
+			if(packedNlris != null)
+				builder.append("nlris", packedNlris);
+			else
+				for(NetworkLayerReachabilityInformation n : nlris)
+					builder.append("nlri", n);
+		}
 
 		return builder;
 	}
@@ -0,0 +1,102 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * File: org.bgp4j.net.IPv4PrefixKeyTest.java
+ */
+package org.bgp4j.net;
+
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class IPv4PrefixKeyTest {
+
+	@Test
+	public void testPackAndUnpack() {
+		long key = IPv4PrefixKey.pack(0xc0a804ff, 24);
+
+		Assert.assertEquals(0xc0a80400, IPv4PrefixKey.address(key));
+		Assert.assertEquals(24, IPv4PrefixKey.prefixLength(key));
+		Assert.assertTrue(key > 0);
+
+		Assert.assertEquals(0L, IPv4PrefixKey.pack(0xffffffff, 0));
+		Assert.assertEquals(0xffffffff, IPv4PrefixKey.address(IPv4PrefixKey.pack(0xffffffff, 32)));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testPackInvalidPrefixLength() {
+		IPv4PrefixKey.pack(0, 33);
+	}
+
+	@Test
+	public void testConvertNLRI() {
+		NetworkLayerReachabilityInformation nlri = new NetworkLayerReachabilityInformation(20, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x1f }); // 192.168.16/20
+		long key = IPv4PrefixKey.fromNLRI(nlri);
+
+		Assert.assertEquals(0xc0a81000, IPv4PrefixKey.address(key));
+		Assert.assertEquals(20, IPv4PrefixKey.prefixLength(key));
+		Assert.assertEquals(nlri, IPv4PrefixKey.toNLRI(key));
+
+		NetworkLayerReachabilityInformation defaultRoute = new NetworkLayerReachabilityInformation(0, null);
+
+		Assert.assertEquals(0L, IPv4PrefixKey.fromNLRI(defaultRoute));
+		Assert.assertEquals(defaultRoute, IPv4PrefixKey.toNLRI(0L));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testConvertNonIPv4NLRI() {
+		IPv4PrefixKey.fromNLRI(new NetworkLayerReachabilityInformation(40, new byte[] { 0x20, 0x01, 0x0d, (byte)0xb8, 0x00 }));
+	}
+
+	@Test
+	public void testIsPrefixOf() {
+		long less = IPv4PrefixKey.pack(0xc0a80400, 24);
+		long more = IPv4PrefixKey.pack(0xc0a80410, 28);
+		long other = IPv4PrefixKey.pack(0xc0a80500, 28);
+
+		Assert.assertTrue(IPv4PrefixKey.isPrefixOf(less, more));
+		Assert.assertFalse(IPv4PrefixKey.isPrefixOf(more, less));
+		Assert.assertFalse(IPv4PrefixKey.isPrefixOf(less, less));
+		Assert.assertFalse(IPv4PrefixKey.isPrefixOf(less, other));
+		Assert.assertTrue(IPv4PrefixKey.isPrefixOf(0L, less));
+		Assert.assertFalse(IPv4PrefixKey.isPrefixOf(0L, 0L));
+	}
+
+	/**
+	 * compare random prefixes with the packed key operations and the NLRI operations
+	 */
+	@Test
+	public void testConsistentWithNLRI() {
+		Random random = new Random(5113);
+
+		for(int i=0; i<10000; i++) {
+			long first = IPv4PrefixKey.pack(random.nextInt(), random.nextInt(33));
+			long second = (random.nextBoolean())
+					? IPv4PrefixKey.pack(random.nextInt(), random.nextInt(33))
+					: IPv4PrefixKey.pack(IPv4PrefixKey.address(first) ^ (random.nextInt() & 0xff), random.nextInt(33));
+			NetworkLayerReachabilityInformation firstNlri = IPv4PrefixKey.toNLRI(first);
+			NetworkLayerReachabilityInformation secondNlri = IPv4PrefixKey.toNLRI(second);
+
+			Assert.assertEquals(first, IPv4PrefixKey.fromNLRI(firstNlri));
+			Assert.assertEquals(firstNlri.isPrefixOf(secondNlri), IPv4PrefixKey.isPrefixOf(first, second));
+		}
+	}
+}
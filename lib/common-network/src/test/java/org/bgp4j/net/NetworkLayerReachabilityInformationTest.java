@@ -319,4 +319,15 @@ public class NetworkLayerReachabilityInformationTest  {
 		
 		Assert.assertEquals(0, first.compareTo(second));
 	}
+
+	@Test
+	public void testMaskTrailingBits() {
+		for(int prefixLength=1; prefixLength<=16; prefixLength++) {
+			NetworkLayerReachabilityInformation nlri = new NetworkLayerReachabilityInformation(prefixLength, 
+					(prefixLength > 8) ? new byte[] { (byte)0xff, (byte)0xff } : new byte[] { (byte)0xff });
+			int lastOctetBits = (prefixLength % 8 == 0) ? 8 : prefixLength % 8; 
+			
+			Assert.assertEquals((byte)(0xff << (8 - lastOctetBits)), nlri.getPrefix()[nlri.getPrefix().length-1]);
+		}
+	}
 }
@@ -0,0 +1,127 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.net.PackedPrefixListTest.java
+ */
+package org.bgp4j.net;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class PackedPrefixListTest {
+
+	@Test
+	public void testAddIPv4() {
+		PackedPrefixList list = new PackedPrefixList(AddressFamily.IPv4);
+		
+		list.addIPv4(0xc0a804ff, 24);
+		list.addIPv4(0xffffffff, 0);
+		list.addIPv4(0xac12feff, 32);
+		
+		Assert.assertEquals(AddressFamily.IPv4, list.getAddressFamily());
+		Assert.assertEquals(3, list.size());
+		Assert.assertEquals(IPv4PrefixKey.pack(0xc0a80400, 24), list.getIPv4Key(0));
+		Assert.assertEquals(24, list.getPrefixLength(0));
+		Assert.assertEquals(0L, list.getIPv4Key(1));
+		Assert.assertEquals(32, list.getPrefixLength(2));
+		Assert.assertEquals(new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, 0x04 }), list.toNLRI(0));
+		Assert.assertEquals(new NetworkLayerReachabilityInformation(0, null), list.toNLRI(1));
+		Assert.assertEquals(new NetworkLayerReachabilityInformation(32, new byte[] { (byte)0xac, 0x12, (byte)0xfe, (byte)0xff }), list.toNLRI(2));
+	}
+	
+	@Test
+	public void testAddIPv6() {
+		PackedPrefixList list = new PackedPrefixList(AddressFamily.IPv6);
+		
+		list.addIPv6(0x20010db8ffffffffL, -1L, 32);
+		list.addIPv6(0x20010db800000000L, 0x12345678ffffffffL, 100);
+		list.addIPv6(-1L, -1L, 128);
+		list.addIPv6(-1L, -1L, 0);
+		
+		Assert.assertEquals(4, list.size());
+		Assert.assertEquals(0x20010db800000000L, list.getHighWord(0));
+		Assert.assertEquals(0L, list.getLowWord(0));
+		Assert.assertEquals(0x20010db800000000L, list.getHighWord(1));
+		Assert.assertEquals(0x12345678f0000000L, list.getLowWord(1));
+		Assert.assertEquals(100, list.getPrefixLength(1));
+		Assert.assertEquals(-1L, list.getHighWord(2));
+		Assert.assertEquals(-1L, list.getLowWord(2));
+		Assert.assertEquals(0L, list.getHighWord(3));
+		Assert.assertEquals(0L, list.getLowWord(3));
+		
+		Assert.assertEquals(new NetworkLayerReachabilityInformation(32, new byte[] { 0x20, 0x01, 0x0d, (byte)0xb8 }), list.toNLRI(0));
+		Assert.assertEquals(new NetworkLayerReachabilityInformation(100, new byte[] { 0x20, 0x01, 0x0d, (byte)0xb8, 0, 0, 0, 0, 
+				0x12, 0x34, 0x56, 0x78, (byte)0xf0 }), list.toNLRI(1));
+		Assert.assertEquals(new NetworkLayerReachabilityInformation(0, null), list.toNLRI(3));
+	}
+	
+	@Test
+	public void testGrowAndReuse() {
+		PackedPrefixList list = new PackedPrefixList(AddressFamily.IPv4, 1);
+		
+		for(int i=0; i<1000; i++)
+			list.addIPv4(i << 8, 24);
+		
+		Assert.assertEquals(1000, list.size());
+		Assert.assertEquals(IPv4PrefixKey.pack(999 << 8, 24), list.getIPv4Key(999));
+		
+		list.clear();
+		
+		Assert.assertTrue(list.isEmpty());
+		
+		list.addIPv4(0x0a000000, 8);
+		
+		Assert.assertEquals(1, list.size());
+		Assert.assertEquals(IPv4PrefixKey.pack(0x0a000000, 8), list.getIPv4Key(0));
+		
+		List<NetworkLayerReachabilityInformation> nlris = new LinkedList<NetworkLayerReachabilityInformation>();
+		
+		list.toNLRIs(nlris);
+		
+		Assert.assertEquals(1, nlris.size());
+		Assert.assertEquals(new NetworkLayerReachabilityInformation(8, new byte[] { 0x0a }), nlris.get(0));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testUnsupportedAddressFamily() {
+		new PackedPrefixList(AddressFamily.NSAP);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidIPv6PrefixLength() {
+		(new PackedPrefixList(AddressFamily.IPv6)).addIPv6(0L, 0L, 129);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testIPv6PrefixInIPv4List() {
+		(new PackedPrefixList(AddressFamily.IPv4)).addIPv6(0L, 0L, 64);
+	}
+	
+	@Test(expected=IndexOutOfBoundsException.class)
+	public void testIndexBeyondSize() {
+		PackedPrefixList list = new PackedPrefixList(AddressFamily.IPv4);
+		
+		list.addIPv4(0, 0);
+		list.getIPv4Key(1);
+	}
+}
@@ -276,4 +276,67 @@ public class ASPathAttributeTest {
 		Assert.assertFalse(a.hashCode() == b.hashCode());
 		Assert.assertTrue(a.compareTo(b) > 0);
 	}
+
+	@Test
+	public void testASPathAttributeEncodedValueEqualsDecoded() {
+		ASPathAttribute a = new ASPathAttribute(ASType.AS_NUMBER_4OCTETS, new PathSegment[] {
+				new PathSegment(ASType.AS_NUMBER_4OCTETS, PathSegmentType.AS_SEQUENCE, new int[] { 1, 0x12345678 }),
+				new PathSegment(ASType.AS_NUMBER_4OCTETS, PathSegmentType.AS_SET, new int[] { 3 })
+		});
+		ASPathAttribute b = new ASPathAttribute(ASType.AS_NUMBER_4OCTETS, new byte[] {
+				(byte)0xff, // preceding data
+				0x02, 0x02, 0x00, 0x00, 0x00, 0x01, 0x12, 0x34, 0x56, 0x78, 
+				0x01, 0x01, 0x00, 0x00, 0x00, 0x03, 
+		}, 1, 16);
+		ASPathAttribute c = new ASPathAttribute(ASType.AS_NUMBER_4OCTETS, new byte[] {
+				0x02, 0x02, 0x00, 0x00, 0x00, 0x01, 0x12, 0x34, 0x56, 0x78, 
+				0x01, 0x01, 0x00, 0x00, 0x00, 0x03, 
+		}, 0, 16);
+		
+		Assert.assertTrue(b.hasEncodedValue());
+		Assert.assertTrue(a.hashCode() == b.hashCode());
+		Assert.assertTrue(b.equals(c));
+		Assert.assertTrue(b.hashCode() == c.hashCode());
+		Assert.assertTrue(a.equals(b));
+		Assert.assertTrue(b.equals(a));
+		Assert.assertTrue(a.compareTo(b) == 0);
+		Assert.assertEquals(a.getPathSegments(), b.getPathSegments());
+		Assert.assertTrue(b.hasEncodedValue());
+		Assert.assertEquals(16, b.getEncodedValue().remaining());
+	}
+
+	@Test
+	public void testASPathAttributeEncodedValueDiffers() {
+		ASPathAttribute a = new ASPathAttribute(ASType.AS_NUMBER_2OCTETS, new byte[] { 0x02, 0x01, 0x00, 0x01 }, 0, 4);
+		ASPathAttribute b = new ASPathAttribute(ASType.AS_NUMBER_2OCTETS, new byte[] { 0x02, 0x01, 0x00, 0x02 }, 0, 4);
+		ASPathAttribute c = new ASPathAttribute(ASType.AS_NUMBER_4OCTETS, new byte[] { 0x02, 0x00 }, 0, 2);
+		ASPathAttribute d = new ASPathAttribute(ASType.AS_NUMBER_2OCTETS, new byte[] { 0x02, 0x00 }, 0, 2);
+		
+		Assert.assertFalse(a.equals(b));
+		Assert.assertFalse(a.hashCode() == b.hashCode());
+		Assert.assertTrue(a.compareTo(b) < 0);
+		Assert.assertFalse(c.equals(d));
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void testASPathAttributeEncodedValueSegmentsReadOnly() {
+		ASPathAttribute a = new ASPathAttribute(ASType.AS_NUMBER_2OCTETS, new byte[] { 0x02, 0x01, 0x00, 0x01 }, 0, 4);
+		
+		a.getPathSegments().get(0).getAses().add(2);
+	}
+
+	@Test
+	public void testASPathAttributeSetPathSegmentsDropsEncodedValue() {
+		ASPathAttribute a = new ASPathAttribute(ASType.AS_NUMBER_2OCTETS, new byte[] { 0x02, 0x01, 0x00, 0x01 }, 0, 4);
+		ASPathAttribute b = new ASPathAttribute(ASType.AS_NUMBER_2OCTETS, new PathSegment[] {
+				new PathSegment(ASType.AS_NUMBER_2OCTETS, PathSegmentType.AS_SEQUENCE, new int[] { 2 }),
+		});
+		
+		a.setPathSegments(b.getPathSegments());
+		
+		Assert.assertFalse(a.hasEncodedValue());
+		Assert.assertNull(a.getEncodedValue());
+		Assert.assertTrue(a.equals(b));
+		Assert.assertTrue(a.hashCode() == b.hashCode());
+	}
 }
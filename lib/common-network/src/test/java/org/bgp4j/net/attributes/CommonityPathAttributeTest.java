@@ -188,4 +188,40 @@ public class CommonityPathAttributeTest {
 		Assert.assertTrue(a.compareTo(b) > 0);
 	}
 
+
+	@Test
+	public void testCommunityPathAttributeEncodedValueEqualsDecoded() {
+		CommunityPathAttribute a = new CommunityPathAttribute(0x12345678, Arrays.asList(new CommunityMember(1, 2), new CommunityMember(0xfffe, 0xffff)));
+		CommunityPathAttribute b = new CommunityPathAttribute(new byte[] {
+				0x12, 0x34, 0x56, 0x78, 0x00, 0x01, 0x00, 0x02, (byte)0xff, (byte)0xfe, (byte)0xff, (byte)0xff,  
+		}, 0, 12);
+		CommunityPathAttribute c = new CommunityPathAttribute(new byte[] {
+				0x00, 0x12, 0x34, 0x56, 0x78, 0x00, 0x01, 0x00, 0x02, (byte)0xff, (byte)0xfe, (byte)0xff, (byte)0xff,  
+		}, 1, 12);
+		
+		Assert.assertTrue(b.hasEncodedValue());
+		Assert.assertTrue(a.hashCode() == b.hashCode());
+		Assert.assertTrue(b.equals(c));
+		Assert.assertTrue(b.hashCode() == c.hashCode());
+		Assert.assertTrue(a.equals(b));
+		Assert.assertTrue(b.equals(a));
+		Assert.assertTrue(a.compareTo(b) == 0);
+		Assert.assertEquals(0x12345678, b.getCommunity());
+		Assert.assertEquals(a.getMembers(), b.getMembers());
+		Assert.assertTrue(b.hasEncodedValue());
+	}
+
+	@Test
+	public void testCommunityPathAttributeSetCommunityDropsEncodedValue() {
+		CommunityPathAttribute a = new CommunityPathAttribute(new byte[] { 0x00, 0x00, 0x00, 0x01, 0x00, 0x01, 0x00, 0x02 }, 0, 8);
+		CommunityPathAttribute b = new CommunityPathAttribute(2, Arrays.asList(new CommunityMember(1, 2)));
+		
+		Assert.assertFalse(a.equals(b));
+		
+		a.setCommunity(2);
+		
+		Assert.assertFalse(a.hasEncodedValue());
+		Assert.assertTrue(a.equals(b));
+		Assert.assertTrue(a.hashCode() == b.hashCode());
+	}
 }
@@ -0,0 +1,266 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.BoundedLRUCache.java 
+ */
+package org.bgp4j.netty;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded map of cached values which evicts the least recently used entry when it exceeds its maximum size. The 
+ * lookups are counted as hits and misses. The cache can be shared between threads.
+ * 
+ * The entries are spread by hash code over up to {@value #MAXIMUM_SEGMENTS} segments, each an access-ordered map
+ * guarded by its own lock. Lookups on different segments do not contend with each other. Each segment holds its share 
+ * of the maximum size and evicts its own least recently used entry, small caches use one segment only. 
+ * 
+ * The keys must not be modified while they are held in the cache.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class BoundedLRUCache<K, V> {
+
+	/** default maximum number of entries held in the cache */
+	public static final int DEFAULT_MAXIMUM_SIZE = 16384;
+	
+	/** maximum number of segments, a power of two */
+	public static final int MAXIMUM_SEGMENTS = 16;
+	
+	/** minimum number of entries per segment, caches with a smaller maximum size use less segments */
+	private static final int MINIMUM_SEGMENT_SIZE = 64;
+	
+	/**
+	 * One segment of the cache
+	 */
+	private static class Segment<K, V> {
+		private int maximumSize;
+		private long hits;
+		private long misses;
+		
+		private Map<K, V> entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				return size() > maximumSize;
+			}
+		};
+
+		private Segment(int maximumSize) {
+			this.maximumSize = maximumSize;
+		}
+		
+		private synchronized V get(Object key) {
+			V value = entries.get(key);
+			
+			if(value != null)
+				hits++;
+			else
+				misses++;
+			
+			return value;
+		}
+		
+		private synchronized V putIfAbsent(K key, V value) {
+			V cached = entries.get(key);
+			
+			if(cached != null)
+				return cached;
+			
+			entries.put(key, value);
+			
+			return value;
+		}
+		
+		private synchronized void clear() {
+			entries.clear();
+		}
+		
+		private synchronized int size() {
+			return entries.size();
+		}
+		
+		private synchronized long getHits() {
+			return hits;
+		}
+		
+		private synchronized long getMisses() {
+			return misses;
+		}
+		
+		/**
+		 * move the entries into another cache from the least to the most recently used entry
+		 */
+		private synchronized void transferTo(BoundedLRUCache<K, V> cache) {
+			for(Map.Entry<K, V> entry : entries.entrySet())
+				cache.segmentFor(entry.getKey()).putIfAbsent(entry.getKey(), entry.getValue());
+			
+			entries.clear();
+		}
+	}
+	
+	private int maximumSize;
+	private long retiredHits;
+	private long retiredMisses;
+	private volatile List<Segment<K, V>> segments;
+	
+	public BoundedLRUCache() {
+		this(DEFAULT_MAXIMUM_SIZE);
+	}
+	
+	/**
+	 * @param maximumSize the maximum number of entries
+	 */
+	public BoundedLRUCache(int maximumSize) {
+		if(maximumSize < 1)
+			throw new IllegalArgumentException("illegal maximum cache size: " + maximumSize);
+		
+		this.maximumSize = maximumSize;
+		this.segments = createSegments(maximumSize);
+	}
+	
+	private static <K, V> List<Segment<K, V>> createSegments(int maximumSize) {
+		int count = 1;
+		
+		while(count < MAXIMUM_SEGMENTS && maximumSize / (count * 2) >= MINIMUM_SEGMENT_SIZE)
+			count *= 2;
+		
+		List<Segment<K, V>> segments = new ArrayList<Segment<K, V>>(count);
+		
+		for(int i=0; i<count; i++)
+			segments.add(new Segment<K, V>((maximumSize + count - i - 1) / count));
+		
+		return segments;
+	}
+	
+	private Segment<K, V> segmentFor(Object key) {
+		List<Segment<K, V>> current = segments;
+		int hash = key.hashCode();
+		
+		hash ^= (hash >>> 16);
+		
+		return current.get(hash & (current.size() - 1));
+	}
+	
+	/**
+	 * Look up the value of a key. The entry becomes the most recently used one.
+	 * 
+	 * @param key the key
+	 * @return the value or <code>null</code> if the key is not held in the cache
+	 */
+	public V get(Object key) {
+		return segmentFor(key).get(key);
+	}
+	
+	/**
+	 * Add a value to the cache unless the key is held already. Values computed concurrently for the same key are 
+	 * thus replaced by the value added first.
+	 * 
+	 * @param key the key
+	 * @param value the value
+	 * @return the value held in the cache for the key
+	 */
+	public V putIfAbsent(K key, V value) {
+		return segmentFor(key).putIfAbsent(key, value);
+	}
+	
+	/**
+	 * remove all entries from the cache
+	 */
+	public void clear() {
+		for(Segment<K, V> segment : segments)
+			segment.clear();
+	}
+	
+	/**
+	 * @return the number of entries held in the cache
+	 */
+	public int getSize() {
+		int size = 0;
+		
+		for(Segment<K, V> segment : segments)
+			size += segment.size();
+		
+		return size;
+	}
+	
+	/**
+	 * @return the maximum number of entries held in the cache
+	 */
+	public synchronized int getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * Set the maximum number of entries held in the cache. The entries are moved to new segments, surplus entries are 
+	 * evicted immediately. Entries added concurrently to the old segments may be lost.
+	 * 
+	 * @param maximumSize the maximum number of entries
+	 */
+	public synchronized void setMaximumSize(int maximumSize) {
+		if(maximumSize < 1)
+			throw new IllegalArgumentException("illegal maximum cache size: " + maximumSize);
+		
+		List<Segment<K, V>> retired = segments;
+		
+		this.maximumSize = maximumSize;
+		this.segments = createSegments(maximumSize);
+		
+		for(Segment<K, V> segment : retired) {
+			retiredHits += segment.getHits();
+			retiredMisses += segment.getMisses();
+			segment.transferTo(this);
+		}
+	}
+
+	/**
+	 * @return the number of lookups answered from the cache
+	 */
+	public synchronized long getHits() {
+		long hits = retiredHits;
+		
+		for(Segment<K, V> segment : segments)
+			hits += segment.getHits();
+		
+		return hits;
+	}
+
+	/**
+	 * @return the number of lookups not answered from the cache
+	 */
+	public synchronized long getMisses() {
+		long misses = retiredMisses;
+		
+		for(Segment<K, V> segment : segments)
+			misses += segment.getMisses();
+		
+		return misses;
+	}
+	
+	/**
+	 * @return the share of lookups answered from the cache, 0 if no lookup has been made yet
+	 */
+	public synchronized double getHitRate() {
+		long hits = getHits();
+		long misses = getMisses();
+		
+		return (hits + misses > 0) ? ((double)hits / (hits + misses)) : 0.0;
+	}
+}
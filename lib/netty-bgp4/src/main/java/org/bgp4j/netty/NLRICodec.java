@@ -17,7 +17,10 @@
  */
 package org.bgp4j.netty;
 
+import org.bgp4j.net.AddressFamily;
+import org.bgp4j.net.IPv4PrefixKey;
 import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.PackedPrefixList;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 
@@ -42,6 +45,101 @@ public class NLRICodec {
 		return nlri;
 	}
 
+	/**
+	 * Decode all encoded NLRI in the readable content of the buffer into a packed prefix list. The prefixes are read 
+	 * directly from the buffer into the primitive arrays of the list, no objects are created unless the arrays of the 
+	 * list need to grow. The reader index of the buffer is moved to the end of the readable content.
+	 * 
+	 * @param buffer the buffer containing the encoded NLRI
+	 * @param prefixes the list the decoded prefixes are added to
+	 * @throws IndexOutOfBoundsException if the last NLRI is truncated
+	 * @throws IllegalArgumentException if a prefix length exceeds the address length of the address family of the list
+	 */
+	public static void decodeNLRIs(ChannelBuffer buffer, PackedPrefixList prefixes) {
+		int index = buffer.readerIndex();
+		int end = buffer.writerIndex();
+		
+		prefixes.ensureCapacity(countNLRIs(buffer));
+
+		if(prefixes.getAddressFamily() == AddressFamily.IPv4) {
+			while(index < end) {
+				int prefixLength = buffer.getUnsignedByte(index++);
+				int octets = NetworkLayerReachabilityInformation.calculateOctetsForPrefixLength(prefixLength);
+				
+				if(prefixLength > IPv4PrefixKey.MAX_PREFIX_LENGTH)
+					throw new IllegalArgumentException("invalid IPv4 prefix length: " + prefixLength);
+				
+				prefixes.addIPv4((int)(leftAlignedWord(buffer, index, octets) >>> 32), prefixLength);
+				index += octets;
+			}
+		} else {
+			while(index < end) {
+				int prefixLength = buffer.getUnsignedByte(index++);
+				int octets = NetworkLayerReachabilityInformation.calculateOctetsForPrefixLength(prefixLength);
+				
+				if(prefixLength > PackedPrefixList.MAX_IPV6_PREFIX_LENGTH)
+					throw new IllegalArgumentException("invalid IPv6 prefix length: " + prefixLength);
+				
+				prefixes.addIPv6(leftAlignedWord(buffer, index, Math.min(octets, 8)), 
+						leftAlignedWord(buffer, index + 8, octets - 8), 
+						prefixLength);
+				index += octets;
+			}
+		}
+		
+		buffer.readerIndex(end);
+	}
+	
+	/**
+	 * count the encoded NLRI in the readable content of the buffer without decoding them. The reader index of the 
+	 * buffer is not changed.
+	 * 
+	 * @param buffer the buffer containing the encoded NLRI
+	 * @return the number of NLRI
+	 * @throws IndexOutOfBoundsException if the last NLRI is truncated
+	 */
+	public static int countNLRIs(ChannelBuffer buffer) {
+		int index = buffer.readerIndex();
+		int end = buffer.writerIndex();
+		int count = 0;
+		
+		while(index < end) {
+			index += 1 + NetworkLayerReachabilityInformation.calculateOctetsForPrefixLength(buffer.getUnsignedByte(index));
+			count++;
+		}
+		
+		if(index > end)
+			throw new IndexOutOfBoundsException("truncated NLRI, " + (index - end) + " octets missing");
+		
+		return count;
+	}
+	
+	/**
+	 * read up to 8 octets as the leading octets of a 64 bit word, the remaining bits are 0
+	 */
+	private static long leftAlignedWord(ChannelBuffer buffer, int index, int octets) {
+		long word = 0;
+		int shift = 56;
+		
+		if(octets <= 0)
+			return 0L;
+		if(octets >= 8)
+			return buffer.getLong(index);
+		
+		if(octets >= 4) {
+			word = buffer.getUnsignedInt(index) << 32;
+			index += 4;
+			octets -= 4;
+			shift = 24;
+		}
+		while(octets-- > 0) {
+			word |= ((long)buffer.getUnsignedByte(index++)) << shift;
+			shift -= 8;
+		}
+		
+		return word;
+	}
+
 	public static int calculateEncodedNLRILength(NetworkLayerReachabilityInformation nlri) {
 		return NetworkLayerReachabilityInformation.calculateOctetsForPrefixLength(nlri.getPrefixLength()) + 1;
 	}
@@ -49,12 +147,20 @@ public class NLRICodec {
 	public static ChannelBuffer encodeNLRI(NetworkLayerReachabilityInformation nlri) {
 		ChannelBuffer buffer = ChannelBuffers.buffer(calculateEncodedNLRILength(nlri));
 		
+		encodeNLRI(nlri, buffer);
+		
+		return buffer;
+	}
+
+	/**
+	 * write the encoded NLRI into a buffer. The buffer must have at least <code>calculateEncodedNLRILength(nlri)</code>
+	 * writable bytes.
+	 */
+	public static void encodeNLRI(NetworkLayerReachabilityInformation nlri, ChannelBuffer buffer) {
 		buffer.writeByte(nlri.getPrefixLength());
 		if(nlri.getPrefixLength() > 0) {
 			buffer.writeBytes(nlri.getPrefix());
 		}
-		
-		return buffer;
 	}
 
 }
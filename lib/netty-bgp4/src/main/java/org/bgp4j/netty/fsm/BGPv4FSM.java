@@ -16,9 +16,10 @@
  */
 package org.bgp4j.netty.fsm;
 
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
@@ -29,6 +30,8 @@ import org.bgp4j.config.nodes.PeerConfiguration;
 import org.bgp4j.net.ASType;
 import org.bgp4j.net.AddressFamily;
 import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.net.NextHop;
+import org.bgp4j.net.PackedPrefixList;
 import org.bgp4j.net.RIBSide;
 import org.bgp4j.net.SubsequentAddressFamily;
 import org.bgp4j.net.attributes.MultiProtocolReachableNLRI;
@@ -46,20 +49,23 @@ import org.bgp4j.netty.protocol.BGPv4Packet;
 import org.bgp4j.netty.protocol.FiniteStateMachineErrorNotificationPacket;
 import org.bgp4j.netty.protocol.HoldTimerExpiredNotificationPacket;
 import org.bgp4j.netty.protocol.KeepalivePacket;
+import org.bgp4j.netty.protocol.MaximumNumberOfPrefixesReachedNotificationPacket;
 import org.bgp4j.netty.protocol.NotificationPacket;
 import org.bgp4j.netty.protocol.UnspecifiedCeaseNotificationPacket;
 import org.bgp4j.netty.protocol.open.OpenNotificationPacket;
 import org.bgp4j.netty.protocol.open.OpenPacket;
 import org.bgp4j.netty.protocol.open.UnsupportedVersionNumberNotificationPacket;
+import org.bgp4j.netty.protocol.update.DecodedPathAttributes;
 import org.bgp4j.netty.protocol.update.InvalidNextHopException;
 import org.bgp4j.netty.protocol.update.UpdateNotificationPacket;
 import org.bgp4j.netty.protocol.update.UpdatePacket;
 import org.bgp4j.netty.service.BGPv4Client;
+import org.bgp4j.rib.PathAttributeSet;
 import org.bgp4j.rib.PeerRoutingInformationBase;
 import org.bgp4j.rib.PeerRoutingInformationBaseManager;
+import org.bgp4j.rib.RoutingInformationBase;
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
-import org.jboss.netty.channel.ChannelFuture;
-import org.jboss.netty.channel.ChannelFutureListener;
 import org.quartz.SchedulerException;
 import org.slf4j.Logger;
 
@@ -236,15 +242,20 @@ public class BGPv4FSM {
 
 		@Override
 		public void fireReleaseBGPResources() {
+			// a transfer still in progress stops sending, it is released from waiting for the channel by the reset below
+			if(tableTransfer != null)
+				tableTransfer.cancel();
+			tableTransfer = null;
+			
+			// the group input is moved to another member before the Local RIBs are destroyed
+			updateGroupManager.leaveGroup(peerConfig.getPeerName());
+			
 			if(prib != null)
 				prib.destroyAllRoutingInformationBases();
 			prib = null;
-			
-			try {
-				oruq.shutdown();
-			} catch (SchedulerException e) {
-				log.error("failed to shutdown UPDATE send trigger", e);
-			}
+			prefixLimitWarnings.clear();
+			oruq.shutdown();
+			updateSender.reset();
 		}
 
 		@Override
@@ -255,8 +266,6 @@ public class BGPv4FSM {
 			for(MultiProtocolCapability mpcap : capabilitiesNegotiator.listLocalCapabilities(MultiProtocolCapability.class)) {
 				prib.allocateRoutingInformationBase(RIBSide.Local, mpcap.toAddressFamilyKey());
 			}
-			
-			prib.addRoutingListener(oruq);
 		}
 
 		@Override
@@ -287,54 +296,101 @@ public class BGPv4FSM {
 
 		@Override
 		public void fireEstablished() {
-			prib.visitRoutingBases(RIBSide.Local, oruq.getImportVisitor(), outboundAddressFamilyMask);
-			
-			try {
-				oruq.startSendingUpdates(internalFsm.getNegotiatedHoldTime() / 3);
-			} catch (SchedulerException e) {
-				log.error("failed to start UPDATE send trigger", e);
-				
-				internalFsm.flagFSMError();
-			}
+			UpdateGroupKey key = updateGroupManager.groupKey(peerConfig, outboundAddressFamilyMask, asTypeInUse, localAddress());
+			UpdateGroup group = updateGroupManager.joinGroup(key, updateSender);
+
+			// the routes of the transfer are rewritten like the routes sent by the group
+			oruq.setTransform(key.getTransform());
+
+			// catch up on the routes sent to the group so far, the group holds back its packets until the transfer is completed
+			tableTransfer = new InitialTableTransfer(group.takeCatchUpSnapshots(peerConfig.getPeerName()), outboundAddressFamilyMask, 
+					oruq, updateSender, group);
+			tableTransferExecutor.execute(tableTransfer);
 		}
 
 	}
 	
-	private class SendLocalRoutingUpdateCallback implements OutboundRoutingUpdateCallback, ChannelFutureListener {
+	/**
+	 * Writes the UPDATE packets to the channel through a pipelined writer. Packets are written without waiting for the
+	 * completion of the previous write as long as the outstanding bytes fit into the configured write window and the 
+	 * channel is writable. The packets are sent in the order they are passed in.
+	 */
+	private class SendLocalRoutingUpdateCallback implements UpdateGroupMember {
 
-		private List<UpdatePacket> updates = new LinkedList<UpdatePacket>();
+		private PipelinedUpdateWriter writer;
+		
+		private SendLocalRoutingUpdateCallback(int writeWindow) {
+			this.writer = new PipelinedUpdateWriter(writeWindow);
+		}
 		
 		@Override
-		public void sendUpdates(List<UpdatePacket> updates) {
-			UpdatePacket packet = null;
-			
-			synchronized (updates) {
-				this.updates.addAll(updates);
-				if(this.updates.size() > 0)
-					packet = this.updates.remove(0);
-			}
+		public String getPeerName() {
+			return peerConfig.getPeerName();
+		}
+		
+		@Override
+		public int getGeneration() {
+			return writer.getGeneration();
+		}
+		
+		@Override
+		public void sendUpdates(List<ChannelBuffer> updates) {
+			sendUpdates(updates, writer.getGeneration());
+		}
+
+		/* (non-Javadoc)
+		 * @see org.bgp4j.netty.fsm.UpdateGroupMember#sendUpdates(java.util.List, int)
+		 */
+		@Override
+		public void sendUpdates(List<ChannelBuffer> updates, int generation) {
+			// packets built before the session has been released are dropped
+			if(writer.getGeneration() != generation)
+				return;
 			
 			if(managedChannels.size() != 1) {
 				internalFsm.flagFSMError();
-			} else if(packet != null) {
-				Channel channel = managedChannels.iterator().next().getChannel();
-
-				channel.write(packet).addListener(this);
+			} else {
+				writer.attach(managedChannels.iterator().next().getChannel());
+				writer.write(updates, generation);
 			}
-				
 		}
 
+		/**
+		 * continue writing packets held back while the channel was not writable
+		 */
+		void resume() {
+			writer.resume();
+		}
+		
+		/* (non-Javadoc)
+		 * @see org.bgp4j.netty.fsm.UpdateGroupMember#awaitCapacity()
+		 */
 		@Override
-		public void operationComplete(ChannelFuture future) throws Exception {
-			UpdatePacket packet = null;
-			
-			synchronized (updates) {
-				if(updates.size() > 0)
-					packet = this.updates.remove(0);
-			}
-			
-			if(packet != null)
-				future.getChannel().write(packet).addListener(this);
+		public boolean awaitCapacity() {
+			return writer.awaitCapacity();
+		}
+		
+		/* (non-Javadoc)
+		 * @see org.bgp4j.netty.fsm.UpdateGroupMember#isBacklogged()
+		 */
+		@Override
+		public boolean isBacklogged() {
+			return writer.isBacklogged();
+		}
+		
+		/* (non-Javadoc)
+		 * @see org.bgp4j.netty.fsm.UpdateGroupMember#whenDrained(java.lang.Runnable)
+		 */
+		@Override
+		public void whenDrained(Runnable task) {
+			writer.whenDrained(task);
+		}
+		
+		/**
+		 * drop the packets not written yet
+		 */
+		void reset() {
+			writer.reset();
 		}
 		
 	}
@@ -350,18 +406,24 @@ public class BGPv4FSM {
 	private @Inject CapabilitesNegotiator capabilitiesNegotiator;
 	private @Inject PeerRoutingInformationBaseManager pribManager;
 	private @Inject OutboundRoutingUpdateQueue oruq;
+	private @Inject UpdateGroupManager updateGroupManager;
+	private @Inject InitialTableTransferExecutor tableTransferExecutor;
+	private volatile InitialTableTransfer tableTransfer;
+	private SendLocalRoutingUpdateCallback updateSender;
 	
 	private Set<FSMChannelImpl> managedChannels = new HashSet<FSMChannelImpl>();
 	private PeerRoutingInformationBase prib;
 	private Set<AddressFamilyKey> outboundAddressFamilyMask = new HashSet<AddressFamilyKey>();
+	private Set<AddressFamilyKey> prefixLimitWarnings = new HashSet<AddressFamilyKey>();
 	
 	public void configure(PeerConfiguration peerConfig) throws SchedulerException {
 		this.peerConfig = peerConfig;
 		
 		internalFsm.setup(peerConfig, new InternalFSMCallbacksImpl());
 		capabilitiesNegotiator.setup(peerConfig);
+		updateSender = new SendLocalRoutingUpdateCallback(peerConfig.getRouteAdvertisementWriteWindow());
 		oruq.setPeerName(peerConfig.getPeerName());
-		oruq.setCallback(new SendLocalRoutingUpdateCallback());
+		oruq.setCallback(updateSender);
 	}
 
 	public InetSocketAddress getRemotePeerAddress() {
@@ -409,7 +471,7 @@ public class BGPv4FSM {
 			internalFsm.handleEvent(FSMEvent.updateMessage());
 			
 			try {
-				processRemoteUpdate((UpdatePacket)message);
+				processRemoteUpdate(channel, (UpdatePacket)message);
 			} catch(Exception e) {
 				log.error("error processing UPDATE packet from peer: " + peerConfig.getPeerName());
 
@@ -467,6 +529,11 @@ public class BGPv4FSM {
 	public void handleDisconnected(Channel channel) {
 	}
 
+	public void handleInterestChanged(Channel channel) {
+		if(channel.isWritable() && findWrapperForChannel(channel) != null)
+			updateSender.resume();
+	}
+
 	public boolean isCanAcceptConnection() {
 		return internalFsm.isCanAcceptConnection();
 	}
@@ -488,17 +555,30 @@ public class BGPv4FSM {
 		return wrapper;
 	}
 	
+	/**
+	 * @return the local address of the established connection or <code>null</code> if it is not known
+	 */
+	private InetAddress localAddress() {
+		if(managedChannels.size() == 1) {
+			SocketAddress address = managedChannels.iterator().next().getChannel().getLocalAddress();
+			
+			if(address instanceof InetSocketAddress)
+				return ((InetSocketAddress)address).getAddress();
+		}
+		
+		return null;
+	}
+	
 	/**
 	 * process the UPDATE packet received from the remote peer
 	 * 
+	 * @param channel
 	 * @param message
 	 */
-	@SuppressWarnings("unchecked")
-	private void processRemoteUpdate(UpdatePacket message) {
+	private void processRemoteUpdate(Channel channel, UpdatePacket message) {
 		Set<MultiProtocolReachableNLRI> mpReachables = message.lookupPathAttributes(MultiProtocolReachableNLRI.class);
 		Set<MultiProtocolUnreachableNLRI> mpUnreachables = message.lookupPathAttributes(MultiProtocolUnreachableNLRI.class);
-		Set<PathAttribute> otherAttributes = message.filterPathAttributes(MultiProtocolReachableNLRI.class, 
-				MultiProtocolUnreachableNLRI.class, NextHopPathAttribute.class);
+		Set<PathAttribute> otherAttributes = routeAttributes(message);
 		AddressFamilyKey ipv4Unicast = new AddressFamilyKey(AddressFamily.IPv4, SubsequentAddressFamily.NLRI_UNICAST_FORWARDING);
 		
 		if(mpReachables.size() > 0)
@@ -506,16 +586,81 @@ public class BGPv4FSM {
 		if(mpUnreachables.size() > 0)
 			processRemoteUp(mpUnreachables, otherAttributes);
 		
-		// withdraw IPv4 prefixes
-		prib.routingBase(RIBSide.Remote, ipv4Unicast).withdrawRoutes(message.getWithdrawnRoutes());
-		
 		Set<NextHopPathAttribute> nextHops = message.lookupPathAttributes(NextHopPathAttribute.class);
+		PackedPrefixList packedWithdrawnRoutes = message.getPackedWithdrawnRoutes();
+		PackedPrefixList packedNlris = message.getPackedNlris();
+		NextHop nextHop = null;
 		
 		if(nextHops.size() > 1)
 			throw new InvalidNextHopException();
+		if((packedNlris != null) ? !packedNlris.isEmpty() : message.getNlris().size() > 0)
+			nextHop = nextHops.iterator().next().getNextHop();
 		
-		prib.routingBase(RIBSide.Remote, ipv4Unicast).addRoutes(message.getNlris(), otherAttributes, nextHops.iterator().next().getNextHop());
+		// withdraw and add IPv4 prefixes in one batch, prefixes decoded packed are passed on without converting them into NLRI lists
+		if(packedWithdrawnRoutes != null && packedNlris != null)
+			prib.routingBase(RIBSide.Remote, ipv4Unicast).updateRoutes(packedWithdrawnRoutes, packedNlris, otherAttributes, nextHop);
+		else
+			prib.routingBase(RIBSide.Remote, ipv4Unicast).updateRoutes(message.getWithdrawnRoutes(), message.getNlris(), otherAttributes, nextHop);
 		
+		enforcePrefixLimit(channel, ipv4Unicast);
+	}
+
+	/**
+	 * Get the path attributes of the routes announced in an UPDATE packet. The attribute set of a cached attribute block 
+	 * is interned once and kept with the cached block.
+	 * 
+	 * @param message the UPDATE packet
+	 * @return the path attributes without the next hop and multi-protocol attributes
+	 */
+	@SuppressWarnings("unchecked")
+	private Set<PathAttribute> routeAttributes(UpdatePacket message) {
+		DecodedPathAttributes decoded = message.getDecodedPathAttributes();
+		Set<PathAttribute> attributes = (decoded != null) ? decoded.getRouteAttributes() : null;
+		
+		if(attributes == null) {
+			attributes = message.filterPathAttributes(MultiProtocolReachableNLRI.class, 
+					MultiProtocolUnreachableNLRI.class, NextHopPathAttribute.class);
+			
+			if(decoded != null) {
+				attributes = PathAttributeSet.valueOf(attributes);
+				decoded.setRouteAttributes(attributes);
+			}
+		}
+		
+		return attributes;
+	}
+
+	/**
+	 * Check the number of prefixes held in the remote RIB of an address family against the configured maximum. A warning
+	 * is logged once when the warning threshold is reached. If the maximum is exceeded, a CEASE notification is sent to
+	 * the peer and the session is stopped. Stopping the session releases the remote RIB and thereby bounds the memory
+	 * a peer can occupy to the maximum plus the prefixes carried in one UPDATE packet.
+	 * 
+	 * @param channel the channel the UPDATE packet was received on
+	 * @param afk the address family
+	 */
+	private void enforcePrefixLimit(Channel channel, AddressFamilyKey afk) {
+		int maximumPrefixes = peerConfig.getMaximumPrefixes();
+		
+		if(maximumPrefixes == 0)
+			return;
+		
+		RoutingInformationBase rib = prib.routingBase(RIBSide.Remote, afk);
+		int numberOfPrefixes = rib.getNumberOfPrefixes();
+		
+		if(numberOfPrefixes > maximumPrefixes) {
+			log.error("peer " + peerConfig.getPeerName() + " exceeded the maximum number of " + maximumPrefixes 
+					+ " prefixes for " + afk + ", stopping session");
+			
+			channel.write(new MaximumNumberOfPrefixesReachedNotificationPacket(afk.getAddressFamily(), 
+					afk.getSubsequentAddressFamily(), maximumPrefixes));
+			internalFsm.handleEvent(FSMEvent.automaticStop());
+		} else if(100L * numberOfPrefixes >= (long)maximumPrefixes * peerConfig.getMaximumPrefixesWarningThreshold()) {
+			if(prefixLimitWarnings.add(afk))
+				log.warn("peer " + peerConfig.getPeerName() + " announced " + numberOfPrefixes + " prefixes for " + afk 
+						+ ", reaching " + peerConfig.getMaximumPrefixesWarningThreshold() + "% of the maximum of " + maximumPrefixes);
+		} else
+			prefixLimitWarnings.remove(afk);
 	}
 
 	private void processRemoteUp(Set<MultiProtocolUnreachableNLRI> mpUnreachables, Set<PathAttribute> attrs) {
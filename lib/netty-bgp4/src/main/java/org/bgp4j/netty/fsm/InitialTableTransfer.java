@@ -0,0 +1,221 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.fsm.InitialTableTransfer.java 
+ */
+package org.bgp4j.netty.fsm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.net.RIBSide;
+import org.bgp4j.netty.protocol.update.UpdatePacketWriter;
+import org.bgp4j.rib.Route;
+import org.bgp4j.rib.RoutingInformationBaseSnapshot;
+import org.bgp4j.rib.RoutingInformationBaseVisitor;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Sends the content of the Local RIB of a peer to the peer after the session has been established. 
+ * 
+ * The transfer walks the snapshots of the Local RIBs taken by the update group when the peer joined and sends the 
+ * routes in chunks. No lock on the Local RIBs is held during the walk. After each chunk has been 
+ * encoded and passed to the peer, the walk is suspended until the peer connection can take more packets. Thus the 
+ * first UPDATE packets are sent right after the session has been established and at most one chunk of routes and the 
+ * packets of one write window are held in memory.
+ * 
+ * The transfer is completed by an End-of-RIB marker for each address family. The peer is member of its update group 
+ * during the transfer. The group holds back the packets with the routing changes made after the transfer has started 
+ * until the transfer is completed, they are sent after the End-of-RIB markers. Since the group sends the latest state
+ * of each changed prefix, these packets bring the peer to the current state of the Local RIB.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class InitialTableTransfer implements Runnable {
+
+	/** default number of routes encoded and sent in one chunk */
+	public static final int DEFAULT_CHUNK_SIZE = 4096;
+	
+	/**
+	 * thrown to leave the walk through the RIB if the transfer has been cancelled
+	 */
+	private static class TransferCancelledException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+	}
+	
+	private class ChunkingVisitor implements RoutingInformationBaseVisitor {
+
+		private RoutingInformationBaseVisitor importVisitor = queue.getImportVisitor();
+		private int routesInChunk;
+		
+		@Override
+		public void visitRouteNode(String ribName, RIBSide side, Route route) {
+			importVisitor.visitRouteNode(ribName, side, route);
+			transferredRoutes++;
+			
+			if(++routesInChunk == chunkSize) {
+				routesInChunk = 0;
+				sendChunk();
+			}
+		}
+	}
+	
+	private List<RoutingInformationBaseSnapshot> snapshots;
+	private Set<AddressFamilyKey> addressFamilies;
+	private OutboundRoutingUpdateQueue queue;
+	private UpdateGroupMember member;
+	private UpdateGroup group;
+	private int chunkSize;
+	private int generation;
+	private volatile boolean cancelled;
+	private volatile boolean completed;
+	private int transferredRoutes;
+	private int sentChunks;
+	
+	/**
+	 * @param snapshots the snapshots of the Local RIBs of the peer taken when the peer joined the group
+	 * @param addressFamilies the address families sent to the peer
+	 * @param queue the queue encoding the routes of the peer
+	 * @param member the peer
+	 * @param group the update group the peer is member of
+	 * @see UpdateGroup#takeCatchUpSnapshots(String)
+	 */
+	public InitialTableTransfer(List<RoutingInformationBaseSnapshot> snapshots, Set<AddressFamilyKey> addressFamilies, 
+			OutboundRoutingUpdateQueue queue, UpdateGroupMember member, UpdateGroup group) {
+		this(snapshots, addressFamilies, queue, member, group, DEFAULT_CHUNK_SIZE);
+	}
+	
+	public InitialTableTransfer(List<RoutingInformationBaseSnapshot> snapshots, Set<AddressFamilyKey> addressFamilies, 
+			OutboundRoutingUpdateQueue queue, UpdateGroupMember member, UpdateGroup group, int chunkSize) {
+		if(chunkSize <= 0)
+			throw new IllegalArgumentException("Illegal chunk size given: " + chunkSize);
+		
+		this.snapshots = new ArrayList<RoutingInformationBaseSnapshot>(snapshots);
+		this.addressFamilies = new TreeSet<AddressFamilyKey>(addressFamilies);
+		this.queue = queue;
+		this.member = member;
+		this.group = group;
+		this.chunkSize = chunkSize;
+		this.generation = member.getGeneration();
+	}
+
+	/**
+	 * Run the transfer. The calling thread is blocked until the transfer is completed or cancelled.
+	 */
+	@Override
+	public void run() {
+		try {
+			ChunkingVisitor visitor = new ChunkingVisitor();
+			
+			for(RoutingInformationBaseSnapshot snapshot : snapshots) {
+				if(addressFamilies.contains(snapshot.getAddressFamilyKey()))
+					snapshot.visitRoutingNodes(visitor);
+			}
+			snapshots = null;
+			sendChunk();
+		} catch(TransferCancelledException e) {
+			return;
+		}
+		
+		if(cancelled)
+			return;
+		
+		UpdatePacketWriter writer = new UpdatePacketWriter();
+		
+		for(AddressFamilyKey afk : addressFamilies)
+			writer.writeEndOfRib(afk);
+		
+		try {
+			send(writer.getPackets());
+		} catch(TransferCancelledException e) {
+			return;
+		}
+		
+		if(cancelled)
+			return;
+
+		group.completeCatchUp(member.getPeerName());
+		completed = true;
+	}
+	
+	/**
+	 * Cancel the transfer. The transfer stops before the next chunk of routes is sent. A chunk passed to the peer while
+	 * the transfer is cancelled carries the generation of the connection taken when the transfer was created, it is 
+	 * dropped once the connection has been reset.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+	
+	private void sendChunk() {
+		if(cancelled)
+			throw new TransferCancelledException();
+		
+		send(queue.buildUpdates());
+		sentChunks++;
+		
+		if(!member.awaitCapacity())
+			throw new TransferCancelledException();
+	}
+
+	/**
+	 * pass packets to the peer unless the transfer has been cancelled or the connection has been reset meanwhile
+	 */
+	private void send(List<ChannelBuffer> packets) {
+		if(cancelled)
+			throw new TransferCancelledException();
+		
+		member.sendUpdates(packets, generation);
+	}
+
+	/**
+	 * @return the peer name
+	 */
+	public String getPeerName() {
+		return member.getPeerName();
+	}
+	
+	/**
+	 * @return <code>true</code> if the transfer has been cancelled
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+	
+	/**
+	 * @return <code>true</code> if all routes and the End-of-RIB markers have been sent
+	 */
+	public boolean isCompleted() {
+		return completed;
+	}
+
+	/**
+	 * @return the number of routes sent so far
+	 */
+	public int getTransferredRoutes() {
+		return transferredRoutes;
+	}
+
+	/**
+	 * @return the number of chunks sent so far
+	 */
+	public int getSentChunks() {
+		return sentChunks;
+	}
+}
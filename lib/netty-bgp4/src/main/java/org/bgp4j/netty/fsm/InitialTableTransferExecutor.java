@@ -0,0 +1,83 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.fsm.InitialTableTransferExecutor.java 
+ */
+package org.bgp4j.netty.fsm;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+
+/**
+ * Runs the initial table transfers to peers in the background. Each transfer runs in its own thread since a transfer 
+ * blocks while the peer connection cannot take more packets, thus a slow peer never delays the transfer to other peers.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+@Singleton
+public class InitialTableTransferExecutor {
+
+	private @Inject Logger log;
+	
+	private AtomicInteger threadNumber = new AtomicInteger();
+	
+	private ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+		
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "initial table transfer-" + threadNumber.incrementAndGet());
+			
+			thread.setDaemon(true);
+			
+			return thread;
+		}
+	});
+	
+	/**
+	 * Schedule an initial table transfer.
+	 * 
+	 * @param transfer the transfer
+	 */
+	public void execute(final InitialTableTransfer transfer) {
+		executor.execute(new Runnable() {
+			
+			@Override
+			public void run() {
+				long started = System.currentTimeMillis();
+				
+				try {
+					transfer.run();
+					
+					if(transfer.isCompleted())
+						log.info("initial table transfer to peer " + transfer.getPeerName() + " completed, sent " 
+								+ transfer.getTransferredRoutes() + " routes in " + (System.currentTimeMillis() - started) + "ms");
+					else
+						log.info("initial table transfer to peer " + transfer.getPeerName() + " cancelled after " 
+								+ transfer.getTransferredRoutes() + " routes");
+				} catch(Exception e) {
+					log.error("initial table transfer to peer " + transfer.getPeerName() + " failed", e);
+				}
+			}
+		});
+	}
+}
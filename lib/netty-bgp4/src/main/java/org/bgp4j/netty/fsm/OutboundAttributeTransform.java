@@ -0,0 +1,449 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.fsm.OutboundAttributeTransform.java 
+ */
+package org.bgp4j.netty.fsm;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.bgp4j.config.nodes.PeerConfiguration;
+import org.bgp4j.net.ASType;
+import org.bgp4j.net.AddressFamily;
+import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.net.InetAddressNextHop;
+import org.bgp4j.net.NextHop;
+import org.bgp4j.net.PathSegment;
+import org.bgp4j.net.PathSegmentType;
+import org.bgp4j.net.SubsequentAddressFamily;
+import org.bgp4j.net.attributes.ASPathAttribute;
+import org.bgp4j.net.attributes.ClusterListPathAttribute;
+import org.bgp4j.net.attributes.LocalPrefPathAttribute;
+import org.bgp4j.net.attributes.MultiExitDiscPathAttribute;
+import org.bgp4j.net.attributes.MultiProtocolReachableNLRI;
+import org.bgp4j.net.attributes.MultiProtocolUnreachableNLRI;
+import org.bgp4j.net.attributes.NextHopPathAttribute;
+import org.bgp4j.net.attributes.OriginatorIDPathAttribute;
+import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.net.attributes.UnknownPathAttribute;
+import org.bgp4j.netty.BGPv4Constants;
+import org.bgp4j.rib.PathAttributeSet;
+
+/**
+ * Rewrites the path attributes of the Local RIB routes for a peer before the routes are advertised. The rewrite 
+ * depends on the role of the peer and the outbound policy configured for it:
+ * 
+ * <ul>
+ * <li>For an external peer, the local AS is prepended to the AS_PATH (RFC 4271, section 5.1.2), the LOCAL_PREF
+ * attribute (section 5.1.5) and the optional non-transitive attributes MULTI_EXIT_DISC, ORIGINATOR_ID and CLUSTER_LIST
+ * are removed. On a session with 2-octet AS numbers, AS numbers wider than two octets are replaced by AS_TRANS in the
+ * AS_PATH and the complete path is carried in an AS4_PATH attribute (RFC 6793, section 4.2.2). A received AS4_PATH is
+ * merged into the AS_PATH before the local AS is prepended (section 4.2.3).</li>
+ * <li>For an internal peer, a LOCAL_PREF attribute with the configured default local preference is added to routes
+ * which do not carry one, since LOCAL_PREF is mandatory in UPDATE messages sent to internal peers (section 5.1.5).</li>
+ * <li>If a multi exit discriminator is configured for the peer, it replaces the MULTI_EXIT_DISC of the routes.</li>
+ * <li>If next-hop-self is configured for the peer, the local address of the peer connection is advertised as next hop 
+ * for the address families of the same address type.</li>
+ * <li>Unrecognized optional non-transitive attributes are removed, unrecognized optional transitive attributes are
+ * passed on with the Partial bit set (RFC 4271, section 5).</li>
+ * </ul>
+ * 
+ * The rewrite depends on the attribute set of a route only, the next hop excepted. Thus the rewritten attribute sets
+ * are memoized by input set and transform identifier, see {@link OutboundAttributeTransformCache}. The NEXT_HOP and 
+ * MP_REACH_NLRI attributes are not part of the rewritten set, they are added per route by the outbound routing update 
+ * queue.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class OutboundAttributeTransform {
+
+	/** the maximum number of ASes held in a path segment */
+	private static final int MAXIMUM_SEGMENT_LENGTH = 255;
+	
+	/** default local preference added to routes advertised to an internal peer */
+	public static final long DEFAULT_LOCAL_PREFERENCE = 100;
+	
+	private boolean external;
+	private int localAS;
+	private ASType asType;
+	private long multiExitDisc;
+	private long localPreference;
+	private InetAddress nextHopSelf;
+	private String transformId;
+	
+	/**
+	 * @param external <code>true</code> for an external (eBGP) peer
+	 * @param localAS the local AS number
+	 * @param asType the AS number size in use with the peer
+	 * @param multiExitDisc the multi exit discriminator set on the routes or -1 if the discriminator is not rewritten
+	 * @param nextHopSelf the address advertised as next hop or <code>null</code> if the next hop is not rewritten
+	 */
+	public OutboundAttributeTransform(boolean external, int localAS, ASType asType, long multiExitDisc, InetAddress nextHopSelf) {
+		this(external, localAS, asType, multiExitDisc, DEFAULT_LOCAL_PREFERENCE, nextHopSelf);
+	}
+	
+	/**
+	 * @param external <code>true</code> for an external (eBGP) peer
+	 * @param localAS the local AS number
+	 * @param asType the AS number size in use with the peer
+	 * @param multiExitDisc the multi exit discriminator set on the routes or -1 if the discriminator is not rewritten
+	 * @param localPreference the local preference added to routes without LOCAL_PREF advertised to an internal peer
+	 * @param nextHopSelf the address advertised as next hop or <code>null</code> if the next hop is not rewritten
+	 */
+	public OutboundAttributeTransform(boolean external, int localAS, ASType asType, long multiExitDisc, long localPreference, 
+			InetAddress nextHopSelf) {
+		this.external = external;
+		this.localAS = localAS;
+		this.asType = asType;
+		this.multiExitDisc = multiExitDisc;
+		this.localPreference = localPreference;
+		this.nextHopSelf = nextHopSelf;
+		
+		StringBuilder builder = new StringBuilder();
+		
+		builder.append(external ? "external" : "internal");
+		if(external)
+			builder.append(":as=").append(localAS).append(":asType=").append(asType);
+		else
+			builder.append(":localPref=").append(localPreference);
+		if(multiExitDisc >= 0)
+			builder.append(":med=").append(multiExitDisc);
+		if(nextHopSelf != null)
+			builder.append(":nextHopSelf=").append(nextHopSelf.getHostAddress());
+		
+		this.transformId = builder.toString();
+	}
+
+	/**
+	 * Build the transform of a peer.
+	 * 
+	 * @param peerConfig the peer configuration
+	 * @param asType the AS number size in use with the peer
+	 * @param localAddress the local address of the peer connection or <code>null</code> if it is not known
+	 * @return the transform
+	 */
+	public static OutboundAttributeTransform forPeer(PeerConfiguration peerConfig, ASType asType, InetAddress localAddress) {
+		return new OutboundAttributeTransform(peerConfig.getLocalAS() != peerConfig.getRemoteAS(), peerConfig.getLocalAS(), 
+				asType, peerConfig.getOutboundMultiExitDisc(), peerConfig.getOutboundLocalPreference(), 
+				peerConfig.isNextHopSelf() ? localAddress : null);
+	}
+	
+	/**
+	 * @return the identifier of the transform. Transforms with equal identifiers rewrite attribute sets equally.
+	 */
+	public String getTransformId() {
+		return transformId;
+	}
+
+	/**
+	 * @return the external
+	 */
+	public boolean isExternal() {
+		return external;
+	}
+
+	/**
+	 * @return the nextHopSelf
+	 */
+	public InetAddress getNextHopSelf() {
+		return nextHopSelf;
+	}
+
+	/**
+	 * Rewrite an attribute set. Prefer {@link OutboundAttributeTransformCache#lookup(Set, OutboundAttributeTransform)}
+	 * which rewrites each attribute set once only.
+	 * 
+	 * @param pathAttributes the attributes of the Local RIB route
+	 * @return the rewritten attributes without NEXT_HOP and MP_REACH_NLRI
+	 */
+	public PathAttributeSet transform(Set<PathAttribute> pathAttributes) {
+		List<PathAttribute> result = new LinkedList<PathAttribute>();
+		ASPathAttribute asPath = null;
+		ASPathAttribute as4Path = null;
+		boolean hasLocalPref = false;
+		
+		for(PathAttribute pa : pathAttributes) {
+			if(pa instanceof NextHopPathAttribute || pa instanceof MultiProtocolReachableNLRI || pa instanceof MultiProtocolUnreachableNLRI)
+				continue;
+			if(pa instanceof MultiExitDiscPathAttribute && (external || multiExitDisc >= 0))
+				continue;
+			if(pa instanceof UnknownPathAttribute && pa.isOptional()) {
+				if(!pa.isTransitive())
+					continue;
+				
+				pa = markPartial((UnknownPathAttribute)pa);
+			}
+			if(external) {
+				if(pa instanceof LocalPrefPathAttribute || pa instanceof OriginatorIDPathAttribute || pa instanceof ClusterListPathAttribute)
+					continue;
+				if(pa instanceof ASPathAttribute) {
+					if(((ASPathAttribute)pa).isFourByteASNumber())
+						as4Path = (ASPathAttribute)pa;
+					else
+						asPath = (ASPathAttribute)pa;
+					continue;
+				}
+			} else if(pa instanceof LocalPrefPathAttribute)
+				hasLocalPref = true;
+			
+			result.add(pa);
+		}
+		
+		if(external) {
+			List<PathSegment> path = prependLocalAS(mergeAS4Path(asPath, as4Path));
+			
+			if(asType == ASType.AS_NUMBER_4OCTETS) {
+				result.add(new ASPathAttribute(asType, path));
+			} else {
+				result.add(new ASPathAttribute(asType, mapToTwoOctets(path)));
+				if(hasWideAS(path))
+					result.add(buildAS4Path(path));
+			}
+		} else if(!hasLocalPref)
+			result.add(new LocalPrefPathAttribute((int)localPreference));
+		if(multiExitDisc >= 0)
+			result.add(new MultiExitDiscPathAttribute((int)multiExitDisc));
+		
+		return PathAttributeSet.valueOf(result);
+	}
+	
+	/**
+	 * Obtain the next hop advertised for a route.
+	 * 
+	 * @param addressFamilyKey the address family of the route
+	 * @param nextHop the next hop of the Local RIB route
+	 * @return the next hop to advertise
+	 */
+	public NextHop nextHop(AddressFamilyKey addressFamilyKey, NextHop nextHop) {
+		if(nextHopSelf instanceof Inet4Address && addressFamilyKey.getAddressFamily() == AddressFamily.IPv4) {
+			InetAddressNextHop<Inet4Address> self = new InetAddressNextHop<Inet4Address>((Inet4Address)nextHopSelf);
+			
+			if(addressFamilyKey.getSubsequentAddressFamily() == SubsequentAddressFamily.NLRI_UNICAST_FORWARDING)
+				return self;
+			else
+				return self.toBinaryNextHop();
+		} else if(nextHopSelf instanceof Inet6Address && addressFamilyKey.getAddressFamily() == AddressFamily.IPv6) {
+			return (new InetAddressNextHop<Inet6Address>((Inet6Address)nextHopSelf)).toBinaryNextHop();
+		}
+		
+		return nextHop;
+	}
+	
+	/**
+	 * Prepend the local AS to a path
+	 * 
+	 * @param path the path with 4-octet AS numbers
+	 * @return the path with the local AS in front
+	 */
+	private List<PathSegment> prependLocalAS(List<PathSegment> path) {
+		List<PathSegment> segments = new LinkedList<PathSegment>();
+		boolean prepended = false;
+
+		for(PathSegment segment : path) {
+			if(!prepended) {
+				if(segment.getPathSegmentType() == PathSegmentType.AS_SEQUENCE && segment.getAses().size() < MAXIMUM_SEGMENT_LENGTH)
+					segment.getAses().add(0, localAS);
+				else
+					segments.add(new PathSegment(ASType.AS_NUMBER_4OCTETS, PathSegmentType.AS_SEQUENCE, new int[] { localAS }));
+				prepended = true;
+			}
+			segments.add(segment);
+		}
+		
+		if(!prepended)
+			segments.add(new PathSegment(ASType.AS_NUMBER_4OCTETS, PathSegmentType.AS_SEQUENCE, new int[] { localAS }));
+		
+		return segments;
+	}
+	
+	/**
+	 * Reconstruct the path of a route from its AS_PATH and AS4_PATH attributes (RFC 6793, section 4.2.3). The leading
+	 * ASes of the AS_PATH which are not covered by the AS4_PATH are followed by the AS4_PATH. The AS4_PATH is ignored
+	 * if it is longer than the AS_PATH.
+	 * 
+	 * @param asPath the AS_PATH or <code>null</code>
+	 * @param as4Path the AS4_PATH or <code>null</code>
+	 * @return modifiable copies of the path segments with 4-octet AS numbers
+	 */
+	private List<PathSegment> mergeAS4Path(ASPathAttribute asPath, ASPathAttribute as4Path) {
+		List<PathSegment> path = new LinkedList<PathSegment>();
+		List<PathSegment> asSegments = (asPath != null) ? asPath.getPathSegments() : new LinkedList<PathSegment>();
+		
+		if(as4Path == null || pathLength(as4Path.getPathSegments()) > pathLength(asSegments)) {
+			for(PathSegment segment : asSegments)
+				path.add(copySegment(segment, segment.getAses().size()));
+			
+			return path;
+		}
+		
+		int leading = pathLength(asSegments) - pathLength(as4Path.getPathSegments());
+		
+		for(PathSegment segment : asSegments) {
+			if(leading == 0)
+				break;
+			
+			if(segment.getPathSegmentType() == PathSegmentType.AS_SEQUENCE) {
+				int count = Math.min(leading, segment.getAses().size());
+				
+				path.add(copySegment(segment, count));
+				leading -= count;
+			} else {
+				path.add(copySegment(segment, segment.getAses().size()));
+				if(segment.getPathSegmentType() == PathSegmentType.AS_SET)
+					leading--;
+			}
+		}
+		for(PathSegment segment : as4Path.getPathSegments()) {
+			PathSegment last = path.isEmpty() ? null : path.get(path.size() - 1);
+			
+			// join the sequence split between both attributes
+			if(last != null && last.getPathSegmentType() == PathSegmentType.AS_SEQUENCE 
+					&& segment.getPathSegmentType() == PathSegmentType.AS_SEQUENCE
+					&& last.getAses().size() + segment.getAses().size() <= MAXIMUM_SEGMENT_LENGTH)
+				last.getAses().addAll(segment.getAses());
+			else
+				path.add(copySegment(segment, segment.getAses().size()));
+		}
+		
+		return path;
+	}
+
+	/**
+	 * @return the number of ASes in a path as counted for the path selection: an AS_SET counts as one AS, 
+	 * confederation segments are not counted
+	 */
+	private static int pathLength(List<PathSegment> segments) {
+		int length = 0;
+		
+		for(PathSegment segment : segments) {
+			if(segment.getPathSegmentType() == PathSegmentType.AS_SEQUENCE)
+				length += segment.getAses().size();
+			else if(segment.getPathSegmentType() == PathSegmentType.AS_SET)
+				length++;
+		}
+		
+		return length;
+	}
+	
+	private static PathSegment copySegment(PathSegment segment, int count) {
+		PathSegment copy = new PathSegment(ASType.AS_NUMBER_4OCTETS);
+		
+		copy.setPathSegmentType(segment.getPathSegmentType());
+		copy.getAses().addAll(segment.getAses().subList(0, count));
+		
+		return copy;
+	}
+	
+	/**
+	 * @return the path with each AS number wider than two octets replaced by AS_TRANS
+	 */
+	private static List<PathSegment> mapToTwoOctets(List<PathSegment> path) {
+		List<PathSegment> segments = new LinkedList<PathSegment>();
+		
+		for(PathSegment segment : path) {
+			PathSegment mapped = new PathSegment(ASType.AS_NUMBER_2OCTETS);
+			
+			mapped.setPathSegmentType(segment.getPathSegmentType());
+			for(int as : segment.getAses())
+				mapped.getAses().add(isWideAS(as) ? BGPv4Constants.BGP_AS_TRANS : as);
+			
+			segments.add(mapped);
+		}
+		
+		return segments;
+	}
+	
+	/**
+	 * @return the AS4_PATH attribute carrying the path without the confederation segments
+	 */
+	private static ASPathAttribute buildAS4Path(List<PathSegment> path) {
+		List<PathSegment> segments = new LinkedList<PathSegment>();
+		
+		for(PathSegment segment : path) {
+			if(segment.getPathSegmentType() == PathSegmentType.AS_SEQUENCE || segment.getPathSegmentType() == PathSegmentType.AS_SET)
+				segments.add(segment);
+		}
+		
+		ASPathAttribute as4Path = new ASPathAttribute(ASType.AS_NUMBER_4OCTETS, segments);
+		
+		// AS4_PATH is an optional transitive attribute
+		as4Path.setOptional(true);
+		
+		return as4Path;
+	}
+	
+	private static boolean hasWideAS(List<PathSegment> path) {
+		for(PathSegment segment : path)
+			for(int as : segment.getAses())
+				if(isWideAS(as))
+					return true;
+		
+		return false;
+	}
+	
+	private static boolean isWideAS(int as) {
+		return (as & ~0xffff) != 0;
+	}
+	
+	/**
+	 * @return a copy of the unrecognized attribute with the Partial bit set. The attribute of the Local RIB route is
+	 * shared and is not modified.
+	 */
+	private static PathAttribute markPartial(UnknownPathAttribute attribute) {
+		if(attribute.isPartial())
+			return attribute;
+		
+		UnknownPathAttribute partial = new UnknownPathAttribute(attribute.getTypeCode(), attribute.getValue());
+		
+		partial.setOptional(true);
+		partial.setTransitive(true);
+		partial.setPartial(true);
+		
+		return partial;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return transformId.hashCode();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if(!(obj instanceof OutboundAttributeTransform))
+			return false;
+		
+		return transformId.equals(((OutboundAttributeTransform)obj).transformId);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "OutboundAttributeTransform [" + transformId + "]";
+	}
+}
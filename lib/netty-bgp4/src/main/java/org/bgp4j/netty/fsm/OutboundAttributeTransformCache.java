@@ -0,0 +1,141 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.fsm.OutboundAttributeTransformCache.java 
+ */
+package org.bgp4j.netty.fsm;
+
+import java.util.Set;
+
+import javax.inject.Singleton;
+
+import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.netty.BoundedLRUCache;
+import org.bgp4j.rib.PathAttributeSet;
+
+/**
+ * Bounded cache of rewritten path attribute sets shared by the outbound routing update queues of all peers. Routes
+ * sharing an attribute set are rewritten once per transform, thus the cost of the outbound rewrite depends on the 
+ * number of distinct attribute sets and not on the number of routes.
+ * 
+ * The cache is keyed by the input attribute set and the transform identifier. The sets used as keys must not be 
+ * modified, the interned attribute sets of the routing information bases are suitable keys. The least recently used
+ * entry is evicted when the cache exceeds its maximum size.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+@Singleton
+public class OutboundAttributeTransformCache {
+
+	/** default maximum number of rewritten attribute sets held in the cache */
+	public static final int DEFAULT_MAXIMUM_SIZE = BoundedLRUCache.DEFAULT_MAXIMUM_SIZE;
+	
+	private static class Key {
+		private Set<PathAttribute> pathAttributes;
+		private String transformId;
+		
+		private Key(Set<PathAttribute> pathAttributes, String transformId) {
+			this.pathAttributes = pathAttributes;
+			this.transformId = transformId;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return 31 * pathAttributes.hashCode() + transformId.hashCode();
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof Key))
+				return false;
+			
+			Key o = (Key)obj;
+			
+			return (pathAttributes == o.pathAttributes || pathAttributes.equals(o.pathAttributes)) 
+					&& transformId.equals(o.transformId);
+		}
+	}
+	
+	private BoundedLRUCache<Key, PathAttributeSet> rewrites = new BoundedLRUCache<Key, PathAttributeSet>();
+	
+	/**
+	 * Obtain the rewritten attribute set. The set is rewritten and added to the cache if it is not held yet.
+	 * 
+	 * @param pathAttributes the attribute set of the Local RIB route
+	 * @param transform the transform of the peer
+	 * @return the rewritten attribute set
+	 */
+	public PathAttributeSet lookup(Set<PathAttribute> pathAttributes, OutboundAttributeTransform transform) {
+		Key key = new Key(pathAttributes, transform.getTransformId());
+		PathAttributeSet rewritten = rewrites.get(key);
+		
+		// the rewrite is done outside the lock, concurrent misses on the same key yield the same interned set
+		if(rewritten == null)
+			rewritten = rewrites.putIfAbsent(key, transform.transform(pathAttributes));
+		
+		return rewritten;
+	}
+	
+	/**
+	 * remove all rewritten attribute sets from the cache
+	 */
+	public void clear() {
+		rewrites.clear();
+	}
+	
+	/**
+	 * @return the number of rewritten attribute sets held in the cache
+	 */
+	public int getSize() {
+		return rewrites.getSize();
+	}
+	
+	/**
+	 * @return the maximum number of rewritten attribute sets held in the cache
+	 */
+	public int getMaximumSize() {
+		return rewrites.getMaximumSize();
+	}
+
+	/**
+	 * Set the maximum number of rewritten attribute sets held in the cache. Surplus entries are evicted immediately.
+	 * 
+	 * @param maximumSize the maximum number of entries
+	 */
+	public void setMaximumSize(int maximumSize) {
+		rewrites.setMaximumSize(maximumSize);
+	}
+
+	/**
+	 * @return the number of lookups answered from the cache
+	 */
+	public long getHits() {
+		return rewrites.getHits();
+	}
+
+	/**
+	 * @return the number of lookups which required a rewrite
+	 */
+	public long getMisses() {
+		return rewrites.getMisses();
+	}
+}
@@ -19,13 +19,20 @@ package org.bgp4j.netty.fsm;
 
 import java.util.List;
 
-import org.bgp4j.netty.protocol.update.UpdatePacket;
+import org.jboss.netty.buffer.ChannelBuffer;
 
 /**
+ * Receives the UPDATE packets built by an outbound routing update queue
+ * 
  * @author Rainer Bieniek (Rainer.Bieniek@web.de)
  *
  */
 public interface OutboundRoutingUpdateCallback {
 
-	public void sendUpdates(List<UpdatePacket> updates);
+	/**
+	 * send UPDATE packets to the peer
+	 * 
+	 * @param updates the encoded UPDATE packets including the BGP packet header
+	 */
+	public void sendUpdates(List<ChannelBuffer> updates);
 }
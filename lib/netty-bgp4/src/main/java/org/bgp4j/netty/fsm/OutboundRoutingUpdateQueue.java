@@ -20,15 +20,16 @@ package org.bgp4j.netty.fsm;
 import java.net.Inet4Address;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Date;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
@@ -38,52 +39,101 @@ import org.bgp4j.net.AddressFamilyKey;
 import org.bgp4j.net.BinaryNextHop;
 import org.bgp4j.net.InetAddressNextHop;
 import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.NextHop;
 import org.bgp4j.net.RIBSide;
 import org.bgp4j.net.SubsequentAddressFamily;
 import org.bgp4j.net.attributes.MultiProtocolReachableNLRI;
-import org.bgp4j.net.attributes.MultiProtocolUnreachableNLRI;
 import org.bgp4j.net.attributes.NextHopPathAttribute;
 import org.bgp4j.net.attributes.PathAttribute;
-import org.bgp4j.netty.BGPv4Constants;
-import org.bgp4j.netty.NLRICodec;
-import org.bgp4j.netty.protocol.update.UpdatePacket;
+import org.bgp4j.netty.protocol.update.PathAttributeBlockCache;
+import org.bgp4j.netty.protocol.update.UpdatePacketWriter;
 import org.bgp4j.rib.Route;
 import org.bgp4j.rib.RouteAdded;
 import org.bgp4j.rib.RouteWithdrawn;
+import org.bgp4j.rib.RoutesChanged;
+import org.bgp4j.rib.RoutesInvalidated;
 import org.bgp4j.rib.RoutingEventListener;
 import org.bgp4j.rib.RoutingInformationBaseVisitor;
 import org.bgp4j.rib.TopologicalTreeSortingKey;
-import org.quartz.Job;
-import org.quartz.JobBuilder;
-import org.quartz.JobDataMap;
-import org.quartz.JobDetail;
-import org.quartz.JobExecutionContext;
-import org.quartz.JobExecutionException;
-import org.quartz.JobKey;
-import org.quartz.Scheduler;
-import org.quartz.SchedulerException;
-import org.quartz.SimpleScheduleBuilder;
-import org.quartz.TriggerBuilder;
-import org.quartz.TriggerKey;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
 
 /**
+ * Collects the routing changes to be sent to a peer and hands them to the callback as UPDATE packets. 
+ * 
+ * Announcements are sent at most once per minimum route advertisement interval (RFC 4271, section 9.2.1.1) unless
+ * the number of pending prefixes reaches the flush threshold. Withdrawals are not subject to the interval and are
+ * sent as soon as possible. The flushes are scheduled on the shared update timer and run on a serial executor of 
+ * the queue, so the UPDATE packets of a peer are handed to the callback in the order in which they were built while
+ * the timer thread is never blocked by building packets.
+ * 
  * @author Rainer Bieniek (Rainer.Bieniek@web.de)
  *
  */
 public class OutboundRoutingUpdateQueue implements RoutingEventListener {
 
-	public static class BatchJob implements Job {
+	/**
+	 * Send all pending withdrawals and announcements
+	 * 
+	 * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+	 *
+	 */
+	private class AdvertisementTask implements TimerTask {
 
-		public static final String CALLBACK_KEY = "Callback";
-		public static final String QUEUE_KEY = "Queue";
-		
 		@Override
-		public void execute(JobExecutionContext context) throws JobExecutionException {
-			((OutboundRoutingUpdateCallback)context.getMergedJobDataMap().get(CALLBACK_KEY))
-				.sendUpdates(((OutboundRoutingUpdateQueue)context.getMergedJobDataMap().get(QUEUE_KEY))
-						.buildUpdates());
+		public void run(final Timeout timeout) throws Exception {
+			flushExecutor.execute(new Runnable() {
+				
+				@Override
+				public void run() {
+					flushAdvertisements(timeout);
+				}
+			});
 		}
+	}
+	
+	/**
+	 * Send the pending withdrawals only
+	 * 
+	 * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+	 *
+	 */
+	private class WithdrawalTask implements TimerTask {
+
+		@Override
+		public void run(final Timeout timeout) throws Exception {
+			flushExecutor.execute(new Runnable() {
+				
+				@Override
+				public void run() {
+					flushWithdrawals(timeout);
+				}
+			});
+		}
+	}
+	
+	/**
+	 * The prefixes pending to be announced with the same attribute group or pending to be withdrawn in the same 
+	 * address family
+	 * 
+	 * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+	 *
+	 */
+	private static class PendingGroup {
+		private TopologicalTreeSortingKey key;
+		private AddressFamilyKey addressFamilyKey;
+		private Set<NetworkLayerReachabilityInformation> nlris = new LinkedHashSet<NetworkLayerReachabilityInformation>();
 		
+		/**
+		 * @param key the attribute group of an announcement group or <code>null</code> for a withdrawal group
+		 * @param addressFamilyKey the address family
+		 */
+		PendingGroup(TopologicalTreeSortingKey key, AddressFamilyKey addressFamilyKey) {
+			this.key = key;
+			this.addressFamilyKey = addressFamilyKey;
+		}
 	}
 	
 	private class QueueingVisitor implements RoutingInformationBaseVisitor {
@@ -96,35 +146,90 @@ public class OutboundRoutingUpdateQueue implements RoutingEventListener {
 	}
 	
 	private OutboundRoutingUpdateCallback callback;
-	private String peerName;
+	private volatile String peerName;
+	
+	/** the peer whose events are queued in addition to the events of the current peer after a change of the peer */
+	private volatile String formerPeerName;
 	private Set<AddressFamilyKey> updateMask;
 	private boolean active;
-	private Map<TopologicalTreeSortingKey, List<NetworkLayerReachabilityInformation>> addedRoutes = 
-			new TreeMap<TopologicalTreeSortingKey, List<NetworkLayerReachabilityInformation>>();
-	private Map<AddressFamilyKey, List<NetworkLayerReachabilityInformation>> withdrawnRoutes =
-			new TreeMap<AddressFamilyKey, List<NetworkLayerReachabilityInformation>>();
-	private @Inject Scheduler scheduler;
-	private JobDetail jobDetail;
-	private TriggerKey triggerKey;
-	private JobKey jobKey;
 	
+	/** the latest pending state per prefix, the pending group the prefix is currently held in */
+	private Map<AddressFamilyKey, Map<NetworkLayerReachabilityInformation, PendingGroup>> pendingPrefixes = 
+			new HashMap<AddressFamilyKey, Map<NetworkLayerReachabilityInformation, PendingGroup>>();
+	
+	/** index of the pending announcements by attribute group */
+	private Map<TopologicalTreeSortingKey, PendingGroup> addedRoutes = new TreeMap<TopologicalTreeSortingKey, PendingGroup>();
+	
+	/** index of the pending withdrawals by address family */
+	private Map<AddressFamilyKey, PendingGroup> withdrawnRoutes = new TreeMap<AddressFamilyKey, PendingGroup>();
+	
+	/** the number of prefixes held in the pending table */
+	private int numberOfPendingPrefixes;
+	
+	/** queues recording the routing changes queued here as well, guarded by the lock on the pending table */
+	private List<OutboundRoutingUpdateQueue> mirrors = new LinkedList<OutboundRoutingUpdateQueue>();
+	
+	private @Inject @UpdateTimer Timer timer;
+	private @Inject @UpdateExecutor Executor executor;
+	
+	/** runs the flushes of the queue one at a time on the shared update executor */
+	private Executor flushExecutor;
+	private @Inject PathAttributeBlockCache attributeBlockCache;
+	private @Inject OutboundAttributeTransformCache transformCache;
+	
+	/** the rewrite of the attributes for the peer or <code>null</code> if the attributes are sent unchanged */
+	private volatile OutboundAttributeTransform transform;
+	
+	/** flushes are scheduled on the timer */
+	private boolean scheduling;
+	
+	/** the minimum route advertisement interval in nanoseconds */
+	private long minRouteAdvertisementInterval;
+	private int flushThreshold;
+	
+	/** the time of the last flush of the pending announcements as given by System.nanoTime() */
+	private long lastAdvertisement;
+	private Timeout advertisementTimeout;
+	private boolean advertisementDue;
+	private Timeout withdrawalTimeout;
 
 	RoutingInformationBaseVisitor getImportVisitor() {
 		return new QueueingVisitor();
 	}
 	
 	public void routeAdded(RouteAdded event) {
-		if(active && event.getSide() == RIBSide.Local && StringUtils.equals(event.getPeerName(), peerName) && updateMask.contains(event.getRoute().getAddressFamilyKey())) {
+		if(active && event.getSide() == RIBSide.Local && isQueuedPeer(event.getPeerName()) && updateMask.contains(event.getRoute().getAddressFamilyKey())) {
 			addRoute(peerName, event.getSide(), event.getRoute());
 		}
 	}
 	
 	public void routeWithdrawn(RouteWithdrawn event) {
-		if(active && event.getSide() == RIBSide.Local && StringUtils.equals(event.getPeerName(), peerName) && updateMask.contains(event.getRoute().getAddressFamilyKey())) {
+		if(active && event.getSide() == RIBSide.Local && isQueuedPeer(event.getPeerName()) && updateMask.contains(event.getRoute().getAddressFamilyKey())) {
 			withdrawRoute(peerName, event.getSide(), event.getRoute());
 		}
 	}
 
+	/**
+	 * Queue a batch of withdrawn and added routes. The sorting key of an added route is reused for the following routes
+	 * as long as these share the path attribute set instance, the next hop and the address family.
+	 */
+	public void routesChanged(RoutesChanged event) {
+		if(!(active && event.getSide() == RIBSide.Local && isQueuedPeer(event.getPeerName())))
+			return;
+		
+		if(event.getWithdrawnRoutes().size() > 0)
+			withdrawRoutes(event.getWithdrawnRoutes());
+		if(event.getAddedRoutes().size() > 0)
+			addRoutes(event.getAddedRoutes());
+	}
+
+	/**
+	 * The routes of the local RIB are invalidated when the RIB is destroyed at the end of the session. Nothing is left
+	 * to be sent to the peer in this case.
+	 */
+	public void routesInvalidated(RoutesInvalidated event) {
+	}
+
 	/**
 	 * @return the peerName
 	 */
@@ -139,6 +244,30 @@ public class OutboundRoutingUpdateQueue implements RoutingEventListener {
 		this.peerName = peerName;
 	}
 	
+	/**
+	 * Change the peer whose Local RIB events are queued. The events of the former peer are still queued until the 
+	 * change is completed, so no event is lost while the listener is moved between the peer routing bases. An event 
+	 * received from both peers is harmless since only the latest state per prefix is held.
+	 * 
+	 * @param peerName the new peer
+	 */
+	void changePeer(String peerName) {
+		this.formerPeerName = this.peerName;
+		this.peerName = peerName;
+	}
+	
+	/**
+	 * stop queueing the events of the peer the queue has been changed from
+	 */
+	void completePeerChange() {
+		this.formerPeerName = null;
+	}
+	
+	private boolean isQueuedPeer(String eventPeerName) {
+		return StringUtils.equals(eventPeerName, peerName) 
+				|| (formerPeerName != null && StringUtils.equals(eventPeerName, formerPeerName));
+	}
+	
 	/**
 	 * @return the updateMask
 	 */
@@ -160,35 +289,48 @@ public class OutboundRoutingUpdateQueue implements RoutingEventListener {
 		return active;
 	}
 	
-	void shutdown() throws SchedulerException {
-		active = false;
-		cancelJob();
-		synchronized (addedRoutes) {
-			addedRoutes.clear();
+	void shutdown() {
+		synchronized (pendingPrefixes) {
+			active = false;
+			scheduling = false;
+			cancelTimeouts();
+			clearPendingUpdates();
 		}
 	};
 	
-	void startSendingUpdates(int repeatInterval) throws SchedulerException {
-		if(repeatInterval > 0) {
-			if(isJobScheduled())
-				cancelJob();
-
-			JobDataMap map = new JobDataMap();
-
-			map.put(BatchJob.CALLBACK_KEY, callback);
-			map.put(BatchJob.QUEUE_KEY, this);
+	/**
+	 * Start queueing routing changes. The pending changes are only sent when the UPDATE packets are built explicitly.
+	 */
+	void startSendingUpdates() {
+		synchronized (pendingPrefixes) {
+			active = true;
+		}
+	}
+	
+	/**
+	 * Start queueing routing changes and sending them to the peer. The routes pending at this time are sent 
+	 * immediately.
+	 * 
+	 * @param minRouteAdvertisementInterval the minimum interval between two flushes of the pending announcements in 
+	 * milliseconds
+	 * @param flushThreshold the number of pending prefixes which causes an immediate flush or 0 if the interval 
+	 * is always honoured
+	 */
+	void startSendingUpdates(int minRouteAdvertisementInterval, int flushThreshold) {
+		synchronized (pendingPrefixes) {
+			cancelTimeouts();
 			
-			jobKey = new JobKey(UUID.randomUUID().toString());
-			jobDetail = JobBuilder.newJob(BatchJob.class).usingJobData(map).withIdentity(jobKey).build();
-			triggerKey = TriggerKey.triggerKey(UUID.randomUUID().toString());
-
-			scheduler.scheduleJob(jobDetail, TriggerBuilder.newTrigger()
-					.withIdentity(triggerKey)
-					.withSchedule(SimpleScheduleBuilder.repeatSecondlyForever(repeatInterval))
-					.startAt(new Date(System.currentTimeMillis() + repeatInterval*1000L))
-					.build());
+			this.minRouteAdvertisementInterval = TimeUnit.MILLISECONDS.toNanos(minRouteAdvertisementInterval);
+			this.flushThreshold = flushThreshold;
+			this.lastAdvertisement = System.nanoTime() - this.minRouteAdvertisementInterval;
+			
+			if(flushExecutor == null)
+				flushExecutor = new SerialExecutor(executor);
+			
+			active = true;
+			scheduling = true;
+			scheduleFlush();
 		}
-		active = true;
 	}
 
 	/**
@@ -198,55 +340,325 @@ public class OutboundRoutingUpdateQueue implements RoutingEventListener {
 		this.callback = callback;
 	}
 
-	@SuppressWarnings("unchecked")
+	/**
+	 * @param attributeBlockCache the attributeBlockCache to set
+	 */
+	void setAttributeBlockCache(PathAttributeBlockCache attributeBlockCache) {
+		this.attributeBlockCache = attributeBlockCache;
+	}
+
+	/**
+	 * @param transformCache the transformCache to set
+	 */
+	void setTransformCache(OutboundAttributeTransformCache transformCache) {
+		this.transformCache = transformCache;
+	}
+
+	/**
+	 * @return the transform
+	 */
+	OutboundAttributeTransform getTransform() {
+		return transform;
+	}
+
+	/**
+	 * Set the rewrite applied to the attributes of the routes queued from now on.
+	 * 
+	 * @param transform the transform or <code>null</code> if the attributes are sent unchanged
+	 */
+	void setTransform(OutboundAttributeTransform transform) {
+		this.transform = transform;
+	}
+
+	/**
+	 * Record the routing changes queued from now on in another queue as well. The changes are passed on while the lock
+	 * on the pending table is held, so each change taken into an UPDATE packet built by this queue has been recorded 
+	 * by the mirror queue before.
+	 * 
+	 * @param mirror the queue recording the changes
+	 */
+	void addMirror(OutboundRoutingUpdateQueue mirror) {
+		addMirror(mirror, false);
+	}
+	
+	/**
+	 * Record the routing changes queued from now on in another queue as well. 
+	 * 
+	 * @param mirror the queue recording the changes, it must have the update mask and the transform of this queue 
+	 * @param includePending <code>true</code> if the changes pending in this queue are recorded by the mirror, too. 
+	 * Together with the UPDATE packets built by this queue so far, the mirror then holds all changes queued.
+	 */
+	void addMirror(OutboundRoutingUpdateQueue mirror, boolean includePending) {
+		synchronized (pendingPrefixes) {
+			mirrors.add(mirror);
+			
+			if(includePending) {
+				synchronized (mirror.pendingPrefixes) {
+					for(PendingGroup group : withdrawnRoutes.values()) {
+						for(NetworkLayerReachabilityInformation nlri : group.nlris)
+							mirror.schedule(group.addressFamilyKey, nlri, mirror.withdrawalGroup(group.addressFamilyKey));
+					}
+					
+					for(PendingGroup group : addedRoutes.values()) {
+						for(NetworkLayerReachabilityInformation nlri : group.nlris)
+							mirror.schedule(group.addressFamilyKey, nlri, mirror.announcementGroup(group.key));
+					}
+					
+					mirror.scheduleFlush();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Stop recording the routing changes in another queue.
+	 * 
+	 * @param mirror the queue recording the changes
+	 */
+	void removeMirror(OutboundRoutingUpdateQueue mirror) {
+		synchronized (pendingPrefixes) {
+			mirrors.remove(mirror);
+		}
+	}
+	
 	private void addRoute(String ribName, RIBSide side, Route route) {
-		TopologicalTreeSortingKey key ;
+		TopologicalTreeSortingKey key = buildSortingKey(route);
+		
+		synchronized (pendingPrefixes) {
+			schedule(route.getAddressFamilyKey(), route.getNlri(), announcementGroup(key));
+			scheduleFlush();
+			
+			for(OutboundRoutingUpdateQueue mirror : mirrors)
+				mirror.addRoute(ribName, side, route);
+		}
+	}
+
+	private void addRoutes(List<Route> routes) {
+		Route keyRoute = null;
+		PendingGroup group = null;
+		
+		synchronized (pendingPrefixes) {
+			for(Route route : routes) {
+				if(!updateMask.contains(route.getAddressFamilyKey()))
+					continue;
+				
+				if(keyRoute == null 
+						|| keyRoute.getPathAttributes() != route.getPathAttributes()
+						|| !keyRoute.getAddressFamilyKey().equals(route.getAddressFamilyKey())
+						|| !Objects.equals(keyRoute.getNextHop(), route.getNextHop())) {
+					keyRoute = route;
+					group = null;
+				}
+				
+				// the group is looked up again if it has been emptied and dropped by a previous route in this batch 
+				if(group == null || group.nlris.isEmpty())
+					group = announcementGroup(buildSortingKey(route));
+				
+				schedule(route.getAddressFamilyKey(), route.getNlri(), group);
+			}
+			scheduleFlush();
+			
+			for(OutboundRoutingUpdateQueue mirror : mirrors)
+				mirror.addRoutes(routes);
+		}
+	}
+	
+	/**
+	 * Build the attribute group of an added route. The attributes are rewritten by the transform of the peer, the 
+	 * rewritten attribute sets are memoized, so routes sharing an attribute set are rewritten once only. 
+	 */
+	@SuppressWarnings("unchecked")
+	private TopologicalTreeSortingKey buildSortingKey(Route route) {
+		OutboundAttributeTransform currentTransform = transform;
 		Collection<PathAttribute> keyAttributes;
+		Set<PathAttribute> pathAttributes = route.getPathAttributes();
+		NextHop nextHop = route.getNextHop();
+		
+		if(currentTransform != null) {
+			pathAttributes = transformCache.lookup(pathAttributes, currentTransform);
+			nextHop = currentTransform.nextHop(route.getAddressFamilyKey(), nextHop);
+		}
 		
 		if(route.getAddressFamilyKey().matches(AddressFamily.IPv4, SubsequentAddressFamily.NLRI_UNICAST_FORWARDING)) {
 			// handle non-MP  IPv4 case
-			keyAttributes = filterAttribute(route.getPathAttributes(), Arrays.asList(NextHopPathAttribute.class));
-			keyAttributes.add(new NextHopPathAttribute((InetAddressNextHop<Inet4Address>)route.getNextHop()));
+			keyAttributes = filterAttribute(pathAttributes, Arrays.asList(NextHopPathAttribute.class));
+			keyAttributes.add(new NextHopPathAttribute((InetAddressNextHop<Inet4Address>)nextHop));
 		} else {
 			// handle any other case
-			keyAttributes = filterAttribute(route.getPathAttributes(), Arrays.asList(MultiProtocolReachableNLRI.class, MultiProtocolReachableNLRI.class));
+			keyAttributes = filterAttribute(pathAttributes, Arrays.asList(MultiProtocolReachableNLRI.class, MultiProtocolReachableNLRI.class));
 			keyAttributes.add(new MultiProtocolReachableNLRI(route.getAddressFamilyKey().getAddressFamily(), 
-					route.getAddressFamilyKey().getSubsequentAddressFamily(), (BinaryNextHop)route.getNextHop()));
+					route.getAddressFamilyKey().getSubsequentAddressFamily(), (BinaryNextHop)nextHop));
 		}
 		
-		key = new TopologicalTreeSortingKey(route.getAddressFamilyKey(), keyAttributes);
-		
-		synchronized (addedRoutes) {
-			if(!addedRoutes.containsKey(key))
-				addedRoutes.put(key, new LinkedList<NetworkLayerReachabilityInformation>());
-			addedRoutes.get(key).add(route.getNlri());
-		}
+		return new TopologicalTreeSortingKey(route.getAddressFamilyKey(), keyAttributes);
 	}
 
 	private void withdrawRoute(String ribName, RIBSide side, Route route) {
-		// remove the NLRI from any scheduled route add updates
-		synchronized (addedRoutes) {
-			Set<TopologicalTreeSortingKey> removeableKeys = new HashSet<TopologicalTreeSortingKey>();
+		synchronized (pendingPrefixes) {
+			schedule(route.getAddressFamilyKey(), route.getNlri(), withdrawalGroup(route.getAddressFamilyKey()));
+			scheduleFlush();
 			
-			for(TopologicalTreeSortingKey key : addedRoutes.keySet()) {
-				if(key.getAddressFamilyKey().equals(route.getAddressFamilyKey())) {
-					addedRoutes.get(key).remove(route.getNlri());
-					
-					if(addedRoutes.get(key).size() == 0)
-						removeableKeys.add(key);
-				}
+			for(OutboundRoutingUpdateQueue mirror : mirrors)
+				mirror.withdrawRoute(ribName, side, route);
+		}
+	}
+
+	private void withdrawRoutes(List<Route> routes) {
+		synchronized (pendingPrefixes) {
+			for(Route route : routes) {
+				if(updateMask.contains(route.getAddressFamilyKey()))
+					schedule(route.getAddressFamilyKey(), route.getNlri(), withdrawalGroup(route.getAddressFamilyKey()));
 			}
+			scheduleFlush();
 			
-			for(TopologicalTreeSortingKey key : removeableKeys)
-				addedRoutes.remove(key);
+			for(OutboundRoutingUpdateQueue mirror : mirrors)
+				mirror.withdrawRoutes(routes);
 		}
+	}
+
+	/**
+	 * Record the latest pending state of a prefix. A pending state recorded earlier for the prefix is dropped, a pending
+	 * group left empty is removed from its index. Must be called with the lock on the pending table held.
+	 * 
+	 * @param afk the address family of the prefix
+	 * @param nlri the prefix
+	 * @param group the group representing the new state
+	 */
+	private void schedule(AddressFamilyKey afk, NetworkLayerReachabilityInformation nlri, PendingGroup group) {
+		Map<NetworkLayerReachabilityInformation, PendingGroup> prefixes = pendingPrefixes.get(afk);
+		
+		if(prefixes == null) {
+			prefixes = new HashMap<NetworkLayerReachabilityInformation, PendingGroup>();
+			pendingPrefixes.put(afk, prefixes);
+		}
+		
+		PendingGroup previous = prefixes.put(nlri, group);
 		
-		synchronized (withdrawnRoutes) {
-			if(!withdrawnRoutes.containsKey(route.getAddressFamilyKey()))
-				withdrawnRoutes.put(route.getAddressFamilyKey(), new LinkedList<NetworkLayerReachabilityInformation>());
+		if(previous == group)
+			return;
+		
+		if(previous == null)
+			numberOfPendingPrefixes++;
+		else {
+			previous.nlris.remove(nlri);
 			
-			withdrawnRoutes.get(route.getAddressFamilyKey()).add(route.getNlri());
+			if(previous.nlris.isEmpty()) {
+				if(previous.key != null)
+					addedRoutes.remove(previous.key);
+				else
+					withdrawnRoutes.remove(previous.addressFamilyKey);
+			}
 		}
+		
+		group.nlris.add(nlri);
+	}
+	
+	/**
+	 * Schedule the flushes needed for the pending table. Withdrawals are flushed immediately. Announcements are flushed
+	 * when the minimum route advertisement interval has passed since the last flush or immediately if the number of 
+	 * pending prefixes has reached the flush threshold. Must be called with the lock on the pending table held.
+	 */
+	private void scheduleFlush() {
+		if(!scheduling)
+			return;
+		
+		if(!withdrawnRoutes.isEmpty() && withdrawalTimeout == null)
+			withdrawalTimeout = timer.newTimeout(new WithdrawalTask(), 0, TimeUnit.NANOSECONDS);
+		
+		if(!addedRoutes.isEmpty() && !advertisementDue) {
+			long delay = 0;
+			
+			if(flushThreshold <= 0 || numberOfPendingPrefixes < flushThreshold) {
+				if(advertisementTimeout != null)
+					return;
+				
+				delay = Math.max(0, lastAdvertisement + minRouteAdvertisementInterval - System.nanoTime());
+			}
+			
+			if(advertisementTimeout != null)
+				advertisementTimeout.cancel();
+			
+			advertisementTimeout = timer.newTimeout(new AdvertisementTask(), delay, TimeUnit.NANOSECONDS);
+			advertisementDue = (delay == 0);
+		}
+	}
+	
+	/**
+	 * Send all pending withdrawals and announcements unless the timeout has been cancelled or replaced since the flush
+	 * was handed to the flush executor. The UPDATE packets are built without the lock on the pending table held.
+	 */
+	private void flushAdvertisements(Timeout timeout) {
+		synchronized (pendingPrefixes) {
+			if(timeout != advertisementTimeout)
+				return;
+			
+			advertisementTimeout = null;
+			advertisementDue = false;
+			lastAdvertisement = System.nanoTime();
+		}
+		
+		List<ChannelBuffer> updates = buildUpdates();
+		
+		if(updates.size() > 0)
+			callback.sendUpdates(updates);
+	}
+	
+	/**
+	 * Send the pending withdrawals unless the timeout has been cancelled or replaced since the flush was handed to the 
+	 * flush executor.
+	 */
+	private void flushWithdrawals(Timeout timeout) {
+		synchronized (pendingPrefixes) {
+			if(timeout != withdrawalTimeout)
+				return;
+			
+			withdrawalTimeout = null;
+		}
+		
+		List<ChannelBuffer> updates = buildWithdrawals();
+		
+		if(updates.size() > 0)
+			callback.sendUpdates(updates);
+	}
+	
+	private void cancelTimeouts() {
+		if(advertisementTimeout != null)
+			advertisementTimeout.cancel();
+		if(withdrawalTimeout != null)
+			withdrawalTimeout.cancel();
+		
+		advertisementTimeout = null;
+		advertisementDue = false;
+		withdrawalTimeout = null;
+	}
+	
+	private PendingGroup announcementGroup(TopologicalTreeSortingKey key) {
+		PendingGroup group = addedRoutes.get(key);
+		
+		if(group == null) {
+			group = new PendingGroup(key, key.getAddressFamilyKey());
+			addedRoutes.put(key, group);
+		}
+		
+		return group;
+	}
+	
+	private PendingGroup withdrawalGroup(AddressFamilyKey afk) {
+		PendingGroup group = withdrawnRoutes.get(afk);
+		
+		if(group == null) {
+			group = new PendingGroup(null, afk);
+			withdrawnRoutes.put(afk, group);
+		}
+		
+		return group;
+	}
+	
+	private void clearPendingUpdates() {
+		numberOfPendingPrefixes = 0;
+		pendingPrefixes.clear();
+		addedRoutes.clear();
+		withdrawnRoutes.clear();
 	}
 
 	private Collection<PathAttribute> filterAttribute(Collection<PathAttribute> source, 
@@ -261,112 +673,91 @@ public class OutboundRoutingUpdateQueue implements RoutingEventListener {
 		return result;
 	}
 
-	List<UpdatePacket> buildUpdates() {
-		List<UpdatePacket> updates = new LinkedList<UpdatePacket>();
-		UpdatePacket current = null;
-		
-		synchronized (withdrawnRoutes) {
-			for(Entry<AddressFamilyKey, List<NetworkLayerReachabilityInformation>> withdrawnRouteEntry : withdrawnRoutes.entrySet()) {
-				for(NetworkLayerReachabilityInformation nlri : withdrawnRouteEntry.getValue()) {
-					MultiProtocolUnreachableNLRI mpUnreachable = null;
-					AddressFamilyKey afk = withdrawnRouteEntry.getKey();
-					
-					if((current == null  
-							|| (current.calculatePacketSize() + NLRICodec.calculateEncodedNLRILength(nlri) 
-									> (BGPv4Constants.BGP_PACKET_MAX_LENGTH - BGPv4Constants.BGP_PACKET_HEADER_LENGTH)))) {
-						current = new UpdatePacket();
-						
-						if(!afk.equals(AddressFamilyKey.IPV4_UNICAST_FORWARDING)) {
-							mpUnreachable = new MultiProtocolUnreachableNLRI(afk.getAddressFamily(), afk.getSubsequentAddressFamily());
-							
-							current.getPathAttributes().add(mpUnreachable);
-						}
-						updates.add(current);
-					}
-					
-					if(afk.matches(AddressFamily.IPv4, SubsequentAddressFamily.NLRI_UNICAST_FORWARDING)) {					
-						current.getWithdrawnRoutes().add(nlri);
-					} else {
-						mpUnreachable.getNlris().add(nlri);
-					}
-				}
-				current = null;
-			}
-			
-			withdrawnRoutes.clear();
-		}
-
-		synchronized (addedRoutes) {
-			for(Entry<TopologicalTreeSortingKey, List<NetworkLayerReachabilityInformation>> addedRouteEntry : addedRoutes.entrySet()) {
-				TopologicalTreeSortingKey key = addedRouteEntry.getKey();
-				List<NetworkLayerReachabilityInformation> nlris = addedRouteEntry.getValue();
-				MultiProtocolReachableNLRI mpNLRI = null;
-				
-				if(!key.getAddressFamilyKey().matches(AddressFamily.IPv4, SubsequentAddressFamily.NLRI_UNICAST_FORWARDING)) {
-					for(PathAttribute pathAttribute : key.getPathAttributes()) {
-						if(pathAttribute instanceof MultiProtocolReachableNLRI) {
-							mpNLRI = (MultiProtocolReachableNLRI)pathAttribute;
-							break;
-						}
-					}
-				}
-				
-				for(NetworkLayerReachabilityInformation nlri: nlris) {
-					if((current == null  
-							|| (current.calculatePacketSize() + NLRICodec.calculateEncodedNLRILength(nlri) 
-									> (BGPv4Constants.BGP_PACKET_MAX_LENGTH - BGPv4Constants.BGP_PACKET_HEADER_LENGTH)))) {
-						current = new UpdatePacket();
-						current.getPathAttributes().addAll(key.getPathAttributes());
-						updates.add(current);
-					}
-					
-					if(key.getAddressFamilyKey().matches(AddressFamily.IPv4, SubsequentAddressFamily.NLRI_UNICAST_FORWARDING)) {					
-						current.getNlris().add(nlri);
-					} else {
-						mpNLRI.getNlris().add(nlri);
-					}
-				}
-				
-				current = null;
-			}
+	/**
+	 * Encode the scheduled withdrawals and additions into UPDATE packets. The packets are written straight from the
+	 * pending groups into the chunk buffers of an update packet writer. Each packet carrying multi-protocol NLRI gets 
+	 * its own MP_REACH_NLRI or MP_UNREACH_NLRI attribute. The encoded path attributes of a group are taken from the 
+	 * attribute block cache shared by all peers. The pending groups are taken from the pending table under its lock and
+	 * encoded after the lock has been released, routing changes are queued meanwhile into new groups.
+	 * 
+	 * @return the encoded UPDATE packets
+	 */
+	List<ChannelBuffer> buildUpdates() {
+		UpdatePacketWriter writer = new UpdatePacketWriter();
+		Map<AddressFamilyKey, PendingGroup> withdrawals;
+		Map<TopologicalTreeSortingKey, PendingGroup> additions;
+		
+		synchronized (pendingPrefixes) {
+			withdrawals = withdrawnRoutes;
+			additions = addedRoutes;
+			withdrawnRoutes = new TreeMap<AddressFamilyKey, PendingGroup>();
+			addedRoutes = new TreeMap<TopologicalTreeSortingKey, PendingGroup>();
 			
-			addedRoutes.clear();
+			clearPendingUpdates();
 		}
 		
-		return updates;
+		for(PendingGroup group : withdrawals.values())
+			writer.writeWithdrawnRoutes(group.addressFamilyKey, group.nlris);
+		
+		for(PendingGroup group : additions.values())
+			writer.writeAddedRoutes(attributeBlockCache.lookup(group.key.getPathAttributes()), group.nlris);
+		
+		return writer.getPackets();
 	}
 	
-	int getNumberOfPendingUpdates() {
-		int result = 0;
+	/**
+	 * Encode the scheduled withdrawals into UPDATE packets. The scheduled additions are left in the queue.
+	 * 
+	 * @return the encoded UPDATE packets
+	 */
+	List<ChannelBuffer> buildWithdrawals() {
+		UpdatePacketWriter writer = new UpdatePacketWriter();
+		Map<AddressFamilyKey, PendingGroup> withdrawals;
 		
-		synchronized (addedRoutes) {
-			result += addedRoutes.size();
+		synchronized (pendingPrefixes) {
+			withdrawals = withdrawnRoutes;
+			withdrawnRoutes = new TreeMap<AddressFamilyKey, PendingGroup>();
+			
+			for(PendingGroup group : withdrawals.values()) {
+				Map<NetworkLayerReachabilityInformation, PendingGroup> prefixes = pendingPrefixes.get(group.addressFamilyKey);
+				
+				for(NetworkLayerReachabilityInformation nlri : group.nlris)
+					prefixes.remove(nlri);
+				numberOfPendingPrefixes -= group.nlris.size();
+			}
 		}
 		
-		synchronized (withdrawnRoutes) {
-			result += withdrawnRoutes.size();
-		}
-
-		return result;
+		for(PendingGroup group : withdrawals.values())
+			writer.writeWithdrawnRoutes(group.addressFamilyKey, group.nlris);
+		
+		return writer.getPackets();
 	}
 	
-	boolean isJobScheduled() throws SchedulerException {
-		if(triggerKey == null)
-			return false;
-		return scheduler.checkExists(triggerKey);
+	/**
+	 * Run a task on the serial executor of the queue after the flushes handed to the executor before. The queue must 
+	 * have been started sending UPDATE packets.
+	 * 
+	 * @param task the task
+	 */
+	void execute(Runnable task) {
+		flushExecutor.execute(task);
 	}
-
-	public Date getNextFireWhen() throws SchedulerException {
-		if(!isJobScheduled())
-			return null;
-		
-		return scheduler.getTrigger(triggerKey).getFireTimeAfter(new Date(System.currentTimeMillis()));
+	
+	/**
+	 * @return the number of pending attribute groups and address families with pending withdrawals
+	 */
+	int getNumberOfPendingUpdates() {
+		synchronized (pendingPrefixes) {
+			return addedRoutes.size() + withdrawnRoutes.size();
+		}
 	}
 	
-	void cancelJob() throws SchedulerException {
-		if(triggerKey != null) {
-			scheduler.unscheduleJob(triggerKey);
-			triggerKey = null;
+	/**
+	 * @return the number of prefixes with a pending announcement or withdrawal
+	 */
+	int getNumberOfPendingPrefixes() {
+		synchronized (pendingPrefixes) {
+			return numberOfPendingPrefixes;
 		}
 	}
 
@@ -0,0 +1,366 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.fsm.PipelinedUpdateWriter.java 
+ */
+package org.bgp4j.netty.fsm;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelConfig;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.socket.nio.NioChannelConfig;
+
+/**
+ * Writes UPDATE packets to a peer connection without waiting for the completion of each single write. 
+ * 
+ * The writer keeps a window of outstanding bytes, that are bytes handed to the channel but not yet written to the 
+ * transport. Packets are written as long as the outstanding bytes are below the window and the channel is writable.
+ * Writing is paused otherwise and resumed when a write completes or the channel becomes writable again. The write 
+ * buffer water marks of NIO channels are aligned to the window, so that the channel signals congestion at the same 
+ * level.
+ * 
+ * Consecutive packets are coalesced into one gathering composite buffer of up to the coalesce limit, thus several
+ * packets reach the transport in one write. The packets are written in the order they are passed to the writer.
+ * 
+ * The packets waiting to be handed to the channel are not bounded by the writer. A writer holding more waiting bytes
+ * than the window is backlogged, the producer of the packets is expected to stop passing packets until the writer
+ * has drained.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class PipelinedUpdateWriter {
+
+	/** default maximum number of bytes coalesced into one channel write */
+	public static final int DEFAULT_COALESCE_LIMIT = 16384;
+	
+	private class WriteCompletionListener implements ChannelFutureListener {
+		private int bytes;
+		private int generation;
+		
+		private WriteCompletionListener(int bytes, int generation) {
+			this.bytes = bytes;
+			this.generation = generation;
+		}
+		
+		@Override
+		public void operationComplete(ChannelFuture future) throws Exception {
+			synchronized (pending) {
+				// writes issued before the writer has been reset are not accounted any more
+				if(generation != PipelinedUpdateWriter.this.generation)
+					return;
+				
+				outstandingBytes -= bytes;
+				
+				if(!future.isSuccess())
+					pending.clear();
+				
+				pending.notifyAll();
+			}
+			
+			resume();
+		}
+	}
+	
+	private int writeWindow;
+	private int coalesceLimit;
+	private LinkedList<ChannelBuffer> pending = new LinkedList<ChannelBuffer>();
+	private long pendingBytes;
+	
+	/** the tasks run once all pending packets have been handed to the channel */
+	private List<Runnable> drainTasks = new LinkedList<Runnable>();
+	private Channel channel;
+	private long outstandingBytes;
+	private boolean draining;
+	private int generation;
+	private long channelWrites;
+	
+	public PipelinedUpdateWriter(int writeWindow) {
+		this(writeWindow, DEFAULT_COALESCE_LIMIT);
+	}
+	
+	public PipelinedUpdateWriter(int writeWindow, int coalesceLimit) {
+		if(writeWindow <= 0)
+			throw new IllegalArgumentException("Illegal write window given: " + writeWindow);
+		if(coalesceLimit <= 0)
+			throw new IllegalArgumentException("Illegal coalesce limit given: " + coalesceLimit);
+		
+		this.writeWindow = writeWindow;
+		this.coalesceLimit = coalesceLimit;
+	}
+	
+	/**
+	 * Attach the writer to the channel the packets are written to. Attaching the writer to the channel it is already 
+	 * attached to has no effect. The write buffer water marks of NIO channels are
+	 * set to the write window (high water mark) and half the write window (low water mark).
+	 * 
+	 * @param channel the channel
+	 */
+	public void attach(Channel channel) {
+		synchronized (pending) {
+			if(this.channel == channel)
+				return;
+		}
+		
+		ChannelConfig config = channel.getConfig();
+		
+		if(config instanceof NioChannelConfig) {
+			NioChannelConfig nioConfig = (NioChannelConfig)config;
+			int lowWaterMark = writeWindow / 2;
+			
+			// the high water mark must never drop below the low water mark and vice versa
+			if(writeWindow < nioConfig.getWriteBufferLowWaterMark()) {
+				nioConfig.setWriteBufferLowWaterMark(lowWaterMark);
+				nioConfig.setWriteBufferHighWaterMark(writeWindow);
+			} else {
+				nioConfig.setWriteBufferHighWaterMark(writeWindow);
+				nioConfig.setWriteBufferLowWaterMark(lowWaterMark);
+			}
+		}
+		
+		synchronized (pending) {
+			this.channel = channel;
+		}
+	}
+	
+	/**
+	 * Queue the packets for writing and write as many packets as the window and the channel state permit.
+	 * 
+	 * @param packets the packets
+	 */
+	public void write(List<ChannelBuffer> packets) {
+		synchronized (pending) {
+			enqueue(packets);
+		}
+		
+		resume();
+	}
+	
+	/**
+	 * Queue the packets for writing unless the writer has been reset since the given generation was obtained.
+	 * 
+	 * @param packets the packets
+	 * @param generation the generation obtained by {@link #getGeneration()} before the packets were built
+	 * @return <code>true</code> if the packets have been queued, <code>false</code> if they have been dropped
+	 */
+	public boolean write(List<ChannelBuffer> packets, int generation) {
+		synchronized (pending) {
+			if(generation != this.generation)
+				return false;
+			
+			enqueue(packets);
+		}
+		
+		resume();
+		
+		return true;
+	}
+	
+	private void enqueue(List<ChannelBuffer> packets) {
+		pending.addAll(packets);
+		
+		for(ChannelBuffer packet : packets)
+			pendingBytes += packet.readableBytes();
+	}
+	
+	/**
+	 * Write pending packets if the window and the channel state permit. This method must be called when the 
+	 * channel becomes writable again.
+	 */
+	public void resume() {
+		List<ChannelBuffer> batch = new ArrayList<ChannelBuffer>();
+		List<Runnable> drained = null;
+		Channel target;
+		int batchBytes;
+		int batchGeneration;
+		
+		synchronized (pending) {
+			// only one thread writes at a time to keep the order of the packets
+			if(draining)
+				return;
+			draining = true;
+		}
+		
+		for(;;) {
+			batch.clear();
+			batchBytes = 0;
+			
+			synchronized (pending) {
+				target = channel;
+				
+				if(target == null || pending.isEmpty() || outstandingBytes >= writeWindow || !target.isWritable()) {
+					draining = false;
+					
+					if(pending.isEmpty() && !drainTasks.isEmpty()) {
+						drained = drainTasks;
+						drainTasks = new LinkedList<Runnable>();
+					}
+					
+					break;
+				}
+				
+				while(!pending.isEmpty()) {
+					int size = pending.getFirst().readableBytes();
+					
+					if(batch.size() > 0 && (batchBytes + size > coalesceLimit || outstandingBytes + batchBytes + size > writeWindow))
+						break;
+					
+					batch.add(pending.removeFirst());
+					batchBytes += size;
+					pendingBytes -= size;
+				}
+				
+				if(pending.isEmpty())
+					pending.notifyAll();
+				
+				outstandingBytes += batchBytes;
+				batchGeneration = generation;
+				channelWrites++;
+			}
+			
+			ChannelBuffer buffer;
+			
+			if(batch.size() == 1)
+				buffer = batch.get(0);
+			else
+				buffer = ChannelBuffers.wrappedBuffer(true, batch.toArray(new ChannelBuffer[batch.size()]));
+			
+			target.write(buffer).addListener(new WriteCompletionListener(batchBytes, batchGeneration));
+		}
+		
+		if(drained != null) {
+			for(Runnable task : drained)
+				task.run();
+		}
+	}
+	
+	/**
+	 * Run a task once all packets passed to the writer so far have been handed to the channel. The task is run by the 
+	 * calling thread if no packets are waiting, it is dropped if the writer is reset before.
+	 * 
+	 * @param task the task
+	 */
+	public void whenDrained(Runnable task) {
+		synchronized (pending) {
+			if(!pending.isEmpty()) {
+				drainTasks.add(task);
+				
+				return;
+			}
+		}
+		
+		task.run();
+	}
+	
+	/**
+	 * @return <code>true</code> if the bytes of the packets waiting to be handed to the channel exceed the write window
+	 */
+	public boolean isBacklogged() {
+		synchronized (pending) {
+			return pendingBytes > writeWindow;
+		}
+	}
+	
+	/**
+	 * drop the packets not written yet and detach the writer from the channel
+	 */
+	public void reset() {
+		synchronized (pending) {
+			pending.clear();
+			pendingBytes = 0;
+			drainTasks.clear();
+			channel = null;
+			outstandingBytes = 0;
+			generation++;
+			
+			pending.notifyAll();
+		}
+	}
+	
+	/**
+	 * Wait until all packets passed to the writer have been handed to the channel and the outstanding bytes are 
+	 * below the write window. 
+	 * 
+	 * @return <code>true</code> if the writer can take more packets, <code>false</code> if the writer has been reset 
+	 * or is not attached to a channel or the waiting thread has been interrupted
+	 */
+	public boolean awaitCapacity() {
+		synchronized (pending) {
+			int awaitedGeneration = generation;
+			
+			while(channel != null && generation == awaitedGeneration && (!pending.isEmpty() || outstandingBytes >= writeWindow)) {
+				try {
+					pending.wait();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					
+					return false;
+				}
+			}
+			
+			return channel != null && generation == awaitedGeneration;
+		}
+	}
+
+	/**
+	 * @return the generation of the writer, incremented by each reset
+	 */
+	public int getGeneration() {
+		synchronized (pending) {
+			return generation;
+		}
+	}
+
+	/**
+	 * @return the write window in bytes
+	 */
+	public int getWriteWindow() {
+		return writeWindow;
+	}
+
+	/**
+	 * @return the number of packets waiting to be written
+	 */
+	public int getPendingPackets() {
+		synchronized (pending) {
+			return pending.size();
+		}
+	}
+	
+	/**
+	 * @return the number of bytes written to the channel but not completed yet
+	 */
+	public long getOutstandingBytes() {
+		synchronized (pending) {
+			return outstandingBytes;
+		}
+	}
+	
+	/**
+	 * @return the number of channel writes issued, each write carrying one or more coalesced packets
+	 */
+	public long getChannelWrites() {
+		synchronized (pending) {
+			return channelWrites;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.fsm.SerialExecutor.java 
+ */
+package org.bgp4j.netty.fsm;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks one at a time in the order of submission on threads of a shared executor. A serial executor per peer 
+ * keeps the order of the UPDATE packets of the peer while the peers share the threads of one pool.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+class SerialExecutor implements Executor {
+
+	private Executor executor;
+	private Queue<Runnable> tasks = new LinkedList<Runnable>();
+	private boolean running;
+	
+	private Runnable runner = new Runnable() {
+		
+		@Override
+		public void run() {
+			runTasks();
+		}
+	};
+	
+	/**
+	 * @param executor the executor running the tasks
+	 */
+	SerialExecutor(Executor executor) {
+		this.executor = executor;
+	}
+	
+	@Override
+	public void execute(Runnable task) {
+		synchronized (tasks) {
+			tasks.add(task);
+			
+			if(running)
+				return;
+			
+			running = true;
+		}
+		
+		executor.execute(runner);
+	}
+	
+	/**
+	 * run the queued tasks until the queue is empty. If a task fails, the remaining tasks are handed to the executor 
+	 * again and the failure is passed on to the executor.
+	 */
+	private void runTasks() {
+		boolean drained = false;
+		
+		try {
+			for(;;) {
+				Runnable task;
+				
+				synchronized (tasks) {
+					task = tasks.poll();
+					
+					if(task == null) {
+						running = false;
+						drained = true;
+						return;
+					}
+				}
+				
+				task.run();
+			}
+		} finally {
+			if(!drained)
+				executor.execute(runner);
+		}
+	}
+}
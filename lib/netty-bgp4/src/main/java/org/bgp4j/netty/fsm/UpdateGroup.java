@@ -0,0 +1,369 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.fsm.UpdateGroup.java 
+ */
+package org.bgp4j.netty.fsm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.net.RIBSide;
+import org.bgp4j.rib.PeerRoutingInformationBase;
+import org.bgp4j.rib.RoutingInformationBase;
+import org.bgp4j.rib.RoutingInformationBaseSnapshot;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * A set of peers receiving the same UPDATE packets. The group owns one outbound routing update queue which takes the 
+ * Local RIB events of one member, the source member, as input. The packets built by the queue are replicated to all 
+ * members, each member receives its own duplicates of the packet buffers.
+ * 
+ * A member joining the group catches up on the routes already sent to the other members by sending the content of 
+ * its own Local RIB first. The Local RIB is sent from snapshots taken together with the start of the recording into 
+ * the catch-up queue, so each routing change is either held in the snapshots or recorded. The routing changes queued 
+ * by the group while a member is catching up are recorded in a catch-up queue of the member which holds the latest 
+ * state per prefix only. The packets built by the group in this
+ * time are not sent to the member, the catch-up queue is encoded and sent to the member when the catch-up is 
+ * completed. Thus no more than one pending state per prefix is held for a member catching up, regardless of the 
+ * number of packets the group sends meanwhile.
+ * 
+ * A member whose connection does not keep up with the group is put back into catch-up mode as soon as the packets 
+ * waiting for its connection exceed the write window. The routing changes not yet sent to the member are recorded in 
+ * its catch-up queue again, the catch-up is completed when the waiting packets have been handed to the connection. 
+ * Thus the packets held for a slow member are bounded by the write window and one burst of the group.
+ * 
+ * Instances are created and maintained by the update group manager.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class UpdateGroup implements OutboundRoutingUpdateCallback {
+
+	private static class Membership {
+		private UpdateGroupMember member;
+		
+		/** records the routing changes queued while the member is catching up */
+		private OutboundRoutingUpdateQueue catchUpQueue;
+		private boolean catchingUp;
+		
+		/** the snapshots of the Local RIBs of the member to be sent for catching up or <code>null</code> if taken */
+		private List<RoutingInformationBaseSnapshot> snapshots;
+		
+		private Membership(UpdateGroupMember member, OutboundRoutingUpdateQueue catchUpQueue, 
+				List<RoutingInformationBaseSnapshot> snapshots) {
+			this.member = member;
+			this.catchUpQueue = catchUpQueue;
+			this.snapshots = snapshots;
+		}
+	}
+	
+	private UpdateGroupKey key;
+	private OutboundRoutingUpdateQueue queue;
+	private Map<String, Membership> members = new LinkedHashMap<String, Membership>();
+	
+	/** the peer routing base the group queue listens on */
+	private PeerRoutingInformationBase source;
+	
+	/** the peer routing base the group queue has been moved away from, still listened on */ 
+	private PeerRoutingInformationBase formerSource;
+	
+	UpdateGroup(UpdateGroupKey key, OutboundRoutingUpdateQueue queue) {
+		this.key = key;
+		this.queue = queue;
+	}
+	
+	/**
+	 * Replicate the packets built by the group queue to the members which have caught up. The changes carried by the
+	 * packets are held in the catch-up queues of the other members. A member left backlogged by the packets is put 
+	 * back into catch-up mode. 
+	 * 
+	 * The packets are passed in by the flushes of the group queue, which run one at a time. 
+	 */
+	@Override
+	public void sendUpdates(List<ChannelBuffer> updates) {
+		synchronized (members) {
+			for(Membership membership : members.values()) {
+				if(!membership.catchingUp) {
+					membership.member.sendUpdates(duplicate(updates));
+					
+					if(membership.member.isBacklogged())
+						resumeCatchUp(membership);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Complete the catch-up of a member. The routing changes recorded for the member while catching up are sent and 
+	 * the member receives all following packets directly.
+	 * 
+	 * @param peerName the name of the member
+	 */
+	public void completeCatchUp(String peerName) {
+		synchronized (members) {
+			Membership membership = members.get(peerName);
+			
+			if(membership != null)
+				completeCatchUp(membership);
+		}
+	}
+	
+	/**
+	 * Take the snapshots of the Local RIBs of a member catching up. The snapshots have been taken when the member 
+	 * joined the group, they are handed out once only.
+	 * 
+	 * @param peerName the name of the member
+	 * @return the snapshots or an empty list if the member is not catching up or the snapshots have been taken before
+	 */
+	public List<RoutingInformationBaseSnapshot> takeCatchUpSnapshots(String peerName) {
+		synchronized (members) {
+			Membership membership = members.get(peerName);
+			
+			if(membership == null || membership.snapshots == null)
+				return Collections.<RoutingInformationBaseSnapshot>emptyList();
+			
+			List<RoutingInformationBaseSnapshot> snapshots = membership.snapshots;
+			
+			membership.snapshots = null;
+			
+			return snapshots;
+		}
+	}
+	
+	/**
+	 * @return the key
+	 */
+	public UpdateGroupKey getKey() {
+		return key;
+	}
+
+	/**
+	 * @return the names of the members
+	 */
+	public Set<String> getMemberNames() {
+		synchronized (members) {
+			return Collections.unmodifiableSet(new LinkedHashSet<String>(members.keySet()));
+		}
+	}
+	
+	/**
+	 * @return the name of the member whose Local RIB events are the input of the group
+	 */
+	public String getSourcePeerName() {
+		return (source != null) ? source.getPeerName() : null;
+	}
+
+	/**
+	 * @return the number of members
+	 */
+	public int getNumberOfMembers() {
+		synchronized (members) {
+			return members.size();
+		}
+	}
+	
+	OutboundRoutingUpdateQueue getQueue() {
+		return queue;
+	}
+	
+	/**
+	 * Add a member catching up with the group. The Local RIBs of the member are snapshot after the recording of the 
+	 * routing changes has started. The caller must exclude writes to the Local RIBs fed from the same input as the 
+	 * Local RIBs of the source member meanwhile, otherwise a change may reach the source before the recording has 
+	 * started and the member after the snapshots have been taken.
+	 * 
+	 * @param member the member
+	 * @param catchUpQueue an unused queue with the update mask and transform of the group queue, it records the routing
+	 * changes queued by the group until the member has caught up
+	 * @param prib the peer routing base of the member
+	 */
+	void addMember(UpdateGroupMember member, OutboundRoutingUpdateQueue catchUpQueue, PeerRoutingInformationBase prib) {
+		synchronized (members) {
+			Membership membership = new Membership(member, catchUpQueue, new ArrayList<RoutingInformationBaseSnapshot>());
+			Membership previous = members.put(member.getPeerName(), membership);
+			
+			if(previous != null)
+				detachCatchUpQueue(previous);
+			
+			membership.catchingUp = true;
+			catchUpQueue.startSendingUpdates();
+			queue.addMirror(catchUpQueue);
+			
+			for(AddressFamilyKey afk : new TreeSet<AddressFamilyKey>(key.getAddressFamilies())) {
+				RoutingInformationBase rib = prib.routingBase(RIBSide.Local, afk);
+				
+				if(rib != null)
+					membership.snapshots.add(rib.snapshot());
+			}
+		}
+	}
+	
+	/**
+	 * @return <code>true</code> if the member has been removed, <code>false</code> if it is no member
+	 */
+	boolean removeMember(String peerName) {
+		synchronized (members) {
+			Membership membership = members.remove(peerName);
+			
+			if(membership == null)
+				return false;
+			
+			detachCatchUpQueue(membership);
+			
+			return true;
+		}
+	}
+	
+	/**
+	 * @return the name of any member or <code>null</code> if the group is empty
+	 */
+	String anyMemberName() {
+		synchronized (members) {
+			return members.isEmpty() ? null : members.keySet().iterator().next();
+		}
+	}
+	
+	/**
+	 * Move the input of the group queue to the Local RIBs of another member. The group queue listens on both peer 
+	 * routing bases until the change is completed.
+	 *  
+	 * @param prib the peer routing base of the new source member
+	 */
+	void changeSource(PeerRoutingInformationBase prib) {
+		completeSourceChange();
+		
+		if(source == null) {
+			queue.setPeerName(prib.getPeerName());
+			prib.addRoutingListener(queue);
+		} else {
+			queue.changePeer(prib.getPeerName());
+			prib.addRoutingListener(queue);
+			formerSource = source;
+		}
+		
+		source = prib;
+	}
+	
+	/**
+	 * @return the name of the peer the group input has been moved away from or <code>null</code>
+	 */
+	String getFormerSourcePeerName() {
+		return (formerSource != null) ? formerSource.getPeerName() : null;
+	}
+	
+	/**
+	 * stop listening on the peer routing base the group input has been moved away from
+	 */
+	void completeSourceChange() {
+		if(formerSource != null) {
+			formerSource.removeRoutingListener(queue);
+			queue.completePeerChange();
+			formerSource = null;
+		}
+	}
+	
+	/**
+	 * stop the group queue and detach it from all peer routing bases
+	 */
+	void close() {
+		synchronized (members) {
+			for(Membership membership : members.values())
+				detachCatchUpQueue(membership);
+		}
+		
+		completeSourceChange();
+		if(source != null)
+			source.removeRoutingListener(queue);
+		source = null;
+		queue.shutdown();
+	}
+	
+	/**
+	 * Put a member which has caught up back into catch-up mode. The routing changes pending in the group queue are 
+	 * recorded together with the following changes, the changes built into packets before have been sent to the member.
+	 * The catch-up is completed on the serial executor of the group queue once the member has drained. Must be called 
+	 * with the lock on the members held by a flush of the group queue.
+	 */
+	private void resumeCatchUp(final Membership membership) {
+		membership.catchingUp = true;
+		membership.catchUpQueue.startSendingUpdates();
+		queue.addMirror(membership.catchUpQueue, true);
+		
+		membership.member.whenDrained(new Runnable() {
+			
+			@Override
+			public void run() {
+				queue.execute(new Runnable() {
+					
+					@Override
+					public void run() {
+						synchronized (members) {
+							// the member may have left or joined again meanwhile
+							if(members.get(membership.member.getPeerName()) == membership)
+								completeCatchUp(membership);
+						}
+					}
+				});
+			}
+		});
+	}
+	
+	/**
+	 * send the routing changes recorded for a member catching up and stop recording. Must be called with the lock on 
+	 * the members held.
+	 */
+	private void completeCatchUp(Membership membership) {
+		if(!membership.catchingUp)
+			return;
+		
+		queue.removeMirror(membership.catchUpQueue);
+		membership.catchingUp = false;
+		
+		List<ChannelBuffer> updates = membership.catchUpQueue.buildUpdates();
+		
+		membership.catchUpQueue.shutdown();
+		
+		if(updates.size() > 0)
+			membership.member.sendUpdates(updates);
+	}
+	
+	/**
+	 * drop the routing changes recorded for a member catching up. Must be called with the lock on the members held.
+	 */
+	private void detachCatchUpQueue(Membership membership) {
+		if(membership.catchingUp) {
+			queue.removeMirror(membership.catchUpQueue);
+			membership.catchUpQueue.shutdown();
+			membership.catchingUp = false;
+		}
+	}
+	
+	private static List<ChannelBuffer> duplicate(List<ChannelBuffer> updates) {
+		List<ChannelBuffer> duplicates = new ArrayList<ChannelBuffer>(updates.size());
+		
+		for(ChannelBuffer update : updates)
+			duplicates.add(update.duplicate());
+		
+		return duplicates;
+	}
+}
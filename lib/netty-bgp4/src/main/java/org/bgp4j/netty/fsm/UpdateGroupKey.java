@@ -0,0 +1,174 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.fsm.UpdateGroupKey.java 
+ */
+package org.bgp4j.netty.fsm;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.bgp4j.net.ASType;
+import org.bgp4j.net.AddressFamilyKey;
+
+/**
+ * The properties which determine the UPDATE packets sent to a peer. Peers with equal keys receive the same UPDATE
+ * packets and share an update group.
+ * 
+ * The outbound policy names the source of the routes held in the Local RIBs of the peer. Peers which share a policy
+ * have Local RIBs of identical content. A policy of <code>null</code> denotes the Local RIBs fed by the Loc-RIB only.
+ * The outbound attribute transform rewrites the attributes of the routes for the peers of the group.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class UpdateGroupKey {
+
+	private Set<AddressFamilyKey> addressFamilies;
+	private ASType asType;
+	private boolean external;
+	private String outboundPolicy;
+	private int minRouteAdvertisementInterval;
+	private int flushThreshold;
+	private OutboundAttributeTransform transform;
+	
+	/**
+	 * @param addressFamilies the address families sent to the peer
+	 * @param asType the AS number size in use with the peer
+	 * @param external <code>true</code> for an external (eBGP) peer
+	 * @param outboundPolicy the outbound policy of the peer
+	 * @param minRouteAdvertisementInterval the minimum route advertisement interval in milliseconds
+	 * @param flushThreshold the number of pending prefixes causing an immediate flush
+	 * @param transform the rewrite of the attributes or <code>null</code> if the attributes are sent unchanged
+	 */
+	public UpdateGroupKey(Set<AddressFamilyKey> addressFamilies, ASType asType, boolean external, String outboundPolicy,
+			int minRouteAdvertisementInterval, int flushThreshold, OutboundAttributeTransform transform) {
+		this.addressFamilies = Collections.unmodifiableSet(new HashSet<AddressFamilyKey>(addressFamilies));
+		this.asType = asType;
+		this.external = external;
+		this.outboundPolicy = outboundPolicy;
+		this.minRouteAdvertisementInterval = minRouteAdvertisementInterval;
+		this.flushThreshold = flushThreshold;
+		this.transform = transform;
+	}
+
+	/**
+	 * @return the addressFamilies
+	 */
+	public Set<AddressFamilyKey> getAddressFamilies() {
+		return addressFamilies;
+	}
+
+	/**
+	 * @return the asType
+	 */
+	public ASType getAsType() {
+		return asType;
+	}
+
+	/**
+	 * @return the external
+	 */
+	public boolean isExternal() {
+		return external;
+	}
+
+	/**
+	 * @return the outboundPolicy
+	 */
+	public String getOutboundPolicy() {
+		return outboundPolicy;
+	}
+
+	/**
+	 * @return the minRouteAdvertisementInterval
+	 */
+	public int getMinRouteAdvertisementInterval() {
+		return minRouteAdvertisementInterval;
+	}
+
+	/**
+	 * @return the flushThreshold
+	 */
+	public int getFlushThreshold() {
+		return flushThreshold;
+	}
+
+	/**
+	 * @return the transform
+	 */
+	public OutboundAttributeTransform getTransform() {
+		return transform;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return (new HashCodeBuilder())
+				.append(addressFamilies)
+				.append(asType)
+				.append(external)
+				.append(outboundPolicy)
+				.append(minRouteAdvertisementInterval)
+				.append(flushThreshold)
+				.append(transform)
+				.toHashCode();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if(!(obj instanceof UpdateGroupKey))
+			return false;
+		
+		UpdateGroupKey o = (UpdateGroupKey)obj;
+		
+		return (new EqualsBuilder())
+				.append(addressFamilies, o.addressFamilies)
+				.append(asType, o.asType)
+				.append(external, o.external)
+				.append(outboundPolicy, o.outboundPolicy)
+				.append(minRouteAdvertisementInterval, o.minRouteAdvertisementInterval)
+				.append(flushThreshold, o.flushThreshold)
+				.append(transform, o.transform)
+				.isEquals();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		
+		builder.append("UpdateGroupKey [addressFamilies=").append(addressFamilies)
+			.append(", asType=").append(asType)
+			.append(", external=").append(external)
+			.append(", outboundPolicy=").append(outboundPolicy)
+			.append(", minRouteAdvertisementInterval=").append(minRouteAdvertisementInterval)
+			.append(", flushThreshold=").append(flushThreshold)
+			.append(", transform=").append(transform)
+			.append("]");
+		
+		return builder.toString();
+	}
+}
@@ -0,0 +1,227 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.fsm.UpdateGroupManager.java 
+ */
+package org.bgp4j.netty.fsm;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.bgp4j.config.global.ApplicationConfiguration;
+import org.bgp4j.config.nodes.PeerConfiguration;
+import org.bgp4j.config.nodes.RoutingInstanceConfiguration;
+import org.bgp4j.config.nodes.RoutingPeerConfiguration;
+import org.bgp4j.net.ASType;
+import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.rib.PeerRoutingInformationBaseManager;
+import org.bgp4j.rib.processor.LocalRoutingProcessor;
+import org.slf4j.Logger;
+
+/**
+ * Forms update groups from the established peers. Peers with equal update group keys join the same group, the 
+ * UPDATE packets of a group are built once and replicated to all members.
+ * 
+ * The Local RIBs of two peers only have identical content if both are fed by the Loc-RIB with the same rules. This is
+ * the case for internal peers which take no part in a routing instance. External peers do not receive the routes 
+ * learned from themselves, peers taking part in a routing instance receive routes filtered for them. These peers 
+ * form a group of their own.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+@Singleton
+public class UpdateGroupManager {
+
+	private @Inject Logger log;
+	private @Inject ApplicationConfiguration appConfig;
+	private @Inject PeerRoutingInformationBaseManager pribManager;
+	private @Inject Instance<OutboundRoutingUpdateQueue> queueProvider;
+	private @Inject LocalRoutingProcessor localRoutingProcessor;
+	
+	private Map<UpdateGroupKey, UpdateGroup> groups = new HashMap<UpdateGroupKey, UpdateGroup>();
+	private Map<String, UpdateGroup> memberships = new HashMap<String, UpdateGroup>();
+	
+	/**
+	 * Build the update group key of a peer.
+	 * 
+	 * @param peerConfig the peer configuration
+	 * @param addressFamilies the address families sent to the peer
+	 * @param asType the AS number size in use with the peer
+	 * @param localAddress the local address of the peer connection or <code>null</code> if it is not known
+	 * @return the key
+	 */
+	public UpdateGroupKey groupKey(PeerConfiguration peerConfig, Set<AddressFamilyKey> addressFamilies, ASType asType, 
+			InetAddress localAddress) {
+		boolean external = (peerConfig.getLocalAS() != peerConfig.getRemoteAS());
+		String outboundPolicy = null;
+		
+		if(external || !isFedByLocalRibOnly(peerConfig.getPeerName()))
+			outboundPolicy = peerConfig.getPeerName();
+		
+		return new UpdateGroupKey(addressFamilies, asType, external, outboundPolicy, 
+				peerConfig.getMinRouteAdvertisementInterval(), peerConfig.getRouteAdvertisementFlushThreshold(),
+				OutboundAttributeTransform.forPeer(peerConfig, asType, localAddress));
+	}
+	
+	/**
+	 * Add a peer to the update group of the given key. The group is created if it does not exist yet. The member is 
+	 * catching up after joining the group, it must send the snapshots of its Local RIBs taken by the group and 
+	 * complete the catch-up with the group.
+	 * 
+	 * The member is added while the Loc-RIB does not publish routes. The Loc-RIB writes a change to the Local RIBs 
+	 * of the peers one after another, a change already written to the Local RIBs of the source member is thus also 
+	 * contained in the snapshots of the joining member. 
+	 * 
+	 * @param key the update group key of the peer
+	 * @param member the peer
+	 * @return the group joined
+	 * @see UpdateGroup#takeCatchUpSnapshots(String)
+	 * @see UpdateGroup#completeCatchUp(String)
+	 */
+	public synchronized UpdateGroup joinGroup(final UpdateGroupKey key, final UpdateGroupMember member) {
+		final String peerName = member.getPeerName();
+		
+		if(memberships.containsKey(peerName))
+			leaveGroup(peerName);
+		
+		// a group may still listen on the routing base of the peer from the time the peer was its source
+		for(UpdateGroup group : groups.values()) {
+			if(peerName.equals(group.getFormerSourcePeerName()))
+				group.completeSourceChange();
+		}
+		
+		UpdateGroup group = groups.get(key);
+		
+		if(group == null) {
+			OutboundRoutingUpdateQueue queue = newQueue(key);
+			
+			group = new UpdateGroup(key, queue);
+			queue.setCallback(group);
+			group.changeSource(pribManager.peerRoutingInformationBase(peerName));
+			queue.startSendingUpdates(key.getMinRouteAdvertisementInterval(), key.getFlushThreshold());
+			
+			groups.put(key, group);
+			
+			log.info("created update group " + key + " with source peer " + peerName);
+		}
+		
+		final UpdateGroup joined = group;
+		
+		localRoutingProcessor.runQuiescent(new Runnable() {
+			
+			@Override
+			public void run() {
+				joined.addMember(member, newQueue(key), pribManager.peerRoutingInformationBase(peerName));
+			}
+		});
+		memberships.put(peerName, group);
+		
+		return group;
+	}
+	
+	/**
+	 * Remove a peer from its update group. If the peer is the source of the group, the input of the group is moved to 
+	 * the Local RIBs of another member. The group is closed when the last member leaves. 
+	 * 
+	 * The peer must leave the group before its Local RIBs are destroyed.
+	 * 
+	 * @param peerName the name of the peer
+	 */
+	public synchronized void leaveGroup(String peerName) {
+		UpdateGroup group = memberships.remove(peerName);
+		
+		if(group == null || !group.removeMember(peerName))
+			return;
+		
+		String successor = group.anyMemberName();
+		
+		if(successor == null) {
+			group.close();
+			groups.remove(group.getKey());
+			
+			log.info("closed update group " + group.getKey());
+		} else if(peerName.equals(group.getSourcePeerName())) {
+			group.changeSource(pribManager.peerRoutingInformationBase(successor));
+			
+			log.info("moved update group " + group.getKey() + " to source peer " + successor);
+		}
+	}
+	
+	/**
+	 * @param peerName the name of the peer
+	 * @return the update group of the peer or <code>null</code> if the peer is in no group
+	 */
+	public synchronized UpdateGroup lookupGroup(String peerName) {
+		return memberships.get(peerName);
+	}
+	
+	/**
+	 * @return the current update groups
+	 */
+	public synchronized List<UpdateGroup> listGroups() {
+		return new LinkedList<UpdateGroup>(groups.values());
+	}
+	
+	/**
+	 * Close all update groups
+	 */
+	public synchronized void resetManager() {
+		for(UpdateGroup group : groups.values())
+			group.close();
+		
+		groups.clear();
+		memberships.clear();
+	}
+	
+	/**
+	 * obtain a queue building the UPDATE packets of a group
+	 */
+	private OutboundRoutingUpdateQueue newQueue(UpdateGroupKey key) {
+		OutboundRoutingUpdateQueue queue = queueProvider.get();
+		
+		queue.setUpdateMask(key.getAddressFamilies());
+		queue.setTransform(key.getTransform());
+		
+		return queue;
+	}
+	
+	/**
+	 * check if the Local RIBs of a peer receive routes from the Loc-RIB only
+	 */
+	private boolean isFedByLocalRibOnly(String peerName) {
+		if(appConfig.getRoutingProcessorConfiguration() == null || !appConfig.getRoutingProcessorConfiguration().isLocalRibEnabled())
+			return false;
+		
+		for(RoutingInstanceConfiguration instance : appConfig.getRoutingProcessorConfiguration().getRoutingInstances()) {
+			if(isPeer(instance.getFirstPeer(), peerName) || isPeer(instance.getSecondPeer(), peerName))
+				return false;
+		}
+		
+		return true;
+	}
+	
+	private boolean isPeer(RoutingPeerConfiguration routingPeer, String peerName) {
+		return routingPeer != null && peerName.equals(routingPeer.getPeerName());
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.fsm.UpdateGroupMember.java 
+ */
+package org.bgp4j.netty.fsm;
+
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * A peer receiving the UPDATE packets built by an update group
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public interface UpdateGroupMember extends OutboundRoutingUpdateCallback {
+
+	/**
+	 * @return the name of the peer
+	 */
+	public String getPeerName();
+	
+	/**
+	 * @return the generation of the peer connection. The generation changes whenever the packets waiting for the 
+	 * connection are dropped, that is when the session is released.
+	 */
+	public int getGeneration();
+	
+	/**
+	 * Send UPDATE packets built for a generation of the peer connection. The packets are dropped if the connection 
+	 * has been reset since, they are neither written to the connection of a later session nor treated as an error.
+	 * 
+	 * @param updates the packets
+	 * @param generation the generation obtained before the packets were built
+	 */
+	public void sendUpdates(List<ChannelBuffer> updates, int generation);
+	
+	/**
+	 * Wait until the peer connection can take more UPDATE packets. This method is called by the initial table 
+	 * transfer to the peer before the next routes are read from the Local RIB.
+	 * 
+	 * @return <code>true</code> if more packets can be sent, <code>false</code> if the connection is not usable
+	 * any more
+	 */
+	public boolean awaitCapacity();
+	
+	/**
+	 * @return <code>true</code> if the UPDATE packets passed to the peer and not yet handed to the peer connection 
+	 * exceed the write window
+	 */
+	public boolean isBacklogged();
+	
+	/**
+	 * Run a task once all UPDATE packets passed to the peer so far have been handed to the peer connection. The task
+	 * is run immediately if no packets are waiting. The task is dropped if the connection is reset before.
+	 * 
+	 * @param task the task
+	 */
+	public void whenDrained(Runnable task);
+}
@@ -0,0 +1,86 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.fsm.UpdateTimerFactory.java 
+ */
+package org.bgp4j.netty.fsm;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.Produces;
+import javax.inject.Singleton;
+
+import org.bgp4j.weld.ApplicationShutdownEvent;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timer;
+
+/**
+ * Provides the timer and the executor shared by the outbound routing update queues of all peers. Scheduling a flush 
+ * of a queue on the timer is a constant time operation which does not involve the Quartz scheduler. The timer thread
+ * only hands the flush to the executor, the UPDATE packets are built and sent on the threads of the executor. Thus
+ * a large flush of one peer does not delay the timers of the other peers.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+@Singleton
+public class UpdateTimerFactory {
+
+	/** the resolution of the timer in milliseconds */
+	public static final long TICK_DURATION = 10;
+	
+	private HashedWheelTimer timer;
+	private ExecutorService executor;
+	
+	public UpdateTimerFactory() {
+		timer = new HashedWheelTimer(namedDaemonThreads("bgp-update-timer"), TICK_DURATION, TimeUnit.MILLISECONDS);
+		executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), namedDaemonThreads("bgp-update-flush"));
+	}
+	
+	private static ThreadFactory namedDaemonThreads(final String name) {
+		final ThreadFactory threadFactory = Executors.defaultThreadFactory();
+		
+		return new ThreadFactory() {
+			
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = threadFactory.newThread(r);
+				
+				thread.setName(name);
+				thread.setDaemon(true);
+				
+				return thread;
+			}
+		};
+	}
+	
+	@Produces @UpdateTimer Timer producerTimer() {
+		return this.timer;
+	}
+	
+	@Produces @UpdateExecutor Executor producerExecutor() {
+		return this.executor;
+	}
+	
+	public void stopTimer(@Observes ApplicationShutdownEvent event) {
+		timer.stop();
+		executor.shutdown();
+	}
+}
@@ -139,4 +139,19 @@ public class BGPv4ClientEndpoint extends SimpleChannelHandler {
 			ctx.sendUpstream(e);
 		}
 	}
+
+	/* (non-Javadoc)
+	 * @see org.jboss.netty.channel.SimpleChannelHandler#channelInterestChanged(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelStateEvent)
+	 */
+	@Override
+	public void channelInterestChanged(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+		if(e.getChannel().getRemoteAddress() instanceof InetSocketAddress) {
+			BGPv4FSM fsm = fsmRegistry.lookupFSM((InetSocketAddress)e.getChannel().getRemoteAddress());
+			
+			if(fsm != null)
+				fsm.handleInterestChanged(e.getChannel());
+		}
+		
+		ctx.sendUpstream(e);
+	}
 }
@@ -45,6 +45,33 @@ public class BGPv4Codec extends SimpleChannelHandler {
 	private @Inject Logger log;
 	private @Inject BGPv4PacketDecoder packetDecoder;
 
+	/**
+	 * Enable or disable lazy decoding of path attributes in received UPDATE packets
+	 * 
+	 * @param lazyAttributeDecoding
+	 */
+	public void setLazyAttributeDecoding(boolean lazyAttributeDecoding) {
+		packetDecoder.setLazyAttributeDecoding(lazyAttributeDecoding);
+	}
+
+	/**
+	 * Enable or disable caching of decoded path attribute blocks of received UPDATE packets
+	 * 
+	 * @param decodedAttributeCaching
+	 */
+	public void setDecodedAttributeCaching(boolean decodedAttributeCaching) {
+		packetDecoder.setDecodedAttributeCaching(decodedAttributeCaching);
+	}
+
+	/**
+	 * Enable or disable decoding of the prefixes of received UPDATE packets into packed prefix lists
+	 * 
+	 * @param packedPrefixDecoding
+	 */
+	public void setPackedPrefixDecoding(boolean packedPrefixDecoding) {
+		packetDecoder.setPackedPrefixDecoding(packedPrefixDecoding);
+	}
+
 	/**
 	 * Upstream handler which takes care of the network packet to POJO translation
 	 * 
@@ -82,7 +109,8 @@ public class BGPv4Codec extends SimpleChannelHandler {
 	}
 
 	/**
-	 * Downstream handler which takes care of the POJO to network packet translation
+	 * Downstream handler which takes care of the POJO to network packet translation. Packets which have already been 
+	 * encoded, e.g. UPDATE packets written by the outbound routing update queue, are passed on as they are.
 	 */
 	@Override
 	public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
@@ -94,6 +122,8 @@ public class BGPv4Codec extends SimpleChannelHandler {
 			if(buffer != null) {
 				ctx.sendDownstream(new DownstreamMessageEvent(e.getChannel(), e.getFuture(), buffer, e.getRemoteAddress()));
 			}
+		} else if(e.getMessage() instanceof ChannelBuffer) {
+			ctx.sendDownstream(e);
 		} else {
 			log.error("expected a {} message payload, got a {} message payload", 
 					BGPv4Packet.class.getName(), 
@@ -22,6 +22,7 @@ import org.bgp4j.netty.BGPv4Constants;
 import org.bgp4j.netty.protocol.BadMessageLengthNotificationPacket;
 import org.bgp4j.netty.protocol.ConnectionNotSynchronizedNotificationPacket;
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ReadOnlyChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.handler.codec.frame.FrameDecoder;
@@ -31,6 +32,10 @@ import org.slf4j.Logger;
 /**
  * Reframing decoder to ensure that a complete BGPv4 packet is processed in the subsequent decoder.
  * 
+ * The packets are passed on as read-only slices of the received buffer, the packet payload is not copied. The 
+ * cumulation buffer of the frame decoder is never modified once data has been appended to it, so a slice remains 
+ * valid after it has been passed on. 
+ * 
  * @author Rainer Bieniek (Rainer.Bieniek@web.de)
  *
  */
@@ -39,16 +44,19 @@ public class BGPv4Reframer extends FrameDecoder {
 
 	public static final String HANDLER_NAME = "BGP4-REFRAMER";
 	
+	/** the marker as read by two long reads */
+	private static final long MARKER_LONG = 0xffffffffffffffffL;
+	
 	/**
-	 * reframe the received packet to completely contain the next BGPv4 packet. It peeks into the first four bytes of the 
-	 * TCP stream which contain a 16-bit marker and a 16-bit length field. 
+	 * reframe the received packet to completely contain the next BGPv4 packet. It peeks into the first 18 bytes of the 
+	 * TCP stream which contain a 16 octet marker and a 16-bit length field. 
 	 * The marker must be all one's and the length value must be between 19 and 4096 according to RFC 4271. The marker and length
 	 * constraints are verified and if either is violated the connection is closed early.
 	 *  
 	 *  @param ctx the context
 	 *  @param channel the channel from which the data is consumed
 	 *  @param buffer the buffer to read from
-	 *  @return a complete BGPv4 protocol packet in a channel buffer or null. If a packet is returned it starts on the type byte.
+	 *  @return a complete BGPv4 protocol packet in a read-only slice of the buffer or null. If a packet is returned it starts on the type byte.
 	 */
 	@Override
 	protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
@@ -57,20 +65,16 @@ public class BGPv4Reframer extends FrameDecoder {
 
 		buffer.markReaderIndex();
 
-		byte[] marker = new byte[BGPv4Constants.BGP_PACKET_MARKER_LENGTH];
-		buffer.readBytes(marker);
+		if(buffer.readLong() != MARKER_LONG || buffer.readLong() != MARKER_LONG) {
+			log.error("received invalid marker, closing connection");
+			
+			NotificationHelper.sendEncodedNotification(channel, 
+					new ConnectionNotSynchronizedNotificationPacket(),
+					new BgpEventFireChannelFutureListener(ctx));
+			
+			return null;				
+		}
 		
-		for(int i=0; i<marker.length; i++) {
-			if(marker[i] != (byte)0xff) {
-				log.error("received invalid marker {}, closing connection", marker[i]);
-				
-				NotificationHelper.sendEncodedNotification(channel, 
-						new ConnectionNotSynchronizedNotificationPacket(),
-						new BgpEventFireChannelFutureListener(ctx));
-				
-				return null;				
-			}
-		}		
 		int length = buffer.readUnsignedShort();
 
 		if(length < BGPv4Constants.BGP_PACKET_MIN_LENGTH || length > BGPv4Constants.BGP_PACKET_MAX_LENGTH) {
@@ -91,7 +95,7 @@ public class BGPv4Reframer extends FrameDecoder {
 			return null;
 		}
 
-		return buffer.readBytes(mustRead);
+		return new ReadOnlyChannelBuffer(buffer.readSlice(mustRead));
 	}
 
 }
@@ -145,4 +145,19 @@ public class BGPv4ServerEndpoint extends SimpleChannelHandler {
 	public ChannelGroup getTrackedChannels() {
 		return trackedChannels;
 	}
+
+	/* (non-Javadoc)
+	 * @see org.jboss.netty.channel.SimpleChannelHandler#channelInterestChanged(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelStateEvent)
+	 */
+	@Override
+	public void channelInterestChanged(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+		if(e.getChannel().getRemoteAddress() instanceof InetSocketAddress) {
+			BGPv4FSM fsm = fsmRegistry.lookupFSM(((InetSocketAddress)e.getChannel().getRemoteAddress()).getAddress());
+			
+			if(fsm != null)
+				fsm.handleInterestChanged(e.getChannel());
+		}
+		
+		ctx.sendUpstream(e);
+	}
 }
@@ -0,0 +1,305 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.handlers.ControlMessagePriorityHandler.java 
+ */
+package org.bgp4j.netty.handlers;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Singleton;
+
+import org.bgp4j.netty.BGPv4Constants;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelLocal;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+
+/**
+ * Downstream handler which lets control messages (OPEN, KEEPALIVE, NOTIFICATION) overtake UPDATE packets waiting to be
+ * written to the transport.
+ * 
+ * Once a buffer has been passed to the transport it is written in order, thus a KEEPALIVE written during a large 
+ * table transfer waits until all UPDATE packets written before have been sent. This handler limits the number of 
+ * UPDATE bytes handed to the transport per channel and holds back the UPDATE packets exceeding this limit. The held 
+ * back packets are passed on in order when the previous UPDATE writes complete. Control messages are passed on at 
+ * once, they wait for the UPDATE bytes in flight only.
+ * 
+ * The handler must be placed below the codec since it classifies the encoded packets by the BGP message type. It keeps
+ * statistics on the time control messages take from the write request to the completion of the write.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+@Singleton
+public class ControlMessagePriorityHandler extends SimpleChannelHandler {
+	public static final String HANDLER_NAME = "BGP4-PRIORITY";
+	
+	/** default number of UPDATE bytes per channel handed to the transport */
+	public static final int DEFAULT_UPDATE_BYTES_IN_FLIGHT = 16384;
+	
+	private static class ChannelState {
+		private LinkedList<MessageEvent> heldUpdates = new LinkedList<MessageEvent>();
+		private int updateBytesInFlight;
+	}
+	
+	private class UpdateWriteListener implements ChannelFutureListener {
+		private ChannelHandlerContext ctx;
+		private ChannelState state;
+		private int bytes;
+		
+		private UpdateWriteListener(ChannelHandlerContext ctx, ChannelState state, int bytes) {
+			this.ctx = ctx;
+			this.state = state;
+			this.bytes = bytes;
+		}
+
+		@Override
+		public void operationComplete(ChannelFuture future) throws Exception {
+			releaseUpdates(ctx, state, bytes, future.isSuccess());
+		}
+	}
+	
+	private class ControlWriteListener implements ChannelFutureListener {
+		private long requested;
+		
+		private ControlWriteListener(long requested) {
+			this.requested = requested;
+		}
+
+		@Override
+		public void operationComplete(ChannelFuture future) throws Exception {
+			recordControlMessageDelay(System.nanoTime() - requested);
+		}
+	}
+	
+	private ChannelLocal<ChannelState> channelStates = new ChannelLocal<ChannelState>();
+	private volatile int updateBytesInFlight = DEFAULT_UPDATE_BYTES_IN_FLIGHT;
+	
+	private AtomicLong controlMessages = new AtomicLong();
+	private AtomicLong completedControlMessages = new AtomicLong();
+	private AtomicLong overtakingControlMessages = new AtomicLong();
+	private AtomicLong heldUpdates = new AtomicLong();
+	private AtomicLong totalControlMessageDelay = new AtomicLong();
+	private AtomicLong maximumControlMessageDelay = new AtomicLong();
+	
+	/* (non-Javadoc)
+	 * @see org.jboss.netty.channel.SimpleChannelHandler#writeRequested(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.MessageEvent)
+	 */
+	@Override
+	public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+		if(!(e.getMessage() instanceof ChannelBuffer)) {
+			ctx.sendDownstream(e);
+		} else if(messageType((ChannelBuffer)e.getMessage()) == BGPv4Constants.BGP_PACKET_TYPE_UPDATE) {
+			writeUpdate(ctx, e);
+		} else {
+			writeControlMessage(ctx, e);
+		}
+	}
+
+	/**
+	 * Fail the UPDATE writes held back for the closed channel
+	 */
+	@Override
+	public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+		ChannelState state = channelStates.remove(ctx.getChannel());
+		
+		if(state != null) {
+			List<MessageEvent> dropped;
+			
+			synchronized (state) {
+				dropped = new LinkedList<MessageEvent>(state.heldUpdates);
+				state.heldUpdates.clear();
+			}
+			
+			for(MessageEvent event : dropped)
+				event.getFuture().setFailure(new ClosedChannelException());
+		}
+		
+		ctx.sendUpstream(e);
+	}
+	
+	/**
+	 * obtain the BGP message type of an encoded packet. A buffer holding several packets is classified by the first one.
+	 * 
+	 * @return the message type or -1 if the buffer does not hold a complete packet header
+	 */
+	static int messageType(ChannelBuffer buffer) {
+		if(buffer.readableBytes() < BGPv4Constants.BGP_PACKET_HEADER_LENGTH)
+			return -1;
+		
+		return buffer.getUnsignedByte(buffer.readerIndex() + BGPv4Constants.BGP_PACKET_HEADER_LENGTH - 1);
+	}
+	
+	private void writeControlMessage(ChannelHandlerContext ctx, MessageEvent e) {
+		ChannelState state = channelStates.get(ctx.getChannel());
+		
+		controlMessages.incrementAndGet();
+		if(state != null) {
+			synchronized (state) {
+				if(!state.heldUpdates.isEmpty())
+					overtakingControlMessages.incrementAndGet();
+			}
+		}
+		
+		e.getFuture().addListener(new ControlWriteListener(System.nanoTime()));
+		ctx.sendDownstream(e);
+	}
+	
+	private void writeUpdate(ChannelHandlerContext ctx, MessageEvent e) {
+		ChannelState state = state(ctx);
+		int bytes = ((ChannelBuffer)e.getMessage()).readableBytes();
+		
+		// the UPDATE writes are passed on while holding the lock, thus they reach the transport in order
+		synchronized (state) {
+			if(state.heldUpdates.isEmpty() && state.updateBytesInFlight < updateBytesInFlight) {
+				forwardUpdate(ctx, state, e, bytes);
+			} else {
+				state.heldUpdates.add(e);
+				heldUpdates.incrementAndGet();
+			}
+		}
+	}
+	
+	private void forwardUpdate(ChannelHandlerContext ctx, ChannelState state, MessageEvent e, int bytes) {
+		state.updateBytesInFlight += bytes;
+		e.getFuture().addListener(new UpdateWriteListener(ctx, state, bytes));
+		ctx.sendDownstream(e);
+	}
+	
+	private void releaseUpdates(ChannelHandlerContext ctx, ChannelState state, int bytes, boolean success) {
+		List<MessageEvent> dropped = null;
+		
+		synchronized (state) {
+			state.updateBytesInFlight -= bytes;
+			
+			if(success) {
+				while(!state.heldUpdates.isEmpty() && state.updateBytesInFlight < updateBytesInFlight) {
+					MessageEvent e = state.heldUpdates.removeFirst();
+					
+					forwardUpdate(ctx, state, e, ((ChannelBuffer)e.getMessage()).readableBytes());
+				}
+			} else {
+				dropped = new LinkedList<MessageEvent>(state.heldUpdates);
+				state.heldUpdates.clear();
+			}
+		}
+		
+		if(dropped != null) {
+			for(MessageEvent event : dropped)
+				event.getFuture().setFailure(new ClosedChannelException());
+		}
+	}
+	
+	private ChannelState state(ChannelHandlerContext ctx) {
+		ChannelState state = channelStates.get(ctx.getChannel());
+		
+		if(state == null) {
+			ChannelState created = new ChannelState();
+			
+			state = channelStates.setIfAbsent(ctx.getChannel(), created);
+			if(state == null)
+				state = created;
+		}
+		
+		return state;
+	}
+	
+	private void recordControlMessageDelay(long delay) {
+		long maximum;
+		
+		totalControlMessageDelay.addAndGet(delay);
+		completedControlMessages.incrementAndGet();
+		
+		do {
+			maximum = maximumControlMessageDelay.get();
+		} while(delay > maximum && !maximumControlMessageDelay.compareAndSet(maximum, delay));
+	}
+	
+	/**
+	 * @return the number of UPDATE bytes per channel handed to the transport
+	 */
+	public int getUpdateBytesInFlight() {
+		return updateBytesInFlight;
+	}
+
+	/**
+	 * @param updateBytesInFlight the number of UPDATE bytes per channel handed to the transport
+	 */
+	void setUpdateBytesInFlight(int updateBytesInFlight) {
+		if(updateBytesInFlight <= 0)
+			throw new IllegalArgumentException("Illegal number of UPDATE bytes in flight given: " + updateBytesInFlight);
+		
+		this.updateBytesInFlight = updateBytesInFlight;
+	}
+	
+	/**
+	 * @return the number of control messages written
+	 */
+	public long getControlMessages() {
+		return controlMessages.get();
+	}
+	
+	/**
+	 * @return the number of control messages written while UPDATE packets were held back
+	 */
+	public long getOvertakingControlMessages() {
+		return overtakingControlMessages.get();
+	}
+	
+	/**
+	 * @return the number of UPDATE writes held back
+	 */
+	public long getHeldUpdates() {
+		return heldUpdates.get();
+	}
+	
+	/**
+	 * @return the average time from the write request of a control message to the completion of the write in 
+	 * nanoseconds
+	 */
+	public long getAverageControlMessageDelay() {
+		long messages = completedControlMessages.get();
+		
+		return (messages > 0) ? totalControlMessageDelay.get() / messages : 0;
+	}
+	
+	/**
+	 * @return the maximum time from the write request of a control message to the completion of the write in 
+	 * nanoseconds
+	 */
+	public long getMaximumControlMessageDelay() {
+		return maximumControlMessageDelay.get();
+	}
+	
+	/**
+	 * reset the statistics
+	 */
+	public void resetStatistics() {
+		controlMessages.set(0);
+		completedControlMessages.set(0);
+		overtakingControlMessages.set(0);
+		heldUpdates.set(0);
+		totalControlMessageDelay.set(0);
+		maximumControlMessageDelay.set(0);
+	}
+}
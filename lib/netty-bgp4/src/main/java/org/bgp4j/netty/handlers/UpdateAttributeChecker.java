@@ -17,23 +17,14 @@
  */
 package org.bgp4j.netty.handlers;
 
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
-import org.bgp4j.net.ASTypeAware;
-import org.bgp4j.net.attributes.ASPathAttribute;
-import org.bgp4j.net.attributes.LocalPrefPathAttribute;
-import org.bgp4j.net.attributes.NextHopPathAttribute;
-import org.bgp4j.net.attributes.OriginPathAttribute;
+import org.bgp4j.net.ASType;
 import org.bgp4j.net.attributes.PathAttribute;
-import org.bgp4j.netty.BGPv4Constants;
 import org.bgp4j.netty.PeerConnectionInformation;
 import org.bgp4j.netty.PeerConnectionInformationAware;
 import org.bgp4j.netty.protocol.NotificationPacket;
@@ -41,6 +32,7 @@ import org.bgp4j.netty.protocol.update.AttributeFlagsNotificationPacket;
 import org.bgp4j.netty.protocol.update.MalformedAttributeListNotificationPacket;
 import org.bgp4j.netty.protocol.update.MissingWellKnownAttributeNotificationPacket;
 import org.bgp4j.netty.protocol.update.PathAttributeCodec;
+import org.bgp4j.netty.protocol.update.PathAttributeValidation;
 import org.bgp4j.netty.protocol.update.UpdatePacket;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
@@ -58,32 +50,6 @@ import org.slf4j.Logger;
 public class UpdateAttributeChecker extends SimpleChannelUpstreamHandler {	
 	private @Inject Logger log;
 	
-	private Set<Class<? extends PathAttribute>> mandatoryIBGPAttributes = new HashSet<Class<? extends PathAttribute>>();
-	private Set<Class<? extends PathAttribute>> mandatoryEBGPAttributes = new HashSet<Class<? extends PathAttribute>>();
-	private Map<Class<? extends PathAttribute>, Integer> as2ClazzCodeMap = new HashMap<Class<? extends PathAttribute>, Integer>();
-	private Map<Class<? extends PathAttribute>, Integer> as4ClazzCodeMap = new HashMap<Class<? extends PathAttribute>, Integer>();
-	
-	private UpdateAttributeChecker() {
-		mandatoryEBGPAttributes.add(OriginPathAttribute.class);
-		mandatoryEBGPAttributes.add(ASPathAttribute.class);
-		mandatoryEBGPAttributes.add(NextHopPathAttribute.class);
-
-		mandatoryIBGPAttributes.add(OriginPathAttribute.class);
-		mandatoryIBGPAttributes.add(ASPathAttribute.class);
-		mandatoryIBGPAttributes.add(NextHopPathAttribute.class);
-		mandatoryIBGPAttributes.add(LocalPrefPathAttribute.class);
-		
-		as2ClazzCodeMap.put(ASPathAttribute.class, BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_AS_PATH);
-		as2ClazzCodeMap.put(LocalPrefPathAttribute.class, BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_LOCAL_PREF);
-		as2ClazzCodeMap.put(NextHopPathAttribute.class, BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_NEXT_HOP);
-		as2ClazzCodeMap.put(OriginPathAttribute.class, BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_ORIGIN);
-
-		as4ClazzCodeMap.put(ASPathAttribute.class, BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_AS4_PATH);
-		as4ClazzCodeMap.put(LocalPrefPathAttribute.class, BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_LOCAL_PREF);
-		as4ClazzCodeMap.put(NextHopPathAttribute.class, BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_NEXT_HOP);
-		as4ClazzCodeMap.put(OriginPathAttribute.class, BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_ORIGIN);
-}
-	
 	@Override
 	public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
 		boolean sentUpstream = false;
@@ -91,100 +57,41 @@ public class UpdateAttributeChecker extends SimpleChannelUpstreamHandler {
 		if(e.getMessage() instanceof UpdatePacket) {
 			PeerConnectionInformation connInfo = (PeerConnectionInformation)ctx.getAttachment();
 			UpdatePacket update = (UpdatePacket)e.getMessage();
-			List<PathAttribute> attributeFlagsErrorList = new LinkedList<PathAttribute>();
-			List<Class<? extends PathAttribute>> missingWellKnownList = new LinkedList<Class<? extends PathAttribute>>();
-			Set<Class<? extends PathAttribute>> givenAttributes = new HashSet<Class<? extends PathAttribute>>();
+			PathAttributeValidation validation = update.getAttributeValidation();
+			boolean internalConnection = connInfo.isIBGPConnection();
+			ASType asType = connInfo.getAsTypeInUse();
 			
-			// check if passed optional / transitive bits match the presettings of the attribute type
-			for(PathAttribute attribute : update.getPathAttributes()) {
-				boolean badAttr = false;
-
-				givenAttributes.add(attribute.getClass());
-				
-				switch(attribute.getCategory()) {
-				case WELL_KNOWN_MANDATORY:
-				case WELL_KNOWN_DISCRETIONARY:
-					badAttr = attribute.isOptional() || !attribute.isTransitive();
-					break;
-				case OPTIONAL_NON_TRANSITIVE:
-					badAttr = !attribute.isOptional() || attribute.isTransitive();
-					break;
-				case OPTIONAL_TRANSITIVE:
-					badAttr = !attribute.isOptional() || !attribute.isTransitive();
-					break;
-				}
-				
-				if(badAttr) {
-					log.info("detected attribute " + attribute + " with invalid flags");
-					
-					attributeFlagsErrorList.add(attribute);
-				}
-			}
+			// the checks are made while decoding the attributes, only packets which have not been decoded are checked here
+			if(validation == null)
+				validation = PathAttributeValidation.of(update.getPathAttributes());
 			
-			// if we have any bad attribute, generate notification message and leave
-			if(attributeFlagsErrorList.size() > 0) {
+			if(validation.isValid(internalConnection, asType)) {
+				sentUpstream = true;
+			} else if(validation.hasAttributeFlagsErrors()) {
+				// check if passed optional / transitive bits match the presettings of the attribute type
+				for(PathAttribute attribute : validation.getAttributeFlagsErrors())
+					log.info("detected attribute " + attribute + " with invalid flags");
+				
 				NotificationHelper.sendNotification(ctx, 
-						new AttributeFlagsNotificationPacket(serializeAttributes(attributeFlagsErrorList)), 
+						new AttributeFlagsNotificationPacket(serializeAttributes(validation.getAttributeFlagsErrors())), 
 						new BgpEventFireChannelFutureListener(ctx));
-			} else {
+			} else if(validation.isMissingWellKnownAttributes(internalConnection)) {
 				// check presence of mandatory attributes
-				Set<Class<? extends PathAttribute>> mandatoryAttributes;
-
-				if (connInfo.isIBGPConnection())
-					mandatoryAttributes = mandatoryIBGPAttributes;
-				else
-					mandatoryAttributes = mandatoryEBGPAttributes;
+				List<NotificationPacket> notifications = new LinkedList<NotificationPacket>();
 
-				for (Class<? extends PathAttribute> attrClass : mandatoryAttributes) {
-					if (!givenAttributes.contains(attrClass)) {
-						missingWellKnownList.add(attrClass);
-					}
-				}
-
-				if (missingWellKnownList.size() > 0) {
-					Map<Class<? extends PathAttribute>, Integer> codeMap;
-					List<NotificationPacket> notifications = new LinkedList<NotificationPacket>();
-
-					if(connInfo.isAS4OctetsInUse())
-						codeMap = as4ClazzCodeMap;
-					else
-						codeMap = as2ClazzCodeMap;
-
-					
-					if(connInfo.isAS4OctetsInUse())
-						codeMap = as4ClazzCodeMap;
-					else
-						codeMap = as2ClazzCodeMap;
-						
-					for(Class<? extends PathAttribute> attrClass : missingWellKnownList) {
-						int code = codeMap.get(attrClass);
-						
-						log.info("detected missing well-known atribute, type " + code);
-						notifications.add(new MissingWellKnownAttributeNotificationPacket(code));
-					}
-					
-					NotificationHelper.sendNotifications(ctx, 
-							notifications, 
-							new BgpEventFireChannelFutureListener(ctx));
-				} else {
-					boolean haveBougsWidth = false;
-					
-					// check path attributes for AS number width (2 or 4) settings which mismatch the connection configuration
-					for(PathAttribute attribute : update.getPathAttributes()) {
-						if(attribute instanceof ASTypeAware) {
-							if(((ASTypeAware)attribute).getAsType() != connInfo.getAsTypeInUse()) {
-								haveBougsWidth = true;
-							}
-						}
-					}
-					
-					if(haveBougsWidth) {
-						NotificationHelper.sendNotification(ctx, 
-								new MalformedAttributeListNotificationPacket(), 
-								new BgpEventFireChannelFutureListener(ctx));
-					} else
-						sentUpstream = true;
+				for(int code : validation.getMissingWellKnownAttributeCodes(internalConnection, asType)) {
+					log.info("detected missing well-known atribute, type " + code);
+					notifications.add(new MissingWellKnownAttributeNotificationPacket(code));
 				}
+				
+				NotificationHelper.sendNotifications(ctx, 
+						notifications, 
+						new BgpEventFireChannelFutureListener(ctx));
+			} else {
+				// path attributes with AS number width (2 or 4) settings which mismatch the connection configuration
+				NotificationHelper.sendNotification(ctx, 
+						new MalformedAttributeListNotificationPacket(), 
+						new BgpEventFireChannelFutureListener(ctx));
 			}
 		} else
 			sentUpstream = true;
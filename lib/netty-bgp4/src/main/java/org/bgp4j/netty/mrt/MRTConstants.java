@@ -0,0 +1,57 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.mrt.MRTConstants.java 
+ */
+package org.bgp4j.netty.mrt;
+
+/**
+ * Constant values defined in the MRT routing information export format (RFC 6396)
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class MRTConstants {
+
+	/** MRT common header length: timestamp, type, subtype and length */
+	public static final int MRT_HEADER_LENGTH = 12;
+	
+	/** MRT record type for RIB dumps */
+	public static final int MRT_TYPE_TABLE_DUMP_V2 = 13;
+	
+	/** TABLE_DUMP_V2 subtype of the peer index table preceding the RIB records */
+	public static final int MRT_SUBTYPE_PEER_INDEX_TABLE = 1;
+	
+	/** TABLE_DUMP_V2 subtype of IPv4 unicast RIB records */
+	public static final int MRT_SUBTYPE_RIB_IPV4_UNICAST = 2;
+	
+	/** TABLE_DUMP_V2 subtype of IPv4 multicast RIB records */
+	public static final int MRT_SUBTYPE_RIB_IPV4_MULTICAST = 3;
+	
+	/** TABLE_DUMP_V2 subtype of IPv6 unicast RIB records */
+	public static final int MRT_SUBTYPE_RIB_IPV6_UNICAST = 4;
+	
+	/** TABLE_DUMP_V2 subtype of IPv6 multicast RIB records */
+	public static final int MRT_SUBTYPE_RIB_IPV6_MULTICAST = 5;
+	
+	/** TABLE_DUMP_V2 subtype of RIB records of any other address family */
+	public static final int MRT_SUBTYPE_RIB_GENERIC = 6;
+	
+	/** peer type flag: the peer address is an IPv6 address */
+	public static final int MRT_PEER_TYPE_IPV6_BIT = 0x01;
+	
+	/** peer type flag: the peer AS number is a 4-octet AS number */
+	public static final int MRT_PEER_TYPE_AS4_BIT = 0x02;
+}
@@ -0,0 +1,385 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.mrt.TableDumpV2Reader.java 
+ */
+package org.bgp4j.netty.mrt;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.bgp4j.net.ASType;
+import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.net.BinaryNextHop;
+import org.bgp4j.net.InetAddressNextHop;
+import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.NextHop;
+import org.bgp4j.net.PathSegment;
+import org.bgp4j.net.attributes.ASPathAttribute;
+import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.netty.BGPv4Constants;
+import org.bgp4j.netty.BoundedLRUCache;
+import org.bgp4j.netty.protocol.update.PathSegmentTypeCodec;
+import org.bgp4j.netty.protocol.update.UpdatePacketDecoder;
+import org.bgp4j.rib.PathAttributeSet;
+import org.bgp4j.rib.Route;
+import org.bgp4j.rib.RoutingInformationBase;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * Import the routes held in a MRT TABLE_DUMP_V2 file (RFC 6396) into a routing information base.
+ * 
+ * Only the RIB records matching the address family of the RIB are imported, all other records are skipped. The first
+ * RIB entry of each record is imported, additional entries learned from other peers are ignored. The routes are bulk 
+ * loaded into the RIB in batches without firing routing events, the import is meant to restore a RIB before the RIB
+ * is put into service.
+ * 
+ * The AS_PATH attribute is imported with 2-octet AS numbers if all AS numbers fit into two octets and with 4-octet 
+ * AS numbers otherwise. The path attributes are decoded once per distinct encoded attribute block.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class TableDumpV2Reader {
+
+	/** number of routes loaded into the RIB in one batch */
+	public static final int LOAD_BATCH_SIZE = 4096;
+	
+	private static final int ATTRIBUTE_CACHE_SIZE = 1024;
+
+	/** upper bound for the length of a single record, larger values are considered to be a corrupted file */
+	private static final int MAX_RECORD_LENGTH = 16*1024*1024;
+	
+	private @Inject UpdatePacketDecoder decoder;
+	
+	/**
+	 * Import the routes held in a dump file into the RIB.
+	 * 
+	 * @param file the dump file
+	 * @param rib the RIB to load the routes into
+	 * @return the number of routes imported
+	 * @throws IOException the file cannot be read or is malformed
+	 */
+	public int importRoutingInformationBase(Path file, RoutingInformationBase rib) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		
+		try {
+			return importRoutingInformationBase(channel, rib);
+		} finally {
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Import the routes read from a channel into the RIB.
+	 * 
+	 * @param channel the channel to read the dump from
+	 * @param rib the RIB to load the routes into
+	 * @return the number of routes imported
+	 * @throws IOException the channel cannot be read or the dump is malformed
+	 */
+	public int importRoutingInformationBase(ReadableByteChannel channel, RoutingInformationBase rib) throws IOException {
+		RecordReader reader = new RecordReader(rib.getAddressFamilyKey());
+		ByteBuffer buffer = ByteBuffer.allocateDirect(TableDumpV2Writer.CHUNK_SIZE);
+		List<Route> batch = new ArrayList<Route>(LOAD_BATCH_SIZE);
+		boolean endOfFile = false;
+		int numberOfRoutes = 0;
+		
+		buffer.limit(0);
+		
+		while(true) {
+			int recordLength = 0;
+			
+			if(buffer.remaining() >= MRTConstants.MRT_HEADER_LENGTH) {
+				recordLength = buffer.getInt(buffer.position() + 8);
+				
+				if(recordLength < 0 || recordLength > MAX_RECORD_LENGTH)
+					throw new IOException("malformed MRT record length " + recordLength);
+				
+				if(buffer.remaining() >= MRTConstants.MRT_HEADER_LENGTH + recordLength) {
+					Route route = reader.readRecord(buffer, recordLength);
+					
+					if(route != null) {
+						batch.add(route);
+						numberOfRoutes++;
+						
+						if(batch.size() == LOAD_BATCH_SIZE) {
+							rib.loadRoutes(batch);
+							batch.clear();
+						}
+					}
+					continue;
+				}
+			}
+			
+			if(endOfFile) {
+				if(buffer.hasRemaining())
+					throw new IOException("truncated MRT record at end of dump");
+				break;
+			}
+
+			if(buffer.capacity() < MRTConstants.MRT_HEADER_LENGTH + recordLength) {
+				ByteBuffer larger = ByteBuffer.allocateDirect(MRTConstants.MRT_HEADER_LENGTH + recordLength);
+				
+				larger.put(buffer);
+				larger.flip();
+				buffer = larger;
+			}
+
+			buffer.compact();
+			endOfFile = (channel.read(buffer) < 0);
+			buffer.flip();
+		}
+		
+		if(batch.size() > 0)
+			rib.loadRoutes(batch);
+		
+		return numberOfRoutes;
+	}
+	
+	/**
+	 * The path attributes and next hop decoded from one encoded attribute block
+	 * 
+	 * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+	 *
+	 */
+	private static class DecodedAttributes {
+		private PathAttributeSet pathAttributes;
+		private NextHop nextHop;
+	}
+	
+	/**
+	 * Decodes the records of one dump
+	 * 
+	 * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+	 *
+	 */
+	private class RecordReader {
+		private AddressFamilyKey addressFamilyKey;
+		private int subtype;
+		
+		/** keyed by the encoded attribute block, lookups are done with a view into the record buffer */
+		private BoundedLRUCache<ByteBuffer, DecodedAttributes> attributeCache = new BoundedLRUCache<ByteBuffer, DecodedAttributes>(ATTRIBUTE_CACHE_SIZE);
+		
+		RecordReader(AddressFamilyKey addressFamilyKey) {
+			this.addressFamilyKey = addressFamilyKey;
+			this.subtype = TableDumpV2Writer.ribSubtype(addressFamilyKey);
+		}
+		
+		/**
+		 * read the record at the buffer position and advance the buffer position past the record
+		 * 
+		 * @return the route held in the record or <code>null</code> if the record is skipped
+		 */
+		Route readRecord(ByteBuffer buffer, int recordLength) throws IOException {
+			int start = buffer.position();
+			int type = buffer.getShort(start + 4) & 0xffff;
+			int recordSubtype = buffer.getShort(start + 6) & 0xffff;
+			ByteBuffer record = buffer.duplicate();
+			
+			record.position(start + MRTConstants.MRT_HEADER_LENGTH);
+			record.limit(start + MRTConstants.MRT_HEADER_LENGTH + recordLength);
+			buffer.position(start + MRTConstants.MRT_HEADER_LENGTH + recordLength);
+			
+			if(type != MRTConstants.MRT_TYPE_TABLE_DUMP_V2 || recordSubtype != subtype)
+				return null;
+			
+			try {
+				return readRibRecord(record);
+			} catch(RuntimeException e) {
+				throw new IOException("malformed MRT RIB record", e);
+			}
+		}
+		
+		private Route readRibRecord(ByteBuffer record) throws IOException {
+			record.getInt(); // sequence number
+			
+			if(subtype == MRTConstants.MRT_SUBTYPE_RIB_GENERIC) {
+				int afi = record.getShort() & 0xffff;
+				int safi = record.get() & 0xff;
+				
+				if(afi != addressFamilyKey.getAddressFamily().toCode() || safi != addressFamilyKey.getSubsequentAddressFamily().toCode())
+					return null;
+			}
+			
+			int prefixLength = record.get() & 0xff;
+			byte[] prefix = null;
+			
+			if(prefixLength > 0) {
+				prefix = new byte[NetworkLayerReachabilityInformation.calculateOctetsForPrefixLength(prefixLength)];
+				record.get(prefix);
+			}
+			
+			NetworkLayerReachabilityInformation nlri = new NetworkLayerReachabilityInformation(prefixLength, prefix);
+			
+			if((record.getShort() & 0xffff) == 0) // entry count
+				return null;
+			
+			record.getShort(); // peer index
+			record.getInt(); // originated time
+			
+			int attributesLength = record.getShort() & 0xffff;
+			
+			if(attributesLength > record.remaining())
+				throw new IOException("path attributes of prefix " + nlri + " exceed the RIB record");
+			
+			ByteBuffer attributes = record.slice();
+			
+			attributes.limit(attributesLength);
+			
+			DecodedAttributes decoded = decodedAttributes(attributes);
+			
+			return new Route(addressFamilyKey, nlri, decoded.pathAttributes, decoded.nextHop);
+		}
+		
+		private DecodedAttributes decodedAttributes(ByteBuffer attributes) throws IOException {
+			DecodedAttributes decoded = attributeCache.get(attributes);
+			
+			if(decoded == null) {
+				ByteBuffer key = ByteBuffer.allocate(attributes.remaining());
+				
+				key.put(attributes.duplicate());
+				key.flip();
+				
+				decoded = decodeAttributes(attributes);
+				attributeCache.putIfAbsent(key, decoded);
+			}
+			
+			return decoded;
+		}
+		
+		/**
+		 * decode an attribute block. The AS_PATH, NEXT_HOP and MP_REACH_NLRI attributes are encoded differently in a
+		 * RIB entry, all other attributes are passed to the update packet decoder.
+		 */
+		private DecodedAttributes decodeAttributes(ByteBuffer attributes) throws IOException {
+			DecodedAttributes decoded = new DecodedAttributes();
+			List<PathAttribute> pathAttributes = new LinkedList<PathAttribute>();
+			ByteBuffer others = ByteBuffer.allocate(attributes.remaining());
+			
+			while(attributes.hasRemaining()) {
+				int start = attributes.position();
+				int flagsType = attributes.getShort() & 0xffff;
+				int valueLength;
+				
+				if((flagsType & BGPv4Constants.BGP_PATH_ATTRIBUTE_EXTENDED_LENGTH_BIT) != 0)
+					valueLength = attributes.getShort() & 0xffff;
+				else
+					valueLength = attributes.get() & 0xff;
+				
+				if(valueLength > attributes.remaining())
+					throw new IOException("path attribute exceeds the attribute block");
+				
+				ByteBuffer value = attributes.slice();
+				
+				value.limit(valueLength);
+				attributes.position(attributes.position() + valueLength);
+				
+				switch(flagsType & BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_MASK) {
+				case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_AS_PATH:
+					pathAttributes.add(decodeASPath(value, (flagsType & BGPv4Constants.BGP_PATH_ATTRIBUTE_PARTIAL_BIT) != 0));
+					break;
+				case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_NEXT_HOP:
+					decoded.nextHop = decodeNextHop(value);
+					break;
+				case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_MP_REACH_NLRI:
+					value.limit(1 + (value.get() & 0xff));
+					decoded.nextHop = decodeNextHop(value);
+					break;
+				default:
+					ByteBuffer attribute = attributes.duplicate();
+					
+					attribute.limit(attributes.position());
+					attribute.position(start);
+					others.put(attribute);
+					break;
+				}
+			}
+			
+			others.flip();
+			if(others.hasRemaining()) {
+				try {
+					pathAttributes.addAll(decoder.decodePathAttributes(ChannelBuffers.wrappedBuffer(others)));
+				} catch(RuntimeException e) {
+					throw new IOException("failed to decode path attributes", e);
+				}
+			}
+			
+			decoded.pathAttributes = PathAttributeSet.valueOf(pathAttributes);
+			
+			return decoded;
+		}
+		
+		private ASPathAttribute decodeASPath(ByteBuffer value, boolean partial) {
+			List<Integer> segmentTypes = new LinkedList<Integer>();
+			List<int[]> segmentAses = new LinkedList<int[]>();
+			List<PathSegment> segments = new LinkedList<PathSegment>();
+			boolean fourOctets = false;
+			
+			while(value.hasRemaining()) {
+				int segmentType = value.get() & 0xff;
+				int[] ases = new int[value.get() & 0xff];
+				
+				for(int i=0; i<ases.length; i++) {
+					ases[i] = value.getInt();
+					
+					if((ases[i] & 0xffff0000) != 0)
+						fourOctets = true;
+				}
+				
+				segmentTypes.add(segmentType);
+				segmentAses.add(ases);
+			}
+			
+			ASType asType = fourOctets ? ASType.AS_NUMBER_4OCTETS : ASType.AS_NUMBER_2OCTETS;
+			Iterator<int[]> asesIterator = segmentAses.iterator();
+			
+			for(int segmentType : segmentTypes)
+				segments.add(new PathSegment(asType, PathSegmentTypeCodec.fromCode(segmentType), asesIterator.next()));
+			
+			ASPathAttribute attr = new ASPathAttribute(asType, segments);
+			
+			attr.setPartial(partial);
+			
+			return attr;
+		}
+		
+		private NextHop decodeNextHop(ByteBuffer value) throws IOException {
+			byte[] address = new byte[value.remaining()];
+			
+			value.get(address);
+			
+			if(address.length == 4)
+				return new InetAddressNextHop<Inet4Address>((Inet4Address)InetAddress.getByAddress(address));
+			else if(address.length == 16)
+				return new InetAddressNextHop<Inet6Address>((Inet6Address)InetAddress.getByAddress(address));
+			else
+				return new BinaryNextHop(address);
+		}
+	}
+}
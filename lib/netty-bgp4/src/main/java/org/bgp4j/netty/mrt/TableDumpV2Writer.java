@@ -0,0 +1,359 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.mrt.TableDumpV2Writer.java 
+ */
+package org.bgp4j.netty.mrt;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+
+import org.bgp4j.net.AddressFamily;
+import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.net.BinaryNextHop;
+import org.bgp4j.net.InetAddressNextHop;
+import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.NextHop;
+import org.bgp4j.net.PathSegment;
+import org.bgp4j.net.RIBSide;
+import org.bgp4j.net.SubsequentAddressFamily;
+import org.bgp4j.net.attributes.ASPathAttribute;
+import org.bgp4j.net.attributes.MultiProtocolReachableNLRI;
+import org.bgp4j.net.attributes.MultiProtocolUnreachableNLRI;
+import org.bgp4j.net.attributes.NextHopPathAttribute;
+import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.netty.BGPv4Constants;
+import org.bgp4j.netty.BoundedLRUCache;
+import org.bgp4j.netty.protocol.update.PathAttributeCodec;
+import org.bgp4j.netty.protocol.update.PathSegmentTypeCodec;
+import org.bgp4j.rib.Route;
+import org.bgp4j.rib.RoutingInformationBase;
+import org.bgp4j.rib.RoutingInformationBaseVisitor;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Export the routes of a routing information base into a MRT TABLE_DUMP_V2 file (RFC 6396).
+ * 
+ * The dump starts with a PEER_INDEX_TABLE record holding one peer entry which stands for the exported RIB. It is 
+ * followed by one RIB record per prefix. IPv4 and IPv6 unicast and multicast prefixes are written in the AFI/SAFI 
+ * specific RIB record subtypes, the prefixes of other address families in RIB_GENERIC records. The AS_PATH attribute 
+ * is always written with 4-octet AS numbers as mandated by RFC 6396. The route next hop is written as a NEXT_HOP 
+ * attribute for IPv4 next hops of IPv4 routes and as an abbreviated MP_REACH_NLRI attribute otherwise.
+ * 
+ * The records are assembled in a buffer which is written to the channel whenever it is full. The encoded path 
+ * attributes are cached by attribute set, routes sharing their path attributes are encoded only once.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class TableDumpV2Writer {
+
+	/** size of the buffer holding the encoded records before they are written to the channel */
+	public static final int CHUNK_SIZE = 1024*1024;
+	
+	private static final int ATTRIBUTE_CACHE_SIZE = 1024;
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private static final byte[] NO_BYTES = new byte[0];
+	
+	/**
+	 * Export the routes held in the RIB into a file. An existing file is overwritten.
+	 * 
+	 * @param rib the RIB to export
+	 * @param file the dump file
+	 * @return the number of routes exported
+	 * @throws IOException the file cannot be written
+	 */
+	public int exportRoutingInformationBase(RoutingInformationBase rib, Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, 
+				StandardOpenOption.TRUNCATE_EXISTING);
+		
+		try {
+			return exportRoutingInformationBase(rib, channel);
+		} finally {
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Export the routes held in the RIB into a channel. The routes are read from a consistent view of the RIB, 
+	 * modifications made to the RIB while the export is running are not exported.
+	 * 
+	 * @param rib the RIB to export
+	 * @param channel the channel to write the dump to
+	 * @return the number of routes exported
+	 * @throws IOException the channel cannot be written
+	 */
+	public int exportRoutingInformationBase(RoutingInformationBase rib, WritableByteChannel channel) throws IOException {
+		RecordWriter writer = new RecordWriter(rib.getAddressFamilyKey(), channel, (int)(System.currentTimeMillis() / 1000L));
+		
+		writer.writePeerIndexTable(rib.getPeerName());
+		rib.visitRoutingNodes(writer);
+		writer.finish();
+		
+		return writer.getNumberOfRoutes();
+	}
+	
+	/**
+	 * Obtain the RIB record subtype for an address family
+	 * 
+	 * @param afk the address family
+	 * @return the RIB record subtype
+	 */
+	static int ribSubtype(AddressFamilyKey afk) {
+		if(afk.getAddressFamily() == AddressFamily.IPv4) {
+			if(afk.getSubsequentAddressFamily() == SubsequentAddressFamily.NLRI_UNICAST_FORWARDING)
+				return MRTConstants.MRT_SUBTYPE_RIB_IPV4_UNICAST;
+			else if(afk.getSubsequentAddressFamily() == SubsequentAddressFamily.NLRI_MULTICAST_FORWARDING)
+				return MRTConstants.MRT_SUBTYPE_RIB_IPV4_MULTICAST;
+		} else if(afk.getAddressFamily() == AddressFamily.IPv6) {
+			if(afk.getSubsequentAddressFamily() == SubsequentAddressFamily.NLRI_UNICAST_FORWARDING)
+				return MRTConstants.MRT_SUBTYPE_RIB_IPV6_UNICAST;
+			else if(afk.getSubsequentAddressFamily() == SubsequentAddressFamily.NLRI_MULTICAST_FORWARDING)
+				return MRTConstants.MRT_SUBTYPE_RIB_IPV6_MULTICAST;
+		}
+		
+		return MRTConstants.MRT_SUBTYPE_RIB_GENERIC;
+	}
+	
+	/**
+	 * Writes the records of one dump into the channel
+	 * 
+	 * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+	 *
+	 */
+	private static class RecordWriter implements RoutingInformationBaseVisitor {
+		private AddressFamilyKey addressFamilyKey;
+		private int subtype;
+		private WritableByteChannel channel;
+		private int timestamp;
+		private ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+		private int sequenceNumber = 0;
+		private IOException failure;
+		
+		private BoundedLRUCache<Set<PathAttribute>, byte[]> attributeCache = new BoundedLRUCache<Set<PathAttribute>, byte[]>(ATTRIBUTE_CACHE_SIZE);
+		
+		RecordWriter(AddressFamilyKey addressFamilyKey, WritableByteChannel channel, int timestamp) {
+			this.addressFamilyKey = addressFamilyKey;
+			this.subtype = ribSubtype(addressFamilyKey);
+			this.channel = channel;
+			this.timestamp = timestamp;
+		}
+		
+		int getNumberOfRoutes() {
+			return sequenceNumber;
+		}
+		
+		/**
+		 * write the peer index table with one peer entry. The peer address, BGP identifier and AS number are not known
+		 * to the RIB and are written as zero.
+		 */
+		void writePeerIndexTable(String viewName) throws IOException {
+			byte[] name = (viewName != null) ? viewName.getBytes(UTF8) : NO_BYTES;
+			int length = 4 + 2 + name.length + 2 + 1 + 4 + 4 + 4;
+			
+			writeHeader(MRTConstants.MRT_SUBTYPE_PEER_INDEX_TABLE, length);
+			buffer.putInt(0); // collector BGP identifier
+			buffer.putShort((short)name.length);
+			buffer.put(name);
+			buffer.putShort((short)1); // peer count
+			buffer.put((byte)MRTConstants.MRT_PEER_TYPE_AS4_BIT);
+			buffer.putInt(0); // peer BGP identifier
+			buffer.putInt(0); // peer IPv4 address
+			buffer.putInt(0); // peer AS number
+		}
+
+		/* (non-Javadoc)
+		 * @see org.bgp4j.rib.RoutingInformationBaseVisitor#visitRouteNode(java.lang.String, org.bgp4j.net.RIBSide, org.bgp4j.rib.Route)
+		 */
+		@Override
+		public void visitRouteNode(String peerName, RIBSide side, Route route) {
+			if(failure != null)
+				return;
+			
+			try {
+				writeRibRecord(route);
+			} catch(IOException e) {
+				failure = e;
+			}
+		}
+		
+		/**
+		 * flush the buffered records to the channel and report a failure which occurred while visiting the RIB
+		 */
+		void finish() throws IOException {
+			if(failure != null)
+				throw failure;
+			
+			flush();
+		}
+		
+		private void writeRibRecord(Route route) throws IOException {
+			NetworkLayerReachabilityInformation nlri = route.getNlri();
+			int prefixOctets = NetworkLayerReachabilityInformation.calculateOctetsForPrefixLength(nlri.getPrefixLength());
+			byte[] attributes = encodedPathAttributes(route.getPathAttributes());
+			byte[] nextHop = encodedNextHop(route.getNextHop());
+			int attributesLength = attributes.length + nextHop.length;
+			int length = 4 + 1 + prefixOctets + 2 + 2 + 4 + 2 + attributesLength;
+			
+			if(attributesLength > 0xffff)
+				throw new IOException("path attributes of route " + nlri + " exceed the maximum length");
+			
+			if(subtype == MRTConstants.MRT_SUBTYPE_RIB_GENERIC)
+				length += 3;
+			
+			writeHeader(subtype, length);
+			buffer.putInt(sequenceNumber++);
+			if(subtype == MRTConstants.MRT_SUBTYPE_RIB_GENERIC) {
+				buffer.putShort((short)addressFamilyKey.getAddressFamily().toCode());
+				buffer.put((byte)addressFamilyKey.getSubsequentAddressFamily().toCode());
+			}
+			buffer.put((byte)nlri.getPrefixLength());
+			buffer.put(nlri.getPrefix(), 0, prefixOctets);
+			buffer.putShort((short)1); // entry count
+			buffer.putShort((short)0); // peer index
+			buffer.putInt(timestamp); // originated time
+			buffer.putShort((short)attributesLength);
+			buffer.put(attributes);
+			buffer.put(nextHop);
+		}
+		
+		private void writeHeader(int recordSubtype, int length) throws IOException {
+			if(buffer.remaining() < MRTConstants.MRT_HEADER_LENGTH + length) {
+				flush();
+				
+				if(buffer.capacity() < MRTConstants.MRT_HEADER_LENGTH + length)
+					buffer = ByteBuffer.allocateDirect(MRTConstants.MRT_HEADER_LENGTH + length);
+			}
+			
+			buffer.putInt(timestamp);
+			buffer.putShort((short)MRTConstants.MRT_TYPE_TABLE_DUMP_V2);
+			buffer.putShort((short)recordSubtype);
+			buffer.putInt(length);
+		}
+		
+		private void flush() throws IOException {
+			buffer.flip();
+			while(buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+		
+		/**
+		 * encode the path attributes of a route. The next hop related attributes are skipped, the next hop is taken 
+		 * from the route.
+		 */
+		private byte[] encodedPathAttributes(Set<PathAttribute> pathAttributes) {
+			byte[] encoded = attributeCache.get(pathAttributes);
+			
+			if(encoded == null) {
+				ByteBuffer attrs = ByteBuffer.allocate(0xffff);
+				
+				for(PathAttribute attr : pathAttributes) {
+					if(attr instanceof NextHopPathAttribute || attr instanceof MultiProtocolReachableNLRI 
+							|| attr instanceof MultiProtocolUnreachableNLRI)
+						continue;
+					
+					if(attr instanceof ASPathAttribute)
+						encodeASPath((ASPathAttribute)attr, attrs);
+					else {
+						ChannelBuffer buf = PathAttributeCodec.encodePathAttribute(attr);
+						
+						int length = buf.readableBytes();
+						
+						buf.readBytes(attrs.array(), attrs.position(), length);
+						attrs.position(attrs.position() + length);
+					}
+				}
+				
+				encoded = new byte[attrs.position()];
+				System.arraycopy(attrs.array(), 0, encoded, 0, encoded.length);
+				attributeCache.putIfAbsent(pathAttributes, encoded);
+			}
+			
+			return encoded;
+		}
+		
+		/**
+		 * encode the AS_PATH attribute with 4-octet AS numbers
+		 */
+		private void encodeASPath(ASPathAttribute attr, ByteBuffer attrs) {
+			int valueLength = 0;
+			int flags = BGPv4Constants.BGP_PATH_ATTRIBUTE_TRANSITIVE_BIT;
+			
+			for(PathSegment segment : attr.getPathSegments())
+				valueLength += 2 + 4 * segment.getAses().size();
+			
+			if(attr.isPartial())
+				flags |= BGPv4Constants.BGP_PATH_ATTRIBUTE_PARTIAL_BIT;
+			if(valueLength > 255)
+				flags |= BGPv4Constants.BGP_PATH_ATTRIBUTE_EXTENDED_LENGTH_BIT;
+			
+			attrs.putShort((short)(flags | BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_AS_PATH));
+			if(valueLength > 255)
+				attrs.putShort((short)valueLength);
+			else
+				attrs.put((byte)valueLength);
+			
+			for(PathSegment segment : attr.getPathSegments()) {
+				attrs.put((byte)PathSegmentTypeCodec.toCode(segment.getPathSegmentType()));
+				attrs.put((byte)segment.getAses().size());
+				for(int as : segment.getAses())
+					attrs.putInt(as);
+			}
+		}
+		
+		/**
+		 * encode the next hop as NEXT_HOP attribute for IPv4 next hops of IPv4 routes or as abbreviated MP_REACH_NLRI
+		 * attribute holding only the next hop length and address (RFC 6396, section 4.3.4)
+		 */
+		private byte[] encodedNextHop(NextHop nextHop) {
+			byte[] address;
+			byte[] encoded;
+			
+			if(nextHop instanceof InetAddressNextHop)
+				address = ((InetAddress)((InetAddressNextHop<?>)nextHop).getAddress()).getAddress();
+			else if(nextHop instanceof BinaryNextHop)
+				address = ((BinaryNextHop)nextHop).getAddress();
+			else
+				return NO_BYTES;
+
+			if(addressFamilyKey.getAddressFamily() == AddressFamily.IPv4 && address.length == 4) {
+				encoded = new byte[3 + address.length];
+				encoded[0] = (byte)(BGPv4Constants.BGP_PATH_ATTRIBUTE_TRANSITIVE_BIT >> 8);
+				encoded[1] = (byte)BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_NEXT_HOP;
+				encoded[2] = (byte)address.length;
+				System.arraycopy(address, 0, encoded, 3, address.length);
+			} else {
+				encoded = new byte[4 + address.length];
+				encoded[0] = (byte)(BGPv4Constants.BGP_PATH_ATTRIBUTE_OPTIONAL_BIT >> 8);
+				encoded[1] = (byte)BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_MP_REACH_NLRI;
+				encoded[2] = (byte)(1 + address.length);
+				encoded[3] = (byte)address.length;
+				System.arraycopy(address, 0, encoded, 4, address.length);
+			}
+			
+			return encoded;
+		}
+	}
+}
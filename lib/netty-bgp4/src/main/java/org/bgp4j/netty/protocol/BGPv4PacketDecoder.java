@@ -38,6 +38,33 @@ public class BGPv4PacketDecoder {
 	private @Inject UpdatePacketDecoder updatePacketDecoder;
 	private @Inject RouteRefreshPacketDecoder routeRefreshPacketDecoder;
 	
+	/**
+	 * Enable or disable lazy decoding of path attributes in received UPDATE packets
+	 * 
+	 * @param lazyAttributeDecoding
+	 */
+	public void setLazyAttributeDecoding(boolean lazyAttributeDecoding) {
+		updatePacketDecoder.setLazyAttributeDecoding(lazyAttributeDecoding);
+	}
+	
+	/**
+	 * Enable or disable caching of decoded path attribute blocks of received UPDATE packets
+	 * 
+	 * @param decodedAttributeCaching
+	 */
+	public void setDecodedAttributeCaching(boolean decodedAttributeCaching) {
+		updatePacketDecoder.setDecodedAttributeCaching(decodedAttributeCaching);
+	}
+	
+	/**
+	 * Enable or disable decoding of the prefixes of received UPDATE packets into packed prefix lists
+	 * 
+	 * @param packedPrefixDecoding
+	 */
+	public void setPackedPrefixDecoding(boolean packedPrefixDecoding) {
+		updatePacketDecoder.setPackedPrefixDecoding(packedPrefixDecoding);
+	}
+	
 	public BGPv4Packet decodePacket(ChannelBuffer buffer) {
 		int type = buffer.readUnsignedByte();
 		BGPv4Packet packet = null;
@@ -17,12 +17,13 @@
  */
 package org.bgp4j.netty.protocol.update;
 
+import java.nio.ByteBuffer;
+
 import org.bgp4j.net.ASType;
 import org.bgp4j.net.PathSegment;
 import org.bgp4j.net.attributes.ASPathAttribute;
 import org.bgp4j.netty.BGPv4Constants;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
 
 /**
  * @author Rainer Bieniek (Rainer.Bieniek@web.de)
@@ -41,9 +42,7 @@ public class ASPathAttributeCodecHandler extends PathAttributeCodecHandler<ASPat
 			return size;
 		}
 
-		static ChannelBuffer encodeValue(PathSegment segment) {
-			ChannelBuffer buffer = ChannelBuffers.buffer(getValueLength(segment));
-			
+		static void encodeValue(PathSegment segment, ChannelBuffer buffer) {
 			buffer.writeByte(PathSegmentTypeCodec.toCode(segment.getPathSegmentType()));
 			if(segment.getAses() != null && segment.getAses().size() > 0) {
 				buffer.writeByte(segment.getAses().size());
@@ -59,7 +58,6 @@ public class ASPathAttributeCodecHandler extends PathAttributeCodecHandler<ASPat
 			} else {
 				buffer.writeByte(0);
 			}
-			return buffer;
 		}
 
 	}
@@ -79,6 +77,11 @@ public class ASPathAttributeCodecHandler extends PathAttributeCodecHandler<ASPat
 	 */
 	@Override
 	public int valueLength(ASPathAttribute attr) {
+		ByteBuffer encoded = attr.getEncodedValue();
+		
+		if(encoded != null)
+			return encoded.remaining();
+		
 		int size = 0; // type + length field
 
 		if(attr.getPathSegments() != null) {
@@ -90,18 +93,21 @@ public class ASPathAttributeCodecHandler extends PathAttributeCodecHandler<ASPat
 	}
 
 	/* (non-Javadoc)
-	 * @see org.bgp4j.netty.protocol.update.PathAttributeCodecHandler#encodeValue(org.bgp4j.netty.protocol.update.PathAttribute)
+	 * @see org.bgp4j.netty.protocol.update.PathAttributeCodecHandler#encodeValue(org.bgp4j.netty.protocol.update.PathAttribute, org.jboss.netty.buffer.ChannelBuffer)
 	 */
 	@Override
-	public ChannelBuffer encodeValue(ASPathAttribute attr) {
-		ChannelBuffer buffer = ChannelBuffers.buffer(valueLength(attr));
+	public void encodeValue(ASPathAttribute attr, ChannelBuffer buffer) {
+		ByteBuffer encoded = attr.getEncodedValue();
+		
+		if(encoded != null) {
+			buffer.writeBytes(encoded);
+			return;
+		}
 		
 		if(attr.getPathSegments() != null && attr.getPathSegments().size() > 0) {
 			for(PathSegment seg : attr.getPathSegments())
-				buffer.writeBytes(PathSegmentCodec.encodeValue(seg));
+				PathSegmentCodec.encodeValue(seg, buffer);
 		}
-		
-		return buffer;
 	}
 
 }
@@ -20,7 +20,6 @@ package org.bgp4j.netty.protocol.update;
 import org.bgp4j.net.attributes.AggregatorPathAttribute;
 import org.bgp4j.netty.BGPv4Constants;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
 
 /**
  * @author Rainer Bieniek (Rainer.Bieniek@web.de)
@@ -44,17 +43,13 @@ public class AggregatorPathAttributeCodecHandler extends PathAttributeCodecHandl
 	}
 
 	@Override
-	public ChannelBuffer encodeValue(AggregatorPathAttribute attr) {
-		ChannelBuffer buffer = ChannelBuffers.buffer(valueLength(attr));
-		
+	public void encodeValue(AggregatorPathAttribute attr, ChannelBuffer buffer) {
 		if(attr.isFourByteASNumber())
 			buffer.writeInt(attr.getAsNumber());
 		else
 			buffer.writeShort(attr.getAsNumber());
 		
 		buffer.writeBytes(attr.getAggregator().getAddress());
-		
-		return buffer;
 	}
 
 }
@@ -45,11 +45,10 @@ public class AtomicAggregatePathAttributeCodecHandler extends
 	}
 
 	/* (non-Javadoc)
-	 * @see org.bgp4j.netty.protocol.update.PathAttributeCodecHandler#encodeValue(org.bgp4j.netty.protocol.update.PathAttribute)
+	 * @see org.bgp4j.netty.protocol.update.PathAttributeCodecHandler#encodeValue(org.bgp4j.netty.protocol.update.PathAttribute, org.jboss.netty.buffer.ChannelBuffer)
 	 */
 	@Override
-	public ChannelBuffer encodeValue(AtomicAggregatePathAttribute attr) {
-		return null;
+	public void encodeValue(AtomicAggregatePathAttribute attr, ChannelBuffer buffer) {
 	}
 
 }
@@ -20,7 +20,6 @@ package org.bgp4j.netty.protocol.update;
 import org.bgp4j.net.attributes.ClusterListPathAttribute;
 import org.bgp4j.netty.BGPv4Constants;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
 
 /**
  * @author Rainer Bieniek (Rainer.Bieniek@web.de)
@@ -51,16 +50,12 @@ public class ClusterListPathAttributeCodecHandler extends
 	}
 
 	/* (non-Javadoc)
-	 * @see org.bgp4j.netty.protocol.update.PathAttributeCodecHandler#encodeValue(org.bgp4j.netty.protocol.update.PathAttribute)
+	 * @see org.bgp4j.netty.protocol.update.PathAttributeCodecHandler#encodeValue(org.bgp4j.netty.protocol.update.PathAttribute, org.jboss.netty.buffer.ChannelBuffer)
 	 */
 	@Override
-	public ChannelBuffer encodeValue(ClusterListPathAttribute attr) {
-		ChannelBuffer buffer = ChannelBuffers.buffer(valueLength(attr));
-		
+	public void encodeValue(ClusterListPathAttribute attr, ChannelBuffer buffer) {
 		for(int clusterId : attr.getClusterIds())
 			buffer.writeInt(clusterId);
-		
-		return buffer;
 	}
 
 }
@@ -17,11 +17,12 @@
  */
 package org.bgp4j.netty.protocol.update;
 
+import java.nio.ByteBuffer;
+
 import org.bgp4j.net.attributes.CommunityMember;
 import org.bgp4j.net.attributes.CommunityPathAttribute;
 import org.bgp4j.netty.BGPv4Constants;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
 
 /**
  * @author Rainer Bieniek (Rainer.Bieniek@web.de)
@@ -43,6 +44,11 @@ public class CommunityPathAttributeCodecHandler extends
 	 */
 	@Override
 	public int valueLength(CommunityPathAttribute attr) {
+		ByteBuffer encoded = attr.getEncodedValue();
+		
+		if(encoded != null)
+			return encoded.remaining();
+		
 		int size = 4;
 		
 		if(attr.getMembers() != null)
@@ -52,11 +58,16 @@ public class CommunityPathAttributeCodecHandler extends
 	}
 
 	/* (non-Javadoc)
-	 * @see org.bgp4j.netty.protocol.update.PathAttributeCodecHandler#encodeValue(org.bgp4j.netty.protocol.update.PathAttribute)
+	 * @see org.bgp4j.netty.protocol.update.PathAttributeCodecHandler#encodeValue(org.bgp4j.netty.protocol.update.PathAttribute, org.jboss.netty.buffer.ChannelBuffer)
 	 */
 	@Override
-	public ChannelBuffer encodeValue(CommunityPathAttribute attr) {
-		ChannelBuffer buffer = ChannelBuffers.buffer(valueLength(attr));
+	public void encodeValue(CommunityPathAttribute attr, ChannelBuffer buffer) {
+		ByteBuffer encoded = attr.getEncodedValue();
+		
+		if(encoded != null) {
+			buffer.writeBytes(encoded);
+			return;
+		}
 		
 		buffer.writeInt(attr.getCommunity());
 		if(attr.getMembers() != null) {
@@ -65,8 +76,6 @@ public class CommunityPathAttributeCodecHandler extends
 				buffer.writeShort(member.getMemberFlags());
 			}
 		}
-		
-		return buffer;
 	}
 
 }
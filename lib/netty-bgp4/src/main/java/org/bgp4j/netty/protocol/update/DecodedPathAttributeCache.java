@@ -0,0 +1,174 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.protocol.update.DecodedPathAttributeCache.java 
+ */
+package org.bgp4j.netty.protocol.update;
+
+import java.util.List;
+
+import javax.inject.Singleton;
+
+import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.netty.BGPv4Constants;
+import org.bgp4j.netty.BoundedLRUCache;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * Bounded cache of decoded path attribute blocks shared by the UPDATE decoders of all connections. Peers sending a
+ * full table send far less distinct attribute blocks than UPDATE packets, an attribute block received before is
+ * looked up by the hash code and the content of the encoded octets instead of being decoded again.
+ * 
+ * Blocks carrying MP_REACH_NLRI or MP_UNREACH_NLRI attributes hold the prefixes of their packet and are not cached, 
+ * see {@link #isCacheable(ChannelBuffer)}. The least recently used block is evicted when the cache exceeds its 
+ * maximum size.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+@Singleton
+public class DecodedPathAttributeCache {
+
+	/** default maximum number of blocks held in the cache */
+	public static final int DEFAULT_MAXIMUM_SIZE = BoundedLRUCache.DEFAULT_MAXIMUM_SIZE;
+	
+	private BoundedLRUCache<ChannelBuffer, DecodedPathAttributes> blocks = new BoundedLRUCache<ChannelBuffer, DecodedPathAttributes>();
+	
+	/**
+	 * Look up the decoded attributes of an encoded attribute block. The readable content of the buffer is the encoded
+	 * block, the reader index of the buffer is not changed.
+	 * 
+	 * @param block the encoded block
+	 * @return the decoded attributes or <code>null</code> if the block is not held in the cache
+	 */
+	public DecodedPathAttributes lookup(ChannelBuffer block) {
+		return blocks.get(block);
+	}
+	
+	/**
+	 * Check if an encoded attribute block is cached. A block carrying an MP_REACH_NLRI or MP_UNREACH_NLRI attribute 
+	 * differs with each packet, caching it would only evict the blocks shared by many packets. Only the attribute 
+	 * headers are read, the reader index of the buffer is not changed.
+	 * 
+	 * @param block the encoded block
+	 * @return <code>true</code> if the block is looked up in and added to the cache
+	 */
+	public static boolean isCacheable(ChannelBuffer block) {
+		int index = block.readerIndex();
+		int end = block.writerIndex();
+		
+		while(index + 3 <= end) {
+			int flagsType = block.getUnsignedShort(index);
+			int typeCode = (flagsType & BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_MASK);
+			
+			if(typeCode == BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_MP_REACH_NLRI 
+					|| typeCode == BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_MP_UNREACH_NLRI)
+				return false;
+			
+			if((flagsType & BGPv4Constants.BGP_PATH_ATTRIBUTE_EXTENDED_LENGTH_BIT) != 0) {
+				if(index + 4 > end)
+					break;
+				
+				index += 4 + block.getUnsignedShort(index + 2);
+			} else
+				index += 3 + block.getUnsignedByte(index + 2);
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Add the decoded attributes of an encoded attribute block to the cache. The readable content of the buffer is 
+	 * the encoded block, it is copied into the cache. If the block has been added concurrently, the attributes held in 
+	 * the cache are kept. A block which is not cacheable is not added.
+	 * 
+	 * @param block the encoded block
+	 * @param pathAttributes the attributes decoded from the block
+	 * @return the decoded attributes held in the cache
+	 */
+	public DecodedPathAttributes add(ChannelBuffer block, List<PathAttribute> pathAttributes) {
+		return add(block, pathAttributes, PathAttributeValidation.of(pathAttributes));
+	}
+	
+	/**
+	 * Add the decoded attributes of an encoded attribute block together with the checks made while decoding the block.
+	 * 
+	 * @param block the encoded block
+	 * @param pathAttributes the attributes decoded from the block
+	 * @param attributeValidation the checks made on the attributes
+	 * @return the decoded attributes held in the cache
+	 * @see #add(ChannelBuffer, List)
+	 */
+	public DecodedPathAttributes add(ChannelBuffer block, List<PathAttribute> pathAttributes, PathAttributeValidation attributeValidation) {
+		DecodedPathAttributes decoded = new DecodedPathAttributes(pathAttributes, attributeValidation);
+		
+		if(!isCacheable(block))
+			return decoded;
+		
+		return blocks.putIfAbsent(ChannelBuffers.copiedBuffer(block), decoded);
+	}
+	
+	/**
+	 * remove all blocks from the cache
+	 */
+	public void clear() {
+		blocks.clear();
+	}
+	
+	/**
+	 * @return the number of blocks held in the cache
+	 */
+	public int getSize() {
+		return blocks.getSize();
+	}
+	
+	/**
+	 * @return the maximum number of blocks held in the cache
+	 */
+	public int getMaximumSize() {
+		return blocks.getMaximumSize();
+	}
+
+	/**
+	 * Set the maximum number of blocks held in the cache. Surplus blocks are evicted immediately.
+	 * 
+	 * @param maximumSize the maximum number of blocks
+	 */
+	public void setMaximumSize(int maximumSize) {
+		blocks.setMaximumSize(maximumSize);
+	}
+
+	/**
+	 * @return the number of lookups answered from the cache
+	 */
+	public long getHits() {
+		return blocks.getHits();
+	}
+
+	/**
+	 * @return the number of lookups which required decoding a block
+	 */
+	public long getMisses() {
+		return blocks.getMisses();
+	}
+	
+	/**
+	 * @return the share of lookups answered from the cache, 0 if no lookup has been made yet
+	 */
+	public double getHitRate() {
+		return blocks.getHitRate();
+	}
+}
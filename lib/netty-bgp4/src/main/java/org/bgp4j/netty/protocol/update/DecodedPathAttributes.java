@@ -0,0 +1,75 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.protocol.update.DecodedPathAttributes.java 
+ */
+package org.bgp4j.netty.protocol.update;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.bgp4j.net.attributes.PathAttribute;
+
+/**
+ * The path attributes decoded from one path attribute block. The decoded attributes are shared by all UPDATE packets
+ * carrying the same block and must not be modified.
+ * 
+ * Besides the attributes the holder keeps the checks made on the attributes while decoding the block and the 
+ * attribute set used for the routes announced with the attributes. The attribute set is attached by the consumers of 
+ * the UPDATE packet.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class DecodedPathAttributes {
+
+	private List<PathAttribute> pathAttributes;
+	private PathAttributeValidation attributeValidation;
+	private Set<PathAttribute> routeAttributes;
+	
+	public DecodedPathAttributes(List<PathAttribute> pathAttributes, PathAttributeValidation attributeValidation) {
+		this.pathAttributes = Collections.unmodifiableList(pathAttributes);
+		this.attributeValidation = attributeValidation;
+	}
+	
+	/**
+	 * @return the decoded path attributes in the order of the encoded block
+	 */
+	public List<PathAttribute> getPathAttributes() {
+		return pathAttributes;
+	}
+	
+	/**
+	 * @return the checks made on the attributes while decoding the block
+	 */
+	public PathAttributeValidation getAttributeValidation() {
+		return attributeValidation;
+	}
+
+	/**
+	 * @return the attribute set of the routes announced with the attributes or <code>null</code> if not known yet
+	 */
+	public synchronized Set<PathAttribute> getRouteAttributes() {
+		return routeAttributes;
+	}
+
+	/**
+	 * @param routeAttributes the attribute set of the routes announced with the attributes
+	 */
+	public synchronized void setRouteAttributes(Set<PathAttribute> routeAttributes) {
+		this.routeAttributes = routeAttributes;
+	}
+}
@@ -20,7 +20,6 @@ package org.bgp4j.netty.protocol.update;
 import org.bgp4j.net.attributes.LocalPrefPathAttribute;
 import org.bgp4j.netty.BGPv4Constants;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
 
 /**
  * @author Rainer Bieniek (Rainer.Bieniek@web.de)
@@ -46,15 +45,11 @@ public class LocalPrefPathAttributeCodecHandler extends
 	}
 
 	/* (non-Javadoc)
-	 * @see org.bgp4j.netty.protocol.update.PathAttributeCodecHandler#encodeValue(org.bgp4j.netty.protocol.update.PathAttribute)
+	 * @see org.bgp4j.netty.protocol.update.PathAttributeCodecHandler#encodeValue(org.bgp4j.netty.protocol.update.PathAttribute, org.jboss.netty.buffer.ChannelBuffer)
 	 */
 	@Override
-	public ChannelBuffer encodeValue(LocalPrefPathAttribute attr) {
-		ChannelBuffer buffer = ChannelBuffers.buffer(4);
-		
+	public void encodeValue(LocalPrefPathAttribute attr, ChannelBuffer buffer) {
 		buffer.writeInt(attr.getLocalPreference());
-		
-		return buffer;
 	}
 
 }
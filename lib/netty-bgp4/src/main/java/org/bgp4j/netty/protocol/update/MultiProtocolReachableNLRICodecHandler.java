@@ -22,7 +22,6 @@ import org.bgp4j.net.attributes.MultiProtocolReachableNLRI;
 import org.bgp4j.netty.BGPv4Constants;
 import org.bgp4j.netty.NLRICodec;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
 
 /**
  * @author Rainer Bieniek (Rainer.Bieniek@web.de)
@@ -58,12 +57,10 @@ public class MultiProtocolReachableNLRICodecHandler extends
 	}
 
 	/* (non-Javadoc)
-	 * @see org.bgp4j.netty.protocol.update.PathAttributeCodecHandler#encodeValue(org.bgp4j.netty.protocol.update.PathAttribute)
+	 * @see org.bgp4j.netty.protocol.update.PathAttributeCodecHandler#encodeValue(org.bgp4j.netty.protocol.update.PathAttribute, org.jboss.netty.buffer.ChannelBuffer)
 	 */
 	@Override
-	public ChannelBuffer encodeValue(MultiProtocolReachableNLRI attr) {
-		ChannelBuffer buffer = ChannelBuffers.buffer(valueLength(attr));
-		
+	public void encodeValue(MultiProtocolReachableNLRI attr, ChannelBuffer buffer) {
 		buffer.writeShort(attr.getAddressFamily().toCode());
 		buffer.writeByte(attr.getSubsequentAddressFamily().toCode());
 		
@@ -78,10 +75,8 @@ public class MultiProtocolReachableNLRICodecHandler extends
 
 		if(attr.getNlris() != null) {
 			for(NetworkLayerReachabilityInformation nlri : attr.getNlris())
-				buffer.writeBytes(NLRICodec.encodeNLRI(nlri));
+				NLRICodec.encodeNLRI(nlri, buffer);
 		}
-
-		return buffer;
 	}
 
 }
@@ -22,7 +22,6 @@ import org.bgp4j.net.attributes.MultiProtocolUnreachableNLRI;
 import org.bgp4j.netty.BGPv4Constants;
 import org.bgp4j.netty.NLRICodec;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
 
 /**
  * @author Rainer Bieniek (Rainer.Bieniek@web.de)
@@ -55,21 +54,17 @@ public class MultiProtocolUnreachableNLRICodecHandler extends
 	}
 
 	/* (non-Javadoc)
-	 * @see org.bgp4j.netty.protocol.update.PathAttributeCodecHandler#encodeValue(org.bgp4j.netty.protocol.update.PathAttribute)
+	 * @see org.bgp4j.netty.protocol.update.PathAttributeCodecHandler#encodeValue(org.bgp4j.netty.protocol.update.PathAttribute, org.jboss.netty.buffer.ChannelBuffer)
 	 */
 	@Override
-	public ChannelBuffer encodeValue(MultiProtocolUnreachableNLRI attr) {
-		ChannelBuffer buffer = ChannelBuffers.buffer(valueLength(attr));
-		
+	public void encodeValue(MultiProtocolUnreachableNLRI attr, ChannelBuffer buffer) {
 		buffer.writeShort(attr.getAddressFamily().toCode());
 		buffer.writeByte(attr.getSubsequentAddressFamily().toCode());
 		
 		if(attr.getNlris() != null) {
 			for(NetworkLayerReachabilityInformation nlri : attr.getNlris())
-				buffer.writeBytes(NLRICodec.encodeNLRI(nlri));
+				NLRICodec.encodeNLRI(nlri, buffer);
 		}
-
-		return buffer;
 	}
 
 }
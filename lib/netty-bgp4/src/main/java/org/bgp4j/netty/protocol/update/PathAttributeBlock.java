@@ -0,0 +1,133 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.protocol.update.PathAttributeBlock.java 
+ */
+package org.bgp4j.netty.protocol.update;
+
+import java.util.Collection;
+
+import org.bgp4j.net.attributes.MultiProtocolReachableNLRI;
+import org.bgp4j.net.attributes.PathAttribute;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * The encoded path attributes of an UPDATE packet. The encoded bytes are immutable and may be shared by any number of
+ * packets, the packets are assembled from slices of the block and the per-packet parts.
+ * 
+ * An MP_REACH_NLRI attribute is not part of the encoded bytes since its value carries the NLRI of the packet. The 
+ * block records the position of the attribute instead, so the attribute can be placed between the attributes 
+ * preceding and following it.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class PathAttributeBlock {
+
+	private ChannelBuffer encoded;
+	private int multiProtocolReachableOffset;
+	private MultiProtocolReachableNLRI multiProtocolReachable;
+	private int multiProtocolReachableFlags;
+	private int multiProtocolReachableValueLength;
+	
+	private PathAttributeBlock() {
+	}
+	
+	/**
+	 * Encode a collection of path attributes. The first MP_REACH_NLRI attribute found serves as the template for the 
+	 * MP_REACH_NLRI attributes of the packets, its NLRI are ignored. Any further MP_REACH_NLRI attributes are 
+	 * encoded like all other attributes. 
+	 * 
+	 * @param pathAttributes the path attributes
+	 * @return the encoded block
+	 */
+	public static PathAttributeBlock encode(Collection<PathAttribute> pathAttributes) {
+		PathAttributeBlock block = new PathAttributeBlock();
+		int length = 0;
+		
+		for(PathAttribute pathAttribute : pathAttributes) {
+			if(pathAttribute instanceof MultiProtocolReachableNLRI && block.multiProtocolReachable == null) {
+				block.multiProtocolReachable = (MultiProtocolReachableNLRI)pathAttribute;
+				block.multiProtocolReachableFlags = PathAttributeCodec.attributeFlags(pathAttribute);
+				
+				// the value length of the attribute without any NLRI: AFI, SAFI, next hop length and reserved octet
+				block.multiProtocolReachableValueLength = 5 + ((block.multiProtocolReachable.getNextHop() != null) 
+						? block.multiProtocolReachable.getNextHop().getAddress().length : 0);
+			} else
+				length += PathAttributeCodec.calculateEncodedPathAttributeLength(pathAttribute);
+		}
+
+		ChannelBuffer buffer = ChannelBuffers.buffer(length);
+		
+		for(PathAttribute pathAttribute : pathAttributes) {
+			if(pathAttribute == block.multiProtocolReachable)
+				block.multiProtocolReachableOffset = buffer.writerIndex();
+			else
+				PathAttributeCodec.encodePathAttribute(pathAttribute, buffer);
+		}
+		
+		block.encoded = ChannelBuffers.unmodifiableBuffer(buffer);
+		
+		return block;
+	}
+	
+	/**
+	 * @return the length of the encoded attributes, not including the MP_REACH_NLRI attribute
+	 */
+	public int getEncodedLength() {
+		return encoded.readableBytes();
+	}
+	
+	/**
+	 * @return the encoded attributes preceding the MP_REACH_NLRI attribute or all encoded attributes if the block has 
+	 * no MP_REACH_NLRI attribute
+	 */
+	public ChannelBuffer getLeadingAttributes() {
+		return encoded.slice(0, (multiProtocolReachable != null) ? multiProtocolReachableOffset : encoded.readableBytes());
+	}
+	
+	/**
+	 * @return the encoded attributes following the MP_REACH_NLRI attribute, an empty buffer if the block has no 
+	 * MP_REACH_NLRI attribute
+	 */
+	public ChannelBuffer getTrailingAttributes() {
+		if(multiProtocolReachable == null)
+			return ChannelBuffers.EMPTY_BUFFER;
+		
+		return encoded.slice(multiProtocolReachableOffset, encoded.readableBytes() - multiProtocolReachableOffset);
+	}
+
+	/**
+	 * @return the MP_REACH_NLRI attribute of the block or <code>null</code> 
+	 */
+	public MultiProtocolReachableNLRI getMultiProtocolReachable() {
+		return multiProtocolReachable;
+	}
+
+	/**
+	 * @return the flags of the MP_REACH_NLRI attribute, not including the extended length flag
+	 */
+	int getMultiProtocolReachableFlags() {
+		return multiProtocolReachableFlags;
+	}
+
+	/**
+	 * @return the value length of the MP_REACH_NLRI attribute without NLRI
+	 */
+	int getMultiProtocolReachableValueLength() {
+		return multiProtocolReachableValueLength;
+	}
+}
@@ -0,0 +1,104 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.protocol.update.PathAttributeBlockCache.java 
+ */
+package org.bgp4j.netty.protocol.update;
+
+import java.util.Set;
+
+import javax.inject.Singleton;
+
+import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.netty.BoundedLRUCache;
+
+/**
+ * Bounded cache of encoded path attribute blocks shared by the outbound routing update queues of all peers. An 
+ * attribute set announced to many peers or spread over many UPDATE packets is encoded once only.
+ * 
+ * The cache is keyed by the attribute set. The sets used as keys must not be modified, the interned attribute sets
+ * of the routing information bases are suitable keys. The least recently used block is evicted when the cache 
+ * exceeds its maximum size.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+@Singleton
+public class PathAttributeBlockCache {
+
+	/** default maximum number of blocks held in the cache */
+	public static final int DEFAULT_MAXIMUM_SIZE = BoundedLRUCache.DEFAULT_MAXIMUM_SIZE;
+	
+	private BoundedLRUCache<Set<PathAttribute>, PathAttributeBlock> blocks = new BoundedLRUCache<Set<PathAttribute>, PathAttributeBlock>();
+	
+	/**
+	 * Obtain the encoded block of an attribute set. The block is encoded and added to the cache if it is not held yet.
+	 * 
+	 * @param pathAttributes the attribute set
+	 * @return the encoded block
+	 */
+	public PathAttributeBlock lookup(Set<PathAttribute> pathAttributes) {
+		PathAttributeBlock block = blocks.get(pathAttributes);
+		
+		if(block == null)
+			block = blocks.putIfAbsent(pathAttributes, PathAttributeBlock.encode(pathAttributes));
+		
+		return block;
+	}
+	
+	/**
+	 * remove all blocks from the cache
+	 */
+	public void clear() {
+		blocks.clear();
+	}
+	
+	/**
+	 * @return the number of blocks held in the cache
+	 */
+	public int getSize() {
+		return blocks.getSize();
+	}
+	
+	/**
+	 * @return the maximum number of blocks held in the cache
+	 */
+	public int getMaximumSize() {
+		return blocks.getMaximumSize();
+	}
+
+	/**
+	 * Set the maximum number of blocks held in the cache. Surplus blocks are evicted immediately.
+	 * 
+	 * @param maximumSize the maximum number of blocks
+	 */
+	public void setMaximumSize(int maximumSize) {
+		blocks.setMaximumSize(maximumSize);
+	}
+
+	/**
+	 * @return the number of lookups answered from the cache
+	 */
+	public long getHits() {
+		return blocks.getHits();
+	}
+
+	/**
+	 * @return the number of lookups which required encoding a block
+	 */
+	public long getMisses() {
+		return blocks.getMisses();
+	}
+}
@@ -70,23 +70,30 @@ public class PathAttributeCodec {
 	 * @return an encoded formatted path attribute
 	 */
 	public static ChannelBuffer encodePathAttribute(PathAttribute attr)  {
-		ChannelBuffer buffer = ChannelBuffers.buffer(BGPv4Constants.BGP_PACKET_MAX_LENGTH);
-		int valueLength = valueLength(attr);
-		int attrFlagsCode = 0;
-				
-		if(attr.isOptional())
-			attrFlagsCode |= BGPv4Constants.BGP_PATH_ATTRIBUTE_OPTIONAL_BIT;
+		ChannelBuffer buffer = ChannelBuffers.buffer(calculateEncodedPathAttributeLength(attr));
 		
-		if(attr.isTransitive())
-			attrFlagsCode |= BGPv4Constants.BGP_PATH_ATTRIBUTE_TRANSITIVE_BIT;
-
-		if(attr.isPartial())
-			attrFlagsCode |= BGPv4Constants.BGP_PATH_ATTRIBUTE_PARTIAL_BIT;
+		encodePathAttribute(attr, buffer);
+		
+		return buffer;
+	}
+	
+	/**
+	 * write the path attribute formatted for network transmission into a buffer. The buffer must have at least
+	 * <code>calculateEncodedPathAttributeLength(attr)</code> writable bytes.
+	 * 
+	 * @param attr the path attribute
+	 * @param buffer the buffer to write the attribute into
+	 */
+	@SuppressWarnings("unchecked")
+	public static void encodePathAttribute(PathAttribute attr, ChannelBuffer buffer)  {
+		PathAttributeCodecHandler<PathAttribute> handler = handler(attr);
+		int valueLength = handler.valueLength(attr);
+		int attrFlagsCode = attributeFlags(attr);
 		
 		if(valueLength > 255)
 			attrFlagsCode |= BGPv4Constants.BGP_PATH_ATTRIBUTE_EXTENDED_LENGTH_BIT;
 		
-		attrFlagsCode |= (typeCode(attr) & BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_MASK);
+		attrFlagsCode |= (handler.typeCode(attr) & BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_MASK);
 
 		buffer.writeShort(attrFlagsCode);
 		
@@ -96,9 +103,25 @@ public class PathAttributeCodec {
 			buffer.writeByte(valueLength);
 		
 		if(valueLength > 0)
-			buffer.writeBytes(encodeValue(attr));
+			handler.encodeValue(attr, buffer);
+	}
+	
+	/**
+	 * get the optional, transitive and partial flags of an attribute positioned in the attribute flags and type field
+	 */
+	static int attributeFlags(PathAttribute attr) {
+		int attrFlagsCode = 0;
 		
-		return buffer;
+		if(attr.isOptional())
+			attrFlagsCode |= BGPv4Constants.BGP_PATH_ATTRIBUTE_OPTIONAL_BIT;
+		
+		if(attr.isTransitive())
+			attrFlagsCode |= BGPv4Constants.BGP_PATH_ATTRIBUTE_TRANSITIVE_BIT;
+
+		if(attr.isPartial())
+			attrFlagsCode |= BGPv4Constants.BGP_PATH_ATTRIBUTE_PARTIAL_BIT;
+		
+		return attrFlagsCode;
 	}
 	
 	public static int calculateEncodedPathAttributeLength(PathAttribute attr) {
@@ -111,6 +134,19 @@ public class PathAttributeCodec {
 		return size;
 	}
 	
+	/**
+	 * get the codec handler of an attribute
+	 */
+	@SuppressWarnings("rawtypes")
+	private static PathAttributeCodecHandler handler(PathAttribute attr) {
+		PathAttributeCodecHandler<? extends PathAttribute> handler = codecs.get(attr.getClass());
+		
+		if(handler == null)
+			throw new IllegalArgumentException("cannot handle path attribute of type: " + attr.getClass().getName());
+		
+		return handler;
+	}
+	
 	/**
 	 * get the attribute value length
 	 * @return
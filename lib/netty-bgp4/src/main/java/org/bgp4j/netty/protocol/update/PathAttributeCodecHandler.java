@@ -19,6 +19,7 @@ package org.bgp4j.netty.protocol.update;
 
 import org.bgp4j.net.attributes.PathAttribute;
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 
 /**
  * @author Rainer Bieniek (Rainer.Bieniek@web.de)
@@ -30,5 +31,26 @@ public abstract class PathAttributeCodecHandler<T extends PathAttribute> {
 	
 	public abstract int valueLength(T attr);
 	
-	public abstract ChannelBuffer encodeValue(T attr);
+	/**
+	 * write the encoded attribute value into a buffer. The buffer must have at least <code>valueLength(attr)</code> 
+	 * writable bytes.
+	 * 
+	 * @param attr the attribute
+	 * @param buffer the buffer to write the value into
+	 */
+	public abstract void encodeValue(T attr, ChannelBuffer buffer);
+	
+	/**
+	 * encode the attribute value into a buffer of the exact value length
+	 * 
+	 * @param attr the attribute
+	 * @return the encoded attribute value
+	 */
+	public ChannelBuffer encodeValue(T attr) {
+		ChannelBuffer buffer = ChannelBuffers.buffer(valueLength(attr));
+		
+		encodeValue(attr, buffer);
+		
+		return buffer;
+	}
 }
@@ -0,0 +1,208 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.protocol.update.PathAttributeValidation.java 
+ */
+package org.bgp4j.netty.protocol.update;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.bgp4j.net.ASType;
+import org.bgp4j.net.ASTypeAware;
+import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.net.attributes.PathAttributeType;
+import org.bgp4j.netty.BGPv4Constants;
+
+/**
+ * The result of the checks on the path attributes of an UPDATE packet which do not depend on the connection the 
+ * packet is received on. The checks are made while the attributes are decoded: 
+ * 
+ * <ul>
+ * <li>the optional and transitive flags of each attribute must match the attribute category</li>
+ * <li>the types of the given attributes are recorded in a bit mask for the check on missing well-known attributes</li>
+ * <li>the AS number sizes of the given attributes are recorded in a bit mask for the check against the AS number size 
+ * used on the connection</li>
+ * </ul>
+ * 
+ * The connection dependent outcome is then computed by {@link #isValid(boolean, ASType)} without looking at the 
+ * attributes again.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class PathAttributeValidation {
+
+	private static final PathAttributeType[] WELL_KNOWN_TYPES = new PathAttributeType[] {
+		PathAttributeType.ORIGIN,
+		PathAttributeType.AS_PATH,
+		PathAttributeType.NEXT_HOP,
+		PathAttributeType.LOCAL_PREF,
+	};
+	private static final int[] WELL_KNOWN_AS2_CODES = new int[] {
+		BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_ORIGIN,
+		BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_AS_PATH,
+		BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_NEXT_HOP,
+		BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_LOCAL_PREF,
+	};
+	private static final int[] WELL_KNOWN_AS4_CODES = new int[] {
+		BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_ORIGIN,
+		BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_AS4_PATH,
+		BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_NEXT_HOP,
+		BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_LOCAL_PREF,
+	};
+	
+	private static final int MANDATORY_EBGP_TYPES = typeBit(PathAttributeType.ORIGIN) 
+			| typeBit(PathAttributeType.AS_PATH)
+			| typeBit(PathAttributeType.NEXT_HOP);
+	private static final int MANDATORY_IBGP_TYPES = MANDATORY_EBGP_TYPES 
+			| typeBit(PathAttributeType.LOCAL_PREF);
+	
+	private int givenTypes;
+	private int givenASTypes;
+	private List<PathAttribute> attributeFlagsErrors;
+
+	/**
+	 * run the checks on a list of path attributes which has not been checked while decoding the attributes
+	 * 
+	 * @param pathAttributes the path attributes 
+	 * @return the check result
+	 */
+	public static PathAttributeValidation of(List<PathAttribute> pathAttributes) {
+		PathAttributeValidation validation = new PathAttributeValidation();
+		
+		for(PathAttribute attribute : pathAttributes)
+			validation.add(attribute);
+		
+		return validation;
+	}
+	
+	/**
+	 * add a path attribute to the checks. The flags of the attribute must have been set.
+	 * 
+	 * @param attribute the path attribute
+	 */
+	void add(PathAttribute attribute) {
+		boolean badAttr = false;
+		
+		givenTypes |= typeBit(attribute.getType());
+		
+		if(attribute instanceof ASTypeAware)
+			givenASTypes |= asTypeBit(((ASTypeAware)attribute).getAsType());
+		
+		switch(attribute.getCategory()) {
+		case WELL_KNOWN_MANDATORY:
+		case WELL_KNOWN_DISCRETIONARY:
+			badAttr = attribute.isOptional() || !attribute.isTransitive();
+			break;
+		case OPTIONAL_NON_TRANSITIVE:
+			badAttr = !attribute.isOptional() || attribute.isTransitive();
+			break;
+		case OPTIONAL_TRANSITIVE:
+			badAttr = !attribute.isOptional() || !attribute.isTransitive();
+			break;
+		}
+		
+		if(badAttr) {
+			if(attributeFlagsErrors == null)
+				attributeFlagsErrors = new LinkedList<PathAttribute>();
+			
+			attributeFlagsErrors.add(attribute);
+		}
+	}
+
+	/**
+	 * check if the path attributes pass all checks on a connection of the given kind
+	 * 
+	 * @param internalConnection <code>true</code> for an IBGP connection
+	 * @param asType the AS number size used on the connection
+	 * @return
+	 */
+	public boolean isValid(boolean internalConnection, ASType asType) {
+		return attributeFlagsErrors == null
+				&& !isMissingWellKnownAttributes(internalConnection)
+				&& !isASTypeMismatch(asType);
+	}
+	
+	/**
+	 * @return the path attributes whose optional and transitive flags do not match the attribute category
+	 */
+	public List<PathAttribute> getAttributeFlagsErrors() {
+		if(attributeFlagsErrors == null)
+			return Collections.emptyList();
+		
+		return Collections.unmodifiableList(attributeFlagsErrors);
+	}
+	
+	/**
+	 * @return <code>true</code> if any path attribute has optional and transitive flags which do not match the attribute category
+	 */
+	public boolean hasAttributeFlagsErrors() {
+		return attributeFlagsErrors != null;
+	}
+	
+	/**
+	 * check if mandatory well-known attributes are missing
+	 * 
+	 * @param internalConnection <code>true</code> for an IBGP connection
+	 * @return
+	 */
+	public boolean isMissingWellKnownAttributes(boolean internalConnection) {
+		int mandatoryTypes = (internalConnection ? MANDATORY_IBGP_TYPES : MANDATORY_EBGP_TYPES);
+		
+		return (givenTypes & mandatoryTypes) != mandatoryTypes;
+	}
+	
+	/**
+	 * get the type codes of the missing mandatory well-known attributes
+	 * 
+	 * @param internalConnection <code>true</code> for an IBGP connection
+	 * @param asType the AS number size used on the connection
+	 * @return the type codes, empty if no attribute is missing
+	 */
+	public List<Integer> getMissingWellKnownAttributeCodes(boolean internalConnection, ASType asType) {
+		int mandatoryTypes = (internalConnection ? MANDATORY_IBGP_TYPES : MANDATORY_EBGP_TYPES);
+		int[] codes = (asType == ASType.AS_NUMBER_4OCTETS ? WELL_KNOWN_AS4_CODES : WELL_KNOWN_AS2_CODES);
+		List<Integer> missing = new LinkedList<Integer>();
+		
+		for(int i=0; i<WELL_KNOWN_TYPES.length; i++) {
+			int bit = typeBit(WELL_KNOWN_TYPES[i]);
+			
+			if((mandatoryTypes & bit) != 0 && (givenTypes & bit) == 0)
+				missing.add(codes[i]);
+		}
+		
+		return missing;
+	}
+	
+	/**
+	 * check if any AS number aware attribute has an AS number size different from the one used on the connection
+	 * 
+	 * @param asType the AS number size used on the connection
+	 * @return
+	 */
+	public boolean isASTypeMismatch(ASType asType) {
+		return (givenASTypes & ~asTypeBit(asType)) != 0;
+	}
+	
+	private static int typeBit(PathAttributeType type) {
+		return 1 << type.ordinal();
+	}
+	
+	private static int asTypeBit(ASType asType) {
+		return 1 << asType.ordinal();
+	}
+}
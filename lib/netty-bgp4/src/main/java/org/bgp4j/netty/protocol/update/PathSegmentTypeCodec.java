@@ -25,42 +25,12 @@ import org.bgp4j.net.PathSegmentType;
  */
 public class PathSegmentTypeCodec {
 
-	private static final int AS_SET_CODE = 1;
-	private static final int AS_SEQUENCE_CODE = 2;
-	private static final int AS_CONFED_SEQUENCE_CODE = 3;
-	private static final int AS_CONFED_SET_CODE = 4;	
-	
-
-	static PathSegmentType fromCode(int code) {
-		switch(code) {
-		case AS_SET_CODE:
-			return PathSegmentType.AS_SET;
-		case AS_SEQUENCE_CODE:
-			return PathSegmentType.AS_SEQUENCE;
-		case AS_CONFED_SEQUENCE_CODE:
-			return PathSegmentType.AS_CONFED_SEQUENCE;
-		case AS_CONFED_SET_CODE:
-			return PathSegmentType.AS_CONFED_SET;
-		default:
-			throw new IllegalArgumentException("illegal AS_PATH type" + code);				
-		}
+	public static PathSegmentType fromCode(int code) {
+		return PathSegmentType.fromCode(code);
 	}
 
-	// unordered set of ASes in a confederation a route in the UPDATE message has traversed
-	
-	static int toCode(PathSegmentType type) {
-		switch(type) {
-		case AS_SET:
-			return AS_SET_CODE;
-		case AS_SEQUENCE:
-			return AS_SEQUENCE_CODE;
-		case AS_CONFED_SEQUENCE:
-			return AS_CONFED_SEQUENCE_CODE;
-		case AS_CONFED_SET:
-			return AS_CONFED_SET_CODE;
-		default:
-			throw new IllegalArgumentException("illegal AS_PATH type" + type);
-		}
+	public static int toCode(PathSegmentType type) {
+		return type.toCode();
 	}
 
 }
@@ -19,7 +19,6 @@ package org.bgp4j.netty.protocol.update;
 
 import org.bgp4j.net.attributes.UnknownPathAttribute;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
 
 /**
  * @author Rainer Bieniek (Rainer.Bieniek@web.de)
@@ -48,20 +47,12 @@ public class UnknownPathAttributeCodecHandler extends
 	}
 
 	/* (non-Javadoc)
-	 * @see org.bgp4j.netty.protocol.update.PathAttributeCodecHandler#encodeValue(org.bgp4j.netty.protocol.update.PathAttribute)
+	 * @see org.bgp4j.netty.protocol.update.PathAttributeCodecHandler#encodeValue(org.bgp4j.netty.protocol.update.PathAttribute, org.jboss.netty.buffer.ChannelBuffer)
 	 */
 	@Override
-	public ChannelBuffer encodeValue(UnknownPathAttribute attr) {
-		if(attr.getValue() != null) {
-			byte[] value = attr.getValue();
-			ChannelBuffer buffer = ChannelBuffers.buffer(value.length);
-			
-			buffer.writeBytes(value);
-			
-			return buffer;
-			
-		} else
-			return null;
+	public void encodeValue(UnknownPathAttribute attr, ChannelBuffer buffer) {
+		if(attr.getValue() != null)
+			buffer.writeBytes(attr.getValue());
 	}
 
 }
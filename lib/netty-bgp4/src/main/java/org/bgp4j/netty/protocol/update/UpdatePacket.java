@@ -24,12 +24,12 @@ import java.util.Set;
 
 import org.apache.commons.lang.builder.ToStringBuilder;
 import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.PackedPrefixList;
 import org.bgp4j.net.attributes.PathAttribute;
 import org.bgp4j.netty.BGPv4Constants;
 import org.bgp4j.netty.NLRICodec;
 import org.bgp4j.netty.protocol.BGPv4Packet;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
 
 /**
  * @author Rainer Bieniek (Rainer.Bieniek@web.de)
@@ -40,23 +40,33 @@ public class UpdatePacket extends BGPv4Packet {
 	private List<NetworkLayerReachabilityInformation> withdrawnRoutes = new LinkedList<NetworkLayerReachabilityInformation>();
 	private List<NetworkLayerReachabilityInformation> nlris = new LinkedList<NetworkLayerReachabilityInformation>();
 	private List<PathAttribute> pathAttributes = new LinkedList<PathAttribute>();
+	private DecodedPathAttributes decodedPathAttributes;
+	private PathAttributeValidation attributeValidation;
+	private PackedPrefixList packedWithdrawnRoutes;
+	private PackedPrefixList packedNlris;
+	
+	/**
+	 * The packet is written into a single buffer of the exact packet size
+	 * 
+	 * @see org.bgp4j.netty.protocol.BGPv4Packet#encodePacket()
+	 */
+	@Override
+	public ChannelBuffer encodePacket() {
+		UpdatePacketWriter writer = new UpdatePacketWriter(calculatePacketSize());
+		
+		writer.writeUpdatePacket(this);
+		
+		return writer.getPackets().get(0);
+	}
 	
 	/* (non-Javadoc)
 	 * @see org.bgp4j.netty.protocol.BGPv4Packet#encodePayload()
 	 */
 	@Override
 	protected ChannelBuffer encodePayload() {
-		ChannelBuffer buffer = ChannelBuffers.buffer(BGPv4Constants.BGP_PACKET_MAX_LENGTH);
-		ChannelBuffer withdrawnBuffer = encodeWithdrawnRoutes();
-		ChannelBuffer pathAttributesBuffer = encodePathAttributes();
-		
-		buffer.writeShort(withdrawnBuffer.readableBytes());
-		buffer.writeBytes(withdrawnBuffer);
-		buffer.writeShort(pathAttributesBuffer.readableBytes());
-		buffer.writeBytes(pathAttributesBuffer);
-		buffer.writeBytes(encodeNlris());
+		ChannelBuffer packet = encodePacket();
 		
-		return buffer;
+		return packet.slice(BGPv4Constants.BGP_PACKET_HEADER_LENGTH, packet.readableBytes() - BGPv4Constants.BGP_PACKET_HEADER_LENGTH);
 	}
 
 	public int calculatePacketSize() {
@@ -69,47 +79,11 @@ public class UpdatePacket extends BGPv4Packet {
 		return size;
 	}
 	
-	private ChannelBuffer encodeWithdrawnRoutes() {
-		ChannelBuffer buffer = ChannelBuffers.buffer(BGPv4Constants.BGP_PACKET_MAX_LENGTH);
-
-		if(this.withdrawnRoutes != null) {
-			for (NetworkLayerReachabilityInformation route : withdrawnRoutes) {
-				buffer.writeBytes(NLRICodec.encodeNLRI(route));
-			}
-		}
-		
-		return buffer;
-	}
-
-	private ChannelBuffer encodePathAttributes() {
-		ChannelBuffer buffer = ChannelBuffers.buffer(BGPv4Constants.BGP_PACKET_MAX_LENGTH);
-
-		if(this.pathAttributes != null) {
-			for(PathAttribute pathAttribute : pathAttributes) {
-				buffer.writeBytes(PathAttributeCodec.encodePathAttribute(pathAttribute));
-			}
-		}
-		
-		return buffer;
-	}
-	
-	private ChannelBuffer encodeNlris() {
-		ChannelBuffer buffer = ChannelBuffers.buffer(BGPv4Constants.BGP_PACKET_MAX_LENGTH);
-
-		if(this.nlris != null) {
-			for (NetworkLayerReachabilityInformation nlri : nlris) {
-				buffer.writeBytes(NLRICodec.encodeNLRI(nlri));
-			}
-		}
-		
-		return buffer;
-	}
-
-	private int calculateSizeWithdrawnRoutes() {
+	int calculateSizeWithdrawnRoutes() {
 		int size = 0;
 
-		if(this.withdrawnRoutes != null) {
-			for (NetworkLayerReachabilityInformation route : withdrawnRoutes) {
+		if(getWithdrawnRoutes() != null) {
+			for (NetworkLayerReachabilityInformation route : getWithdrawnRoutes()) {
 				size += NLRICodec.calculateEncodedNLRILength(route);
 			}
 		}
@@ -117,11 +91,11 @@ public class UpdatePacket extends BGPv4Packet {
 		return size;
 	}
 	
-	private int calculateSizeNlris() {
+	int calculateSizeNlris() {
 		int size = 0;
 
-		if(this.nlris != null) {
-			for (NetworkLayerReachabilityInformation nlri : nlris) {
+		if(getNlris() != null) {
+			for (NetworkLayerReachabilityInformation nlri : getNlris()) {
 				size += NLRICodec.calculateEncodedNLRILength(nlri);
 			}
 		}
@@ -129,7 +103,7 @@ public class UpdatePacket extends BGPv4Packet {
 		return size;
 	}
 	
-	private int calculateSizePathAttributes() {
+	int calculateSizePathAttributes() {
 		int size = 0;
 		
 		if(this.pathAttributes != null) {
@@ -149,9 +123,14 @@ public class UpdatePacket extends BGPv4Packet {
 	}
 
 	/**
-	 * @return the withdrawnRoutes
+	 * @return the withdrawnRoutes. Packed withdrawn routes are converted into the list on first access.
 	 */
 	public List<NetworkLayerReachabilityInformation> getWithdrawnRoutes() {
+		if(packedWithdrawnRoutes != null) {
+			packedWithdrawnRoutes.toNLRIs(withdrawnRoutes);
+			packedWithdrawnRoutes = null;
+		}
+		
 		return withdrawnRoutes;
 	}
 
@@ -160,12 +139,18 @@ public class UpdatePacket extends BGPv4Packet {
 	 */
 	public void setWithdrawnRoutes(List<NetworkLayerReachabilityInformation> withdrawnRoutes) {
 		this.withdrawnRoutes = withdrawnRoutes;
+		this.packedWithdrawnRoutes = null;
 	}
 
 	/**
-	 * @return the nlris
+	 * @return the nlris. Packed NLRI are converted into the list on first access.
 	 */
 	public List<NetworkLayerReachabilityInformation> getNlris() {
+		if(packedNlris != null) {
+			packedNlris.toNLRIs(nlris);
+			packedNlris = null;
+		}
+		
 		return nlris;
 	}
 
@@ -174,6 +159,43 @@ public class UpdatePacket extends BGPv4Packet {
 	 */
 	public void setNlris(List<NetworkLayerReachabilityInformation> nlris) {
 		this.nlris = nlris;
+		this.packedNlris = null;
+	}
+
+	/**
+	 * @return the withdrawn routes decoded into a packed prefix list or <code>null</code> if the withdrawn routes 
+	 * have not been decoded packed or have already been converted into the withdrawn routes list
+	 */
+	public PackedPrefixList getPackedWithdrawnRoutes() {
+		return packedWithdrawnRoutes;
+	}
+
+	/**
+	 * Set the withdrawn routes as a packed prefix list. The list replaces the content of the withdrawn routes list.
+	 * 
+	 * @param packedWithdrawnRoutes the packed withdrawn routes
+	 */
+	public void setPackedWithdrawnRoutes(PackedPrefixList packedWithdrawnRoutes) {
+		this.withdrawnRoutes = new LinkedList<NetworkLayerReachabilityInformation>();
+		this.packedWithdrawnRoutes = packedWithdrawnRoutes;
+	}
+
+	/**
+	 * @return the NLRI decoded into a packed prefix list or <code>null</code> if the NLRI have not been decoded 
+	 * packed or have already been converted into the NLRI list
+	 */
+	public PackedPrefixList getPackedNlris() {
+		return packedNlris;
+	}
+
+	/**
+	 * Set the NLRI as a packed prefix list. The list replaces the content of the NLRI list.
+	 * 
+	 * @param packedNlris the packed NLRI
+	 */
+	public void setPackedNlris(PackedPrefixList packedNlris) {
+		this.nlris = new LinkedList<NetworkLayerReachabilityInformation>();
+		this.packedNlris = packedNlris;
 	}
 
 	/**
@@ -190,6 +212,36 @@ public class UpdatePacket extends BGPv4Packet {
 		this.pathAttributes = pathAttributes;
 	}
 
+	/**
+	 * @return the cached decoded attributes the path attributes of a received packet were taken from or <code>null</code>
+	 * if the attribute block has not been cached
+	 */
+	public DecodedPathAttributes getDecodedPathAttributes() {
+		return decodedPathAttributes;
+	}
+
+	/**
+	 * @param decodedPathAttributes the cached decoded attributes the path attributes were taken from
+	 */
+	public void setDecodedPathAttributes(DecodedPathAttributes decodedPathAttributes) {
+		this.decodedPathAttributes = decodedPathAttributes;
+	}
+
+	/**
+	 * @return the checks made on the path attributes while decoding the packet or <code>null</code> if the 
+	 * packet has not been decoded
+	 */
+	public PathAttributeValidation getAttributeValidation() {
+		return attributeValidation;
+	}
+
+	/**
+	 * @param attributeValidation the checks made on the path attributes while decoding the packet
+	 */
+	public void setAttributeValidation(PathAttributeValidation attributeValidation) {
+		this.attributeValidation = attributeValidation;
+	}
+
 	/**
 	 * look up path attributes of a given type passed in this update packet
 	 */
@@ -226,11 +278,17 @@ public class UpdatePacket extends BGPv4Packet {
 	public String toString() {
 		ToStringBuilder builder = new ToStringBuilder(this);
 		
-		for(NetworkLayerReachabilityInformation n : withdrawnRoutes)
-			builder.append("withdrawnRoute", n);
+		if(packedWithdrawnRoutes != null)
+			builder.append("withdrawnRoutes", packedWithdrawnRoutes);
+		else
+			for(NetworkLayerReachabilityInformation n : withdrawnRoutes)
+				builder.append("withdrawnRoute", n);
 		
-		for(NetworkLayerReachabilityInformation n : nlris)
-			builder.append("nlri", n);
+		if(packedNlris != null)
+			builder.append("nlris", packedNlris);
+		else
+			for(NetworkLayerReachabilityInformation n : nlris)
+				builder.append("nlri", n);
 
 		for(PathAttribute a : pathAttributes)
 			builder.append("pathAttribute", a);
@@ -27,6 +27,7 @@ import javax.inject.Inject;
 import org.bgp4j.net.ASType;
 import org.bgp4j.net.AddressFamily;
 import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.PackedPrefixList;
 import org.bgp4j.net.PathSegment;
 import org.bgp4j.net.SubsequentAddressFamily;
 import org.bgp4j.net.attributes.ASPathAttribute;
@@ -50,7 +51,6 @@ import org.bgp4j.netty.protocol.BGPv4Packet;
 import org.bgp4j.netty.protocol.NotificationPacket;
 import org.bgp4j.netty.protocol.ProtocolPacketUtils;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
 import org.slf4j.Logger;
 
 /**
@@ -59,9 +59,72 @@ import org.slf4j.Logger;
  */
 public class UpdatePacketDecoder {
 	private @Inject Logger log;
+	private @Inject DecodedPathAttributeCache decodedAttributeCache;
+	private boolean lazyAttributeDecoding;
+	private boolean decodedAttributeCaching;
+	private boolean packedPrefixDecoding;
+
+	/**
+	 * @return <code>true</code> if AS_PATH, AS4_PATH and COMMUNITIES attributes are decoded lazily
+	 */
+	public boolean isLazyAttributeDecoding() {
+		return lazyAttributeDecoding;
+	}
+
+	/**
+	 * Enable or disable lazy attribute decoding. If enabled, the AS_PATH, AS4_PATH and COMMUNITIES attributes are 
+	 * only validated while decoding the packet and keep the encoded value. The attribute content is decoded on first
+	 * access and an unmodified attribute is written out unchanged when it is sent to another peer.
+	 * 
+	 * @param lazyAttributeDecoding the lazyAttributeDecoding to set
+	 */
+	public void setLazyAttributeDecoding(boolean lazyAttributeDecoding) {
+		this.lazyAttributeDecoding = lazyAttributeDecoding;
+	}
+
+	/**
+	 * @return <code>true</code> if decoded path attribute blocks are cached
+	 */
+	public boolean isDecodedAttributeCaching() {
+		return decodedAttributeCaching;
+	}
+
+	/**
+	 * Enable or disable caching of decoded path attribute blocks. If enabled, the path attributes of an UPDATE packet
+	 * carrying an attribute block received before are taken from the decoded attribute cache. Blocks carrying 
+	 * multi-protocol NLRI are always decoded.
+	 * 
+	 * @param decodedAttributeCaching the decodedAttributeCaching to set
+	 */
+	public void setDecodedAttributeCaching(boolean decodedAttributeCaching) {
+		this.decodedAttributeCaching = decodedAttributeCaching;
+	}
+
+	/**
+	 * @return <code>true</code> if NLRI and withdrawn routes are decoded into packed prefix lists
+	 */
+	public boolean isPackedPrefixDecoding() {
+		return packedPrefixDecoding;
+	}
+
+	/**
+	 * Enable or disable packed prefix decoding. If enabled, the withdrawn routes and NLRI fields of an UPDATE packet
+	 * and the NLRI of IPv4 and IPv6 MP_REACH_NLRI and MP_UNREACH_NLRI attributes are decoded into packed prefix lists 
+	 * with one primitive array per list. NetworkLayerReachabilityInformation instances are only created if the
+	 * NLRI lists are accessed.
+	 * 
+	 * @param packedPrefixDecoding the packedPrefixDecoding to set
+	 */
+	public void setPackedPrefixDecoding(boolean packedPrefixDecoding) {
+		this.packedPrefixDecoding = packedPrefixDecoding;
+	}
 
 	/**
 	 * decode the UPDATE network packet. The passed channel buffer MUST point to the first packet octet AFTER the type octet.
+	 * The withdrawn routes, the path attributes and the attribute values are decoded from slices of the passed buffer, 
+	 * the packet content is not copied. If decoded attribute caching is enabled, a path attribute block received before
+	 * is not decoded again. The attribute flag, well-known attribute and AS number size checks are made while decoding
+	 * the path attributes and attached to the packet as {@link PathAttributeValidation}.
 	 * 
 	 * @param buffer the buffer containing the data. 
 	 * @return
@@ -83,11 +146,8 @@ public class UpdatePacketDecoder {
 		
 		ChannelBuffer withdrawnBuffer = null;		
 		
-		if(withdrawnOctets > 0) {
-			withdrawnBuffer = ChannelBuffers.buffer(withdrawnOctets);
-			
-			buffer.readBytes(withdrawnBuffer);
-		}
+		if(withdrawnOctets > 0)
+			withdrawnBuffer = buffer.readSlice(withdrawnOctets);
 
 		// sanity checking
 		if(buffer.readableBytes() < 2)
@@ -102,13 +162,23 @@ public class UpdatePacketDecoder {
 			
 		ChannelBuffer pathAttributesBuffer = null;
 		
-		if(pathAttributeOctets > 0) {
-			pathAttributesBuffer = ChannelBuffers.buffer(pathAttributeOctets);
-			
-			buffer.readBytes(pathAttributesBuffer);
-		}
+		if(pathAttributeOctets > 0)
+			pathAttributesBuffer = buffer.readSlice(pathAttributeOctets);
 		
-		if(withdrawnBuffer != null) {
+		if(packedPrefixDecoding) {
+			PackedPrefixList withdrawnRoutes = new PackedPrefixList(AddressFamily.IPv4, 0);
+			
+			if(withdrawnBuffer != null) {
+				try {
+					NLRICodec.decodeNLRIs(withdrawnBuffer, withdrawnRoutes);
+				} catch(IndexOutOfBoundsException e) {
+					throw new MalformedAttributeListException();
+				} catch(IllegalArgumentException e) {
+					throw new MalformedAttributeListException();
+				}
+			}
+			packet.setPackedWithdrawnRoutes(withdrawnRoutes);
+		} else if(withdrawnBuffer != null) {
 			try {
 				packet.getWithdrawnRoutes().addAll(decodeWithdrawnRoutes(withdrawnBuffer));
 			} catch(IndexOutOfBoundsException e) {
@@ -118,14 +188,44 @@ public class UpdatePacketDecoder {
 
 		if(pathAttributesBuffer != null) {
 			try {
-				packet.getPathAttributes().addAll(decodePathAttributes(pathAttributesBuffer));
+				if(decodedAttributeCaching && DecodedPathAttributeCache.isCacheable(pathAttributesBuffer)) {
+					DecodedPathAttributes decoded = decodedAttributeCache.lookup(pathAttributesBuffer);
+					
+					if(decoded == null) {
+						PathAttributeValidation validation = new PathAttributeValidation();
+						
+						decoded = decodedAttributeCache.add(pathAttributesBuffer, 
+								decodePathAttributes(pathAttributesBuffer.slice(), validation), validation);
+					}
+					
+					packet.getPathAttributes().addAll(decoded.getPathAttributes());
+					packet.setDecodedPathAttributes(decoded);
+					packet.setAttributeValidation(decoded.getAttributeValidation());
+				} else {
+					PathAttributeValidation validation = new PathAttributeValidation();
+					
+					packet.getPathAttributes().addAll(decodePathAttributes(pathAttributesBuffer, validation));
+					packet.setAttributeValidation(validation);
+				}
 			} catch (IndexOutOfBoundsException ex) {
 				throw new MalformedAttributeListException();
 			}
-		}
+		} else
+			packet.setAttributeValidation(new PathAttributeValidation());
 		
 		// handle network layer reachability information
-		if(buffer.readableBytes() > 0) {
+		if(packedPrefixDecoding) {
+			PackedPrefixList nlris = new PackedPrefixList(AddressFamily.IPv4, 0);
+			
+			try {
+				NLRICodec.decodeNLRIs(buffer, nlris);
+			} catch (IndexOutOfBoundsException e) {
+				throw new InvalidNetworkFieldException();
+			} catch(IllegalArgumentException e) {
+				throw new InvalidNetworkFieldException();				
+			}
+			packet.setPackedNlris(nlris);
+		} else if(buffer.readableBytes() > 0) {
 			try {
 				while (buffer.readable()) {
 					packet.getNlris().add(NLRICodec.decodeNLRI(buffer));
@@ -229,6 +329,31 @@ public class UpdatePacketDecoder {
 		return attr;
 	}
 
+	private ASPathAttribute decodeEncodedASPathAttribute(ChannelBuffer buffer, ASType asType, byte[] block, int offset) {
+		int index = buffer.readerIndex();
+		int end = buffer.writerIndex();
+		
+		while(index < end) {
+			if(end - index < 2)
+				throw new MalformedASPathAttributeException();
+
+			try {
+				PathSegmentTypeCodec.fromCode(buffer.getUnsignedByte(index));
+			} catch (IllegalArgumentException e) {
+				log.error("cannot convert AS_PATH type", e);
+
+				throw new MalformedASPathAttributeException();
+			}
+
+			index += 2 + (buffer.getUnsignedByte(index+1) * (asType == ASType.AS_NUMBER_4OCTETS ? 4 : 2));
+		}
+		
+		if(index > end)
+			throw new MalformedASPathAttributeException();
+		
+		return new ASPathAttribute(asType, block, offset, buffer.readableBytes());
+	}
+
 	private OriginPathAttribute decodeOriginPathAttribute(ChannelBuffer buffer) {
 		OriginPathAttribute attr = new OriginPathAttribute();
 		
@@ -339,6 +464,13 @@ public class UpdatePacketDecoder {
 		return attr;
 	}
 
+	private CommunityPathAttribute decodeEncodedCommunityPathAttribute(ChannelBuffer buffer, byte[] block, int offset) {
+		if(buffer.readableBytes() < 4 || (buffer.readableBytes() % 4 != 0))
+			throw new OptionalAttributeErrorException();
+		
+		return new CommunityPathAttribute(block, offset, buffer.readableBytes());
+	}
+
 	private MultiProtocolReachableNLRI decodeMpReachNlriPathAttribute(ChannelBuffer buffer) {
 		MultiProtocolReachableNLRI attr = new MultiProtocolReachableNLRI();
 		
@@ -357,8 +489,15 @@ public class UpdatePacketDecoder {
 			
 			buffer.readByte(); // reserved
 			
-			while(buffer.readable()) {
-				attr.getNlris().add(NLRICodec.decodeNLRI(buffer));
+			if(packedPrefixDecoding && PackedPrefixList.isSupported(attr.getAddressFamily())) {
+				PackedPrefixList nlris = new PackedPrefixList(attr.getAddressFamily(), 0);
+				
+				NLRICodec.decodeNLRIs(buffer, nlris);
+				attr.setPackedNlris(nlris);
+			} else {
+				while(buffer.readable()) {
+					attr.getNlris().add(NLRICodec.decodeNLRI(buffer));
+				}
 			}
 		} catch(RuntimeException e) {
 			log.error("failed to decode MP_REACH_NLRI path attribute", e);
@@ -376,8 +515,15 @@ public class UpdatePacketDecoder {
 			attr.setAddressFamily(AddressFamily.fromCode(buffer.readUnsignedShort()));
 			attr.setSubsequentAddressFamily(SubsequentAddressFamily.fromCode(buffer.readUnsignedByte()));
 			
-			while(buffer.readable()) {
-				attr.getNlris().add(NLRICodec.decodeNLRI(buffer));
+			if(packedPrefixDecoding && PackedPrefixList.isSupported(attr.getAddressFamily())) {
+				PackedPrefixList nlris = new PackedPrefixList(attr.getAddressFamily(), 0);
+				
+				NLRICodec.decodeNLRIs(buffer, nlris);
+				attr.setPackedNlris(nlris);
+			} else {
+				while(buffer.readable()) {
+					attr.getNlris().add(NLRICodec.decodeNLRI(buffer));
+				}
 			}
 		} catch(RuntimeException e) {
 			log.error("failed to decode MP_UNREACH_NLRI path attribute", e);
@@ -417,8 +563,35 @@ public class UpdatePacketDecoder {
 		return attr;
 	}
 	 
-	private List<PathAttribute> decodePathAttributes(ChannelBuffer buffer) {
+	/**
+	 * decode a sequence of encoded path attributes. The passed channel buffer MUST point to the first octet of the first 
+	 * path attribute, the whole readable content of the buffer is decoded. If lazy attribute decoding is enabled, 
+	 * the path attributes are copied once and the lazily decoded attributes refer to the copy.
+	 * 
+	 * @param buffer the buffer containing the path attributes
+	 * @return the decoded path attributes
+	 */
+	public List<PathAttribute> decodePathAttributes(ChannelBuffer buffer) {
+		return decodePathAttributes(buffer, null);
+	}
+	
+	/**
+	 * decode a sequence of encoded path attributes and check each decoded attribute.
+	 * 
+	 * @param buffer the buffer containing the path attributes
+	 * @param validation the checks the decoded attributes are added to, may be <code>null</code>
+	 * @return the decoded path attributes
+	 * @see #decodePathAttributes(ChannelBuffer)
+	 */
+	public List<PathAttribute> decodePathAttributes(ChannelBuffer buffer, PathAttributeValidation validation) {
 		List<PathAttribute> attributes = new LinkedList<PathAttribute>();
+		int blockIndex = buffer.readerIndex();
+		byte[] block = null;
+		
+		if(lazyAttributeDecoding) {
+			block = new byte[buffer.readableBytes()];
+			buffer.getBytes(blockIndex, block);
+		}
 		
 		while(buffer.readable()) {
 			buffer.markReaderIndex();
@@ -436,68 +609,87 @@ public class UpdatePacketDecoder {
 				else
 					valueLength = buffer.readUnsignedByte();
 	
-				ChannelBuffer valueBuffer = ChannelBuffers.buffer(valueLength);
-	
-				buffer.readBytes(valueBuffer);
+				int valueOffset = buffer.readerIndex() - blockIndex;
+				ChannelBuffer valueBuffer = buffer.readSlice(valueLength);
 	
 				PathAttribute attr = null;
 			
-				switch (typeCode) {
-				case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_AGGREGATOR:
-					attr = decodeAggregatorPathAttribute(valueBuffer, ASType.AS_NUMBER_2OCTETS);
-					break;
-				case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_AS4_AGGREGATOR:
-					attr = decodeAggregatorPathAttribute(valueBuffer, ASType.AS_NUMBER_4OCTETS);
-					break;
-				case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_AS4_PATH:
-					attr = decodeASPathAttribute(valueBuffer, ASType.AS_NUMBER_4OCTETS);
-					break;
-				case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_AS_PATH:
-					attr = decodeASPathAttribute(valueBuffer, ASType.AS_NUMBER_2OCTETS);
-					break;
-				case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_ATOMIC_AGGREGATE:
-					attr = decodeAtomicAggregatePathAttribute(valueBuffer);
-					break;
-				case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_COMMUNITIES:
-					attr = decodeCommunityPathAttribute(valueBuffer);
-					break;
-				case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_LOCAL_PREF:
-					attr = decodeLocalPrefPathAttribute(valueBuffer);
-					break;
-				case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_MULTI_EXIT_DISC:
-					attr = decodeMultiExitDiscPathAttribute(valueBuffer);
-					break;
-				case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_NEXT_HOP:
-					attr = decodeNextHopPathAttribute(valueBuffer);
-					break;
-				case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_ORIGIN:
-					attr = decodeOriginPathAttribute(valueBuffer);
-					break;
-				case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_MP_REACH_NLRI:
-					attr = decodeMpReachNlriPathAttribute(valueBuffer);
-					break;
-				case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_MP_UNREACH_NLRI:
-					attr = decodeMpUnreachNlriPathAttribute(valueBuffer);
-					break;
-				case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_ORIGINATOR_ID:
-					attr = decodeOriginatorIDPathAttribute(valueBuffer);
-					break;
-				case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_CLUSTER_LIST:
-					attr = decodeClusterListPathAttribute(valueBuffer);
-					break;
-				default: 
-				    {
-						byte[] value = new byte[valueBuffer.readableBytes()];
+				if(block != null) {
+					switch (typeCode) {
+					case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_AS4_PATH:
+						attr = decodeEncodedASPathAttribute(valueBuffer, ASType.AS_NUMBER_4OCTETS, block, valueOffset);
+						break;
+					case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_AS_PATH:
+						attr = decodeEncodedASPathAttribute(valueBuffer, ASType.AS_NUMBER_2OCTETS, block, valueOffset);
+						break;
+					case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_COMMUNITIES:
+						attr = decodeEncodedCommunityPathAttribute(valueBuffer, block, valueOffset);
+						break;
+					}
+				}
+				
+				if(attr == null) {
+					switch (typeCode) {
+					case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_AGGREGATOR:
+						attr = decodeAggregatorPathAttribute(valueBuffer, ASType.AS_NUMBER_2OCTETS);
+						break;
+					case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_AS4_AGGREGATOR:
+						attr = decodeAggregatorPathAttribute(valueBuffer, ASType.AS_NUMBER_4OCTETS);
+						break;
+					case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_AS4_PATH:
+						attr = decodeASPathAttribute(valueBuffer, ASType.AS_NUMBER_4OCTETS);
+						break;
+					case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_AS_PATH:
+						attr = decodeASPathAttribute(valueBuffer, ASType.AS_NUMBER_2OCTETS);
+						break;
+					case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_ATOMIC_AGGREGATE:
+						attr = decodeAtomicAggregatePathAttribute(valueBuffer);
+						break;
+					case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_COMMUNITIES:
+						attr = decodeCommunityPathAttribute(valueBuffer);
+						break;
+					case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_LOCAL_PREF:
+						attr = decodeLocalPrefPathAttribute(valueBuffer);
+						break;
+					case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_MULTI_EXIT_DISC:
+						attr = decodeMultiExitDiscPathAttribute(valueBuffer);
+						break;
+					case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_NEXT_HOP:
+						attr = decodeNextHopPathAttribute(valueBuffer);
+						break;
+					case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_ORIGIN:
+						attr = decodeOriginPathAttribute(valueBuffer);
+						break;
+					case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_MP_REACH_NLRI:
+						attr = decodeMpReachNlriPathAttribute(valueBuffer);
+						break;
+					case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_MP_UNREACH_NLRI:
+						attr = decodeMpUnreachNlriPathAttribute(valueBuffer);
+						break;
+					case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_ORIGINATOR_ID:
+						attr = decodeOriginatorIDPathAttribute(valueBuffer);
+						break;
+					case BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_CLUSTER_LIST:
+						attr = decodeClusterListPathAttribute(valueBuffer);
+						break;
+					default: 
+					    {
+							byte[] value = new byte[valueBuffer.readableBytes()];
 					
-						valueBuffer.readBytes(value);
-						attr = new UnknownPathAttribute(typeCode, value);
-				    }
-					break;
+							valueBuffer.readBytes(value);
+							attr = new UnknownPathAttribute(typeCode, value);
+					    }
+						break;
+					}
 				}
+				
 				attr.setOptional(optional);
 				attr.setTransitive(transitive);
 				attr.setPartial(partial);
 				
+				if(validation != null)
+					validation.add(attr);
+				
 				attributes.add(attr);
 			} catch(AttributeException ex) {
 				int endReadIndex = buffer.readerIndex();
@@ -0,0 +1,381 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.protocol.update.UpdatePacketWriter.java 
+ */
+package org.bgp4j.netty.protocol.update;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.bgp4j.net.AddressFamily;
+import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.SubsequentAddressFamily;
+import org.bgp4j.net.attributes.MultiProtocolReachableNLRI;
+import org.bgp4j.net.attributes.MultiProtocolUnreachableNLRI;
+import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.netty.BGPv4Constants;
+import org.bgp4j.netty.NLRICodec;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * Streaming encoder for UPDATE packets. The packets are written directly into chunk buffers without building
+ * intermediate buffers per packet, path attribute or NLRI. Each written packet is handed out as a slice of its chunk,
+ * a new chunk is allocated when the current one cannot take the next packet. Packets announcing routes are composed 
+ * of slices of the chunk and of the shared encoded path attributes.
+ * 
+ * The first chunk is small, each further chunk doubles in size up to the configured chunk size. A writer emitting a 
+ * single small packet, e.g. a withdrawal flushed immediately, does not pin a large buffer until the write completes.
+ * 
+ * The size of each packet is calculated before it is written, so every length field is written once with its final
+ * value and no bytes are moved afterwards.
+ * 
+ * A writer instance is not thread-safe. 
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class UpdatePacketWriter {
+
+	/** default upper bound for the size of the chunk buffers */
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+	
+	/** size of the first chunk buffer allocated by a writer unless a packet needs more */
+	public static final int INITIAL_CHUNK_SIZE = 512;
+	
+	/** upper bound for the calculated size of an UPDATE packet including the packet header */
+	public static final int UPDATE_PACKET_SIZE_LIMIT = BGPv4Constants.BGP_PACKET_MAX_LENGTH;
+	
+	/** value length of an MP_UNREACH_NLRI attribute without NLRI: AFI and SAFI */
+	private static final int MP_UNREACH_NLRI_MIN_VALUE_LENGTH = 3;
+
+	private int chunkSize;
+	private int nextChunkSize;
+	private ChannelBuffer chunk;
+	private List<ChannelBuffer> packets = new LinkedList<ChannelBuffer>();
+	
+	/** the NLRI of the packet currently assembled, reused for all packets */
+	private List<NetworkLayerReachabilityInformation> batch = new ArrayList<NetworkLayerReachabilityInformation>();
+	
+	public UpdatePacketWriter() {
+		this(DEFAULT_CHUNK_SIZE);
+	}
+	
+	/**
+	 * @param chunkSize the upper bound for the size of the chunk buffers allocated by the writer. A single packet 
+	 * larger than the bound still gets a chunk of its own.
+	 */
+	public UpdatePacketWriter(int chunkSize) {
+		if(chunkSize < 1)
+			throw new IllegalArgumentException("illegal chunk size: " + chunkSize);
+		
+		this.chunkSize = chunkSize;
+		this.nextChunkSize = Math.min(INITIAL_CHUNK_SIZE, chunkSize);
+	}
+	
+	/**
+	 * Write a single UPDATE packet
+	 * 
+	 * @param packet the packet
+	 */
+	public void writeUpdatePacket(UpdatePacket packet) {
+		int withdrawnLength = packet.calculateSizeWithdrawnRoutes();
+		int attributesLength = packet.calculateSizePathAttributes();
+		int packetSize = BGPv4Constants.BGP_PACKET_MIN_SIZE_UPDATE + withdrawnLength + attributesLength + packet.calculateSizeNlris();
+		ChannelBuffer buffer = beginPacket(packetSize);
+		
+		buffer.writeShort(withdrawnLength);
+		if(packet.getWithdrawnRoutes() != null) {
+			for(NetworkLayerReachabilityInformation nlri : packet.getWithdrawnRoutes())
+				NLRICodec.encodeNLRI(nlri, buffer);
+		}
+		
+		buffer.writeShort(attributesLength);
+		if(packet.getPathAttributes() != null) {
+			for(PathAttribute pathAttribute : packet.getPathAttributes())
+				PathAttributeCodec.encodePathAttribute(pathAttribute, buffer);
+		}
+		
+		if(packet.getNlris() != null) {
+			for(NetworkLayerReachabilityInformation nlri : packet.getNlris())
+				NLRICodec.encodeNLRI(nlri, buffer);
+		}
+		
+		endPacket(packetSize);
+	}
+	
+	/**
+	 * Write the End-of-RIB marker of an address family (RFC 4724, section 2). The marker is an UPDATE packet without 
+	 * any withdrawn routes, path attributes and NLRI for IPv4 unicast and an UPDATE packet carrying an empty 
+	 * MP_UNREACH_NLRI attribute for all other address families.
+	 * 
+	 * @param afk the address family
+	 */
+	public void writeEndOfRib(AddressFamilyKey afk) {
+		UpdatePacket packet = new UpdatePacket();
+		
+		if(!afk.matches(AddressFamily.IPv4, SubsequentAddressFamily.NLRI_UNICAST_FORWARDING))
+			packet.getPathAttributes().add(new MultiProtocolUnreachableNLRI(afk.getAddressFamily(), afk.getSubsequentAddressFamily()));
+		
+		writeUpdatePacket(packet);
+	}
+	
+	/**
+	 * Write the withdrawals of an address family into as many UPDATE packets as needed. The withdrawals are carried
+	 * in the withdrawn routes field for IPv4 unicast and in an MP_UNREACH_NLRI attribute for all other address families.
+	 * 
+	 * @param afk the address family
+	 * @param nlris the withdrawn prefixes
+	 */
+	public void writeWithdrawnRoutes(AddressFamilyKey afk, Collection<NetworkLayerReachabilityInformation> nlris) {
+		boolean multiProtocol = !afk.matches(AddressFamily.IPv4, SubsequentAddressFamily.NLRI_UNICAST_FORWARDING);
+		int mpFlags = multiProtocol ? PathAttributeCodec.attributeFlags(new MultiProtocolUnreachableNLRI()) : 0;
+		int nlrisLength = 0;
+		
+		batch.clear();
+		for(NetworkLayerReachabilityInformation nlri : nlris) {
+			int nlriLength = NLRICodec.calculateEncodedNLRILength(nlri);
+			
+			if(batch.size() > 0 && withdrawnPacketSize(multiProtocol, nlrisLength + nlriLength) > UPDATE_PACKET_SIZE_LIMIT) {
+				writeWithdrawnPacket(afk, multiProtocol, mpFlags, nlrisLength);
+				batch.clear();
+				nlrisLength = 0;
+			}
+			
+			batch.add(nlri);
+			nlrisLength += nlriLength;
+		}
+		
+		if(batch.size() > 0)
+			writeWithdrawnPacket(afk, multiProtocol, mpFlags, nlrisLength);
+		batch.clear();
+	}
+	
+	/**
+	 * Write the announcements of prefixes sharing the same path attributes into as many UPDATE packets as needed. The
+	 * path attributes are encoded once for all packets.
+	 * 
+	 * @param pathAttributes the path attributes
+	 * @param nlris the announced prefixes
+	 * @see #writeAddedRoutes(PathAttributeBlock, Collection)
+	 */
+	public void writeAddedRoutes(Collection<PathAttribute> pathAttributes, Collection<NetworkLayerReachabilityInformation> nlris) {
+		writeAddedRoutes(PathAttributeBlock.encode(pathAttributes), nlris);
+	}
+	
+	/**
+	 * Write the announcements of prefixes sharing the same encoded path attributes into as many UPDATE packets as 
+	 * needed. If the block has an MP_REACH_NLRI attribute, the prefixes are carried in that attribute. Each packet 
+	 * gets an MP_REACH_NLRI attribute with the address family and next hop of the block and its own share of the 
+	 * prefixes. The prefixes are carried in the NLRI field otherwise.
+	 * 
+	 * The packets are composite buffers: Only the packet header, the MP_REACH_NLRI attribute and the prefixes are 
+	 * written into the chunk buffers, the encoded attributes are shared slices of the block.  
+	 * 
+	 * @param block the encoded path attributes
+	 * @param nlris the announced prefixes
+	 */
+	public void writeAddedRoutes(PathAttributeBlock block, Collection<NetworkLayerReachabilityInformation> nlris) {
+		int nlrisLength = 0;
+		
+		batch.clear();
+		for(NetworkLayerReachabilityInformation nlri : nlris) {
+			int nlriLength = NLRICodec.calculateEncodedNLRILength(nlri);
+			
+			if(batch.size() > 0 && addedPacketSize(block, nlrisLength + nlriLength) > UPDATE_PACKET_SIZE_LIMIT) {
+				writeAddedPacket(block, nlrisLength);
+				batch.clear();
+				nlrisLength = 0;
+			}
+			
+			batch.add(nlri);
+			nlrisLength += nlriLength;
+		}
+		
+		if(batch.size() > 0)
+			writeAddedPacket(block, nlrisLength);
+		batch.clear();
+	}
+	
+	/**
+	 * @return the packets written so far, each one is a readable buffer holding the complete packet
+	 */
+	public List<ChannelBuffer> getPackets() {
+		return packets;
+	}
+	
+	private static int withdrawnPacketSize(boolean multiProtocol, int nlrisLength) {
+		return BGPv4Constants.BGP_PACKET_MIN_SIZE_UPDATE + (multiProtocol 
+				? encodedPathAttributeLength(MP_UNREACH_NLRI_MIN_VALUE_LENGTH + nlrisLength) 
+				: nlrisLength);
+	}
+	
+	private static int addedPacketSize(PathAttributeBlock block, int nlrisLength) {
+		return BGPv4Constants.BGP_PACKET_MIN_SIZE_UPDATE + block.getEncodedLength() + multiProtocolReachableLength(block, nlrisLength);
+	}
+	
+	/**
+	 * @return the number of bytes of an added routes packet written into the chunk buffer after the packet header
+	 */
+	private static int multiProtocolReachableLength(PathAttributeBlock block, int nlrisLength) {
+		return (block.getMultiProtocolReachable() != null) 
+				? encodedPathAttributeLength(block.getMultiProtocolReachableValueLength() + nlrisLength) 
+				: nlrisLength;
+	}
+	
+	private void writeWithdrawnPacket(AddressFamilyKey afk, boolean multiProtocol, int mpFlags, int nlrisLength) {
+		int packetSize = withdrawnPacketSize(multiProtocol, nlrisLength);
+		ChannelBuffer buffer = beginPacket(packetSize);
+		
+		if(multiProtocol) {
+			int valueLength = MP_UNREACH_NLRI_MIN_VALUE_LENGTH + nlrisLength;
+			
+			buffer.writeShort(0);
+			buffer.writeShort(encodedPathAttributeLength(valueLength));
+			writePathAttributeHeader(buffer, mpFlags, BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_MP_UNREACH_NLRI, valueLength);
+			buffer.writeShort(afk.getAddressFamily().toCode());
+			buffer.writeByte(afk.getSubsequentAddressFamily().toCode());
+			writeBatch(buffer);
+		} else {
+			buffer.writeShort(nlrisLength);
+			writeBatch(buffer);
+			buffer.writeShort(0);
+		}
+		
+		endPacket(packetSize);
+	}
+	
+	private void writeAddedPacket(PathAttributeBlock block, int nlrisLength) {
+		MultiProtocolReachableNLRI mpReach = block.getMultiProtocolReachable();
+		int packetSize = addedPacketSize(block, nlrisLength);
+		int bodyLength = multiProtocolReachableLength(block, nlrisLength);
+		ChannelBuffer buffer = beginPacket(packetSize, BGPv4Constants.BGP_PACKET_MIN_SIZE_UPDATE + bodyLength);
+		
+		buffer.writeShort(0);
+		buffer.writeShort(packetSize - BGPv4Constants.BGP_PACKET_MIN_SIZE_UPDATE - ((mpReach != null) ? 0 : nlrisLength));
+		
+		ChannelBuffer header = sliceChunk();
+		
+		if(mpReach != null) {
+			writePathAttributeHeader(buffer, block.getMultiProtocolReachableFlags(), 
+					BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_MP_REACH_NLRI, block.getMultiProtocolReachableValueLength() + nlrisLength);
+			buffer.writeShort(mpReach.getAddressFamily().toCode());
+			buffer.writeByte(mpReach.getSubsequentAddressFamily().toCode());
+			if(mpReach.getNextHop() != null) {
+				buffer.writeByte(mpReach.getNextHop().getAddress().length);
+				buffer.writeBytes(mpReach.getNextHop().getAddress());
+			} else
+				buffer.writeByte(0);
+			buffer.writeByte(0); // reserved field
+			writeBatch(buffer);
+			
+			addPacket(ChannelBuffers.wrappedBuffer(header, block.getLeadingAttributes(), sliceChunk(), block.getTrailingAttributes()), 
+					packetSize);
+		} else {
+			writeBatch(buffer);
+			
+			addPacket(ChannelBuffers.wrappedBuffer(header, block.getLeadingAttributes(), sliceChunk()), packetSize);
+		}
+	}
+	
+	private void writeBatch(ChannelBuffer buffer) {
+		for(NetworkLayerReachabilityInformation nlri : batch)
+			NLRICodec.encodeNLRI(nlri, buffer);
+	}
+	
+	/**
+	 * write the header of a path attribute. The extended length flag is set if the value length requires it.
+	 */
+	private static void writePathAttributeHeader(ChannelBuffer buffer, int flags, int typeCode, int valueLength) {
+		if(valueLength > 255) {
+			buffer.writeShort(flags | BGPv4Constants.BGP_PATH_ATTRIBUTE_EXTENDED_LENGTH_BIT 
+					| (typeCode & BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_MASK));
+			buffer.writeShort(valueLength);
+		} else {
+			buffer.writeShort(flags | (typeCode & BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_MASK));
+			buffer.writeByte(valueLength);
+		}
+	}
+	
+	/**
+	 * @return the encoded length of a path attribute including the flags, type and length fields
+	 */
+	public static int encodedPathAttributeLength(int valueLength) {
+		return 2 + ((valueLength > 255) ? 2 : 1) + valueLength;
+	}
+	
+	/**
+	 * make room for a packet of the given size in the current chunk and write the packet header
+	 * 
+	 * @return the buffer to write the packet body into
+	 */
+	private ChannelBuffer beginPacket(int packetSize) {
+		return beginPacket(packetSize, packetSize);
+	}
+	
+	/**
+	 * make room for the part of a packet written into the chunk buffer and write the packet header
+	 * 
+	 * @param packetSize the size of the complete packet
+	 * @param chunkLength the number of bytes of the packet written into the chunk buffer, including the header
+	 * @return the buffer to write the packet body into
+	 */
+	private ChannelBuffer beginPacket(int packetSize, int chunkLength) {
+		if(chunk == null || chunk.writableBytes() < chunkLength) {
+			int size = Math.max(nextChunkSize, chunkLength);
+			
+			chunk = ChannelBuffers.buffer(size);
+			nextChunkSize = (int)Math.min(2L * size, chunkSize);
+		}
+		
+		for(int i=0; i<BGPv4Constants.BGP_PACKET_MARKER_LENGTH; i++)
+			chunk.writeByte(0xff);
+		
+		chunk.writeShort(packetSize);
+		chunk.writeByte(BGPv4Constants.BGP_PACKET_TYPE_UPDATE);
+		
+		return chunk;
+	}
+	
+	/**
+	 * hand out the packet written last as a slice of the current chunk
+	 */
+	private void endPacket(int packetSize) {
+		addPacket(sliceChunk(), packetSize);
+	}
+	
+	/**
+	 * @return the bytes written into the current chunk since the last slice was taken
+	 */
+	private ChannelBuffer sliceChunk() {
+		ChannelBuffer slice = chunk.slice(chunk.readerIndex(), chunk.readableBytes());
+		
+		chunk.readerIndex(chunk.writerIndex());
+		
+		return slice;
+	}
+	
+	private void addPacket(ChannelBuffer packet, int packetSize) {
+		if(packet.readableBytes() != packetSize)
+			throw new IllegalStateException("encoded UPDATE packet size " + packet.readableBytes() 
+					+ " differs from calculated size " + packetSize);
+		
+		packets.add(packet);
+	}
+}
@@ -22,6 +22,7 @@ import org.bgp4j.config.nodes.PeerConfiguration;
 import org.bgp4j.netty.handlers.BGPv4ClientEndpoint;
 import org.bgp4j.netty.handlers.BGPv4Codec;
 import org.bgp4j.netty.handlers.BGPv4Reframer;
+import org.bgp4j.netty.handlers.ControlMessagePriorityHandler;
 import org.bgp4j.netty.handlers.InboundOpenCapabilitiesProcessor;
 import org.bgp4j.netty.handlers.ValidateServerIdentifier;
 import org.jboss.netty.bootstrap.ClientBootstrap;
@@ -46,6 +47,7 @@ public class BGPv4Client {
 	private @Inject InboundOpenCapabilitiesProcessor inboundOpenCapProcessor;
 	private @Inject ValidateServerIdentifier validateServer;
 	private @Inject BGPv4Reframer reframer;
+	private @Inject ControlMessagePriorityHandler priorityHandler;
 	private @Inject @ClientFactory ChannelFactory channelFactory;
 	
 	private Channel clientChannel;
@@ -60,6 +62,7 @@ public class BGPv4Client {
 				ChannelPipeline pipeline = Channels.pipeline();
 				
 				pipeline.addLast(BGPv4Reframer.HANDLER_NAME, reframer);
+				pipeline.addLast(ControlMessagePriorityHandler.HANDLER_NAME, priorityHandler);
 				pipeline.addLast(BGPv4Codec.HANDLER_NAME, codec);
 				pipeline.addLast(InboundOpenCapabilitiesProcessor.HANDLER_NAME, inboundOpenCapProcessor);
 				pipeline.addLast(ValidateServerIdentifier.HANDLER_NAME, validateServer);
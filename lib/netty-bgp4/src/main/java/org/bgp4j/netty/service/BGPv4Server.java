@@ -25,6 +25,7 @@ import org.bgp4j.config.global.ApplicationConfiguration;
 import org.bgp4j.netty.handlers.BGPv4Codec;
 import org.bgp4j.netty.handlers.BGPv4Reframer;
 import org.bgp4j.netty.handlers.BGPv4ServerEndpoint;
+import org.bgp4j.netty.handlers.ControlMessagePriorityHandler;
 import org.bgp4j.netty.handlers.InboundOpenCapabilitiesProcessor;
 import org.bgp4j.netty.handlers.ValidateServerIdentifier;
 import org.jboss.netty.bootstrap.ServerBootstrap;
@@ -49,6 +50,7 @@ public class BGPv4Server {
 	private @Inject InboundOpenCapabilitiesProcessor inboundOpenCapProcessor;
 	private @Inject ValidateServerIdentifier validateServer;
 	private @Inject BGPv4Reframer reframer;
+	private @Inject ControlMessagePriorityHandler priorityHandler;
 	private Channel serverChannel;
 	private ChannelFactory serverChannelFactory;
 
@@ -66,6 +68,7 @@ public class BGPv4Server {
 				ChannelPipeline pipeline = Channels.pipeline();
 				
 				pipeline.addLast(BGPv4Reframer.HANDLER_NAME, reframer);
+				pipeline.addLast(ControlMessagePriorityHandler.HANDLER_NAME, priorityHandler);
 				pipeline.addLast(BGPv4Codec.HANDLER_NAME, codec);
 				pipeline.addLast(InboundOpenCapabilitiesProcessor.HANDLER_NAME, inboundOpenCapProcessor);
 				pipeline.addLast(ValidateServerIdentifier.HANDLER_NAME, validateServer);
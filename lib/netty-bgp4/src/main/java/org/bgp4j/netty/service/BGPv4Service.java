@@ -20,7 +20,10 @@ import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
 
 import org.bgp4j.config.global.ApplicationConfiguration;
+import org.bgp4j.config.nodes.BgpServerConfiguration;
 import org.bgp4j.netty.fsm.FSMRegistry;
+import org.bgp4j.netty.handlers.BGPv4Codec;
+import org.bgp4j.netty.protocol.update.DecodedPathAttributeCache;
 import org.slf4j.Logger;
 
 
@@ -35,6 +38,8 @@ public class BGPv4Service {
 	private @Inject Instance<BGPv4Server> serverProvider;
 	private @Inject FSMRegistry fsmRegistry;
 	private @Inject ApplicationConfiguration applicationConfiguration;
+	private @Inject BGPv4Codec codec;
+	private @Inject DecodedPathAttributeCache decodedAttributeCache;
 	
 	private BGPv4Server serverInstance;
 
@@ -47,6 +52,14 @@ public class BGPv4Service {
 		fsmRegistry.createRegistry();
 				
 		if(applicationConfiguration.getBgpServerConfiguration()!= null) {
+			BgpServerConfiguration serverConfig = applicationConfiguration.getBgpServerConfiguration();
+			
+			codec.setLazyAttributeDecoding(serverConfig.isLazyAttributeDecoding());
+			if(serverConfig.getDecodedAttributeCacheSize() > 0)
+				decodedAttributeCache.setMaximumSize(serverConfig.getDecodedAttributeCacheSize());
+			codec.setDecodedAttributeCaching(serverConfig.getDecodedAttributeCacheSize() > 0);
+			codec.setPackedPrefixDecoding(serverConfig.isPackedPrefixDecoding());
+			
 			log.info("starting local BGPv4 server");
 			
 			this.serverInstance = serverProvider.get();
@@ -68,6 +81,10 @@ public class BGPv4Service {
 			serverInstance.stopServer();
 
 		fsmRegistry.destroyRegistry();
+		
+		if(decodedAttributeCache.getHits() + decodedAttributeCache.getMisses() > 0)
+			log.info("decoded attribute cache: {} hits, {} misses, hit rate {}", new Object[] { 
+					decodedAttributeCache.getHits(), decodedAttributeCache.getMisses(), decodedAttributeCache.getHitRate() });
 	}
 	
 }
@@ -0,0 +1,139 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.BoundedLRUCacheTest.java 
+ */
+package org.bgp4j.netty;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class BoundedLRUCacheTest {
+
+	@Test
+	public void testGetCountsHitsAndMisses() {
+		BoundedLRUCache<String, Integer> cache = new BoundedLRUCache<String, Integer>();
+		
+		Assert.assertEquals(0.0, cache.getHitRate());
+		Assert.assertNull(cache.get("a"));
+		Assert.assertEquals(Integer.valueOf(1), cache.putIfAbsent("a", 1));
+		Assert.assertEquals(Integer.valueOf(1), cache.get("a"));
+		Assert.assertEquals(Integer.valueOf(1), cache.get("a"));
+		
+		Assert.assertEquals(2, cache.getHits());
+		Assert.assertEquals(1, cache.getMisses());
+		Assert.assertEquals(2.0 / 3.0, cache.getHitRate(), 0.0001);
+	}
+	
+	@Test
+	public void testPutIfAbsentKeepsCachedValue() {
+		BoundedLRUCache<String, Integer> cache = new BoundedLRUCache<String, Integer>();
+		
+		cache.putIfAbsent("a", 1);
+		
+		Assert.assertEquals(Integer.valueOf(1), cache.putIfAbsent("a", 2));
+		Assert.assertEquals(Integer.valueOf(1), cache.get("a"));
+		Assert.assertEquals(1, cache.getSize());
+	}
+	
+	@Test
+	public void testLeastRecentlyUsedEviction() {
+		BoundedLRUCache<String, Integer> cache = new BoundedLRUCache<String, Integer>(2);
+		
+		cache.putIfAbsent("a", 1);
+		cache.putIfAbsent("b", 2);
+		cache.get("a");
+		cache.putIfAbsent("c", 3);
+		
+		Assert.assertEquals(2, cache.getSize());
+		Assert.assertEquals(Integer.valueOf(1), cache.get("a"));
+		Assert.assertNull(cache.get("b"));
+		
+		cache.setMaximumSize(1);
+		
+		Assert.assertEquals(1, cache.getMaximumSize());
+		Assert.assertEquals(1, cache.getSize());
+		Assert.assertEquals(Integer.valueOf(1), cache.get("a"));
+		
+		cache.clear();
+		
+		Assert.assertEquals(0, cache.getSize());
+	}
+	
+	@Test
+	public void testSegmentsShareMaximumSize() {
+		BoundedLRUCache<Integer, Integer> cache = new BoundedLRUCache<Integer, Integer>(1024);
+		
+		for(int i=0; i<4096; i++)
+			cache.putIfAbsent(i, i);
+		
+		Assert.assertEquals(1024, cache.getSize());
+		
+		// the recently added entries are kept
+		Assert.assertEquals(Integer.valueOf(4095), cache.get(4095));
+		
+		cache.setMaximumSize(100);
+		
+		Assert.assertTrue(cache.getSize() <= 100);
+		Assert.assertEquals(Integer.valueOf(4095), cache.get(4095));
+		
+		// the lookups counted before the resize are kept
+		Assert.assertEquals(2, cache.getHits());
+		
+		cache.setMaximumSize(BoundedLRUCache.DEFAULT_MAXIMUM_SIZE);
+		
+		for(int i=0; i<BoundedLRUCache.DEFAULT_MAXIMUM_SIZE * 2; i++)
+			cache.putIfAbsent(i, i);
+		
+		Assert.assertEquals(BoundedLRUCache.DEFAULT_MAXIMUM_SIZE, cache.getSize());
+	}
+	
+	@Test
+	public void testConcurrentAccess() throws Exception {
+		final BoundedLRUCache<Integer, Integer> cache = new BoundedLRUCache<Integer, Integer>(512);
+		Thread[] threads = new Thread[4];
+		
+		for(int t=0; t<threads.length; t++) {
+			threads[t] = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					for(int i=0; i<100000; i++) {
+						Integer key = i % 1000;
+						
+						if(cache.get(key) == null)
+							cache.putIfAbsent(key, key);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for(Thread thread : threads)
+			thread.join();
+		
+		Assert.assertTrue(cache.getSize() <= 512);
+		Assert.assertEquals(400000, cache.getHits() + cache.getMisses());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testIllegalMaximumSize() {
+		new BoundedLRUCache<String, Integer>(0);
+	}
+}
@@ -260,8 +260,10 @@ public class BGPv4FSMTest extends LocalhostNetworkChannelBGPv4TestBase {
 		
 		List<UpdatePacket> updatePackets = drlHandler.selectAllReceivedPackets(UpdatePacket.class);
 
-		Assert.assertEquals(1, updatePackets.size());
+		Assert.assertEquals(2, updatePackets.size());
 		
+		// the initial table transfer of the empty Local RIB is completed by the End-of-RIB marker
+		assertUpdatePacket(updatePackets.remove(0), null, null, null);
 		assertUpdatePacket(updatePackets.remove(0), Arrays.asList(nlri), null, Arrays.asList(localPref, multiExit, nextHop));
 	}
 
@@ -0,0 +1,239 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.fsm.InitialTableTransferTest.java 
+ */
+package org.bgp4j.netty.fsm;
+
+import java.net.Inet4Address;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.bgp4j.net.ASType;
+import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.net.InetAddressNextHop;
+import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.RIBSide;
+import org.bgp4j.net.attributes.LocalPrefPathAttribute;
+import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.netty.BGPv4TestBase;
+import org.bgp4j.netty.fsm.UpdateGroupManagerTest.RecordingMember;
+import org.bgp4j.netty.protocol.BGPv4PacketDecoder;
+import org.bgp4j.netty.protocol.update.UpdatePacket;
+import org.bgp4j.rib.PeerRoutingInformationBaseManager;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class InitialTableTransferTest extends BGPv4TestBase {
+
+	private static final String[] PEER_NAMES = new String[] { "peer1", "peer2" };
+	
+	@Before
+	public void before() {
+		manager = obtainInstance(UpdateGroupManager.class);
+		oruq = obtainInstance(OutboundRoutingUpdateQueue.class);
+		packetDecoder = obtainInstance(BGPv4PacketDecoder.class);
+		
+		pribManager = obtainInstance(PeerRoutingInformationBaseManager.class);
+		pribManager.resetManager();
+		
+		for(String peerName : PEER_NAMES)
+			pribManager.peerRoutingInformationBase(peerName).allocateRoutingInformationBase(RIBSide.Local, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		
+		addressFamilies = new HashSet<AddressFamilyKey>(Arrays.asList(AddressFamilyKey.IPV4_UNICAST_FORWARDING));
+		key = new UpdateGroupKey(addressFamilies, ASType.AS_NUMBER_2OCTETS, false, null, 0, 0, null);
+		
+		oruq.setPeerName("peer2");
+		oruq.setUpdateMask(addressFamilies);
+		
+		source = new RecordingMember("peer1");
+		manager.joinGroup(key, source).completeCatchUp("peer1");
+		
+		member = new RecordingMember("peer2");
+	}
+	
+	@After
+	public void after() {
+		manager.resetManager();
+		manager = null;
+		oruq.shutdown();
+		oruq = null;
+		
+		for(String peerName : PEER_NAMES) {
+			pribManager.peerRoutingInformationBase(peerName).destroyAllRoutingInformationBases();
+			pribManager.destroyPeerRoutingInformationBase(peerName);
+		}
+		pribManager.resetManager();
+		pribManager = null;
+	}
+	
+	private UpdateGroupManager manager;
+	private OutboundRoutingUpdateQueue oruq;
+	private PeerRoutingInformationBaseManager pribManager;
+	private BGPv4PacketDecoder packetDecoder;
+	private HashSet<AddressFamilyKey> addressFamilies;
+	private UpdateGroupKey key;
+	private RecordingMember source;
+	private RecordingMember member;
+	private UpdateGroup group;
+	
+	private NetworkLayerReachabilityInformation addRoute(String peerName, int network) throws Exception {
+		NetworkLayerReachabilityInformation nlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)network});
+		InetAddressNextHop<Inet4Address> gateway = new InetAddressNextHop<Inet4Address>((Inet4Address)Inet4Address.getByAddress(new byte[] {
+				(byte)0xc0, (byte)0xa8, (byte)0xff, (byte)0x01}));
+		
+		pribManager.peerRoutingInformationBase(peerName).routingBase(RIBSide.Local, AddressFamilyKey.IPV4_UNICAST_FORWARDING)
+			.addRoutes(Arrays.asList(nlri), Arrays.asList((PathAttribute)new LocalPrefPathAttribute(100)), gateway);
+		
+		return nlri;
+	}
+	
+	/**
+	 * add the member to the group, its Local RIB is snapshot at this time
+	 */
+	private void join() {
+		group = manager.joinGroup(key, member);
+	}
+	
+	private InitialTableTransfer transfer(int chunkSize) {
+		return new InitialTableTransfer(group.takeCatchUpSnapshots("peer2"), addressFamilies, oruq, member, group, chunkSize);
+	}
+	
+	private UpdatePacket decode(ChannelBuffer buffer) {
+		ChannelBuffer packet = buffer.duplicate();
+		
+		packet.skipBytes(18);
+		
+		return safeDowncast(packetDecoder.decodePacket(packet), UpdatePacket.class);
+	}
+	
+	private void assertEndOfRib(ChannelBuffer buffer) {
+		UpdatePacket packet = decode(buffer);
+		
+		Assert.assertEquals(23, buffer.readableBytes());
+		Assert.assertEquals(0, packet.getWithdrawnRoutes().size());
+		Assert.assertEquals(0, packet.getPathAttributes().size());
+		Assert.assertEquals(0, packet.getNlris().size());
+	}
+	
+	@Test
+	public void testTransferInChunks() throws Exception {
+		List<NetworkLayerReachabilityInformation> nlris = new LinkedList<NetworkLayerReachabilityInformation>();
+		
+		for(int i=0; i<10; i++)
+			nlris.add(addRoute("peer2", i));
+		
+		join();
+		
+		InitialTableTransfer transfer = transfer(4);
+		
+		transfer.run();
+		
+		Assert.assertTrue(transfer.isCompleted());
+		Assert.assertEquals(10, transfer.getTransferredRoutes());
+		Assert.assertEquals(3, transfer.getSentChunks());
+		Assert.assertEquals(3, member.getCapacityRequests());
+		
+		List<ChannelBuffer> updates = member.getUpdates();
+		List<NetworkLayerReachabilityInformation> sent = new LinkedList<NetworkLayerReachabilityInformation>();
+		
+		Assert.assertEquals(4, updates.size());
+		for(ChannelBuffer buffer : updates.subList(0, 3)) 
+			sent.addAll(decode(buffer).getNlris());
+		Assert.assertEquals(nlris, sent);
+		assertEndOfRib(updates.get(3));
+	}
+	
+	@Test
+	public void testEmptyRoutingBase() throws Exception {
+		join();
+		
+		InitialTableTransfer transfer = transfer(4);
+		
+		transfer.run();
+		
+		Assert.assertTrue(transfer.isCompleted());
+		Assert.assertEquals(1, member.getUpdates().size());
+		assertEndOfRib(member.getUpdates().get(0));
+	}
+	
+	@Test
+	public void testChangesDuringTransferSentAfterEndOfRib() throws Exception {
+		addRoute("peer2", 1);
+		join();
+		
+		NetworkLayerReachabilityInformation nlri = addRoute("peer1", 2);
+		
+		Assert.assertEquals(1, source.waitForUpdates(1).size());
+		Assert.assertEquals(0, member.getUpdates().size());
+		
+		transfer(4).run();
+		
+		List<ChannelBuffer> updates = member.getUpdates();
+		
+		Assert.assertEquals(3, updates.size());
+		assertEndOfRib(updates.get(1));
+		Assert.assertEquals(Arrays.asList(nlri), decode(updates.get(2)).getNlris());
+	}
+	
+	@Test
+	public void testCancelledTransfer() throws Exception {
+		for(int i=0; i<10; i++)
+			addRoute("peer2", i);
+		
+		join();
+		
+		InitialTableTransfer transfer = transfer(4);
+		
+		transfer.cancel();
+		transfer.run();
+		
+		Assert.assertTrue(transfer.isCancelled());
+		Assert.assertFalse(transfer.isCompleted());
+		Assert.assertEquals(0, member.getUpdates().size());
+		
+		// the member has not caught up, the packets of the group are still held back
+		addRoute("peer1", 20);
+		
+		Assert.assertEquals(1, source.waitForUpdates(1).size());
+		Assert.assertEquals(0, member.getUpdates().size());
+	}
+
+	@Test
+	public void testTransferOfResetConnectionDropped() throws Exception {
+		for(int i=0; i<10; i++)
+			addRoute("peer2", i);
+		
+		join();
+		
+		InitialTableTransfer transfer = transfer(4);
+		
+		// the session is released and the connection reset before the transfer runs
+		member.setGeneration(1);
+		transfer.run();
+		
+		Assert.assertEquals(0, member.getUpdates().size());
+	}
+}
@@ -0,0 +1,329 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.fsm.OutboundAttributeTransformTest.java 
+ */
+package org.bgp4j.netty.fsm;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.bgp4j.net.ASType;
+import org.bgp4j.net.AddressFamily;
+import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.net.BinaryNextHop;
+import org.bgp4j.net.InetAddressNextHop;
+import org.bgp4j.net.NextHop;
+import org.bgp4j.net.Origin;
+import org.bgp4j.net.PathSegment;
+import org.bgp4j.net.PathSegmentType;
+import org.bgp4j.net.SubsequentAddressFamily;
+import org.bgp4j.net.attributes.ASPathAttribute;
+import org.bgp4j.net.attributes.LocalPrefPathAttribute;
+import org.bgp4j.net.attributes.MultiExitDiscPathAttribute;
+import org.bgp4j.net.attributes.NextHopPathAttribute;
+import org.bgp4j.net.attributes.OriginPathAttribute;
+import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.net.attributes.UnknownPathAttribute;
+import org.bgp4j.netty.BGPv4Constants;
+import org.bgp4j.rib.PathAttributeSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class OutboundAttributeTransformTest {
+
+	private OutboundAttributeTransformCache cache;
+	private InetAddressNextHop<Inet4Address> gateway;
+	
+	@Before
+	public void before() throws Exception {
+		cache = new OutboundAttributeTransformCache();
+		gateway = new InetAddressNextHop<Inet4Address>((Inet4Address)InetAddress.getByName("192.168.2.1"));
+	}
+	
+	@After
+	public void after() {
+		cache = null;
+	}
+	
+	private PathAttributeSet attributes(int localPref, int multiExitDisc, int... ases) {
+		List<PathAttribute> attrs = new LinkedList<PathAttribute>();
+		
+		attrs.add(new OriginPathAttribute(Origin.IGP));
+		attrs.add(new LocalPrefPathAttribute(localPref));
+		attrs.add(new MultiExitDiscPathAttribute(multiExitDisc));
+		attrs.add(new NextHopPathAttribute(gateway));
+		attrs.add(new ASPathAttribute(ASType.AS_NUMBER_2OCTETS, new PathSegment[] { 
+				new PathSegment(ASType.AS_NUMBER_2OCTETS, PathSegmentType.AS_SEQUENCE, ases) 
+		}));
+		
+		return PathAttributeSet.valueOf(attrs);
+	}
+	
+	private <T extends PathAttribute> T find(Set<PathAttribute> attrs, Class<T> clazz) {
+		for(PathAttribute pa : attrs)
+			if(clazz.isInstance(pa))
+				return clazz.cast(pa);
+		
+		return null;
+	}
+	
+	private ASPathAttribute findASPath(Set<PathAttribute> attrs, ASType asType) {
+		for(PathAttribute pa : attrs)
+			if(pa instanceof ASPathAttribute && ((ASPathAttribute)pa).getAsType() == asType)
+				return (ASPathAttribute)pa;
+		
+		return null;
+	}
+	
+	private PathAttributeSet attributesWithAS4Path(int[] ases, int[] as4s) {
+		List<PathAttribute> attrs = new LinkedList<PathAttribute>();
+		ASPathAttribute as4Path = new ASPathAttribute(ASType.AS_NUMBER_4OCTETS, new PathSegment[] { 
+				new PathSegment(ASType.AS_NUMBER_4OCTETS, PathSegmentType.AS_SEQUENCE, as4s) 
+		});
+		
+		as4Path.setOptional(true);
+		attrs.add(new OriginPathAttribute(Origin.IGP));
+		attrs.add(new ASPathAttribute(ASType.AS_NUMBER_2OCTETS, new PathSegment[] { 
+				new PathSegment(ASType.AS_NUMBER_2OCTETS, PathSegmentType.AS_SEQUENCE, ases) 
+		}));
+		attrs.add(as4Path);
+		
+		return PathAttributeSet.valueOf(attrs);
+	}
+	
+	@Test
+	public void testExternalPeer() throws Exception {
+		OutboundAttributeTransform transform = new OutboundAttributeTransform(true, 64512, ASType.AS_NUMBER_2OCTETS, -1, null);
+		PathAttributeSet rewritten = transform.transform(attributes(100, 10, 64513, 64514));
+		
+		Assert.assertNull(find(rewritten, LocalPrefPathAttribute.class));
+		Assert.assertNull(find(rewritten, MultiExitDiscPathAttribute.class));
+		Assert.assertNull(find(rewritten, NextHopPathAttribute.class));
+		Assert.assertNotNull(find(rewritten, OriginPathAttribute.class));
+		
+		ASPathAttribute asPath = find(rewritten, ASPathAttribute.class);
+		
+		Assert.assertEquals(1, asPath.getPathSegments().size());
+		Assert.assertEquals(PathSegmentType.AS_SEQUENCE, asPath.getPathSegments().get(0).getPathSegmentType());
+		Assert.assertEquals(Arrays.asList(64512, 64513, 64514), asPath.getPathSegments().get(0).getAses());
+		
+		Assert.assertSame(gateway, transform.nextHop(AddressFamilyKey.IPV4_UNICAST_FORWARDING, gateway));
+	}
+
+	@Test
+	public void testExternalPeerLocallyOriginated() throws Exception {
+		OutboundAttributeTransform transform = new OutboundAttributeTransform(true, 64512, ASType.AS_NUMBER_2OCTETS, -1, null);
+		PathAttributeSet rewritten = transform.transform(PathAttributeSet.valueOf(Arrays.asList((PathAttribute)new OriginPathAttribute(Origin.IGP))));
+		ASPathAttribute asPath = find(rewritten, ASPathAttribute.class);
+
+		Assert.assertEquals(1, asPath.getPathSegments().size());
+		Assert.assertEquals(Arrays.asList(64512), asPath.getPathSegments().get(0).getAses());
+	}
+	
+	@Test
+	public void testExternalPeerFourOctetLocalASOnTwoOctetSession() throws Exception {
+		OutboundAttributeTransform transform = new OutboundAttributeTransform(true, 196608, ASType.AS_NUMBER_2OCTETS, -1, null);
+		ASPathAttribute asPath = find(transform.transform(attributes(100, 10, 64513)), ASPathAttribute.class);
+
+		Assert.assertEquals(Arrays.asList(BGPv4Constants.BGP_AS_TRANS, 64513), asPath.getPathSegments().get(0).getAses());
+	}
+	
+	@Test
+	public void testExternalPeerAS4PathOnTwoOctetSession() throws Exception {
+		OutboundAttributeTransform transform = new OutboundAttributeTransform(true, 196608, ASType.AS_NUMBER_2OCTETS, -1, null);
+		PathAttributeSet rewritten = transform.transform(attributes(100, 10, 64513));
+		ASPathAttribute asPath = findASPath(rewritten, ASType.AS_NUMBER_2OCTETS);
+		ASPathAttribute as4Path = findASPath(rewritten, ASType.AS_NUMBER_4OCTETS);
+
+		Assert.assertEquals(Arrays.asList(BGPv4Constants.BGP_AS_TRANS, 64513), asPath.getPathSegments().get(0).getAses());
+		Assert.assertEquals(Arrays.asList(196608, 64513), as4Path.getPathSegments().get(0).getAses());
+		Assert.assertTrue(as4Path.isOptional());
+		Assert.assertTrue(as4Path.isTransitive());
+		
+		// no AS4_PATH if all AS numbers fit into two octets
+		transform = new OutboundAttributeTransform(true, 64512, ASType.AS_NUMBER_2OCTETS, -1, null);
+		
+		Assert.assertNull(findASPath(transform.transform(attributes(100, 10, 64513)), ASType.AS_NUMBER_4OCTETS));
+	}
+	
+	@Test
+	public void testExternalPeerMergesReceivedAS4Path() throws Exception {
+		PathAttributeSet received = attributesWithAS4Path(new int[] { 64513, BGPv4Constants.BGP_AS_TRANS, 64515 }, 
+				new int[] { 196609, 64515 });
+		OutboundAttributeTransform transform = new OutboundAttributeTransform(true, 64512, ASType.AS_NUMBER_2OCTETS, -1, null);
+		PathAttributeSet rewritten = transform.transform(received);
+
+		Assert.assertEquals(Arrays.asList(64512, 64513, BGPv4Constants.BGP_AS_TRANS, 64515), 
+				findASPath(rewritten, ASType.AS_NUMBER_2OCTETS).getPathSegments().get(0).getAses());
+		Assert.assertEquals(Arrays.asList(64512, 64513, 196609, 64515), 
+				findASPath(rewritten, ASType.AS_NUMBER_4OCTETS).getPathSegments().get(0).getAses());
+		
+		// a 4-octet session carries the merged path only
+		transform = new OutboundAttributeTransform(true, 64512, ASType.AS_NUMBER_4OCTETS, -1, null);
+		rewritten = transform.transform(received);
+		
+		Assert.assertNull(findASPath(rewritten, ASType.AS_NUMBER_2OCTETS));
+		Assert.assertEquals(Arrays.asList(64512, 64513, 196609, 64515), 
+				findASPath(rewritten, ASType.AS_NUMBER_4OCTETS).getPathSegments().get(0).getAses());
+		
+		// an AS4_PATH longer than the AS_PATH is ignored
+		transform = new OutboundAttributeTransform(true, 64512, ASType.AS_NUMBER_2OCTETS, -1, null);
+		rewritten = transform.transform(attributesWithAS4Path(new int[] { 64513 }, new int[] { 196609, 64515 }));
+		
+		Assert.assertEquals(Arrays.asList(64512, 64513), 
+				findASPath(rewritten, ASType.AS_NUMBER_2OCTETS).getPathSegments().get(0).getAses());
+		Assert.assertNull(findASPath(rewritten, ASType.AS_NUMBER_4OCTETS));
+	}
+	
+	@Test
+	public void testUnrecognizedAttributes() throws Exception {
+		UnknownPathAttribute transitive = new UnknownPathAttribute(99, new byte[] { 0x01 });
+		UnknownPathAttribute nonTransitive = new UnknownPathAttribute(98, new byte[] { 0x02 });
+		
+		nonTransitive.setTransitive(false);
+		
+		PathAttributeSet received = PathAttributeSet.valueOf(Arrays.asList((PathAttribute)new OriginPathAttribute(Origin.IGP),
+				transitive, nonTransitive));
+		
+		for(boolean external : new boolean[] { true, false }) {
+			OutboundAttributeTransform transform = new OutboundAttributeTransform(external, 64512, ASType.AS_NUMBER_2OCTETS, -1, null);
+			List<UnknownPathAttribute> unknown = new LinkedList<UnknownPathAttribute>();
+			
+			for(PathAttribute pa : transform.transform(received))
+				if(pa instanceof UnknownPathAttribute)
+					unknown.add((UnknownPathAttribute)pa);
+			
+			Assert.assertEquals(1, unknown.size());
+			Assert.assertEquals(99, unknown.get(0).getTypeCode());
+			Assert.assertTrue(unknown.get(0).isPartial());
+		}
+		
+		// the attribute of the received route is not modified
+		Assert.assertFalse(transitive.isPartial());
+	}
+	
+	@Test
+	public void testInternalPeerWithMultiExitDiscRewrite() throws Exception {
+		OutboundAttributeTransform transform = new OutboundAttributeTransform(false, 64512, ASType.AS_NUMBER_2OCTETS, 50, null);
+		PathAttributeSet rewritten = transform.transform(attributes(100, 10, 64513));
+		
+		Assert.assertEquals(100, find(rewritten, LocalPrefPathAttribute.class).getLocalPreference());
+		Assert.assertEquals(50, find(rewritten, MultiExitDiscPathAttribute.class).getDiscriminator());
+		Assert.assertEquals(Arrays.asList(64513), find(rewritten, ASPathAttribute.class).getPathSegments().get(0).getAses());
+	}
+	
+	@Test
+	public void testInternalPeerAddsDefaultLocalPref() throws Exception {
+		OutboundAttributeTransform transform = new OutboundAttributeTransform(false, 64512, ASType.AS_NUMBER_2OCTETS, -1, null);
+		PathAttributeSet learnedExternal = PathAttributeSet.valueOf(Arrays.asList((PathAttribute)new OriginPathAttribute(Origin.IGP),
+				new MultiExitDiscPathAttribute(10), new ASPathAttribute(ASType.AS_NUMBER_2OCTETS, new PathSegment[] { 
+						new PathSegment(ASType.AS_NUMBER_2OCTETS, PathSegmentType.AS_SEQUENCE, new int[] { 64513 }) 
+				})));
+		PathAttributeSet rewritten = transform.transform(learnedExternal);
+		
+		Assert.assertEquals(OutboundAttributeTransform.DEFAULT_LOCAL_PREFERENCE, find(rewritten, LocalPrefPathAttribute.class).getLocalPreference());
+		Assert.assertEquals(10, find(rewritten, MultiExitDiscPathAttribute.class).getDiscriminator());
+		Assert.assertEquals(Arrays.asList(64513), find(rewritten, ASPathAttribute.class).getPathSegments().get(0).getAses());
+		
+		// a configured local preference is used, a LOCAL_PREF carried by the route is kept
+		transform = new OutboundAttributeTransform(false, 64512, ASType.AS_NUMBER_2OCTETS, -1, 200, null);
+		
+		Assert.assertEquals(200, find(transform.transform(learnedExternal), LocalPrefPathAttribute.class).getLocalPreference());
+		Assert.assertEquals(150, find(transform.transform(attributes(150, 10, 64513)), LocalPrefPathAttribute.class).getLocalPreference());
+		
+		// the local preference is never added for an external peer
+		transform = new OutboundAttributeTransform(true, 64512, ASType.AS_NUMBER_2OCTETS, -1, 200, null);
+		
+		Assert.assertNull(find(transform.transform(learnedExternal), LocalPrefPathAttribute.class));
+	}
+	
+	@Test
+	public void testNextHopSelf() throws Exception {
+		InetAddress local = InetAddress.getByName("10.0.0.1");
+		OutboundAttributeTransform transform = new OutboundAttributeTransform(false, 64512, ASType.AS_NUMBER_2OCTETS, -1, local);
+		NextHop ipv6Gateway = new BinaryNextHop(InetAddress.getByName("2001:db8::1").getAddress());
+		
+		Assert.assertEquals(new InetAddressNextHop<InetAddress>(local), transform.nextHop(AddressFamilyKey.IPV4_UNICAST_FORWARDING, gateway));
+		Assert.assertEquals(new BinaryNextHop(local.getAddress()), transform.nextHop(new AddressFamilyKey(AddressFamily.IPv4, SubsequentAddressFamily.NLRI_MULTICAST_FORWARDING), 
+				new BinaryNextHop(gateway.getAddress().getAddress())));
+		
+		// the local address cannot be the next hop of another address type
+		Assert.assertSame(ipv6Gateway, transform.nextHop(AddressFamilyKey.IPV6_UNICAST_FORWARDING, ipv6Gateway));
+	}
+	
+	@Test
+	public void testTransformIdentifier() throws Exception {
+		OutboundAttributeTransform transform = new OutboundAttributeTransform(true, 64512, ASType.AS_NUMBER_2OCTETS, -1, null);
+		
+		Assert.assertEquals(transform, new OutboundAttributeTransform(true, 64512, ASType.AS_NUMBER_2OCTETS, -1, null));
+		Assert.assertFalse(transform.equals(new OutboundAttributeTransform(true, 64513, ASType.AS_NUMBER_2OCTETS, -1, null)));
+		Assert.assertFalse(transform.equals(new OutboundAttributeTransform(true, 64512, ASType.AS_NUMBER_4OCTETS, -1, null)));
+		Assert.assertFalse(transform.equals(new OutboundAttributeTransform(true, 64512, ASType.AS_NUMBER_2OCTETS, 50, null)));
+		Assert.assertFalse(transform.equals(new OutboundAttributeTransform(false, 64512, ASType.AS_NUMBER_2OCTETS, -1, null)));
+		Assert.assertFalse((new OutboundAttributeTransform(false, 64512, ASType.AS_NUMBER_2OCTETS, -1, null)).equals(
+				new OutboundAttributeTransform(false, 64512, ASType.AS_NUMBER_2OCTETS, -1, 200, null)));
+	}
+	
+	@Test
+	public void testCacheRewritesEachAttributeSetOnce() throws Exception {
+		OutboundAttributeTransform external = new OutboundAttributeTransform(true, 64512, ASType.AS_NUMBER_2OCTETS, -1, null);
+		OutboundAttributeTransform internal = new OutboundAttributeTransform(false, 64512, ASType.AS_NUMBER_2OCTETS, 50, null);
+		PathAttributeSet[] sets = new PathAttributeSet[5];
+		
+		for(int i=0; i<sets.length; i++)
+			sets[i] = attributes(100 + i, 10, 64513);
+		
+		for(int route=0; route<1000; route++) {
+			PathAttributeSet input = sets[route % sets.length];
+			
+			Assert.assertEquals(external.transform(input), cache.lookup(input, external));
+			Assert.assertEquals(internal.transform(input), cache.lookup(input, internal));
+		}
+		
+		Assert.assertEquals(10, cache.getMisses());
+		Assert.assertEquals(1990, cache.getHits());
+		Assert.assertEquals(10, cache.getSize());
+		Assert.assertSame(cache.lookup(sets[0], external), cache.lookup(sets[0], external));
+	}
+	
+	@Test
+	public void testCacheEviction() throws Exception {
+		OutboundAttributeTransform external = new OutboundAttributeTransform(true, 64512, ASType.AS_NUMBER_2OCTETS, -1, null);
+		
+		cache.setMaximumSize(2);
+		
+		cache.lookup(attributes(100, 10, 64513), external);
+		cache.lookup(attributes(101, 10, 64513), external);
+		cache.lookup(attributes(102, 10, 64513), external);
+		
+		Assert.assertEquals(2, cache.getSize());
+		
+		cache.lookup(attributes(100, 10, 64513), external);
+		
+		Assert.assertEquals(4, cache.getMisses());
+	}
+}
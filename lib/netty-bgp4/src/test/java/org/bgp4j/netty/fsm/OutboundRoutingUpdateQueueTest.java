@@ -24,9 +24,12 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.Assert;
 
+import org.bgp4j.net.ASType;
 import org.bgp4j.net.AddressFamily;
 import org.bgp4j.net.AddressFamilyKey;
 import org.bgp4j.net.BinaryNextHop;
@@ -34,17 +37,21 @@ import org.bgp4j.net.InetAddressNextHop;
 import org.bgp4j.net.NetworkLayerReachabilityInformation;
 import org.bgp4j.net.RIBSide;
 import org.bgp4j.net.SubsequentAddressFamily;
+import org.bgp4j.net.attributes.ASPathAttribute;
 import org.bgp4j.net.attributes.LocalPrefPathAttribute;
 import org.bgp4j.net.attributes.MultiExitDiscPathAttribute;
 import org.bgp4j.net.attributes.MultiProtocolReachableNLRI;
 import org.bgp4j.net.attributes.MultiProtocolUnreachableNLRI;
 import org.bgp4j.net.attributes.NextHopPathAttribute;
 import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.netty.BGPv4Constants;
 import org.bgp4j.netty.BGPv4TestBase;
+import org.bgp4j.netty.protocol.BGPv4PacketDecoder;
 import org.bgp4j.netty.protocol.update.UpdatePacket;
 import org.bgp4j.rib.PeerRoutingInformationBase;
 import org.bgp4j.rib.PeerRoutingInformationBaseManager;
 import org.bgp4j.rib.RoutingInformationBase;
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -59,18 +66,35 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 	
 	public static class RecordingCallback implements OutboundRoutingUpdateCallback {
 
-		private List<UpdatePacket> updates = new LinkedList<UpdatePacket>();
+		private List<ChannelBuffer> updates = new LinkedList<ChannelBuffer>();
 		
 		@Override
-		public void sendUpdates(List<UpdatePacket> updates) {
+		public synchronized void sendUpdates(List<ChannelBuffer> updates) {
 			this.updates.addAll(updates);
 		}
 
 		/**
 		 * @return the updates
 		 */
-		public List<UpdatePacket> getUpdates() {
-			return updates;
+		public synchronized List<ChannelBuffer> getUpdates() {
+			return new LinkedList<ChannelBuffer>(updates);
+		}
+		
+		/**
+		 * wait until the given number of UPDATE packets has been sent
+		 * 
+		 * @return the updates
+		 */
+		public List<ChannelBuffer> waitForUpdates(int count) throws InterruptedException {
+			for(int i=0; i<500; i++) {
+				List<ChannelBuffer> result = getUpdates();
+				
+				if(result.size() >= count)
+					return result;
+				Thread.sleep(10);
+			}
+			
+			return getUpdates();
 		}
 		
 	}
@@ -78,6 +102,7 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 	@Before
 	public void before() {
 		oruq = obtainInstance(OutboundRoutingUpdateQueue.class);
+		packetDecoder = obtainInstance(BGPv4PacketDecoder.class);
 		
 		pribManager = obtainInstance(PeerRoutingInformationBaseManager.class);
 		pribManager.resetManager();
@@ -109,7 +134,28 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 	private PeerRoutingInformationBaseManager pribManager;
 	private PeerRoutingInformationBase prib;
 	private OutboundRoutingUpdateQueue oruq;
-	private OutboundRoutingUpdateCallback callback;
+	private RecordingCallback callback;
+	private BGPv4PacketDecoder packetDecoder;
+	
+	/**
+	 * decode the UPDATE packets as they are sent to the peer
+	 */
+	private List<UpdatePacket> decodeUpdatePackets(List<ChannelBuffer> buffers) {
+		List<UpdatePacket> packets = new LinkedList<UpdatePacket>();
+		
+		for(ChannelBuffer buffer : buffers) {
+			ChannelBuffer packet = buffer.duplicate();
+			
+			Assert.assertTrue(packet.readableBytes() <= BGPv4Constants.BGP_PACKET_MAX_LENGTH);
+			for(int i=0; i<BGPv4Constants.BGP_PACKET_MARKER_LENGTH; i++)
+				Assert.assertEquals((byte)0xff, packet.readByte());
+			Assert.assertEquals(buffer.readableBytes(), packet.readUnsignedShort());
+			
+			packets.add(safeDowncast(packetDecoder.decodePacket(packet), UpdatePacket.class));
+		}
+		
+		return packets;
+	}
 	
 	@Test
 	public void testBatchSingleRouteIPv4WhileInactive() throws Exception {
@@ -135,13 +181,51 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 		
 		Assert.assertEquals(1, oruq.getNumberOfPendingUpdates());
 		
-		List<UpdatePacket> updatePackets = oruq.buildUpdates();
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(oruq.buildUpdates());
 		
 		Assert.assertEquals(1, updatePackets.size());
 		
 		assertUpdatePacket(updatePackets.remove(0), Arrays.asList(nlri), null, Arrays.asList(localPref, multiExit, nextHop));
 	}
 	
+	@Test
+	public void testMirrorIncludingPendingChanges() throws Exception {
+		Set<AddressFamilyKey> allowed = new HashSet<AddressFamilyKey>(Arrays.asList(AddressFamilyKey.IPV4_UNICAST_FORWARDING));
+		NetworkLayerReachabilityInformation nlri1 = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x01});
+		NetworkLayerReachabilityInformation nlri2 = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x02});
+		NetworkLayerReachabilityInformation nlri3 = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x03});
+		InetAddressNextHop<Inet4Address> gateway = new InetAddressNextHop<Inet4Address>((Inet4Address)Inet4Address.getByAddress(new byte[] {
+				(byte)0xc0, (byte)0xa8, (byte)0x02, (byte)0x01}));
+		PathAttribute localPref = new LocalPrefPathAttribute(100);
+		PathAttribute nextHop = new NextHopPathAttribute(gateway);
+		OutboundRoutingUpdateQueue mirror = obtainInstance(OutboundRoutingUpdateQueue.class);
+		
+		prib.allocateRoutingInformationBase(RIBSide.Local, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+
+		RoutingInformationBase rib = prib.routingBase(RIBSide.Local, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		
+		oruq.setUpdateMask(allowed);
+		oruq.startSendingUpdates();
+		mirror.setUpdateMask(allowed);
+		mirror.startSendingUpdates();
+		
+		rib.addRoutes(Arrays.asList(nlri1, nlri2), Arrays.asList(localPref), gateway);
+		rib.withdrawRoutes(Arrays.asList(nlri2));
+		oruq.addMirror(mirror, true);
+		rib.addRoutes(Arrays.asList(nlri3), Arrays.asList(localPref), gateway);
+		
+		Assert.assertEquals(3, mirror.getNumberOfPendingPrefixes());
+		
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(mirror.buildUpdates());
+		
+		Assert.assertEquals(2, updatePackets.size());
+		assertUpdatePacket(updatePackets.get(0), null, Arrays.asList(nlri2), null);
+		assertUpdatePacket(updatePackets.get(1), Arrays.asList(nlri1, nlri3), null, Arrays.asList(localPref, nextHop));
+		
+		oruq.removeMirror(mirror);
+		mirror.shutdown();
+	}
+	
 	@Test
 	public void testBatchSingleRouteIPv4WhileActive() throws Exception {
 		Set<AddressFamilyKey> allowed = new HashSet<AddressFamilyKey>();
@@ -158,7 +242,7 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 		
 		allowed.add(AddressFamilyKey.IPV4_UNICAST_FORWARDING);
 		oruq.setUpdateMask(allowed);
-		oruq.startSendingUpdates(0);
+		oruq.startSendingUpdates();
 		
 		prib.visitRoutingBases(RIBSide.Local, oruq.getImportVisitor(), allowed);
 		
@@ -170,7 +254,7 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 
 		Assert.assertEquals(1, oruq.getNumberOfPendingUpdates());
 		
-		List<UpdatePacket> updatePackets = oruq.buildUpdates();
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(oruq.buildUpdates());
 		
 		Assert.assertEquals(1, updatePackets.size());
 		
@@ -201,7 +285,7 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 		
 		Assert.assertEquals(1, oruq.getNumberOfPendingUpdates());
 		
-		List<UpdatePacket> updatePackets = oruq.buildUpdates();
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(oruq.buildUpdates());
 		
 		Assert.assertEquals(1, updatePackets.size());
 		
@@ -227,7 +311,7 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 		
 		allowed.add(AddressFamilyKey.IPV6_UNICAST_FORWARDING);
 		oruq.setUpdateMask(allowed);
-		oruq.startSendingUpdates(0);
+		oruq.startSendingUpdates();
 		
 		prib.visitRoutingBases(RIBSide.Local, oruq.getImportVisitor(), allowed);
 		
@@ -239,7 +323,7 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 
 		Assert.assertEquals(1, oruq.getNumberOfPendingUpdates());
 		
-		List<UpdatePacket> updatePackets = oruq.buildUpdates();
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(oruq.buildUpdates());
 		
 		Assert.assertEquals(1, updatePackets.size());
 
@@ -278,7 +362,7 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 		
 		Assert.assertEquals(1, oruq.getNumberOfPendingUpdates());
 		
-		List<UpdatePacket> updatePackets = oruq.buildUpdates();
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(oruq.buildUpdates());
 		
 		Assert.assertEquals(1, updatePackets.size());
 		
@@ -314,7 +398,7 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 		
 		Assert.assertEquals(1, oruq.getNumberOfPendingUpdates());
 		
-		List<UpdatePacket> updatePackets = oruq.buildUpdates();
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(oruq.buildUpdates());
 		
 		Assert.assertEquals(1, updatePackets.size());
 
@@ -354,18 +438,18 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 		
 		Assert.assertEquals(1, oruq.getNumberOfPendingUpdates());
 		
-		List<UpdatePacket> updatePackets = oruq.buildUpdates();
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(oruq.buildUpdates());
 		
 		Assert.assertEquals(2, updatePackets.size());
 
 		UpdatePacket packet = updatePackets.remove(0);
 		
-		Assert.assertEquals(1008, packet.getNlris().size());
+		Assert.assertEquals(1013, packet.getNlris().size());
 		resultNlris.addAll(packet.getNlris());
 		
 		packet = updatePackets.remove(0);
 		
-		Assert.assertEquals(528, packet.getNlris().size());
+		Assert.assertEquals(523, packet.getNlris().size());
 		resultNlris.addAll(packet.getNlris());
 		
 		for(NetworkLayerReachabilityInformation nlri : nlris) {
@@ -373,6 +457,176 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 		}
 	}
 
+	@Test
+	public void testBatchMultipleRouteIPv6WhileInactiveWithTwoUpdatePackets() throws Exception {
+		Set<AddressFamilyKey> allowed = new HashSet<AddressFamilyKey>();
+		List<NetworkLayerReachabilityInformation> nlris = new LinkedList<NetworkLayerReachabilityInformation>();
+		BinaryNextHop gateway = (new InetAddressNextHop<Inet6Address>((Inet6Address)Inet6Address.getByAddress(new byte[] {
+				(byte)0xfe, (byte)0x80, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00,
+				(byte)0x02, (byte)0x22, (byte)0x15, (byte)0xff, (byte)0xfe, (byte)0x85, (byte)0xd9, (byte)0xe1 }))).toBinaryNextHop();
+		PathAttribute localPref = new LocalPrefPathAttribute(100);
+		PathAttribute multiExit = new MultiExitDiscPathAttribute(10);
+		List<NetworkLayerReachabilityInformation> resultNlris = new LinkedList<NetworkLayerReachabilityInformation>();		
+		Set<MultiProtocolReachableNLRI> mpNlris = new HashSet<MultiProtocolReachableNLRI>();
+		
+		for(int i=0; i<6; i++) {
+			for(int j=0; j<256; j++) {
+				nlris.add(new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)(0xa8+i), (byte)j}));
+			}
+		}
+		
+		prib.allocateRoutingInformationBase(RIBSide.Local, AddressFamilyKey.IPV6_UNICAST_FORWARDING);
+
+		RoutingInformationBase rib = prib.routingBase(RIBSide.Local, AddressFamilyKey.IPV6_UNICAST_FORWARDING);
+		
+		rib.addRoutes(nlris, 
+				Arrays.asList(localPref, multiExit), 
+				gateway);
+
+		allowed.add(AddressFamilyKey.IPV6_UNICAST_FORWARDING);
+		oruq.setUpdateMask(allowed);
+		prib.visitRoutingBases(RIBSide.Local, oruq.getImportVisitor(), allowed);
+		
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(oruq.buildUpdates());
+		
+		Assert.assertEquals(2, updatePackets.size());
+
+		for(UpdatePacket packet : updatePackets) {
+			Set<MultiProtocolReachableNLRI> packetMpNlris = packet.lookupPathAttributes(MultiProtocolReachableNLRI.class);
+			
+			Assert.assertTrue(packet.calculatePacketSize() <= BGPv4Constants.BGP_PACKET_MAX_LENGTH);
+			Assert.assertEquals(1, packetMpNlris.size());
+			Assert.assertEquals(0, packet.getNlris().size());
+			
+			// each packet carries its own MP_REACH_NLRI attribute
+			for(MultiProtocolReachableNLRI mpNlri : packetMpNlris) {
+				for(MultiProtocolReachableNLRI seen : mpNlris)
+					Assert.assertNotSame(seen, mpNlri);
+				mpNlris.add(mpNlri);
+				resultNlris.addAll(mpNlri.getNlris());
+			}
+		}
+		
+		Assert.assertEquals(nlris.size(), resultNlris.size());
+		Assert.assertTrue(resultNlris.containsAll(nlris));
+	}
+
+	@Test
+	public void testWithdrawMultipleRoutesIPv6WhileActiveWithTwoUpdatePackets() throws Exception {
+		Set<AddressFamilyKey> allowed = new HashSet<AddressFamilyKey>();
+		List<NetworkLayerReachabilityInformation> nlris = new LinkedList<NetworkLayerReachabilityInformation>();
+		BinaryNextHop gateway = (new InetAddressNextHop<Inet6Address>((Inet6Address)Inet6Address.getByAddress(new byte[] {
+				(byte)0xfe, (byte)0x80, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00,
+				(byte)0x02, (byte)0x22, (byte)0x15, (byte)0xff, (byte)0xfe, (byte)0x85, (byte)0xd9, (byte)0xe1 }))).toBinaryNextHop();
+		PathAttribute localPref = new LocalPrefPathAttribute(100);
+		List<NetworkLayerReachabilityInformation> resultNlris = new LinkedList<NetworkLayerReachabilityInformation>();		
+		
+		for(int i=0; i<6; i++) {
+			for(int j=0; j<256; j++) {
+				nlris.add(new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)(0xa8+i), (byte)j}));
+			}
+		}
+		
+		prib.allocateRoutingInformationBase(RIBSide.Local, AddressFamilyKey.IPV6_UNICAST_FORWARDING);
+
+		RoutingInformationBase rib = prib.routingBase(RIBSide.Local, AddressFamilyKey.IPV6_UNICAST_FORWARDING);
+		
+		allowed.add(AddressFamilyKey.IPV6_UNICAST_FORWARDING);
+		oruq.setUpdateMask(allowed);
+		oruq.startSendingUpdates();
+
+		rib.addRoutes(nlris, Arrays.asList(localPref), gateway);
+		oruq.buildUpdates();
+		
+		rib.withdrawRoutes(nlris);
+		
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(oruq.buildUpdates());
+		
+		Assert.assertEquals(2, updatePackets.size());
+		
+		for(UpdatePacket packet : updatePackets) {
+			Set<MultiProtocolUnreachableNLRI> mpUnreachables = packet.lookupPathAttributes(MultiProtocolUnreachableNLRI.class);
+			
+			Assert.assertTrue(packet.calculatePacketSize() <= BGPv4Constants.BGP_PACKET_MAX_LENGTH);
+			Assert.assertEquals(1, mpUnreachables.size());
+			Assert.assertEquals(0, packet.getWithdrawnRoutes().size());
+			
+			resultNlris.addAll(mpUnreachables.iterator().next().getNlris());
+		}
+		
+		Assert.assertEquals(nlris.size(), resultNlris.size());
+		Assert.assertTrue(resultNlris.containsAll(nlris));
+	}
+
+	@Test
+	public void testFlappingRouteIPv4KeepsLatestStateWhileActive() throws Exception {
+		Set<AddressFamilyKey> allowed = new HashSet<AddressFamilyKey>();
+		NetworkLayerReachabilityInformation nlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x01});
+		InetAddressNextHop<Inet4Address> gateway = new InetAddressNextHop<Inet4Address>((Inet4Address)Inet4Address.getByAddress(new byte[] {
+				(byte)0xc0, (byte)0xa8, (byte)0x02, (byte)0x01}));
+		PathAttribute localPref = new LocalPrefPathAttribute(100);
+		
+		prib.allocateRoutingInformationBase(RIBSide.Local, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+
+		RoutingInformationBase rib = prib.routingBase(RIBSide.Local, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		
+		allowed.add(AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		oruq.setUpdateMask(allowed);
+		oruq.startSendingUpdates();
+
+		for(int i=0; i<100; i++) {
+			rib.addRoutes(Arrays.asList(nlri), Arrays.asList(localPref, new MultiExitDiscPathAttribute(i)), gateway);
+			
+			Assert.assertEquals(1, oruq.getNumberOfPendingPrefixes());
+			Assert.assertEquals(1, oruq.getNumberOfPendingUpdates());
+			
+			rib.withdrawRoutes(Arrays.asList(nlri));
+
+			Assert.assertEquals(1, oruq.getNumberOfPendingPrefixes());
+			Assert.assertEquals(1, oruq.getNumberOfPendingUpdates());
+		}
+		
+		rib.addRoutes(Arrays.asList(nlri), Arrays.asList(localPref, new MultiExitDiscPathAttribute(4711)), gateway);
+		
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(oruq.buildUpdates());
+		
+		Assert.assertEquals(1, updatePackets.size());
+		assertUpdatePacket(updatePackets.remove(0), Arrays.asList(nlri), null, 
+				Arrays.asList(localPref, new MultiExitDiscPathAttribute(4711), new NextHopPathAttribute(gateway)));
+		Assert.assertEquals(0, oruq.getNumberOfPendingPrefixes());
+	}
+
+	@Test
+	public void testWithdrawAfterAnnounceReplacesAnnouncementIPv4WhileActive() throws Exception {
+		Set<AddressFamilyKey> allowed = new HashSet<AddressFamilyKey>();
+		NetworkLayerReachabilityInformation firstNlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x01});
+		NetworkLayerReachabilityInformation secondNlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x02});
+		InetAddressNextHop<Inet4Address> gateway = new InetAddressNextHop<Inet4Address>((Inet4Address)Inet4Address.getByAddress(new byte[] {
+				(byte)0xc0, (byte)0xa8, (byte)0x02, (byte)0x01}));
+		PathAttribute localPref = new LocalPrefPathAttribute(100);
+		
+		prib.allocateRoutingInformationBase(RIBSide.Local, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+
+		RoutingInformationBase rib = prib.routingBase(RIBSide.Local, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		
+		allowed.add(AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		oruq.setUpdateMask(allowed);
+		oruq.startSendingUpdates();
+
+		rib.addRoutes(Arrays.asList(firstNlri, secondNlri), Arrays.asList(localPref), gateway);
+		rib.withdrawRoutes(Arrays.asList(firstNlri));
+		
+		Assert.assertEquals(2, oruq.getNumberOfPendingPrefixes());
+		Assert.assertEquals(2, oruq.getNumberOfPendingUpdates());
+		
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(oruq.buildUpdates());
+		
+		Assert.assertEquals(2, updatePackets.size());
+		assertUpdatePacket(updatePackets.remove(0), null, Arrays.asList(firstNlri), null);
+		assertUpdatePacket(updatePackets.remove(0), Arrays.asList(secondNlri), null, 
+				Arrays.asList(localPref, new NextHopPathAttribute(gateway)));
+	}
+
 	@Test
 	public void testBatchTwoDifferentRoutesIPv4WhileInactive() throws Exception {
 		Set<AddressFamilyKey> allowed = new HashSet<AddressFamilyKey>();
@@ -403,7 +657,7 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 		
 		Assert.assertEquals(2, oruq.getNumberOfPendingUpdates());
 		
-		List<UpdatePacket> updatePackets = oruq.buildUpdates();
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(oruq.buildUpdates());
 		
 		Assert.assertEquals(2, updatePackets.size());
 		
@@ -445,7 +699,7 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 		
 		Assert.assertEquals(2, oruq.getNumberOfPendingUpdates());
 		
-		List<UpdatePacket> updatePackets = oruq.buildUpdates();
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(oruq.buildUpdates());
 		
 		Assert.assertEquals(2, updatePackets.size());
 		
@@ -492,7 +746,7 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 		
 		Assert.assertEquals(1, oruq.getNumberOfPendingUpdates());
 		
-		List<UpdatePacket> updatePackets = oruq.buildUpdates();
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(oruq.buildUpdates());
 		
 		Assert.assertEquals(1, updatePackets.size());
 		
@@ -520,7 +774,7 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 		
 		allowed.add(AddressFamilyKey.IPV4_UNICAST_FORWARDING);
 		oruq.setUpdateMask(allowed);
-		oruq.startSendingUpdates(0);
+		oruq.startSendingUpdates();
 		
 		prib.visitRoutingBases(RIBSide.Local, oruq.getImportVisitor(), allowed);
 		
@@ -532,7 +786,7 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 
 		Assert.assertEquals(1, oruq.getNumberOfPendingUpdates());
 		
-		List<UpdatePacket> updatePackets = oruq.buildUpdates();
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(oruq.buildUpdates());
 		
 		Assert.assertEquals(1, updatePackets.size());
 		
@@ -545,7 +799,7 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 		
 		Assert.assertEquals(1, oruq.getNumberOfPendingUpdates());
 		
-		updatePackets = oruq.buildUpdates();
+		updatePackets = decodeUpdatePackets(oruq.buildUpdates());
 		
 		Assert.assertEquals(1, updatePackets.size());
 		
@@ -568,7 +822,7 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 		
 		allowed.add(AddressFamilyKey.IPV6_UNICAST_FORWARDING);
 		oruq.setUpdateMask(allowed);
-		oruq.startSendingUpdates(0);
+		oruq.startSendingUpdates();
 		
 		prib.visitRoutingBases(RIBSide.Local, oruq.getImportVisitor(), allowed);
 		
@@ -580,7 +834,7 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 
 		Assert.assertEquals(1, oruq.getNumberOfPendingUpdates());
 		
-		List<UpdatePacket> updatePackets = oruq.buildUpdates();
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(oruq.buildUpdates());
 		
 		Assert.assertEquals(1, updatePackets.size());
 
@@ -596,7 +850,7 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 		
 		Assert.assertEquals(1, oruq.getNumberOfPendingUpdates());
 		
-		updatePackets = oruq.buildUpdates();
+		updatePackets = decodeUpdatePackets(oruq.buildUpdates());
 		
 		Assert.assertEquals(1, updatePackets.size());
 		
@@ -622,7 +876,7 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 		
 		allowed.add(AddressFamilyKey.IPV4_UNICAST_FORWARDING);
 		oruq.setUpdateMask(allowed);
-		oruq.startSendingUpdates(0);
+		oruq.startSendingUpdates();
 		
 		prib.visitRoutingBases(RIBSide.Local, oruq.getImportVisitor(), allowed);
 		
@@ -635,13 +889,51 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 
 		Assert.assertEquals(1, oruq.getNumberOfPendingUpdates());
 		
-		List<UpdatePacket> updatePackets = oruq.buildUpdates();
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(oruq.buildUpdates());
 		
 		Assert.assertEquals(1, updatePackets.size());
 				
 		assertUpdatePacket(updatePackets.remove(0), null, Arrays.asList(nlri), null);		
 	}
 	
+	@Test
+	public void testUpdateRoutesIPv4InOneBatchWhileActive() throws Exception {
+		Set<AddressFamilyKey> allowed = new HashSet<AddressFamilyKey>();
+		NetworkLayerReachabilityInformation nlri1 = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x01});
+		NetworkLayerReachabilityInformation nlri2 = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x02});
+		NetworkLayerReachabilityInformation nlri3 = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x03});
+		InetAddressNextHop<Inet4Address> gateway = new InetAddressNextHop<Inet4Address>((Inet4Address)Inet4Address.getByAddress(new byte[] {
+				(byte)0xc0, (byte)0xa8, (byte)0x02, (byte)0x01}));
+		PathAttribute localPref = new LocalPrefPathAttribute(100);
+		PathAttribute multiExit = new MultiExitDiscPathAttribute(10);
+		PathAttribute nextHop = new NextHopPathAttribute(gateway);
+		
+		prib.allocateRoutingInformationBase(RIBSide.Local, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+
+		RoutingInformationBase rib = prib.routingBase(RIBSide.Local, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		
+		allowed.add(AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		oruq.setUpdateMask(allowed);
+		oruq.startSendingUpdates();
+		
+		rib.addRoutes(Arrays.asList(nlri1, nlri2), 
+				Arrays.asList(localPref, multiExit), 
+				gateway);
+		rib.updateRoutes(Arrays.asList(nlri1), 
+				Arrays.asList(nlri3), 
+				Arrays.asList(localPref, multiExit), 
+				gateway);
+
+		Assert.assertEquals(2, oruq.getNumberOfPendingUpdates());
+		
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(oruq.buildUpdates());
+		
+		Assert.assertEquals(2, updatePackets.size());
+				
+		assertUpdatePacket(updatePackets.remove(0), null, Arrays.asList(nlri1), null);		
+		assertUpdatePacket(updatePackets.remove(0), Arrays.asList(nlri2, nlri3), null, Arrays.asList(localPref, multiExit, nextHop));
+	}
+	
 	@Test
 	public void testAddSingleRouteIPv6RemoveSingleRouteIPv6ImmediatelyWhileActive() throws Exception {
 		Set<AddressFamilyKey> allowed = new HashSet<AddressFamilyKey>();
@@ -658,7 +950,7 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 		
 		allowed.add(AddressFamilyKey.IPV6_UNICAST_FORWARDING);
 		oruq.setUpdateMask(allowed);
-		oruq.startSendingUpdates(0);
+		oruq.startSendingUpdates();
 		
 		prib.visitRoutingBases(RIBSide.Local, oruq.getImportVisitor(), allowed);
 		
@@ -671,7 +963,7 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 
 		Assert.assertEquals(1, oruq.getNumberOfPendingUpdates());
 		
-		List<UpdatePacket> updatePackets = oruq.buildUpdates();
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(oruq.buildUpdates());
 		
 		Assert.assertEquals(1, updatePackets.size());
 		
@@ -680,4 +972,245 @@ public class OutboundRoutingUpdateQueueTest extends BGPv4TestBase {
 		
 		assertUpdatePacket(updatePackets.remove(0), null, null, Arrays.asList((PathAttribute)mpUnNLRI));		
 	}
+	
+	@Test
+	public void testWithdrawalNotDelayedByMinRouteAdvertisementInterval() throws Exception {
+		Set<AddressFamilyKey> allowed = new HashSet<AddressFamilyKey>();
+		NetworkLayerReachabilityInformation nlri1 = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x01});
+		NetworkLayerReachabilityInformation nlri2 = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x02});
+		InetAddressNextHop<Inet4Address> gateway = new InetAddressNextHop<Inet4Address>((Inet4Address)Inet4Address.getByAddress(new byte[] {
+				(byte)0xc0, (byte)0xa8, (byte)0x02, (byte)0x01}));
+		PathAttribute localPref = new LocalPrefPathAttribute(100);
+		PathAttribute multiExit = new MultiExitDiscPathAttribute(10);
+		PathAttribute nextHop = new NextHopPathAttribute(gateway);
+		
+		prib.allocateRoutingInformationBase(RIBSide.Local, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+
+		RoutingInformationBase rib = prib.routingBase(RIBSide.Local, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		
+		allowed.add(AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		oruq.setUpdateMask(allowed);
+		oruq.startSendingUpdates(60000, 0);
+		
+		// the first announcement is sent immediately
+		rib.addRoutes(Arrays.asList(nlri1), 
+				Arrays.asList(localPref, multiExit), 
+				gateway);
+
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(callback.waitForUpdates(1));
+		
+		Assert.assertEquals(1, updatePackets.size());
+		assertUpdatePacket(updatePackets.remove(0), Arrays.asList(nlri1), null, Arrays.asList(localPref, multiExit, nextHop));
+		
+		// the next announcement waits for the interval to expire, the withdrawal does not
+		rib.addRoutes(Arrays.asList(nlri2), 
+				Arrays.asList(localPref, multiExit), 
+				gateway);
+		rib.withdrawRoutes(Arrays.asList(nlri1));
+
+		updatePackets = decodeUpdatePackets(callback.waitForUpdates(2));
+		
+		Assert.assertEquals(2, updatePackets.size());
+		assertUpdatePacket(updatePackets.get(1), null, Arrays.asList(nlri1), null);
+		Assert.assertEquals(1, oruq.getNumberOfPendingUpdates());
+		Assert.assertEquals(1, oruq.getNumberOfPendingPrefixes());
+	}
+	
+	@Test
+	public void testFlushesRunOffTimerThreadInOrder() throws Exception {
+		Set<AddressFamilyKey> allowed = new HashSet<AddressFamilyKey>();
+		NetworkLayerReachabilityInformation nlri1 = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x01});
+		InetAddressNextHop<Inet4Address> gateway = new InetAddressNextHop<Inet4Address>((Inet4Address)Inet4Address.getByAddress(new byte[] {
+				(byte)0xc0, (byte)0xa8, (byte)0x02, (byte)0x01}));
+		PathAttribute localPref = new LocalPrefPathAttribute(100);
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<String> threadNames = new LinkedList<String>();
+		
+		// the first flush blocks in the callback until released
+		oruq.setCallback(new RecordingCallback() {
+
+			@Override
+			public void sendUpdates(List<ChannelBuffer> updates) {
+				synchronized (threadNames) {
+					threadNames.add(Thread.currentThread().getName());
+				}
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				callback.sendUpdates(updates);
+			}
+		});
+		
+		prib.allocateRoutingInformationBase(RIBSide.Local, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+
+		RoutingInformationBase rib = prib.routingBase(RIBSide.Local, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		
+		allowed.add(AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		oruq.setUpdateMask(allowed);
+		oruq.startSendingUpdates(0, 0);
+		
+		rib.addRoutes(Arrays.asList(nlri1), Arrays.asList(localPref), gateway);
+		
+		for(int i=0; i<500 && oruq.getNumberOfPendingPrefixes() > 0; i++)
+			Thread.sleep(10);
+		
+		// the withdrawal is queued and flushed behind the blocked announcement
+		rib.withdrawRoutes(Arrays.asList(nlri1));
+		Thread.sleep(100);
+		
+		Assert.assertEquals(0, callback.getUpdates().size());
+		
+		release.countDown();
+		
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(callback.waitForUpdates(2));
+		
+		Assert.assertEquals(2, updatePackets.size());
+		assertUpdatePacket(updatePackets.get(0), Arrays.asList(nlri1), null, Arrays.asList(localPref, new NextHopPathAttribute(gateway)));
+		assertUpdatePacket(updatePackets.get(1), null, Arrays.asList(nlri1), null);
+		
+		synchronized (threadNames) {
+			for(String name : threadNames)
+				Assert.assertEquals("bgp-update-flush", name);
+		}
+	}
+	
+	@Test
+	public void testFlushThresholdOverridesMinRouteAdvertisementInterval() throws Exception {
+		Set<AddressFamilyKey> allowed = new HashSet<AddressFamilyKey>();
+		NetworkLayerReachabilityInformation nlri1 = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x01});
+		NetworkLayerReachabilityInformation nlri2 = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x02});
+		NetworkLayerReachabilityInformation nlri3 = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x03});
+		InetAddressNextHop<Inet4Address> gateway = new InetAddressNextHop<Inet4Address>((Inet4Address)Inet4Address.getByAddress(new byte[] {
+				(byte)0xc0, (byte)0xa8, (byte)0x02, (byte)0x01}));
+		PathAttribute localPref = new LocalPrefPathAttribute(100);
+		PathAttribute multiExit = new MultiExitDiscPathAttribute(10);
+		PathAttribute nextHop = new NextHopPathAttribute(gateway);
+		
+		prib.allocateRoutingInformationBase(RIBSide.Local, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+
+		RoutingInformationBase rib = prib.routingBase(RIBSide.Local, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		
+		allowed.add(AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		oruq.setUpdateMask(allowed);
+		oruq.startSendingUpdates(60000, 2);
+		
+		rib.addRoutes(Arrays.asList(nlri1), 
+				Arrays.asList(localPref, multiExit), 
+				gateway);
+
+		Assert.assertEquals(1, callback.waitForUpdates(1).size());
+		
+		rib.addRoutes(Arrays.asList(nlri2), 
+				Arrays.asList(localPref, multiExit), 
+				gateway);
+		Thread.sleep(100);
+		
+		Assert.assertEquals(1, callback.getUpdates().size());
+		Assert.assertEquals(1, oruq.getNumberOfPendingPrefixes());
+		
+		rib.addRoutes(Arrays.asList(nlri3), 
+				Arrays.asList(localPref, multiExit), 
+				gateway);
+
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(callback.waitForUpdates(2));
+		
+		Assert.assertEquals(2, updatePackets.size());
+		assertUpdatePacket(updatePackets.get(1), Arrays.asList(nlri2, nlri3), null, Arrays.asList(localPref, multiExit, nextHop));
+		Assert.assertEquals(0, oruq.getNumberOfPendingPrefixes());
+	}
+	
+	@Test
+	public void testSubSecondMinRouteAdvertisementInterval() throws Exception {
+		Set<AddressFamilyKey> allowed = new HashSet<AddressFamilyKey>();
+		NetworkLayerReachabilityInformation nlri1 = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x01});
+		NetworkLayerReachabilityInformation nlri2 = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x02});
+		InetAddressNextHop<Inet4Address> gateway = new InetAddressNextHop<Inet4Address>((Inet4Address)Inet4Address.getByAddress(new byte[] {
+				(byte)0xc0, (byte)0xa8, (byte)0x02, (byte)0x01}));
+		PathAttribute localPref = new LocalPrefPathAttribute(100);
+		PathAttribute multiExit = new MultiExitDiscPathAttribute(10);
+		PathAttribute nextHop = new NextHopPathAttribute(gateway);
+		
+		prib.allocateRoutingInformationBase(RIBSide.Local, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+
+		RoutingInformationBase rib = prib.routingBase(RIBSide.Local, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		
+		allowed.add(AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		oruq.setUpdateMask(allowed);
+		
+		// routes queued before the session is established are sent immediately
+		rib.addRoutes(Arrays.asList(nlri1), 
+				Arrays.asList(localPref, multiExit), 
+				gateway);
+		prib.visitRoutingBases(RIBSide.Local, oruq.getImportVisitor(), allowed);
+		oruq.startSendingUpdates(200, 0);
+
+		Assert.assertEquals(1, callback.waitForUpdates(1).size());
+		
+		long start = System.currentTimeMillis();
+		
+		rib.addRoutes(Arrays.asList(nlri2), 
+				Arrays.asList(localPref, multiExit), 
+				gateway);
+
+		List<UpdatePacket> updatePackets = decodeUpdatePackets(callback.waitForUpdates(2));
+		
+		Assert.assertEquals(2, updatePackets.size());
+		Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+		assertUpdatePacket(updatePackets.get(1), Arrays.asList(nlri2), null, Arrays.asList(localPref, multiExit, nextHop));
+	}
+
+	@Test
+	public void testTransformExternalPeerWithNextHopSelf() throws Exception {
+		Set<AddressFamilyKey> allowed = new HashSet<AddressFamilyKey>(Arrays.asList(AddressFamilyKey.IPV4_UNICAST_FORWARDING));
+		InetAddressNextHop<Inet4Address> gateway = new InetAddressNextHop<Inet4Address>((Inet4Address)Inet4Address.getByAddress(new byte[] {
+				(byte)0xc0, (byte)0xa8, (byte)0x02, (byte)0x01}));
+		Inet4Address local = (Inet4Address)Inet4Address.getByAddress(new byte[] { (byte)0x0a, 0, 0, 1 });
+		OutboundAttributeTransformCache transformCache = new OutboundAttributeTransformCache();
+		int numberOfRoutes = 0;
+		
+		prib.allocateRoutingInformationBase(RIBSide.Local, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+
+		RoutingInformationBase rib = prib.routingBase(RIBSide.Local, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+
+		// 5 attribute sets shared by 100 routes each
+		for(int set=0; set<5; set++) {
+			List<NetworkLayerReachabilityInformation> nlris = new LinkedList<NetworkLayerReachabilityInformation>();
+			
+			for(int i=0; i<100; i++)
+				nlris.add(new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)set, (byte)i}));
+			
+			rib.addRoutes(nlris, Arrays.asList((PathAttribute)new LocalPrefPathAttribute(100 + set), new MultiExitDiscPathAttribute(10)), gateway);
+			numberOfRoutes += nlris.size();
+		}
+		
+		oruq.setUpdateMask(allowed);
+		oruq.setTransformCache(transformCache);
+		oruq.setTransform(new OutboundAttributeTransform(true, 64512, ASType.AS_NUMBER_2OCTETS, -1, local));
+		prib.visitRoutingBases(RIBSide.Local, oruq.getImportVisitor(), allowed);
+		
+		// the attribute sets differ in the LOCAL_PREF only, thus the routes share one attribute group after the rewrite
+		Assert.assertEquals(numberOfRoutes, oruq.getNumberOfPendingPrefixes());
+		Assert.assertEquals(1, oruq.getNumberOfPendingUpdates());
+		Assert.assertEquals(5, transformCache.getMisses());
+		
+		int numberOfNlris = 0;
+		
+		for(UpdatePacket packet : decodeUpdatePackets(oruq.buildUpdates())) {
+			Set<ASPathAttribute> asPaths = packet.lookupPathAttributes(ASPathAttribute.class);
+			Set<NextHopPathAttribute> nextHops = packet.lookupPathAttributes(NextHopPathAttribute.class);
+			
+			Assert.assertEquals(0, packet.lookupPathAttributes(LocalPrefPathAttribute.class).size());
+			Assert.assertEquals(0, packet.lookupPathAttributes(MultiExitDiscPathAttribute.class).size());
+			Assert.assertEquals(1, nextHops.size());
+			Assert.assertEquals(local, nextHops.iterator().next().getNextHop().getAddress());
+			Assert.assertEquals(1, asPaths.size());
+			Assert.assertEquals(Arrays.asList(64512), asPaths.iterator().next().getPathSegments().get(0).getAses());
+			
+			numberOfNlris += packet.getNlris().size();
+		}
+		
+		Assert.assertEquals(numberOfRoutes, numberOfNlris);
+	}
 }
@@ -0,0 +1,383 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.fsm.PipelinedUpdateWriterTest.java 
+ */
+package org.bgp4j.netty.fsm;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelConfig;
+import org.jboss.netty.channel.DefaultChannelFuture;
+import org.jboss.netty.channel.socket.nio.NioChannelConfig;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class PipelinedUpdateWriterTest {
+
+	private Channel channel;
+	private List<ChannelBuffer> written;
+	private List<DefaultChannelFuture> futures;
+	
+	@Before
+	public void before() {
+		channel = Mockito.mock(Channel.class);
+		written = new LinkedList<ChannelBuffer>();
+		futures = new LinkedList<DefaultChannelFuture>();
+		
+		Mockito.when(channel.getConfig()).thenReturn(Mockito.mock(ChannelConfig.class));
+		Mockito.when(channel.isWritable()).thenReturn(true);
+		Mockito.when(channel.write(Matchers.any())).thenAnswer(new Answer<DefaultChannelFuture>() {
+
+			@Override
+			public DefaultChannelFuture answer(InvocationOnMock invocation) throws Throwable {
+				DefaultChannelFuture future = new DefaultChannelFuture(channel, false);
+				
+				written.add((ChannelBuffer)invocation.getArguments()[0]);
+				futures.add(future);
+				
+				return future;
+			}
+		});
+	}
+	
+	private List<ChannelBuffer> packets(int count, int size) {
+		List<ChannelBuffer> packets = new LinkedList<ChannelBuffer>();
+		
+		for(int i=0; i<count; i++) {
+			byte[] packet = new byte[size];
+			
+			Arrays.fill(packet, (byte)i);
+			packets.add(ChannelBuffers.wrappedBuffer(packet));
+		}
+		
+		return packets;
+	}
+	
+	@Test
+	public void testCoalescePackets() {
+		PipelinedUpdateWriter writer = new PipelinedUpdateWriter(65536, 16384);
+		
+		writer.attach(channel);
+		writer.write(packets(10, 4096));
+		
+		Assert.assertEquals(3, written.size());
+		Assert.assertEquals(16384, written.get(0).readableBytes());
+		Assert.assertEquals(16384, written.get(1).readableBytes());
+		Assert.assertEquals(8192, written.get(2).readableBytes());
+		Assert.assertEquals(40960, writer.getOutstandingBytes());
+		Assert.assertEquals(0, writer.getPendingPackets());
+		Assert.assertEquals(3, writer.getChannelWrites());
+		
+		// packets are written in order
+		int packet = 0;
+		
+		for(ChannelBuffer buffer : written) {
+			while(buffer.readable()) {
+				Assert.assertEquals((byte)packet, buffer.getByte(buffer.readerIndex()));
+				buffer.skipBytes(4096);
+				packet++;
+			}
+		}
+		Assert.assertEquals(10, packet);
+		
+		for(DefaultChannelFuture future : futures)
+			future.setSuccess();
+		
+		Assert.assertEquals(0, writer.getOutstandingBytes());
+	}
+
+	@Test
+	public void testPauseOnWindowAndResumeOnCompletion() {
+		PipelinedUpdateWriter writer = new PipelinedUpdateWriter(8192, 4096);
+		
+		writer.attach(channel);
+		writer.write(packets(4, 4096));
+		
+		Assert.assertEquals(2, written.size());
+		Assert.assertEquals(8192, writer.getOutstandingBytes());
+		Assert.assertEquals(2, writer.getPendingPackets());
+		
+		futures.get(0).setSuccess();
+
+		Assert.assertEquals(3, written.size());
+		Assert.assertEquals(8192, writer.getOutstandingBytes());
+		Assert.assertEquals(1, writer.getPendingPackets());
+		
+		futures.get(1).setSuccess();
+		futures.get(2).setSuccess();
+		
+		Assert.assertEquals(4, written.size());
+		Assert.assertEquals(4096, writer.getOutstandingBytes());
+		Assert.assertEquals(0, writer.getPendingPackets());
+	}
+
+	@Test
+	public void testPauseWhileNotWritable() {
+		PipelinedUpdateWriter writer = new PipelinedUpdateWriter(65536);
+		
+		Mockito.when(channel.isWritable()).thenReturn(false);
+		
+		writer.attach(channel);
+		writer.write(packets(2, 100));
+		
+		Assert.assertEquals(0, written.size());
+		Assert.assertEquals(2, writer.getPendingPackets());
+		
+		Mockito.when(channel.isWritable()).thenReturn(true);
+		writer.resume();
+		
+		Assert.assertEquals(1, written.size());
+		Assert.assertEquals(200, written.get(0).readableBytes());
+		Assert.assertEquals(0, writer.getPendingPackets());
+	}
+
+	@Test
+	public void testPacketLargerThanWindow() {
+		PipelinedUpdateWriter writer = new PipelinedUpdateWriter(1024);
+		
+		writer.attach(channel);
+		writer.write(packets(2, 4096));
+		
+		Assert.assertEquals(1, written.size());
+		Assert.assertEquals(1, writer.getPendingPackets());
+		
+		futures.get(0).setSuccess();
+		
+		Assert.assertEquals(2, written.size());
+		Assert.assertEquals(0, writer.getPendingPackets());
+	}
+
+	@Test
+	public void testBacklogAndDrainTasks() {
+		PipelinedUpdateWriter writer = new PipelinedUpdateWriter(4096, 4096);
+		final List<String> drained = new LinkedList<String>();
+		
+		writer.attach(channel);
+		writer.write(packets(3, 4096));
+		
+		// one packet is outstanding, the two waiting packets exceed the window
+		Assert.assertTrue(writer.isBacklogged());
+		
+		writer.whenDrained(new Runnable() {
+			
+			@Override
+			public void run() {
+				drained.add("drained");
+			}
+		});
+		futures.get(0).setSuccess();
+		
+		Assert.assertFalse(writer.isBacklogged());
+		Assert.assertEquals(0, drained.size());
+		
+		futures.get(1).setSuccess();
+		
+		Assert.assertEquals(0, writer.getPendingPackets());
+		Assert.assertEquals(Arrays.asList("drained"), drained);
+		
+		// a writer without waiting packets runs the task at once
+		writer.whenDrained(new Runnable() {
+			
+			@Override
+			public void run() {
+				drained.add("empty");
+			}
+		});
+		
+		Assert.assertEquals(Arrays.asList("drained", "empty"), drained);
+	}
+
+	@Test
+	public void testResetDropsDrainTasks() {
+		PipelinedUpdateWriter writer = new PipelinedUpdateWriter(4096, 4096);
+		final List<String> drained = new LinkedList<String>();
+		
+		writer.attach(channel);
+		writer.write(packets(2, 4096));
+		writer.whenDrained(new Runnable() {
+			
+			@Override
+			public void run() {
+				drained.add("drained");
+			}
+		});
+		writer.reset();
+		
+		Assert.assertFalse(writer.isBacklogged());
+		
+		writer.attach(channel);
+		writer.write(packets(1, 100));
+		
+		Assert.assertEquals(0, drained.size());
+	}
+
+	@Test
+	public void testFailedWriteDropsPendingPackets() {
+		PipelinedUpdateWriter writer = new PipelinedUpdateWriter(4096, 4096);
+		
+		writer.attach(channel);
+		writer.write(packets(3, 4096));
+		
+		Assert.assertEquals(1, written.size());
+		Assert.assertEquals(2, writer.getPendingPackets());
+
+		futures.get(0).setFailure(new Exception("connection reset"));
+		
+		Assert.assertEquals(1, written.size());
+		Assert.assertEquals(0, writer.getPendingPackets());
+		Assert.assertEquals(0, writer.getOutstandingBytes());
+	}
+
+	@Test
+	public void testResetIgnoresCompletionOfEarlierWrites() {
+		PipelinedUpdateWriter writer = new PipelinedUpdateWriter(4096, 4096);
+		
+		writer.attach(channel);
+		writer.write(packets(2, 4096));
+		writer.reset();
+		
+		Assert.assertEquals(0, writer.getPendingPackets());
+		Assert.assertEquals(0, writer.getOutstandingBytes());
+
+		writer.attach(channel);
+		writer.write(packets(1, 2048));
+		futures.get(0).setSuccess();
+		
+		Assert.assertEquals(2, written.size());
+		Assert.assertEquals(2048, writer.getOutstandingBytes());
+	}
+	
+	@Test
+	public void testWriteOfEarlierGenerationDropped() {
+		PipelinedUpdateWriter writer = new PipelinedUpdateWriter(4096, 4096);
+		int generation = writer.getGeneration();
+		
+		writer.attach(channel);
+		Assert.assertTrue(writer.write(packets(1, 1024), generation));
+		writer.reset();
+
+		// packets built before the reset do not reach the connection of the next session
+		writer.attach(channel);
+		Assert.assertFalse(writer.write(packets(1, 1024), generation));
+		
+		Assert.assertEquals(1, written.size());
+		Assert.assertEquals(0, writer.getPendingPackets());
+		Assert.assertEquals(0, writer.getOutstandingBytes());
+		
+		Assert.assertTrue(writer.write(packets(1, 1024), writer.getGeneration()));
+		Assert.assertEquals(2, written.size());
+	}
+	
+	@Test
+	public void testAwaitCapacity() throws Exception {
+		final PipelinedUpdateWriter writer = new PipelinedUpdateWriter(4096, 4096);
+		final boolean[] result = new boolean[1];
+		
+		writer.attach(channel);
+		writer.write(packets(2, 4096));
+		
+		Thread waiter = new Thread() {
+			public void run() {
+				result[0] = writer.awaitCapacity();
+			}
+		};
+		
+		waiter.start();
+		waiter.join(200);
+		Assert.assertTrue(waiter.isAlive());
+		
+		// the second packet is written, the window is still full
+		futures.get(0).setSuccess();
+		waiter.join(200);
+		Assert.assertTrue(waiter.isAlive());
+		
+		futures.get(1).setSuccess();
+		waiter.join(5000);
+		Assert.assertFalse(waiter.isAlive());
+		Assert.assertTrue(result[0]);
+	}
+	
+	@Test
+	public void testAwaitCapacityReleasedByReset() throws Exception {
+		final PipelinedUpdateWriter writer = new PipelinedUpdateWriter(4096, 4096);
+		final boolean[] result = new boolean[] { true };
+		
+		writer.attach(channel);
+		writer.write(packets(2, 4096));
+		
+		Thread waiter = new Thread() {
+			public void run() {
+				result[0] = writer.awaitCapacity();
+			}
+		};
+		
+		waiter.start();
+		waiter.join(200);
+		Assert.assertTrue(waiter.isAlive());
+		
+		writer.reset();
+		waiter.join(5000);
+		Assert.assertFalse(waiter.isAlive());
+		Assert.assertFalse(result[0]);
+		Assert.assertFalse(writer.awaitCapacity());
+	}
+	
+	@Test
+	public void testWaterMarks() {
+		NioChannelConfig config = Mockito.mock(NioChannelConfig.class);
+		
+		Mockito.when(config.getWriteBufferLowWaterMark()).thenReturn(32768);
+		Mockito.when(channel.getConfig()).thenReturn(config);
+		
+		(new PipelinedUpdateWriter(16384)).attach(channel);
+		
+		InOrder inOrder = Mockito.inOrder(config);
+		
+		inOrder.verify(config).setWriteBufferLowWaterMark(8192);
+		inOrder.verify(config).setWriteBufferHighWaterMark(16384);
+		
+		config = Mockito.mock(NioChannelConfig.class);
+		Mockito.when(config.getWriteBufferLowWaterMark()).thenReturn(32768);
+		Mockito.when(channel.getConfig()).thenReturn(config);
+		
+		(new PipelinedUpdateWriter(262144)).attach(channel);
+		
+		inOrder = Mockito.inOrder(config);
+		
+		inOrder.verify(config).setWriteBufferHighWaterMark(262144);
+		inOrder.verify(config).setWriteBufferLowWaterMark(131072);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testIllegalWriteWindow() {
+		new PipelinedUpdateWriter(0);
+	}
+}
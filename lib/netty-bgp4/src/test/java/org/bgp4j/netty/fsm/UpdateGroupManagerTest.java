@@ -0,0 +1,503 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.fsm.UpdateGroupManagerTest.java 
+ */
+package org.bgp4j.netty.fsm;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.bgp4j.config.global.ApplicationConfiguration;
+import org.bgp4j.config.nodes.PeerConfiguration;
+import org.bgp4j.config.nodes.PeerConfigurationDecorator;
+import org.bgp4j.config.nodes.RoutingInstanceConfiguration;
+import org.bgp4j.config.nodes.RoutingProcessorConfiguration;
+import org.bgp4j.config.nodes.impl.ClientConfigurationImpl;
+import org.bgp4j.config.nodes.impl.PeerConfigurationImpl;
+import org.bgp4j.net.ASType;
+import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.net.InetAddressNextHop;
+import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.RIBSide;
+import org.bgp4j.net.attributes.LocalPrefPathAttribute;
+import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.netty.BGPv4TestBase;
+import org.bgp4j.netty.protocol.BGPv4PacketDecoder;
+import org.bgp4j.netty.protocol.update.UpdatePacket;
+import org.bgp4j.rib.PeerRoutingInformationBaseManager;
+import org.bgp4j.rib.RoutingInformationBase;
+import org.bgp4j.rib.processor.LocalRoutingInformationBase;
+import org.bgp4j.rib.processor.LocalRoutingProcessor;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class UpdateGroupManagerTest extends BGPv4TestBase {
+
+	private static final String[] PEER_NAMES = new String[] { "peer1", "peer2", "peer3" };
+	
+	public static class RecordingMember extends OutboundRoutingUpdateQueueTest.RecordingCallback implements UpdateGroupMember {
+
+		private String peerName;
+		private int capacityRequests;
+		private boolean backlogged;
+		private int generation;
+		private List<Runnable> drainTasks = new LinkedList<Runnable>();
+		
+		public RecordingMember(String peerName) {
+			this.peerName = peerName;
+		}
+		
+		@Override
+		public String getPeerName() {
+			return peerName;
+		}
+
+		@Override
+		public synchronized int getGeneration() {
+			return generation;
+		}
+
+		/**
+		 * simulate the reset of the peer connection
+		 */
+		public synchronized void setGeneration(int generation) {
+			this.generation = generation;
+		}
+
+		@Override
+		public synchronized void sendUpdates(List<ChannelBuffer> updates, int generation) {
+			if(generation == this.generation)
+				sendUpdates(updates);
+		}
+
+		@Override
+		public synchronized boolean awaitCapacity() {
+			capacityRequests++;
+			
+			return true;
+		}
+
+		/**
+		 * @return the number of calls to awaitCapacity()
+		 */
+		public synchronized int getCapacityRequests() {
+			return capacityRequests;
+		}
+
+		@Override
+		public synchronized boolean isBacklogged() {
+			return backlogged;
+		}
+
+		public synchronized void setBacklogged(boolean backlogged) {
+			this.backlogged = backlogged;
+		}
+		
+		@Override
+		public synchronized void whenDrained(Runnable task) {
+			drainTasks.add(task);
+		}
+		
+		/**
+		 * run the tasks waiting for the member to drain
+		 */
+		public void drain() {
+			List<Runnable> tasks;
+			
+			synchronized (this) {
+				tasks = drainTasks;
+				drainTasks = new LinkedList<Runnable>();
+			}
+			
+			for(Runnable task : tasks)
+				task.run();
+		}
+	}
+	
+	private static class LocalRibEnabledConfiguration implements RoutingProcessorConfiguration {
+
+		@Override
+		public int compareTo(RoutingProcessorConfiguration o) {
+			return (o == this) ? 0 : 1;
+		}
+
+		@Override
+		public Set<RoutingInstanceConfiguration> getRoutingInstances() {
+			return Collections.emptySet();
+		}
+
+		@Override
+		public boolean isLocalRibEnabled() {
+			return true;
+		}
+	}
+	
+	@Before
+	public void before() {
+		manager = obtainInstance(UpdateGroupManager.class);
+		appConfig = obtainInstance(ApplicationConfiguration.class);
+		localRoutingProcessor = obtainInstance(LocalRoutingProcessor.class);
+		packetDecoder = obtainInstance(BGPv4PacketDecoder.class);
+		
+		pribManager = obtainInstance(PeerRoutingInformationBaseManager.class);
+		pribManager.resetManager();
+		
+		for(String peerName : PEER_NAMES)
+			pribManager.peerRoutingInformationBase(peerName).allocateRoutingInformationBase(RIBSide.Local, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		
+		key = new UpdateGroupKey(new HashSet<AddressFamilyKey>(Arrays.asList(AddressFamilyKey.IPV4_UNICAST_FORWARDING)), 
+				ASType.AS_NUMBER_2OCTETS, false, null, 0, 0, null);
+	}
+	
+	@After
+	public void after() {
+		manager.resetManager();
+		manager = null;
+		
+		localRoutingProcessor.stopService();
+		localRoutingProcessor = null;
+		
+		appConfig.setRoutingProcessorConfiguration(null);
+		for(String peerName : PEER_NAMES)
+			appConfig.removePeer(peerName);
+		appConfig = null;
+		
+		for(String peerName : PEER_NAMES) {
+			pribManager.peerRoutingInformationBase(peerName).destroyAllRoutingInformationBases();
+			pribManager.destroyPeerRoutingInformationBase(peerName);
+		}
+		pribManager.resetManager();
+		pribManager = null;
+	}
+	
+	private UpdateGroupManager manager;
+	private ApplicationConfiguration appConfig;
+	private LocalRoutingProcessor localRoutingProcessor;
+	private PeerRoutingInformationBaseManager pribManager;
+	private BGPv4PacketDecoder packetDecoder;
+	private UpdateGroupKey key;
+	
+	private RoutingInformationBase localRib(String peerName) {
+		return pribManager.peerRoutingInformationBase(peerName).routingBase(RIBSide.Local, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+	}
+	
+	private NetworkLayerReachabilityInformation addRoute(String peerName, int network) throws Exception {
+		NetworkLayerReachabilityInformation nlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)network});
+		InetAddressNextHop<Inet4Address> gateway = new InetAddressNextHop<Inet4Address>((Inet4Address)Inet4Address.getByAddress(new byte[] {
+				(byte)0xc0, (byte)0xa8, (byte)0xff, (byte)0x01}));
+		
+		localRib(peerName).addRoutes(Arrays.asList(nlri), Arrays.asList((PathAttribute)new LocalPrefPathAttribute(100)), gateway);
+		
+		return nlri;
+	}
+	
+	/**
+	 * @return the announced prefixes of all UPDATE packets
+	 */
+	private List<NetworkLayerReachabilityInformation> decodeNlris(List<ChannelBuffer> buffers) {
+		List<NetworkLayerReachabilityInformation> nlris = new LinkedList<NetworkLayerReachabilityInformation>();
+		
+		for(ChannelBuffer buffer : buffers) {
+			ChannelBuffer packet = buffer.duplicate();
+			
+			packet.skipBytes(18);
+			nlris.addAll(safeDowncast(packetDecoder.decodePacket(packet), UpdatePacket.class).getNlris());
+		}
+		
+		return nlris;
+	}
+	
+	private RecordingMember join(String peerName) {
+		RecordingMember member = new RecordingMember(peerName);
+		
+		manager.joinGroup(key, member).completeCatchUp(peerName);
+		
+		return member;
+	}
+	
+	@Test
+	public void testMembersShareGroup() throws Exception {
+		UpdateGroup group = manager.joinGroup(key, new RecordingMember("peer1"));
+		
+		Assert.assertSame(group, manager.joinGroup(key, new RecordingMember("peer2")));
+		Assert.assertNotSame(group, manager.joinGroup(new UpdateGroupKey(key.getAddressFamilies(), key.getAsType(), true, "peer3", 0, 0, null), 
+				new RecordingMember("peer3")));
+		
+		Assert.assertEquals(2, group.getNumberOfMembers());
+		Assert.assertEquals("peer1", group.getSourcePeerName());
+		Assert.assertEquals(2, manager.listGroups().size());
+		Assert.assertSame(group, manager.lookupGroup("peer2"));
+	}
+	
+	@Test
+	public void testUpdatesReplicated() throws Exception {
+		RecordingMember first = join("peer1");
+		RecordingMember second = join("peer2");
+		NetworkLayerReachabilityInformation nlri = addRoute("peer1", 1);
+		
+		List<ChannelBuffer> firstUpdates = first.waitForUpdates(1);
+		List<ChannelBuffer> secondUpdates = second.waitForUpdates(1);
+		
+		Assert.assertEquals(1, firstUpdates.size());
+		Assert.assertEquals(1, secondUpdates.size());
+		Assert.assertNotSame(firstUpdates.get(0), secondUpdates.get(0));
+		Assert.assertEquals(Arrays.asList(nlri), decodeNlris(firstUpdates));
+		Assert.assertEquals(Arrays.asList(nlri), decodeNlris(secondUpdates));
+	}
+	
+	@Test
+	public void testOnlySourceRoutingBaseIsInput() throws Exception {
+		RecordingMember first = join("peer1");
+		
+		join("peer2");
+		addRoute("peer2", 1);
+		NetworkLayerReachabilityInformation nlri = addRoute("peer1", 2);
+		
+		Assert.assertEquals(Arrays.asList(nlri), decodeNlris(first.waitForUpdates(1)));
+	}
+	
+	@Test
+	public void testUpdatesHeldBackWhileCatchingUp() throws Exception {
+		RecordingMember first = join("peer1");
+		RecordingMember second = new RecordingMember("peer2");
+		UpdateGroup group = manager.joinGroup(key, second);
+		NetworkLayerReachabilityInformation nlri = addRoute("peer1", 1);
+		
+		Assert.assertEquals(1, first.waitForUpdates(1).size());
+		Assert.assertEquals(0, second.getUpdates().size());
+		
+		group.completeCatchUp("peer2");
+		
+		Assert.assertEquals(Arrays.asList(nlri), decodeNlris(second.getUpdates()));
+	}
+	
+	@Test
+	public void testCatchUpSendsLatestStatePerPrefix() throws Exception {
+		RecordingMember first = join("peer1");
+		RecordingMember second = new RecordingMember("peer2");
+		UpdateGroup group = manager.joinGroup(key, second);
+		NetworkLayerReachabilityInformation flapping = addRoute("peer1", 1);
+		
+		Assert.assertEquals(1, first.waitForUpdates(1).size());
+		
+		localRib("peer1").withdrawRoutes(Arrays.asList(flapping));
+		
+		Assert.assertEquals(2, first.waitForUpdates(2).size());
+		
+		NetworkLayerReachabilityInformation stable = addRoute("peer1", 2);
+		
+		addRoute("peer1", 1);
+		
+		Assert.assertEquals(Arrays.asList(flapping, stable, flapping), decodeNlris(first.waitForUpdates(4)));
+		Assert.assertEquals(0, second.getUpdates().size());
+		
+		group.completeCatchUp("peer2");
+		
+		List<ChannelBuffer> caughtUp = second.getUpdates();
+		
+		// the withdrawal superseded by the second announcement is not sent, each prefix is announced once
+		Assert.assertEquals(1, caughtUp.size());
+		Assert.assertEquals(new HashSet<NetworkLayerReachabilityInformation>(Arrays.asList(flapping, stable)), 
+				new HashSet<NetworkLayerReachabilityInformation>(decodeNlris(caughtUp)));
+		Assert.assertEquals(2, decodeNlris(caughtUp).size());
+		
+		// the member receives the packets of the group directly once caught up
+		NetworkLayerReachabilityInformation later = addRoute("peer1", 3);
+		
+		Assert.assertEquals(Arrays.asList(later), decodeNlris(second.waitForUpdates(2).subList(1, 2)));
+	}
+	
+	@Test
+	public void testJoinDuringLocalRibUpdate() throws Exception {
+		appConfig.putPeer(new PeerConfigurationImpl("peer1", new ClientConfigurationImpl(InetAddress.getByName("192.168.1.1")), 64512, 64512));
+		appConfig.putPeer(new PeerConfigurationImpl("peer2", new ClientConfigurationImpl(InetAddress.getByName("192.168.1.2")), 64512, 64512));
+		localRoutingProcessor.startService();
+		
+		LocalRoutingInformationBase locRib = localRoutingProcessor.localRoutingInformationBase(AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		final RecordingMember second = new RecordingMember("peer2");
+		final List<UpdateGroup> joined = new LinkedList<UpdateGroup>();
+		Thread joiner = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				joined.add(manager.joinGroup(key, second));
+			}
+		});
+		NetworkLayerReachabilityInformation nlri;
+		
+		join("peer1");
+		
+		// the Loc-RIB writes a change to the Local RIBs of the peers one after another while holding its lock
+		synchronized (locRib) {
+			nlri = addRoute("peer1", 1);
+			joiner.start();
+			joiner.join(200);
+			
+			Assert.assertTrue(joiner.isAlive());
+			
+			addRoute("peer2", 1);
+		}
+		joiner.join();
+		
+		UpdateGroup group = joined.get(0);
+		OutboundRoutingUpdateQueue oruq = obtainInstance(OutboundRoutingUpdateQueue.class);
+		
+		oruq.setPeerName("peer2");
+		oruq.setUpdateMask(key.getAddressFamilies());
+		new InitialTableTransfer(group.takeCatchUpSnapshots("peer2"), key.getAddressFamilies(), oruq, second, group).run();
+		oruq.shutdown();
+		
+		// the change is sent once, either from the snapshot or from the catch-up queue
+		Assert.assertEquals(Arrays.asList(nlri), decodeNlris(second.getUpdates()));
+	}
+	
+	@Test
+	public void testBackloggedMemberCatchesUpAgain() throws Exception {
+		RecordingMember first = join("peer1");
+		RecordingMember second = join("peer2");
+		
+		second.setBacklogged(true);
+		
+		NetworkLayerReachabilityInformation sent = addRoute("peer1", 1);
+		
+		// the packets in flight are still sent to the backlogged member, the following changes are recorded only
+		Assert.assertEquals(Arrays.asList(sent), decodeNlris(second.waitForUpdates(1)));
+		
+		NetworkLayerReachabilityInformation flapping = addRoute("peer1", 2);
+		
+		Assert.assertEquals(2, first.waitForUpdates(2).size());
+		
+		localRib("peer1").withdrawRoutes(Arrays.asList(flapping));
+		
+		Assert.assertEquals(3, first.waitForUpdates(3).size());
+		
+		NetworkLayerReachabilityInformation stable = addRoute("peer1", 3);
+		
+		Assert.assertEquals(4, first.waitForUpdates(4).size());
+		
+		addRoute("peer1", 2);
+		
+		Assert.assertEquals(5, first.waitForUpdates(5).size());
+		Assert.assertEquals(1, second.getUpdates().size());
+		
+		second.setBacklogged(false);
+		second.drain();
+		
+		List<ChannelBuffer> caughtUp = second.waitForUpdates(2);
+		
+		Assert.assertEquals(2, caughtUp.size());
+		Assert.assertEquals(new HashSet<NetworkLayerReachabilityInformation>(Arrays.asList(flapping, stable)), 
+				new HashSet<NetworkLayerReachabilityInformation>(decodeNlris(caughtUp.subList(1, 2))));
+		Assert.assertEquals(2, decodeNlris(caughtUp.subList(1, 2)).size());
+		
+		// the member receives the packets of the group directly once caught up
+		NetworkLayerReachabilityInformation later = addRoute("peer1", 4);
+		
+		Assert.assertEquals(Arrays.asList(later), decodeNlris(second.waitForUpdates(3).subList(2, 3)));
+	}
+	
+	@Test
+	public void testSourceMovedWhenSourceLeaves() throws Exception {
+		join("peer1");
+		RecordingMember second = join("peer2");
+		
+		manager.leaveGroup("peer1");
+		
+		UpdateGroup group = manager.lookupGroup("peer2");
+		
+		Assert.assertNull(manager.lookupGroup("peer1"));
+		Assert.assertEquals(1, group.getNumberOfMembers());
+		Assert.assertEquals("peer2", group.getSourcePeerName());
+		
+		NetworkLayerReachabilityInformation nlri = addRoute("peer2", 1);
+		
+		Assert.assertEquals(Arrays.asList(nlri), decodeNlris(second.waitForUpdates(1)));
+	}
+	
+	@Test
+	public void testGroupClosedWhenLastMemberLeaves() throws Exception {
+		RecordingMember first = join("peer1");
+		
+		manager.leaveGroup("peer1");
+		addRoute("peer1", 1);
+		Thread.sleep(100);
+		
+		Assert.assertEquals(0, manager.listGroups().size());
+		Assert.assertNull(manager.lookupGroup("peer1"));
+		Assert.assertEquals(0, first.getUpdates().size());
+	}
+	
+	@Test
+	public void testGroupKey() throws Exception {
+		Set<AddressFamilyKey> afks = new HashSet<AddressFamilyKey>(Arrays.asList(AddressFamilyKey.IPV4_UNICAST_FORWARDING));
+		PeerConfigurationImpl internal1 = new PeerConfigurationImpl("peer1", new ClientConfigurationImpl(InetAddress.getByName("192.168.1.1")), 64512, 64512);
+		PeerConfigurationImpl internal2 = new PeerConfigurationImpl("peer2", new ClientConfigurationImpl(InetAddress.getByName("192.168.1.2")), 64512, 64512);
+		PeerConfigurationImpl external = new PeerConfigurationImpl("peer3", new ClientConfigurationImpl(InetAddress.getByName("192.168.1.3")), 64512, 64513);
+		
+		// without the Loc-RIB the content of the Local RIBs is not known
+		Assert.assertEquals("peer1", manager.groupKey(internal1, afks, ASType.AS_NUMBER_2OCTETS, null).getOutboundPolicy());
+		
+		appConfig.setRoutingProcessorConfiguration(new LocalRibEnabledConfiguration());
+		
+		Assert.assertNull(manager.groupKey(internal1, afks, ASType.AS_NUMBER_2OCTETS, null).getOutboundPolicy());
+		Assert.assertEquals(manager.groupKey(internal1, afks, ASType.AS_NUMBER_2OCTETS, null), manager.groupKey(internal2, afks, ASType.AS_NUMBER_2OCTETS, null));
+		Assert.assertFalse(manager.groupKey(internal1, afks, ASType.AS_NUMBER_2OCTETS, null).equals(manager.groupKey(internal2, afks, ASType.AS_NUMBER_4OCTETS, null)));
+		Assert.assertEquals("peer3", manager.groupKey(external, afks, ASType.AS_NUMBER_2OCTETS, null).getOutboundPolicy());
+		Assert.assertTrue(manager.groupKey(external, afks, ASType.AS_NUMBER_2OCTETS, null).isExternal());
+		Assert.assertTrue(manager.groupKey(external, afks, ASType.AS_NUMBER_2OCTETS, null).getTransform().isExternal());
+	}
+	
+	@Test
+	public void testGroupKeySplitsByNextHopSelf() throws Exception {
+		Set<AddressFamilyKey> afks = new HashSet<AddressFamilyKey>(Arrays.asList(AddressFamilyKey.IPV4_UNICAST_FORWARDING));
+		PeerConfiguration internal1 = new PeerConfigurationDecorator(new PeerConfigurationImpl("peer1", 
+				new ClientConfigurationImpl(InetAddress.getByName("192.168.1.1")), 64512, 64512)) {
+			@Override
+			public boolean isNextHopSelf() {
+				return true;
+			}
+		};
+		PeerConfiguration internal2 = new PeerConfigurationDecorator(new PeerConfigurationImpl("peer2", 
+				new ClientConfigurationImpl(InetAddress.getByName("192.168.1.2")), 64512, 64512)) {
+			@Override
+			public boolean isNextHopSelf() {
+				return true;
+			}
+		};
+		
+		appConfig.setRoutingProcessorConfiguration(new LocalRibEnabledConfiguration());
+
+		// peers advertising the same local address share the group, other local addresses require a group of their own
+		Assert.assertEquals(manager.groupKey(internal1, afks, ASType.AS_NUMBER_2OCTETS, InetAddress.getByName("192.168.1.254")), 
+				manager.groupKey(internal2, afks, ASType.AS_NUMBER_2OCTETS, InetAddress.getByName("192.168.1.254")));
+		Assert.assertFalse(manager.groupKey(internal1, afks, ASType.AS_NUMBER_2OCTETS, InetAddress.getByName("192.168.1.254"))
+				.equals(manager.groupKey(internal2, afks, ASType.AS_NUMBER_2OCTETS, InetAddress.getByName("192.168.2.254"))));
+	}
+}
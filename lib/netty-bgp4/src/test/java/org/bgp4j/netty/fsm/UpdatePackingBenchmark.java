@@ -0,0 +1,144 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.fsm.UpdatePackingBenchmark.java 
+ */
+package org.bgp4j.netty.fsm;
+
+import java.net.Inet4Address;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.bgp4j.net.ASType;
+import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.net.InetAddressNextHop;
+import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.Origin;
+import org.bgp4j.net.PathSegment;
+import org.bgp4j.net.PathSegmentType;
+import org.bgp4j.net.RIBSide;
+import org.bgp4j.net.attributes.ASPathAttribute;
+import org.bgp4j.net.attributes.LocalPrefPathAttribute;
+import org.bgp4j.net.attributes.OriginPathAttribute;
+import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.netty.protocol.update.PathAttributeBlockCache;
+import org.bgp4j.rib.Route;
+import org.bgp4j.rib.RoutingInformationBaseVisitor;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Measures how fast the outbound routing update queue packs queued routes into encoded UPDATE packets, as done for the
+ * initial table sent to a new peer. The routes are IPv4 unicast prefixes with lengths between 8 and 24 bits, spread 
+ * over a number of distinct path attribute sets. The encoded attribute sets are cached across the rounds like they 
+ * are across the peers receiving the same routes.
+ * 
+ * The benchmark is not part of the unit tests. Run it from the test class path with
+ * 
+ * <pre>
+ * java -Xmx2g -cp &lt;class path&gt; org.bgp4j.netty.fsm.UpdatePackingBenchmark [number of prefixes] [number of attribute sets]
+ * </pre>
+ * 
+ * The defaults are 1000000 prefixes and 10000 attribute sets.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class UpdatePackingBenchmark {
+
+	private static final int DEFAULT_PREFIXES = 1000000;
+	private static final int DEFAULT_ATTRIBUTE_SETS = 10000;
+	private static final int WARMUP_ROUNDS = 3;
+	private static final int MEASURED_ROUNDS = 5;
+	
+	public static void main(String[] args) throws UnknownHostException {
+		int numberOfPrefixes = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PREFIXES;
+		int numberOfAttributeSets = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_ATTRIBUTE_SETS;
+		Random random = new Random(4711);
+		List<List<PathAttribute>> attributeSets = new ArrayList<List<PathAttribute>>(numberOfAttributeSets);
+		List<Route> routes = new ArrayList<Route>(numberOfPrefixes);
+		InetAddressNextHop<Inet4Address> nextHop = new InetAddressNextHop<Inet4Address>((Inet4Address)Inet4Address.getByAddress(
+				new byte[] { (byte)0xc0, (byte)0xa8, 0x01, 0x01 }));
+		
+		for(int i=0; i<numberOfAttributeSets; i++) {
+			attributeSets.add(Arrays.asList(new OriginPathAttribute(Origin.IGP), new LocalPrefPathAttribute(100), 
+					new ASPathAttribute(ASType.AS_NUMBER_2OCTETS, new PathSegment[] { 
+						new PathSegment(ASType.AS_NUMBER_2OCTETS, PathSegmentType.AS_SEQUENCE, new int[] { 
+								1 + random.nextInt(65000), 1 + (i % 65000) })
+					})));
+		}
+		
+		for(int i=0; i<numberOfPrefixes; i++) {
+			int prefixLength = randomPrefixLength(random);
+			byte[] prefix = new byte[NetworkLayerReachabilityInformation.calculateOctetsForPrefixLength(prefixLength)];
+			
+			random.nextBytes(prefix);
+			routes.add(new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, new NetworkLayerReachabilityInformation(prefixLength, prefix), 
+					attributeSets.get(random.nextInt(numberOfAttributeSets)), nextHop));
+		}
+		
+		PathAttributeBlockCache attributeBlockCache = new PathAttributeBlockCache();
+		
+		for(int round=0; round<WARMUP_ROUNDS; round++)
+			pack(routes, attributeBlockCache);
+		
+		for(int round=0; round<MEASURED_ROUNDS; round++) {
+			long[] result = pack(routes, attributeBlockCache);
+			
+			System.out.println(String.format("round %d: queued %d prefixes in %dms, packed %d UPDATE packets in %dms, %.2f million prefixes/s", 
+					round, routes.size(), result[0] / 1000000, result[2], result[1] / 1000000, (routes.size() * 1000.0) / result[1]));
+		}
+	}
+	
+	/**
+	 * @return a prefix length following roughly the distribution found in the Internet routing table
+	 */
+	private static int randomPrefixLength(Random random) {
+		int selector = random.nextInt(100);
+		
+		if(selector < 60)
+			return 24;
+		else if(selector < 95)
+			return 16 + random.nextInt(8);
+		else
+			return 8 + random.nextInt(8);
+	}
+	
+	/**
+	 * @return the queueing time in nanoseconds, the packing time in nanoseconds and the number of packets built
+	 */
+	private static long[] pack(List<Route> routes, PathAttributeBlockCache attributeBlockCache) {
+		OutboundRoutingUpdateQueue queue = new OutboundRoutingUpdateQueue();
+		RoutingInformationBaseVisitor visitor = queue.getImportVisitor();
+		
+		queue.setAttributeBlockCache(attributeBlockCache);
+		queue.setPeerName("benchmark");
+		queue.setUpdateMask(new HashSet<AddressFamilyKey>(Arrays.asList(AddressFamilyKey.IPV4_UNICAST_FORWARDING)));
+		
+		long start = System.nanoTime();
+		
+		for(Route route : routes)
+			visitor.visitRouteNode("benchmark", RIBSide.Local, route);
+		
+		long queued = System.nanoTime();
+		List<ChannelBuffer> updates = queue.buildUpdates();
+		long packed = System.nanoTime();
+		
+		return new long[] { queued - start, packed - queued, updates.size() };
+	}
+}
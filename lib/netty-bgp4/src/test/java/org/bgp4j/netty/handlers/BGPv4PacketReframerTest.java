@@ -28,6 +28,7 @@ import org.bgp4j.netty.protocol.ConnectionNotSynchronizedNotificationPacket;
 import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.bootstrap.ServerBootstrap;
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ReadOnlyChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandler;
 import org.jboss.netty.channel.ChannelPipeline;
@@ -128,6 +129,35 @@ public class BGPv4PacketReframerTest extends LocalChannelBGPv4TestBase {
 		assertChannelEventContents(new byte[] { 0x04 }, messageRecorder.nextEvent(serverChannel));
 	}	
 
+	@Test
+	public void testPacketsAreReadOnlySlices() throws Exception {
+		byte[] packet = new byte[38];
+		
+		// two KEEP alive packets in one buffer
+		for(int offset=0; offset<packet.length; offset += 19) {
+			for(int i=0; i<BGPv4Constants.BGP_PACKET_MARKER_LENGTH; i++)
+				packet[offset + i] = (byte)0xff;
+			packet[offset + BGPv4Constants.BGP_PACKET_MARKER_LENGTH]     = 0x00;
+			packet[offset + BGPv4Constants.BGP_PACKET_MARKER_LENGTH + 1] = 0x13;
+			packet[offset + BGPv4Constants.BGP_PACKET_MARKER_LENGTH + 2] = 0x04;
+		}
+		
+		ChannelBuffer buffer = buildProtocolPacket(packet);
+		
+		clientChannel.write(buffer);
+		
+		Assert.assertEquals(2, messageRecorder.getWaitingEventNumber(serverChannel));
+		
+		for(int i=0; i<2; i++) {
+			ChannelBuffer frame = (ChannelBuffer)((MessageEvent)messageRecorder.nextEvent(serverChannel)).getMessage();
+			
+			Assert.assertTrue(frame instanceof ReadOnlyChannelBuffer);
+			Assert.assertSame(buffer.array(), ((ReadOnlyChannelBuffer)frame).unwrap().array());
+			Assert.assertEquals(1, frame.readableBytes());
+			Assert.assertEquals(0x04, frame.getByte(frame.readerIndex()));
+		}
+	}
+
 	@Test
 	public void testBrokenMarker() throws Exception {
 		byte[] packet = new byte[19];
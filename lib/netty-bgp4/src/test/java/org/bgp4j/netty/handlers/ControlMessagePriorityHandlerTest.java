@@ -0,0 +1,183 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.handlers.ControlMessagePriorityHandlerTest.java 
+ */
+package org.bgp4j.netty.handlers;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.bgp4j.netty.BGPv4Constants;
+import org.bgp4j.netty.protocol.KeepalivePacket;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.DefaultChannelFuture;
+import org.jboss.netty.channel.DownstreamMessageEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class ControlMessagePriorityHandlerTest {
+
+	private ControlMessagePriorityHandler handler;
+	private Channel channel;
+	private ChannelHandlerContext ctx;
+	private List<MessageEvent> forwarded;
+	
+	@Before
+	public void before() {
+		handler = new ControlMessagePriorityHandler();
+		handler.setUpdateBytesInFlight(8192);
+		
+		channel = Mockito.mock(Channel.class);
+		ctx = Mockito.mock(ChannelHandlerContext.class);
+		forwarded = new LinkedList<MessageEvent>();
+		
+		Mockito.when(ctx.getChannel()).thenReturn(channel);
+		Mockito.doAnswer(new Answer<Void>() {
+
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				forwarded.add((MessageEvent)invocation.getArguments()[0]);
+				
+				return null;
+			}
+		}).when(ctx).sendDownstream(Matchers.any(ChannelEvent.class));
+	}
+	
+	private MessageEvent update(int size) {
+		byte[] packet = new byte[size];
+		
+		packet[BGPv4Constants.BGP_PACKET_HEADER_LENGTH - 1] = (byte)BGPv4Constants.BGP_PACKET_TYPE_UPDATE;
+		
+		return write(ChannelBuffers.wrappedBuffer(packet));
+	}
+	
+	private MessageEvent keepalive() {
+		return write((new KeepalivePacket()).encodePacket());
+	}
+	
+	private MessageEvent write(ChannelBuffer buffer) {
+		return new DownstreamMessageEvent(channel, new DefaultChannelFuture(channel, false), buffer, null);
+	}
+	
+	@Test
+	public void testMessageType() {
+		Assert.assertEquals(BGPv4Constants.BGP_PACKET_TYPE_KEEPALIVE, 
+				ControlMessagePriorityHandler.messageType((new KeepalivePacket()).encodePacket()));
+		Assert.assertEquals(-1, ControlMessagePriorityHandler.messageType(ChannelBuffers.wrappedBuffer(new byte[4])));
+	}
+	
+	@Test
+	public void testUpdatesHeldBeyondLimit() throws Exception {
+		MessageEvent first = update(4096);
+		MessageEvent second = update(4096);
+		MessageEvent third = update(4096);
+		
+		handler.writeRequested(ctx, first);
+		handler.writeRequested(ctx, second);
+		handler.writeRequested(ctx, third);
+		
+		Assert.assertEquals(2, forwarded.size());
+		Assert.assertSame(first, forwarded.get(0));
+		Assert.assertSame(second, forwarded.get(1));
+		Assert.assertEquals(1, handler.getHeldUpdates());
+		
+		first.getFuture().setSuccess();
+		
+		Assert.assertEquals(3, forwarded.size());
+		Assert.assertSame(third, forwarded.get(2));
+	}
+	
+	@Test
+	public void testControlMessageOvertakesHeldUpdates() throws Exception {
+		MessageEvent first = update(8192);
+		MessageEvent second = update(4096);
+		MessageEvent keepalive = keepalive();
+		
+		handler.writeRequested(ctx, first);
+		handler.writeRequested(ctx, second);
+		handler.writeRequested(ctx, keepalive);
+		
+		Assert.assertEquals(2, forwarded.size());
+		Assert.assertSame(first, forwarded.get(0));
+		Assert.assertSame(keepalive, forwarded.get(1));
+		Assert.assertEquals(1, handler.getControlMessages());
+		Assert.assertEquals(1, handler.getOvertakingControlMessages());
+		
+		Thread.sleep(10);
+		keepalive.getFuture().setSuccess();
+		
+		Assert.assertTrue(handler.getMaximumControlMessageDelay() >= 10000000L);
+		Assert.assertEquals(handler.getMaximumControlMessageDelay(), handler.getAverageControlMessageDelay());
+		
+		first.getFuture().setSuccess();
+		
+		Assert.assertEquals(3, forwarded.size());
+		Assert.assertSame(second, forwarded.get(2));
+		
+		handler.resetStatistics();
+		
+		Assert.assertEquals(0, handler.getControlMessages());
+		Assert.assertEquals(0, handler.getMaximumControlMessageDelay());
+	}
+	
+	@Test
+	public void testFailedWriteFailsHeldUpdates() throws Exception {
+		MessageEvent first = update(8192);
+		MessageEvent second = update(4096);
+		
+		handler.writeRequested(ctx, first);
+		handler.writeRequested(ctx, second);
+		first.getFuture().setFailure(new Exception("connection reset"));
+		
+		Assert.assertEquals(1, forwarded.size());
+		Assert.assertTrue(second.getFuture().isDone());
+		Assert.assertFalse(second.getFuture().isSuccess());
+	}
+	
+	@Test
+	public void testChannelClosedFailsHeldUpdates() throws Exception {
+		MessageEvent first = update(8192);
+		MessageEvent second = update(4096);
+		
+		handler.writeRequested(ctx, first);
+		handler.writeRequested(ctx, second);
+		handler.channelClosed(ctx, Mockito.mock(ChannelStateEvent.class));
+		
+		Assert.assertEquals(1, forwarded.size());
+		Assert.assertTrue(second.getFuture().isDone());
+		Assert.assertFalse(second.getFuture().isSuccess());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testIllegalUpdateBytesInFlight() {
+		handler.setUpdateBytesInFlight(0);
+	}
+}
@@ -19,6 +19,7 @@ package org.bgp4j.netty.handlers;
 
 import java.net.Inet4Address;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.UUID;
 
 import junit.framework.Assert;
@@ -39,6 +40,7 @@ import org.bgp4j.netty.protocol.NotificationPacket;
 import org.bgp4j.netty.protocol.update.AttributeFlagsNotificationPacket;
 import org.bgp4j.netty.protocol.update.MalformedAttributeListNotificationPacket;
 import org.bgp4j.netty.protocol.update.MissingWellKnownAttributeNotificationPacket;
+import org.bgp4j.netty.protocol.update.PathAttributeValidation;
 import org.bgp4j.netty.protocol.update.UpdatePacket;
 import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.bootstrap.ServerBootstrap;
@@ -131,6 +133,51 @@ public class UpdateAttributeCheckerTest extends LocalChannelBGPv4TestBase {
 		Assert.assertEquals(4, consumed.getPathAttributes().size());
 	}
 	
+	@Test
+	public void testPassDecodedAttributesValidation2OctetsASIBGPConnection() throws Exception {
+		peerInfo.setAsTypeInUse(ASType.AS_NUMBER_2OCTETS);
+		peerInfo.setLocalAS(64172);
+		peerInfo.setRemoteAS(64172);
+		
+		UpdatePacket update = new UpdatePacket();
+		
+		// the checks made while decoding are taken although the packet carries no attributes
+		update.setAttributeValidation(PathAttributeValidation.of(Arrays.<PathAttribute>asList(new OriginPathAttribute(Origin.INCOMPLETE),
+				new ASPathAttribute(ASType.AS_NUMBER_2OCTETS),
+				new NextHopPathAttribute((Inet4Address)Inet4Address.getByAddress(new byte[] { (byte)0xc0, (byte)0xa8, 0x4, 0x1 })),
+				new LocalPrefPathAttribute(100))));
+		
+		clientChannel.write(update);
+		
+		Assert.assertEquals(0, messageRecorder.getWaitingEventNumber(clientChannel));
+		Assert.assertEquals(1, messageRecorder.getWaitingEventNumber(serverChannel));
+		Assert.assertSame(update, safeDowncast(safeExtractChannelEvent(messageRecorder.nextEvent(serverChannel)), UpdatePacket.class));
+	}
+	
+	@Test
+	public void testRejectDecodedAttributesValidation2OctetsASIBGPConnection() throws Exception {
+		peerInfo.setAsTypeInUse(ASType.AS_NUMBER_2OCTETS);
+		peerInfo.setLocalAS(64172);
+		peerInfo.setRemoteAS(64172);
+		
+		UpdatePacket update = new UpdatePacket();
+		
+		update.getPathAttributes().add(new OriginPathAttribute(Origin.INCOMPLETE));
+		update.getPathAttributes().add(new ASPathAttribute(ASType.AS_NUMBER_2OCTETS));
+		update.getPathAttributes().add(new NextHopPathAttribute((Inet4Address)Inet4Address.getByAddress(new byte[] { (byte)0xc0, (byte)0xa8, 0x4, 0x1 })));
+		update.getPathAttributes().add(new LocalPrefPathAttribute(100));
+		
+		// the checks made while decoding found LOCAL_PREF missing
+		update.setAttributeValidation(PathAttributeValidation.of(update.getPathAttributes().subList(0, 3)));
+		
+		clientChannel.write(update);
+		
+		Assert.assertEquals(1, messageRecorder.getWaitingEventNumber(clientChannel));
+		Assert.assertEquals(1, messageRecorder.getWaitingEventNumber(serverChannel));
+		Assert.assertEquals(MissingWellKnownAttributeNotificationPacket.class, safeExtractChannelEvent(messageRecorder.nextEvent(clientChannel)).getClass());
+		assertNotificationEvent(MissingWellKnownAttributeNotificationPacket.class, messageRecorder.nextEvent(serverChannel));
+	}
+	
 	@Test
 	public void testPassAllRequiredAttributes4OctetsASIBGPConnection() throws Exception {
 		peerInfo.setAsTypeInUse(ASType.AS_NUMBER_4OCTETS);
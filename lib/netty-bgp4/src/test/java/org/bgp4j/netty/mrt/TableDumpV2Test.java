@@ -0,0 +1,278 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.mrt.TableDumpV2Test.java 
+ */
+package org.bgp4j.netty.mrt;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.bgp4j.net.ASType;
+import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.net.InetAddressNextHop;
+import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.NextHop;
+import org.bgp4j.net.Origin;
+import org.bgp4j.net.PathSegment;
+import org.bgp4j.net.PathSegmentType;
+import org.bgp4j.net.RIBSide;
+import org.bgp4j.net.attributes.ASPathAttribute;
+import org.bgp4j.net.attributes.LocalPrefPathAttribute;
+import org.bgp4j.net.attributes.MultiExitDiscPathAttribute;
+import org.bgp4j.net.attributes.OriginPathAttribute;
+import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.netty.BGPv4TestBase;
+import org.bgp4j.rib.PeerRoutingInformationBaseManager;
+import org.bgp4j.rib.Route;
+import org.bgp4j.rib.RouteAdded;
+import org.bgp4j.rib.RouteWithdrawn;
+import org.bgp4j.rib.RoutesChanged;
+import org.bgp4j.rib.RoutesInvalidated;
+import org.bgp4j.rib.RoutingEventListener;
+import org.bgp4j.rib.RoutingInformationBase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class TableDumpV2Test extends BGPv4TestBase {
+
+	private static final String SOURCE = "source";
+	private static final String TARGET = "target";
+	
+	private static class CountingListener implements RoutingEventListener {
+		private int events = 0;
+		
+		@Override
+		public void routeAdded(RouteAdded event) {
+			events++;
+		}
+
+		@Override
+		public void routeWithdrawn(RouteWithdrawn event) {
+			events++;
+		}
+
+		@Override
+		public void routesChanged(RoutesChanged event) {
+			events++;
+		}
+
+		@Override
+		public void routesInvalidated(RoutesInvalidated event) {
+			events++;
+		}
+	}
+	
+	@Before
+	public void before() throws Exception {
+		pribManager = obtainInstance(PeerRoutingInformationBaseManager.class);
+		pribManager.resetManager();
+		
+		writer = obtainInstance(TableDumpV2Writer.class);
+		reader = obtainInstance(TableDumpV2Reader.class);
+		
+		dumpFile = File.createTempFile("rib", ".mrt");
+	}
+	
+	@After
+	public void after() throws Exception {
+		pribManager.resetManager();
+		pribManager = null;
+		writer = null;
+		reader = null;
+		
+		dumpFile.delete();
+		dumpFile = null;
+	}
+	
+	private PeerRoutingInformationBaseManager pribManager;
+	private TableDumpV2Writer writer;
+	private TableDumpV2Reader reader;
+	private File dumpFile;
+	
+	private RoutingInformationBase rib(String peerName, AddressFamilyKey afk) {
+		pribManager.peerRoutingInformationBase(peerName).allocateRoutingInformationBase(RIBSide.Remote, afk);
+		
+		return pribManager.peerRoutingInformationBase(peerName).routingBase(RIBSide.Remote, afk);
+	}
+	
+	private List<PathAttribute> attributes(ASType asType, int localPref, int... ases) {
+		List<PathAttribute> attrs = new LinkedList<PathAttribute>();
+		
+		attrs.add(new OriginPathAttribute(Origin.IGP));
+		attrs.add(new LocalPrefPathAttribute(localPref));
+		attrs.add(new MultiExitDiscPathAttribute(10));
+		attrs.add(new ASPathAttribute(asType, new PathSegment[] {
+				new PathSegment(asType, PathSegmentType.AS_SEQUENCE, ases),
+				new PathSegment(asType, PathSegmentType.AS_SET, new int[] { 100, 200 })
+		}));
+		
+		return attrs;
+	}
+	
+	private void assertRoute(Route expected, RoutingInformationBase rib) {
+		Route actual = rib.lookupRoute(expected.getNlri()).getRoute();
+		
+		Assert.assertEquals(expected.getNlri(), actual.getNlri());
+		Assert.assertEquals(expected.getPathAttributes(), actual.getPathAttributes());
+		Assert.assertEquals(expected.getNextHop(), actual.getNextHop());
+	}
+	
+	private ByteBuffer readDump() throws IOException {
+		return ByteBuffer.wrap(Files.readAllBytes(dumpFile.toPath()));
+	}
+	
+	@Test
+	public void testExportImportIPv4() throws Exception {
+		RoutingInformationBase source = rib(SOURCE, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		RoutingInformationBase target = rib(TARGET, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		CountingListener listener = new CountingListener();
+		NextHop nextHop = new InetAddressNextHop<Inet4Address>((Inet4Address)Inet4Address.getByAddress(new byte[] { 
+				(byte)0xc0, (byte)0xa8, 0x01, 0x01 }));
+		Route defaultRoute = new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, 
+				new NetworkLayerReachabilityInformation(0, null), attributes(ASType.AS_NUMBER_2OCTETS, 100, 10), nextHop);
+		Route network = new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, 
+				new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, 0x02 }), 
+				attributes(ASType.AS_NUMBER_2OCTETS, 100, 10), nextHop);
+		Route host = new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, 
+				new NetworkLayerReachabilityInformation(32, new byte[] { (byte)0xc0, (byte)0xa8, 0x03, 0x01 }), 
+				attributes(ASType.AS_NUMBER_4OCTETS, 200, 10, 70000), nextHop);
+		
+		source.updateRoutes(Arrays.<Route>asList(), Arrays.asList(defaultRoute, network, host));
+		
+		Assert.assertEquals(3, writer.exportRoutingInformationBase(source, dumpFile.toPath()));
+		
+		ByteBuffer dump = readDump();
+		
+		// peer index table followed by the IPv4 unicast RIB records
+		Assert.assertEquals(MRTConstants.MRT_TYPE_TABLE_DUMP_V2, dump.getShort(4));
+		Assert.assertEquals(MRTConstants.MRT_SUBTYPE_PEER_INDEX_TABLE, dump.getShort(6));
+		Assert.assertEquals(SOURCE.length(), dump.getShort(16));
+		
+		int ribRecord = MRTConstants.MRT_HEADER_LENGTH + dump.getInt(8);
+		
+		Assert.assertEquals(MRTConstants.MRT_TYPE_TABLE_DUMP_V2, dump.getShort(ribRecord + 4));
+		Assert.assertEquals(MRTConstants.MRT_SUBTYPE_RIB_IPV4_UNICAST, dump.getShort(ribRecord + 6));
+		Assert.assertEquals(0, dump.getInt(ribRecord + 12)); // sequence number
+		Assert.assertEquals(0, dump.get(ribRecord + 16)); // prefix length of the default route
+		Assert.assertEquals(1, dump.getShort(ribRecord + 17)); // entry count
+		
+		target.addPerRibListener(listener);
+		
+		Assert.assertEquals(3, reader.importRoutingInformationBase(dumpFile.toPath(), target));
+		Assert.assertEquals(3, target.getNumberOfPrefixes());
+		Assert.assertEquals(0, listener.events);
+		
+		assertRoute(defaultRoute, target);
+		assertRoute(network, target);
+		assertRoute(host, target);
+	}
+	
+	@Test
+	public void testExportImportIPv6() throws Exception {
+		RoutingInformationBase source = rib(SOURCE, AddressFamilyKey.IPV6_UNICAST_FORWARDING);
+		RoutingInformationBase target = rib(TARGET, AddressFamilyKey.IPV6_UNICAST_FORWARDING);
+		NextHop nextHop = new InetAddressNextHop<Inet6Address>((Inet6Address)Inet6Address.getByName("fe80::1"));
+		Route network = new Route(AddressFamilyKey.IPV6_UNICAST_FORWARDING, 
+				new NetworkLayerReachabilityInformation(48, new byte[] { 0x20, 0x01, 0x0d, (byte)0xb8, 0x00, 0x01 }), 
+				attributes(ASType.AS_NUMBER_2OCTETS, 100, 10, 20), nextHop);
+		
+		source.addRoute(network);
+		
+		Assert.assertEquals(1, writer.exportRoutingInformationBase(source, dumpFile.toPath()));
+		
+		ByteBuffer dump = readDump();
+		int ribRecord = MRTConstants.MRT_HEADER_LENGTH + dump.getInt(8);
+
+		Assert.assertEquals(MRTConstants.MRT_SUBTYPE_RIB_IPV6_UNICAST, dump.getShort(ribRecord + 6));
+		Assert.assertEquals(1, reader.importRoutingInformationBase(dumpFile.toPath(), target));
+		
+		assertRoute(network, target);
+	}
+	
+	@Test
+	public void testManyRoutesSpanningChunks() throws Exception {
+		RoutingInformationBase source = rib(SOURCE, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		RoutingInformationBase target = rib(TARGET, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		List<Route> routes = new LinkedList<Route>();
+		NextHop nextHop = new InetAddressNextHop<Inet4Address>((Inet4Address)Inet4Address.getByAddress(new byte[] { 
+				(byte)0xc0, (byte)0xa8, 0x01, 0x01 }));
+		
+		for(int i=0; i<40000; i++)
+			routes.add(new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, 
+					new NetworkLayerReachabilityInformation(24, new byte[] { 0x0a, (byte)(i >> 8), (byte)i }), 
+					attributes(ASType.AS_NUMBER_2OCTETS, i % 3, 10), nextHop));
+		
+		source.updateRoutes(Arrays.<Route>asList(), routes);
+		
+		Assert.assertEquals(40000, writer.exportRoutingInformationBase(source, dumpFile.toPath()));
+		Assert.assertTrue(dumpFile.length() > TableDumpV2Writer.CHUNK_SIZE);
+		Assert.assertEquals(40000, reader.importRoutingInformationBase(dumpFile.toPath(), target));
+		Assert.assertEquals(40000, target.getNumberOfPrefixes());
+		
+		assertRoute(routes.get(0), target);
+		assertRoute(routes.get(39999), target);
+	}
+	
+	@Test
+	public void testOtherAddressFamilySkipped() throws Exception {
+		RoutingInformationBase source = rib(SOURCE, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		RoutingInformationBase target = rib(TARGET, AddressFamilyKey.IPV6_UNICAST_FORWARDING);
+		
+		source.addRoute(new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, 
+				new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, 0x02 }), 
+				attributes(ASType.AS_NUMBER_2OCTETS, 100, 10), null));
+		
+		Assert.assertEquals(1, writer.exportRoutingInformationBase(source, dumpFile.toPath()));
+		Assert.assertEquals(0, reader.importRoutingInformationBase(dumpFile.toPath(), target));
+		Assert.assertEquals(0, target.getNumberOfPrefixes());
+	}
+	
+	@Test(expected=IOException.class)
+	public void testTruncatedDump() throws Exception {
+		RoutingInformationBase source = rib(SOURCE, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		RoutingInformationBase target = rib(TARGET, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		
+		source.addRoute(new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, 
+				new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, 0x02 }), 
+				attributes(ASType.AS_NUMBER_2OCTETS, 100, 10), null));
+		writer.exportRoutingInformationBase(source, dumpFile.toPath());
+		
+		RandomAccessFile file = new RandomAccessFile(dumpFile, "rw");
+		
+		try {
+			file.setLength(file.length() - 3);
+		} finally {
+			file.close();
+		}
+		
+		reader.importRoutingInformationBase(dumpFile.toPath(), target);
+	}
+}
@@ -17,11 +17,18 @@
  */
 package org.bgp4j.netty.protocol;
 
+import java.util.Random;
+
 import junit.framework.Assert;
 
+import org.bgp4j.net.AddressFamily;
+import org.bgp4j.net.IPv4PrefixKey;
 import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.PackedPrefixList;
 import org.bgp4j.netty.NLRICodec;
 import org.bgp4j.netty.BGPv4TestBase;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.junit.Test;
 
 /**
@@ -210,4 +217,94 @@ public class NLRICodecTest extends BGPv4TestBase {
 				(byte)0xac, 0x12, (byte)0xfe, (byte)0xff // prefix value 172.18.254 
 			}, nlri.getPrefix());
 	}
+
+	@Test
+	public void testDecodePackedIPv4NLRIs() {
+		ChannelBuffer buffer = buildProtocolPacket(new byte[] {
+				0x00, // prefix length 0
+				0x18, (byte)0xc0, (byte)0xa8, (byte)0x04, // prefix 192.168.4/24
+				0x0c, (byte)0xac, (byte)0x1f, // prefix 172.16/12 with trailing bits set
+				0x20, (byte)0xac, 0x12, (byte)0xfe, (byte)0xff, // prefix 172.18.254.255/32
+		});
+		PackedPrefixList prefixes = new PackedPrefixList(AddressFamily.IPv4);
+		
+		NLRICodec.decodeNLRIs(buffer, prefixes);
+		
+		Assert.assertFalse(buffer.readable());
+		Assert.assertEquals(4, prefixes.size());
+		Assert.assertEquals(0L, prefixes.getIPv4Key(0));
+		Assert.assertEquals(IPv4PrefixKey.pack(0xc0a80400, 24), prefixes.getIPv4Key(1));
+		Assert.assertEquals(IPv4PrefixKey.pack(0xac100000, 12), prefixes.getIPv4Key(2));
+		Assert.assertEquals(IPv4PrefixKey.pack(0xac12feff, 32), prefixes.getIPv4Key(3));
+	}
+
+	@Test
+	public void testDecodePackedIPv6NLRIs() {
+		ChannelBuffer buffer = buildProtocolPacket(new byte[] {
+				0x20, 0x20, 0x01, 0x0d, (byte)0xb8, // prefix 2001:db8::/32
+				0x41, 0x20, 0x01, 0x0d, (byte)0xb8, 0x00, 0x01, 0x00, 0x02, (byte)0xff, // prefix 2001:db8:1:2:8000::/65 with trailing bits set 
+				(byte)0x80, 0x20, 0x01, 0x0d, (byte)0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0x01, // prefix 2001:db8::1/128
+		});
+		PackedPrefixList prefixes = new PackedPrefixList(AddressFamily.IPv6);
+		
+		NLRICodec.decodeNLRIs(buffer, prefixes);
+		
+		Assert.assertEquals(3, prefixes.size());
+		Assert.assertEquals(0x20010db800000000L, prefixes.getHighWord(0));
+		Assert.assertEquals(0L, prefixes.getLowWord(0));
+		Assert.assertEquals(32, prefixes.getPrefixLength(0));
+		Assert.assertEquals(0x20010db800010002L, prefixes.getHighWord(1));
+		Assert.assertEquals(0x8000000000000000L, prefixes.getLowWord(1));
+		Assert.assertEquals(65, prefixes.getPrefixLength(1));
+		Assert.assertEquals(0x20010db800000000L, prefixes.getHighWord(2));
+		Assert.assertEquals(1L, prefixes.getLowWord(2));
+		Assert.assertEquals(128, prefixes.getPrefixLength(2));
+	}
+
+	/**
+	 * the packed decoding yields the same NLRI as the decoding into single NLRI instances
+	 */
+	@Test
+	public void testDecodePackedConsistentWithNLRI() {
+		Random random = new Random(4711);
+		
+		for(AddressFamily addressFamily : new AddressFamily[] { AddressFamily.IPv4, AddressFamily.IPv6 }) {
+			int maxPrefixLength = (addressFamily == AddressFamily.IPv4) ? 32 : 128;
+			ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+			
+			for(int i=0; i<1000; i++) {
+				int prefixLength = random.nextInt(maxPrefixLength + 1);
+				byte[] prefix = new byte[NetworkLayerReachabilityInformation.calculateOctetsForPrefixLength(prefixLength)];
+				
+				random.nextBytes(prefix);
+				buffer.writeByte(prefixLength);
+				buffer.writeBytes(prefix);
+			}
+			
+			PackedPrefixList prefixes = new PackedPrefixList(addressFamily);
+			
+			NLRICodec.decodeNLRIs(buffer.slice(), prefixes);
+			
+			Assert.assertEquals(1000, NLRICodec.countNLRIs(buffer));
+			Assert.assertEquals(1000, prefixes.size());
+			
+			for(int i=0; i<1000; i++)
+				Assert.assertEquals(NLRICodec.decodeNLRI(buffer), prefixes.toNLRI(i));
+		}
+	}
+	
+	@Test(expected=IndexOutOfBoundsException.class)
+	public void testDecodePackedTruncatedNLRI() {
+		NLRICodec.decodeNLRIs(buildProtocolPacket(new byte[] {
+				0x18, (byte)0xc0, (byte)0xa8, (byte)0x04, // prefix 192.168.4/24
+				0x18, (byte)0xc0, (byte)0xa8, // truncated prefix 
+		}), new PackedPrefixList(AddressFamily.IPv4));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testDecodePackedIPv4PrefixLengthTooLong() {
+		NLRICodec.decodeNLRIs(buildProtocolPacket(new byte[] {
+				0x28, (byte)0xc0, (byte)0xa8, (byte)0x04, 0x01, 0x02 // prefix length 40
+		}), new PackedPrefixList(AddressFamily.IPv4));
+	}
 }
@@ -0,0 +1,170 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.protocol.update.DecodedPathAttributeCacheTest.java 
+ */
+package org.bgp4j.netty.protocol.update;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.bgp4j.net.ASType;
+import org.bgp4j.net.Origin;
+import org.bgp4j.net.attributes.OriginPathAttribute;
+import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.netty.BGPv4TestBase;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class DecodedPathAttributeCacheTest extends BGPv4TestBase {
+
+	@Before
+	public void before() {
+		cache = obtainInstance(DecodedPathAttributeCache.class);
+		cache.clear();
+	}
+	
+	@After
+	public void after() {
+		cache.setMaximumSize(DecodedPathAttributeCache.DEFAULT_MAXIMUM_SIZE);
+		cache.clear();
+		cache = null;
+	}
+	
+	private DecodedPathAttributeCache cache;
+	
+	private ChannelBuffer originBlock(int origin) {
+		return ChannelBuffers.wrappedBuffer(new byte[] { (byte)0x40, (byte)0x01, (byte)0x01, (byte)origin });
+	}
+	
+	@Test
+	public void testLookupByContent() {
+		long hits = cache.getHits();
+		long misses = cache.getMisses();
+		
+		Assert.assertNull(cache.lookup(originBlock(0)));
+		
+		DecodedPathAttributes decoded = cache.add(originBlock(0), Arrays.<PathAttribute>asList(new OriginPathAttribute(Origin.IGP)));
+		
+		// the block is found in a slice of a larger buffer
+		ChannelBuffer packet = ChannelBuffers.wrappedBuffer(new byte[] { 0x00, 0x04, (byte)0x40, (byte)0x01, (byte)0x01, (byte)0x00, 0x18 });
+		
+		packet.readerIndex(2);
+		
+		Assert.assertSame(decoded, cache.lookup(packet.slice(2, 4)));
+		Assert.assertEquals(2, packet.readerIndex());
+		Assert.assertNull(cache.lookup(originBlock(1)));
+		Assert.assertEquals(1, cache.getSize());
+		Assert.assertEquals(hits + 1, cache.getHits());
+		Assert.assertEquals(misses + 2, cache.getMisses());
+	}
+	
+	@Test
+	public void testAddKeepsCachedAttributes() {
+		DecodedPathAttributes decoded = cache.add(originBlock(0), Arrays.<PathAttribute>asList(new OriginPathAttribute(Origin.IGP)));
+		
+		Assert.assertSame(decoded, cache.add(originBlock(0), Arrays.<PathAttribute>asList(new OriginPathAttribute(Origin.IGP))));
+		Assert.assertEquals(1, cache.getSize());
+		Assert.assertEquals(Arrays.<PathAttribute>asList(new OriginPathAttribute(Origin.IGP)), decoded.getPathAttributes());
+	}
+	
+	@Test
+	public void testKeyIsCopied() {
+		ChannelBuffer block = originBlock(0);
+		DecodedPathAttributes decoded = cache.add(block, Arrays.<PathAttribute>asList(new OriginPathAttribute(Origin.IGP)));
+		
+		block.setByte(3, 2);
+		
+		Assert.assertSame(decoded, cache.lookup(originBlock(0)));
+		Assert.assertNull(cache.lookup(block));
+	}
+	
+	@Test
+	public void testLeastRecentlyUsedEviction() {
+		cache.setMaximumSize(2);
+		
+		DecodedPathAttributes igp = cache.add(originBlock(0), Collections.<PathAttribute>emptyList());
+		
+		cache.add(originBlock(1), Collections.<PathAttribute>emptyList());
+		Assert.assertSame(igp, cache.lookup(originBlock(0)));
+		cache.add(originBlock(2), Collections.<PathAttribute>emptyList());
+		
+		Assert.assertEquals(2, cache.getSize());
+		Assert.assertSame(igp, cache.lookup(originBlock(0)));
+		Assert.assertNull(cache.lookup(originBlock(1)));
+		
+		cache.setMaximumSize(1);
+		
+		Assert.assertEquals(1, cache.getSize());
+		Assert.assertSame(igp, cache.lookup(originBlock(0)));
+	}
+	
+	@Test
+	public void testMultiProtocolBlocksNotCached() {
+		// ORIGIN with extended length, MP_UNREACH_NLRI for IPv6 unicast withdrawing 2001:db8::/32
+		ChannelBuffer mpBlock = ChannelBuffers.wrappedBuffer(new byte[] { 
+				(byte)0x50, (byte)0x01, (byte)0x00, (byte)0x01, (byte)0x00,
+				(byte)0x80, (byte)0x0f, (byte)0x08, (byte)0x00, (byte)0x02, (byte)0x01, (byte)0x20, (byte)0x20, (byte)0x01, (byte)0x0d, (byte)0xb8 
+		});
+		
+		Assert.assertTrue(DecodedPathAttributeCache.isCacheable(originBlock(0)));
+		Assert.assertFalse(DecodedPathAttributeCache.isCacheable(mpBlock));
+		Assert.assertEquals(0, mpBlock.readerIndex());
+		
+		DecodedPathAttributes decoded = cache.add(mpBlock, Arrays.<PathAttribute>asList(new OriginPathAttribute(Origin.IGP)));
+		
+		Assert.assertNotNull(decoded);
+		Assert.assertEquals(0, cache.getSize());
+		Assert.assertNull(cache.lookup(mpBlock));
+	}
+	
+	@Test
+	public void testHitRate() {
+		cache.add(originBlock(0), Collections.<PathAttribute>emptyList());
+		
+		long hits = cache.getHits();
+		long misses = cache.getMisses();
+		
+		cache.lookup(originBlock(0));
+		cache.lookup(originBlock(0));
+		cache.lookup(originBlock(0));
+		cache.lookup(originBlock(1));
+		
+		Assert.assertEquals((double)(hits + 3) / (hits + misses + 4), cache.getHitRate(), 0.0001);
+	}
+	
+	@Test
+	public void testAttributeValidation() {
+		PathAttributeValidation validation = new PathAttributeValidation();
+		DecodedPathAttributes decoded = cache.add(originBlock(0), Collections.<PathAttribute>emptyList(), validation);
+		
+		Assert.assertSame(validation, decoded.getAttributeValidation());
+		
+		// the checks are run on the attributes if not passed by the decoder
+		decoded = cache.add(originBlock(1), Arrays.<PathAttribute>asList(new OriginPathAttribute(Origin.EGP)));
+		
+		Assert.assertNotNull(decoded.getAttributeValidation());
+		Assert.assertTrue(decoded.getAttributeValidation().isMissingWellKnownAttributes(false));
+		Assert.assertFalse(decoded.getAttributeValidation().isASTypeMismatch(ASType.AS_NUMBER_4OCTETS));
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.protocol.update.PathAttributeBlockCacheTest.java 
+ */
+package org.bgp4j.netty.protocol.update;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import org.bgp4j.net.Origin;
+import org.bgp4j.net.attributes.LocalPrefPathAttribute;
+import org.bgp4j.net.attributes.OriginPathAttribute;
+import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.netty.BGPv4TestBase;
+import org.bgp4j.rib.PathAttributeSet;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class PathAttributeBlockCacheTest extends BGPv4TestBase {
+
+	@Before
+	public void before() {
+		cache = obtainInstance(PathAttributeBlockCache.class);
+		cache.clear();
+	}
+	
+	@After
+	public void after() {
+		cache.setMaximumSize(PathAttributeBlockCache.DEFAULT_MAXIMUM_SIZE);
+		cache.clear();
+		cache = null;
+	}
+	
+	private PathAttributeBlockCache cache;
+	
+	private Set<PathAttribute> attributes(int localPref) {
+		return PathAttributeSet.valueOf(Arrays.<PathAttribute>asList(new OriginPathAttribute(Origin.IGP), new LocalPrefPathAttribute(localPref)));
+	}
+	
+	@Test
+	public void testLookupEncodesOnce() {
+		long hits = cache.getHits();
+		long misses = cache.getMisses();
+		PathAttributeBlock block = cache.lookup(attributes(100));
+		
+		Assert.assertSame(block, cache.lookup(attributes(100)));
+		Assert.assertNotSame(block, cache.lookup(attributes(200)));
+		Assert.assertEquals(2, cache.getSize());
+		Assert.assertEquals(hits + 1, cache.getHits());
+		Assert.assertEquals(misses + 2, cache.getMisses());
+	}
+	
+	@Test
+	public void testEncodedBlock() {
+		PathAttributeBlock block = cache.lookup(attributes(100));
+		
+		Assert.assertNull(block.getMultiProtocolReachable());
+		Assert.assertEquals(11, block.getEncodedLength());
+		
+		// the attributes are encoded in the order of the attribute set
+		assertBufferContents(new byte[] {
+				(byte)0x40, (byte)0x05, (byte)0x04, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x64, // LOCAL_PREF 100
+				(byte)0x40, (byte)0x01, (byte)0x01, (byte)0x00, // ORIGIN IGP
+		}, block.getLeadingAttributes());
+		Assert.assertEquals(0, block.getTrailingAttributes().readableBytes());
+	}
+	
+	@Test
+	public void testLeastRecentlyUsedBlockEvicted() {
+		cache.setMaximumSize(2);
+		
+		PathAttributeBlock first = cache.lookup(attributes(100));
+		PathAttributeBlock second = cache.lookup(attributes(200));
+		
+		Assert.assertSame(first, cache.lookup(attributes(100)));
+		cache.lookup(attributes(300));
+		
+		Assert.assertEquals(2, cache.getSize());
+		Assert.assertSame(first, cache.lookup(attributes(100)));
+		Assert.assertNotSame(second, cache.lookup(attributes(200)));
+	}
+	
+	@Test
+	public void testShrinkMaximumSize() {
+		for(int i=0; i<10; i++)
+			cache.lookup(attributes(i));
+		
+		cache.setMaximumSize(4);
+		
+		Assert.assertEquals(4, cache.getSize());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testIllegalMaximumSize() {
+		cache.setMaximumSize(0);
+	}
+}
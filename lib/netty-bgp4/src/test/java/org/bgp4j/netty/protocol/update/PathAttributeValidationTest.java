@@ -0,0 +1,127 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.protocol.update.PathAttributeValidationTest.java 
+ */
+package org.bgp4j.netty.protocol.update;
+
+import java.net.Inet4Address;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.bgp4j.net.ASType;
+import org.bgp4j.net.Origin;
+import org.bgp4j.net.attributes.ASPathAttribute;
+import org.bgp4j.net.attributes.AggregatorPathAttribute;
+import org.bgp4j.net.attributes.LocalPrefPathAttribute;
+import org.bgp4j.net.attributes.MultiExitDiscPathAttribute;
+import org.bgp4j.net.attributes.NextHopPathAttribute;
+import org.bgp4j.net.attributes.OriginPathAttribute;
+import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.netty.BGPv4Constants;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class PathAttributeValidationTest {
+
+	private List<PathAttribute> mandatoryAttributes(ASType asType) throws Exception {
+		List<PathAttribute> attributes = new LinkedList<PathAttribute>();
+		
+		attributes.add(new OriginPathAttribute(Origin.IGP));
+		attributes.add(new ASPathAttribute(asType));
+		attributes.add(new NextHopPathAttribute((Inet4Address)Inet4Address.getByAddress(new byte[] { (byte)0xc0, (byte)0xa8, 0x4, 0x1 })));
+		attributes.add(new LocalPrefPathAttribute(100));
+		
+		return attributes;
+	}
+	
+	@Test
+	public void testValidAttributes() throws Exception {
+		PathAttributeValidation validation = PathAttributeValidation.of(mandatoryAttributes(ASType.AS_NUMBER_4OCTETS));
+		
+		Assert.assertTrue(validation.isValid(true, ASType.AS_NUMBER_4OCTETS));
+		Assert.assertTrue(validation.isValid(false, ASType.AS_NUMBER_4OCTETS));
+		Assert.assertFalse(validation.isValid(true, ASType.AS_NUMBER_2OCTETS));
+		Assert.assertFalse(validation.hasAttributeFlagsErrors());
+		Assert.assertEquals(0, validation.getAttributeFlagsErrors().size());
+		Assert.assertEquals(0, validation.getMissingWellKnownAttributeCodes(true, ASType.AS_NUMBER_4OCTETS).size());
+	}
+	
+	@Test
+	public void testMissingWellKnownAttributes() throws Exception {
+		PathAttributeValidation validation = PathAttributeValidation.of(Collections.<PathAttribute>emptyList());
+		
+		Assert.assertTrue(validation.isMissingWellKnownAttributes(false));
+		Assert.assertTrue(validation.isMissingWellKnownAttributes(true));
+		Assert.assertFalse(validation.isValid(false, ASType.AS_NUMBER_2OCTETS));
+		Assert.assertEquals(Arrays.asList(BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_ORIGIN,
+				BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_AS_PATH,
+				BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_NEXT_HOP), 
+				validation.getMissingWellKnownAttributeCodes(false, ASType.AS_NUMBER_2OCTETS));
+		Assert.assertEquals(Arrays.asList(BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_ORIGIN,
+				BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_AS4_PATH,
+				BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_NEXT_HOP,
+				BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_LOCAL_PREF), 
+				validation.getMissingWellKnownAttributeCodes(true, ASType.AS_NUMBER_4OCTETS));
+		
+		// the local preference is only mandatory on IBGP connections
+		List<PathAttribute> attributes = mandatoryAttributes(ASType.AS_NUMBER_2OCTETS);
+		
+		attributes.remove(3);
+		validation = PathAttributeValidation.of(attributes);
+		
+		Assert.assertTrue(validation.isValid(false, ASType.AS_NUMBER_2OCTETS));
+		Assert.assertFalse(validation.isValid(true, ASType.AS_NUMBER_2OCTETS));
+		Assert.assertEquals(Arrays.asList(BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_LOCAL_PREF), 
+				validation.getMissingWellKnownAttributeCodes(true, ASType.AS_NUMBER_2OCTETS));
+	}
+	
+	@Test
+	public void testAttributeFlagsErrors() throws Exception {
+		List<PathAttribute> attributes = mandatoryAttributes(ASType.AS_NUMBER_2OCTETS);
+		MultiExitDiscPathAttribute med = new MultiExitDiscPathAttribute(10);
+		
+		med.setTransitive(true);
+		attributes.add(med);
+		attributes.get(0).setOptional(true);
+		
+		PathAttributeValidation validation = PathAttributeValidation.of(attributes);
+		
+		Assert.assertTrue(validation.hasAttributeFlagsErrors());
+		Assert.assertEquals(Arrays.asList(attributes.get(0), med), validation.getAttributeFlagsErrors());
+		Assert.assertFalse(validation.isMissingWellKnownAttributes(true));
+		Assert.assertFalse(validation.isValid(true, ASType.AS_NUMBER_2OCTETS));
+	}
+	
+	@Test
+	public void testASTypeMismatch() throws Exception {
+		List<PathAttribute> attributes = mandatoryAttributes(ASType.AS_NUMBER_2OCTETS);
+		
+		attributes.add(new AggregatorPathAttribute(ASType.AS_NUMBER_4OCTETS));
+		
+		PathAttributeValidation validation = PathAttributeValidation.of(attributes);
+		
+		Assert.assertTrue(validation.isASTypeMismatch(ASType.AS_NUMBER_2OCTETS));
+		Assert.assertTrue(validation.isASTypeMismatch(ASType.AS_NUMBER_4OCTETS));
+		Assert.assertFalse(validation.isMissingWellKnownAttributes(true));
+		Assert.assertFalse(validation.isValid(true, ASType.AS_NUMBER_2OCTETS));
+	}
+}
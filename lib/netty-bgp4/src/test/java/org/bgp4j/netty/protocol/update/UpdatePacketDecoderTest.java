@@ -18,13 +18,16 @@
 package org.bgp4j.netty.protocol.update;
 
 import java.net.Inet4Address;
+import java.util.Arrays;
 
 import junit.framework.Assert;
 
 import org.bgp4j.net.ASType;
 import org.bgp4j.net.AddressFamily;
+import org.bgp4j.net.IPv4PrefixKey;
 import org.bgp4j.net.NetworkLayerReachabilityInformation;
 import org.bgp4j.net.Origin;
+import org.bgp4j.net.PackedPrefixList;
 import org.bgp4j.net.PathSegment;
 import org.bgp4j.net.PathSegmentType;
 import org.bgp4j.net.SubsequentAddressFamily;
@@ -32,6 +35,8 @@ import org.bgp4j.net.attributes.ASPathAttribute;
 import org.bgp4j.net.attributes.AggregatorPathAttribute;
 import org.bgp4j.net.attributes.AtomicAggregatePathAttribute;
 import org.bgp4j.net.attributes.ClusterListPathAttribute;
+import org.bgp4j.net.attributes.CommunityMember;
+import org.bgp4j.net.attributes.CommunityPathAttribute;
 import org.bgp4j.net.attributes.LocalPrefPathAttribute;
 import org.bgp4j.net.attributes.MultiExitDiscPathAttribute;
 import org.bgp4j.net.attributes.MultiProtocolReachableNLRI;
@@ -39,9 +44,13 @@ import org.bgp4j.net.attributes.MultiProtocolUnreachableNLRI;
 import org.bgp4j.net.attributes.NextHopPathAttribute;
 import org.bgp4j.net.attributes.OriginPathAttribute;
 import org.bgp4j.net.attributes.OriginatorIDPathAttribute;
+import org.bgp4j.net.attributes.UnknownPathAttribute;
 import org.bgp4j.netty.BGPv4Constants;
 import org.bgp4j.netty.BGPv4TestBase;
 import org.bgp4j.netty.protocol.ConnectionNotSynchronizedException;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.ReadOnlyChannelBuffer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -60,9 +69,209 @@ public class UpdatePacketDecoderTest extends BGPv4TestBase {
 	
 	@After
 	public void after() {
+		decoder.setPackedPrefixDecoding(false);
 		decoder = null;
 	}
 
+	@Test
+	public void testDecodeFromReadOnlySlice() throws Exception {
+		byte[] frames = new byte[] {
+				(byte)0xee, (byte)0xee, // preceding data
+				(byte)0x00, (byte)0x04, // withdrawn routes length (4 octets)
+				(byte)0x18, (byte)0xc0, (byte)0xa8, (byte)0x02, // withdrawn 192.168.2.0/24
+				(byte)0x00, (byte)0x09, // path attributes length (9 octets)
+				(byte)0x40, (byte)0x01, (byte)0x01, (byte)0x00, // Path attribute: ORIGIN IGP  
+				(byte)0xc0, (byte)0x63, (byte)0x02, (byte)0x12, (byte)0x34, // Path attribute: unknown type 99, 2 octets
+				(byte)0xc0, // Path attribute: flags of attribute in next frame
+		};
+		ChannelBuffer buffer = ChannelBuffers.wrappedBuffer(frames);
+		
+		buffer.readerIndex(2);
+		
+		UpdatePacket packet = safeDowncast(decoder.decodeUpdatePacket(new ReadOnlyChannelBuffer(buffer.readSlice(frames.length - 3))), UpdatePacket.class);
+		
+		Assert.assertEquals(1, packet.getWithdrawnRoutes().size());
+		Assert.assertEquals(new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x02 }), 
+				packet.getWithdrawnRoutes().get(0));
+		Assert.assertEquals(2, packet.getPathAttributes().size());
+		Assert.assertEquals(Origin.IGP, ((OriginPathAttribute)packet.getPathAttributes().get(0)).getOrigin());
+		Assert.assertEquals(99, ((UnknownPathAttribute)packet.getPathAttributes().get(1)).getTypeCode());
+		Assert.assertTrue(Arrays.equals(new byte[] { (byte)0x12, (byte)0x34 }, ((UnknownPathAttribute)packet.getPathAttributes().get(1)).getValue()));
+		Assert.assertEquals(0, packet.getNlris().size());
+		Assert.assertEquals(frames.length - 1, buffer.readerIndex());
+	}
+	
+	@Test
+	public void testLazyDecodeASPathAndCommunities() throws Exception {
+		byte[] asPathBytes = new byte[] {
+				(byte)0x40, (byte)0x02, (byte)0x06, // Path attribute: 6 octets AS_PATH
+				0x02, 0x02, 0x12, 0x34, 0x56, 0x78, // AS_SEQUENCE 0x1234 0x5678 
+		};
+		byte[] communityBytes = new byte[] {
+				(byte)0xc0, (byte)0x08, (byte)0x08, // Path attribute: 8 octets COMMUNITIES
+				0x00, 0x00, 0x12, 0x34, 0x56, 0x78, 0x00, 0x01, // community 0x1234, member AS 0x5678 flags 1 
+		};
+		byte[] update = new byte[] {
+				(byte)0x00, (byte)0x00, // withdrawn routes length (0 octets)
+				(byte)0x00, (byte)0x14, // path attributes length (20 octets)
+				(byte)0x40, (byte)0x02, (byte)0x06, // Path attribute: 6 octets AS_PATH
+				0x02, 0x02, 0x12, 0x34, 0x56, 0x78, // AS_SEQUENCE 0x1234 0x5678 
+				(byte)0xc0, (byte)0x08, (byte)0x08, // Path attribute: 8 octets COMMUNITIES
+				0x00, 0x00, 0x12, 0x34, 0x56, 0x78, 0x00, 0x01, // community 0x1234, member AS 0x5678 flags 1 
+		};
+		
+		UpdatePacket eager = safeDowncast(decoder.decodeUpdatePacket(buildProtocolPacket(update)), UpdatePacket.class);
+		
+		decoder.setLazyAttributeDecoding(true);
+		
+		UpdatePacket lazy = safeDowncast(decoder.decodeUpdatePacket(buildProtocolPacket(update)), UpdatePacket.class);
+		ASPathAttribute asPath = (ASPathAttribute)lazy.getPathAttributes().get(0);
+		CommunityPathAttribute communities = (CommunityPathAttribute)lazy.getPathAttributes().get(1);
+
+		Assert.assertEquals(2, lazy.getPathAttributes().size());
+		Assert.assertFalse(((ASPathAttribute)eager.getPathAttributes().get(0)).hasEncodedValue());
+		Assert.assertTrue(asPath.hasEncodedValue());
+		Assert.assertTrue(communities.hasEncodedValue());
+		Assert.assertEquals(eager.getPathAttributes().get(0), asPath);
+		Assert.assertEquals(eager.getPathAttributes().get(0).hashCode(), asPath.hashCode());
+		Assert.assertEquals(eager.getPathAttributes().get(1), communities);
+		Assert.assertEquals(eager.getPathAttributes().get(1).hashCode(), communities.hashCode());
+		
+		Assert.assertEquals(ChannelBuffers.wrappedBuffer(asPathBytes), PathAttributeCodec.encodePathAttribute(asPath));
+		Assert.assertEquals(ChannelBuffers.wrappedBuffer(communityBytes), PathAttributeCodec.encodePathAttribute(communities));
+
+		Assert.assertEquals(ASType.AS_NUMBER_2OCTETS, asPath.getAsType());
+		Assert.assertEquals(1, asPath.getPathSegments().size());
+		Assert.assertEquals(PathSegmentType.AS_SEQUENCE, asPath.getPathSegments().get(0).getPathSegmentType());
+		Assert.assertEquals(Arrays.asList(0x1234, 0x5678), asPath.getPathSegments().get(0).getAses());
+		Assert.assertEquals(0x1234, communities.getCommunity());
+		Assert.assertEquals(Arrays.asList(new CommunityMember(0x5678, 1)), communities.getMembers());
+		
+		// decoding on access keeps the encoded value
+		Assert.assertTrue(asPath.hasEncodedValue());
+		Assert.assertEquals(ChannelBuffers.wrappedBuffer(asPathBytes), PathAttributeCodec.encodePathAttribute(asPath));
+	}
+
+	@Test
+	public void testLazyDecodeASPathBadPathType() throws Exception {
+		decoder.setLazyAttributeDecoding(true);
+		
+		(new AssertExecption() {
+			
+			@Override
+			protected void doExecute() {
+				safeDowncast(decoder.decodeUpdatePacket(buildProtocolPacket(new byte[] {
+						(byte)0x00, (byte)0x00, // withdrawn routes length (0 octets)
+						(byte)0x00, (byte)0x0a, // path attributes length (10 octets)
+						(byte)0x50, (byte)0x11, (byte)0x00, (byte)0x06, // Path attribute: 6 octets AS4_PATH  
+						0x05, 0x01, 0x00, 0x00, 0x12, 0x34, // Invalid 0x1234 
+				})), UpdatePacket.class);	
+			}
+		}).execute(MalformedASPathAttributeException.class);
+	}
+
+	@Test
+	public void testLazyDecodeASPathSegmentTooLong() throws Exception {
+		decoder.setLazyAttributeDecoding(true);
+		
+		(new AssertExecption() {
+			
+			@Override
+			protected void doExecute() {
+				safeDowncast(decoder.decodeUpdatePacket(buildProtocolPacket(new byte[] {
+						(byte)0x00, (byte)0x00, // withdrawn routes length (0 octets)
+						(byte)0x00, (byte)0x0a, // path attributes length (10 octets)
+						(byte)0x50, (byte)0x11, (byte)0x00, (byte)0x06, // Path attribute: 6 octets AS4_PATH  
+						0x02, 0x02, 0x00, 0x00, 0x12, 0x34, // AS_SEQUENCE with second AS missing 
+				})), UpdatePacket.class);	
+			}
+		}).execute(MalformedASPathAttributeException.class);
+	}
+
+	@Test
+	public void testLazyDecodeCommunitiesBadLength() throws Exception {
+		decoder.setLazyAttributeDecoding(true);
+		
+		(new AssertExecption() {
+			
+			@Override
+			protected void doExecute() {
+				safeDowncast(decoder.decodeUpdatePacket(buildProtocolPacket(new byte[] {
+						(byte)0x00, (byte)0x00, // withdrawn routes length (0 octets)
+						(byte)0x00, (byte)0x09, // path attributes length (9 octets)
+						(byte)0xc0, (byte)0x08, (byte)0x06, // Path attribute: 6 octets COMMUNITIES  
+						0x00, 0x00, 0x12, 0x34, 0x56, 0x78, // community 0x1234, truncated member 
+				})), UpdatePacket.class);	
+			}
+		}).execute(OptionalAttributeErrorException.class);
+	}
+
+	@Test
+	public void testDecodeWithDecodedAttributeCache() throws Exception {
+		DecodedPathAttributeCache cache = obtainInstance(DecodedPathAttributeCache.class);
+		
+		cache.clear();
+		decoder.setDecodedAttributeCaching(true);
+		
+		long hits = cache.getHits();
+		UpdatePacket first = safeDowncast(decoder.decodeUpdatePacket(buildProtocolPacket(new byte[] {
+				(byte)0x00, (byte)0x00, // withdrawn routes length (0 octets)
+				(byte)0x00, (byte)0x0b, // path attributes length (11 octets)
+				(byte)0x40, (byte)0x01, (byte)0x01, (byte)0x00, // Path attribute: ORIGIN IGP  
+				(byte)0x40, (byte)0x05, (byte)0x04, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x64, // Path attribute: LOCAL_PREF 100  
+				(byte)0x18, (byte)0xc0, (byte)0xa8, (byte)0x02, // NLRI 192.168.2.0/24
+		})), UpdatePacket.class);
+		UpdatePacket second = safeDowncast(decoder.decodeUpdatePacket(buildProtocolPacket(new byte[] {
+				(byte)0x00, (byte)0x00, // withdrawn routes length (0 octets)
+				(byte)0x00, (byte)0x0b, // path attributes length (11 octets)
+				(byte)0x40, (byte)0x01, (byte)0x01, (byte)0x00, // Path attribute: ORIGIN IGP  
+				(byte)0x40, (byte)0x05, (byte)0x04, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x64, // Path attribute: LOCAL_PREF 100  
+				(byte)0x18, (byte)0xc0, (byte)0xa8, (byte)0x03, // NLRI 192.168.3.0/24
+		})), UpdatePacket.class);
+		
+		try {
+			Assert.assertNotNull(first.getDecodedPathAttributes());
+			Assert.assertSame(first.getDecodedPathAttributes(), second.getDecodedPathAttributes());
+			Assert.assertEquals(hits + 1, cache.getHits());
+			Assert.assertEquals(1, cache.getSize());
+			
+			Assert.assertEquals(2, second.getPathAttributes().size());
+			Assert.assertSame(first.getPathAttributes().get(0), second.getPathAttributes().get(0));
+			Assert.assertSame(first.getPathAttributes().get(1), second.getPathAttributes().get(1));
+			Assert.assertSame(first.getAttributeValidation(), second.getAttributeValidation());
+			Assert.assertEquals(Origin.IGP, ((OriginPathAttribute)second.getPathAttributes().get(0)).getOrigin());
+			Assert.assertEquals(100, ((LocalPrefPathAttribute)second.getPathAttributes().get(1)).getLocalPreference());
+			Assert.assertEquals(new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x03 }), 
+					second.getNlris().get(0));
+		} finally {
+			cache.clear();
+		}
+	}
+
+	@Test
+	public void testDecodeAttributeValidation() throws Exception {
+		UpdatePacket packet = safeDowncast(decoder.decodeUpdatePacket(buildProtocolPacket(new byte[] {
+				(byte)0x00, (byte)0x00, // withdrawn routes length (0 octets)
+				(byte)0x00, (byte)0x0e, // path attributes length (14 octets)
+				(byte)0xc0, (byte)0x01, (byte)0x01, (byte)0x00, // Path attribute: ORIGIN IGP with optional bit set 
+				(byte)0x40, (byte)0x02, (byte)0x00, // Path attribute: AS_PATH empty
+				(byte)0x40, (byte)0x03, (byte)0x04, (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x01, // Path attribute: NEXT_HOP 192.168.4.1
+		})), UpdatePacket.class);
+		PathAttributeValidation validation = packet.getAttributeValidation();
+		
+		Assert.assertNotNull(validation);
+		Assert.assertTrue(validation.hasAttributeFlagsErrors());
+		Assert.assertEquals(1, validation.getAttributeFlagsErrors().size());
+		Assert.assertSame(packet.getPathAttributes().get(0), validation.getAttributeFlagsErrors().get(0));
+		Assert.assertFalse(validation.isMissingWellKnownAttributes(false));
+		Assert.assertTrue(validation.isMissingWellKnownAttributes(true));
+		Assert.assertEquals(Arrays.asList(BGPv4Constants.BGP_PATH_ATTRIBUTE_TYPE_LOCAL_PREF), 
+				validation.getMissingWellKnownAttributeCodes(true, ASType.AS_NUMBER_2OCTETS));
+		Assert.assertFalse(validation.isASTypeMismatch(ASType.AS_NUMBER_2OCTETS));
+		Assert.assertTrue(validation.isASTypeMismatch(ASType.AS_NUMBER_4OCTETS));
+		Assert.assertFalse(validation.isValid(false, ASType.AS_NUMBER_2OCTETS));
+	}
+
 	@Test
 	public void testDecodeOriginIgpPacket() throws Exception {
 		UpdatePacket packet = safeDowncast(decoder.decodeUpdatePacket(buildProtocolPacket(new byte[] {
@@ -1944,6 +2153,130 @@ public class UpdatePacketDecoderTest extends BGPv4TestBase {
 		}).execute(InvalidNetworkFieldException.class);
 	}	
 	
+	@Test
+	public void testDecodePackedWithdrawnRoutesAndNlris() {
+		decoder.setPackedPrefixDecoding(true);
+		
+		UpdatePacket packet = safeDowncast(decoder.decodeUpdatePacket(buildProtocolPacket(new byte[] {
+				0x00, 0x07, // withdrawn routes length (7 octets)
+				0x10, (byte)0xac, 0x11, // withdrawn route 172.17/16
+				0x18, (byte)0xc0, (byte)0xa8, 0x05, // withdrawn route 192.168.5/24
+				0x00, 0x04, // Total path attributes length  (4 octets)
+				0x40, 0x01, 0x01, 0x00, // Path attribute: ORIGIN IGP  
+				0x10, (byte)0xac, 0x10, // NLRI 172.16/16
+				0x1c, (byte)0xc0, (byte)0xa8, 0x20, 0x1f,  // NLRI 192.168.32.16/28 with trailing bits set
+		})), UpdatePacket.class);
+		
+		PackedPrefixList withdrawnRoutes = packet.getPackedWithdrawnRoutes();
+		PackedPrefixList nlris = packet.getPackedNlris();
+		
+		Assert.assertNotNull(withdrawnRoutes);
+		Assert.assertEquals(2, withdrawnRoutes.size());
+		Assert.assertEquals(IPv4PrefixKey.pack(0xac110000, 16), withdrawnRoutes.getIPv4Key(0));
+		Assert.assertEquals(IPv4PrefixKey.pack(0xc0a80500, 24), withdrawnRoutes.getIPv4Key(1));
+		Assert.assertNotNull(nlris);
+		Assert.assertEquals(2, nlris.size());
+		Assert.assertEquals(IPv4PrefixKey.pack(0xac100000, 16), nlris.getIPv4Key(0));
+		Assert.assertEquals(IPv4PrefixKey.pack(0xc0a82010, 28), nlris.getIPv4Key(1));
+		Assert.assertEquals(1, packet.getPathAttributes().size());
+		
+		// the NLRI lists are built on first access
+		Assert.assertEquals(2, packet.getNlris().size());
+		Assert.assertNull(packet.getPackedNlris());
+		Assert.assertEquals(new NetworkLayerReachabilityInformation(16, new byte[] { (byte)0xac, 0x10 }), packet.getNlris().get(0));
+		Assert.assertEquals(new NetworkLayerReachabilityInformation(28, new byte[] { (byte)0xc0, (byte)0xa8, 0x20, 0x10 }), packet.getNlris().get(1));
+		Assert.assertEquals(2, packet.getWithdrawnRoutes().size());
+		Assert.assertNull(packet.getPackedWithdrawnRoutes());
+		Assert.assertEquals(new NetworkLayerReachabilityInformation(16, new byte[] { (byte)0xac, 0x11 }), packet.getWithdrawnRoutes().get(0));
+	}
+	
+	@Test
+	public void testDecodePackedEmptyPrefixFields() {
+		decoder.setPackedPrefixDecoding(true);
+		
+		UpdatePacket packet = safeDowncast(decoder.decodeUpdatePacket(buildProtocolPacket(new byte[] {
+				0x00, 0x00, // withdrawn routes length (0 octets)
+				0x00, 0x04, // Total path attributes length  (4 octets)
+				0x40, 0x01, 0x01, 0x00, // Path attribute: ORIGIN IGP  
+		})), UpdatePacket.class);
+		
+		Assert.assertTrue(packet.getPackedWithdrawnRoutes().isEmpty());
+		Assert.assertTrue(packet.getPackedNlris().isEmpty());
+		Assert.assertEquals(0, packet.getNlris().size());
+	}
+	
+	@Test
+	public void testDecodePackedMpReachAndUnreachNlri() {
+		decoder.setPackedPrefixDecoding(true);
+		
+		UpdatePacket packet = safeDowncast(decoder.decodeUpdatePacket(buildProtocolPacket(new byte[] {
+				0x00, 0x00, // withdrawn routes length (0 octets)
+				0x00, 0x26, // Total path attributes length  (38 octets)
+				(byte)0x80, 0x0e, 0x1a, // Path Attribute MP_REACH_NLRI
+				0x00, 0x02, 0x01, // AFI(IPv6) SAFI(UNICAT_ROUTING) 
+				0x10, 0x20, 0x01, 0x0d, (byte)0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0x01, // NEXT_HOP 16 octets 2001:db8::1 
+				0x00, // reserved 
+				0x20, 0x20, 0x01, 0x0d, (byte)0xb8, // NLRI 2001:db8::/32
+				(byte)0x80, 0x0f, 0x06, // Path Attribute MP_UNREACH_NLRI
+				0x00, 0x01, 0x01, // AFI(IPv4) SAFI(UNICAT_ROUTING)
+				0x0c, (byte)0xab, 0x10, //  NLRI 172.16.0.0/12
+		})), UpdatePacket.class);
+		
+		Assert.assertEquals(2, packet.getPathAttributes().size());
+		
+		MultiProtocolReachableNLRI reach = (MultiProtocolReachableNLRI)packet.getPathAttributes().get(0);
+		MultiProtocolUnreachableNLRI unreach = (MultiProtocolUnreachableNLRI)packet.getPathAttributes().get(1);
+		
+		Assert.assertNotNull(reach.getPackedNlris());
+		Assert.assertEquals(AddressFamily.IPv6, reach.getPackedNlris().getAddressFamily());
+		Assert.assertEquals(1, reach.getPackedNlris().size());
+		Assert.assertEquals(0x20010db800000000L, reach.getPackedNlris().getHighWord(0));
+		Assert.assertEquals(32, reach.getPackedNlris().getPrefixLength(0));
+		Assert.assertNotNull(unreach.getPackedNlris());
+		Assert.assertEquals(IPv4PrefixKey.pack(0xab100000, 12), unreach.getPackedNlris().getIPv4Key(0));
+		
+		Assert.assertEquals(1, reach.getNlris().size());
+		Assert.assertEquals(new NetworkLayerReachabilityInformation(32, new byte[] { 0x20, 0x01, 0x0d, (byte)0xb8 }), reach.getNlris().get(0));
+		Assert.assertNull(reach.getPackedNlris());
+		Assert.assertEquals(new NetworkLayerReachabilityInformation(12, new byte[] { (byte)0xab, 0x10 }), unreach.getNlris().get(0));
+	}
+	
+	@Test
+	public void testDecodePackedBogusNlriUpdatePacket() throws Exception {
+		decoder.setPackedPrefixDecoding(true);
+		
+		(new AssertExecption() {			
+			@Override
+			protected void doExecute() {
+				safeDowncast(decoder.decodeUpdatePacket(buildProtocolPacket(new byte[] {
+						0x00, 0x00, // withdrawn routes length (0 octets)
+						0x00, 0x00, // Total path attributes length  (0 octets)
+						0x10, (byte)0xac, 0x10, // NLRI 172.16/16
+						0x1c, (byte)0xc0, (byte)0xa8, 0x20,  // NLRI 192.168.32/28 bogus one octet missing
+				})), UpdatePacket.class);			}
+		}).execute(InvalidNetworkFieldException.class);
+		
+		(new AssertExecption() {			
+			@Override
+			protected void doExecute() {
+				safeDowncast(decoder.decodeUpdatePacket(buildProtocolPacket(new byte[] {
+						0x00, 0x00, // withdrawn routes length (0 octets)
+						0x00, 0x00, // Total path attributes length  (0 octets)
+						0x21, (byte)0xc0, (byte)0xa8, 0x20, 0x01, 0x02, // NLRI with prefix length 33
+				})), UpdatePacket.class);			}
+		}).execute(InvalidNetworkFieldException.class);
+		
+		(new AssertExecption() {			
+			@Override
+			protected void doExecute() {
+				safeDowncast(decoder.decodeUpdatePacket(buildProtocolPacket(new byte[] {
+						0x00, 0x03, // withdrawn routes length (3 octets)
+						0x18, (byte)0xc0, (byte)0xa8, // withdrawn route 192.168/24 bogus one octet missing
+						0x00, 0x00, // Total path attributes length  (0 octets)
+				})), UpdatePacket.class);			}
+		}).execute(MalformedAttributeListException.class);
+	}
+	
 	@Test
 	public void testDecodeValidMpReachNlriNullNextHopZeroNlriUpdatePacket() {
 		UpdatePacket packet; 
@@ -0,0 +1,273 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.netty.protocol.update.UpdatePacketWriterTest.java 
+ */
+package org.bgp4j.netty.protocol.update;
+
+import java.net.Inet4Address;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.bgp4j.net.AddressFamily;
+import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.net.BinaryNextHop;
+import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.Origin;
+import org.bgp4j.net.SubsequentAddressFamily;
+import org.bgp4j.net.attributes.LocalPrefPathAttribute;
+import org.bgp4j.net.attributes.MultiProtocolReachableNLRI;
+import org.bgp4j.net.attributes.MultiProtocolUnreachableNLRI;
+import org.bgp4j.net.attributes.NextHopPathAttribute;
+import org.bgp4j.net.attributes.OriginPathAttribute;
+import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.netty.BGPv4Constants;
+import org.bgp4j.netty.BGPv4TestBase;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class UpdatePacketWriterTest extends BGPv4TestBase {
+
+	private static final BinaryNextHop IPV6_NEXT_HOP = new BinaryNextHop(new byte[] {
+			(byte)0xfe, (byte)0x80, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00,
+			(byte)0x02, (byte)0x22, (byte)0x15, (byte)0xff, (byte)0xfe, (byte)0x85, (byte)0xd9, (byte)0xe1 });
+	
+	private List<NetworkLayerReachabilityInformation> prefixes(int count) {
+		List<NetworkLayerReachabilityInformation> nlris = new LinkedList<NetworkLayerReachabilityInformation>();
+		
+		for(int i=0; i<count; i++)
+			nlris.add(new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0x0a, (byte)(i >> 8), (byte)i }));
+		
+		return nlris;
+	}
+	
+	private byte[] contents(ChannelBuffer buffer) {
+		byte[] bytes = new byte[buffer.readableBytes()];
+		
+		buffer.getBytes(buffer.readerIndex(), bytes);
+		
+		return bytes;
+	}
+	
+	@Test
+	public void testWriteUpdatePacketMatchesEncodePacket() throws Exception {
+		UpdatePacket packet = new UpdatePacket();
+		UpdatePacketWriter writer = new UpdatePacketWriter();
+		
+		packet.getWithdrawnRoutes().addAll(prefixes(2));
+		packet.getPathAttributes().add(new OriginPathAttribute(Origin.IGP));
+		packet.getPathAttributes().add(new NextHopPathAttribute((Inet4Address)Inet4Address.getByAddress(new byte[] { (byte)0xc0, (byte)0xa8, 0x04, 0x02 })));
+		packet.getNlris().add(new NetworkLayerReachabilityInformation(16, new byte[] { (byte)0xc0, (byte)0xa8 }));
+		
+		writer.writeUpdatePacket(packet);
+		
+		Assert.assertEquals(1, writer.getPackets().size());
+		Assert.assertEquals(packet.calculatePacketSize(), writer.getPackets().get(0).readableBytes());
+		assertBufferContents(contents(packet.encodePacket()), writer.getPackets().get(0));
+	}
+	
+	@Test
+	public void testWriteEndOfRibIPv4() throws Exception {
+		UpdatePacketWriter writer = new UpdatePacketWriter();
+		
+		writer.writeEndOfRib(AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		
+		Assert.assertEquals(1, writer.getPackets().size());
+		assertBufferContents(new byte[] {
+				(byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, 
+				(byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, 
+				(byte)0x00, (byte)0x17, // length 23 octets
+				(byte)0x02, // type UPDATE
+				(byte)0x00, (byte)0x00, // no withdrawn routes
+				(byte)0x00, (byte)0x00, // no path attributes
+		}, writer.getPackets().get(0));
+	}
+	
+	@Test
+	public void testWriteEndOfRibIPv6() throws Exception {
+		UpdatePacketWriter writer = new UpdatePacketWriter();
+		
+		writer.writeEndOfRib(AddressFamilyKey.IPV6_UNICAST_FORWARDING);
+		
+		Assert.assertEquals(1, writer.getPackets().size());
+		assertBufferContents(new byte[] {
+				(byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, 
+				(byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, 
+				(byte)0x00, (byte)0x1d, // length 29 octets
+				(byte)0x02, // type UPDATE
+				(byte)0x00, (byte)0x00, // no withdrawn routes
+				(byte)0x00, (byte)0x06, // path attributes length
+				(byte)0x80, (byte)0x0f, (byte)0x03, // MP_UNREACH_NLRI, optional, 3 octets 
+				(byte)0x00, (byte)0x02, (byte)0x01, // IPv6 unicast, no NLRI
+		}, writer.getPackets().get(0));
+	}
+	
+	@Test
+	public void testWriteWithdrawnRoutesIPv4() throws Exception {
+		UpdatePacketWriter writer = new UpdatePacketWriter();
+		UpdatePacket packet = new UpdatePacket();
+		
+		packet.getWithdrawnRoutes().addAll(prefixes(3));
+		writer.writeWithdrawnRoutes(AddressFamilyKey.IPV4_UNICAST_FORWARDING, prefixes(3));
+		
+		Assert.assertEquals(1, writer.getPackets().size());
+		assertBufferContents(contents(packet.encodePacket()), writer.getPackets().get(0));
+	}
+	
+	@Test
+	public void testWriteWithdrawnRoutesIPv6() throws Exception {
+		UpdatePacketWriter writer = new UpdatePacketWriter();
+		UpdatePacket packet = new UpdatePacket();
+		MultiProtocolUnreachableNLRI mpUnreach = new MultiProtocolUnreachableNLRI(AddressFamily.IPv6, SubsequentAddressFamily.NLRI_UNICAST_FORWARDING);
+		
+		mpUnreach.getNlris().addAll(prefixes(3));
+		packet.getPathAttributes().add(mpUnreach);
+		writer.writeWithdrawnRoutes(AddressFamilyKey.IPV6_UNICAST_FORWARDING, prefixes(3));
+		
+		Assert.assertEquals(1, writer.getPackets().size());
+		assertBufferContents(contents(packet.encodePacket()), writer.getPackets().get(0));
+	}
+	
+	@Test
+	public void testWriteAddedRoutesIPv6() throws Exception {
+		UpdatePacketWriter writer = new UpdatePacketWriter();
+		UpdatePacket packet = new UpdatePacket();
+		PathAttribute origin = new OriginPathAttribute(Origin.IGP);
+		PathAttribute localPref = new LocalPrefPathAttribute(100);
+		MultiProtocolReachableNLRI mpReach = new MultiProtocolReachableNLRI(AddressFamily.IPv6, SubsequentAddressFamily.NLRI_UNICAST_FORWARDING, IPV6_NEXT_HOP);
+		
+		// the NLRI are carried in a copy of the MP_REACH_NLRI attribute
+		writer.writeAddedRoutes(Arrays.asList(origin, mpReach, localPref), prefixes(100));
+		
+		mpReach = new MultiProtocolReachableNLRI(AddressFamily.IPv6, SubsequentAddressFamily.NLRI_UNICAST_FORWARDING, IPV6_NEXT_HOP);
+		mpReach.getNlris().addAll(prefixes(100));
+		packet.getPathAttributes().addAll(Arrays.asList(origin, mpReach, localPref));
+		
+		Assert.assertEquals(1, writer.getPackets().size());
+		assertBufferContents(contents(packet.encodePacket()), writer.getPackets().get(0));
+	}
+	
+	@Test
+	public void testWriteAddedRoutesSplitIntoPackets() throws Exception {
+		UpdatePacketWriter writer = new UpdatePacketWriter();
+		List<PathAttribute> attributes = Arrays.asList(new OriginPathAttribute(Origin.IGP), 
+				new NextHopPathAttribute((Inet4Address)Inet4Address.getByAddress(new byte[] { (byte)0xc0, (byte)0xa8, 0x04, 0x02 })));
+		int count = 0;
+		
+		writer.writeAddedRoutes(attributes, prefixes(3000));
+		
+		Assert.assertEquals(3, writer.getPackets().size());
+		
+		// the first packet is filled up to the maximum BGP packet length
+		Assert.assertTrue(writer.getPackets().get(0).readableBytes() > BGPv4Constants.BGP_PACKET_MAX_LENGTH - 4);
+		
+		for(ChannelBuffer buffer : writer.getPackets()) {
+			Assert.assertTrue(buffer.readableBytes() <= UpdatePacketWriter.UPDATE_PACKET_SIZE_LIMIT);
+			Assert.assertEquals(buffer.readableBytes(), buffer.getUnsignedShort(buffer.readerIndex() + BGPv4Constants.BGP_PACKET_MARKER_LENGTH));
+			
+			// withdrawn routes length 0, path attributes length 11
+			Assert.assertEquals(0, buffer.getUnsignedShort(buffer.readerIndex() + BGPv4Constants.BGP_PACKET_HEADER_LENGTH));
+			Assert.assertEquals(11, buffer.getUnsignedShort(buffer.readerIndex() + BGPv4Constants.BGP_PACKET_HEADER_LENGTH + 2));
+			
+			count += (buffer.readableBytes() - BGPv4Constants.BGP_PACKET_MIN_SIZE_UPDATE - 11) / 4;
+		}
+		
+		Assert.assertEquals(3000, count);
+	}
+	
+	@Test
+	public void testWriteAddedRoutesSharedBlock() throws Exception {
+		UpdatePacketWriter writer = new UpdatePacketWriter();
+		PathAttribute origin = new OriginPathAttribute(Origin.IGP);
+		PathAttribute localPref = new LocalPrefPathAttribute(100);
+		MultiProtocolReachableNLRI mpReach = new MultiProtocolReachableNLRI(AddressFamily.IPv6, SubsequentAddressFamily.NLRI_UNICAST_FORWARDING, IPV6_NEXT_HOP);
+		PathAttributeBlock block = PathAttributeBlock.encode(Arrays.asList(origin, mpReach, localPref));
+		
+		writer.writeAddedRoutes(block, prefixes(10));
+		writer.writeAddedRoutes(block, prefixes(20));
+		
+		Assert.assertEquals(2, writer.getPackets().size());
+		
+		// both packets carry the same attributes, only the MP_REACH_NLRI attribute differs
+		for(ChannelBuffer buffer : writer.getPackets()) {
+			UpdatePacket packet = new UpdatePacket();
+			
+			mpReach = new MultiProtocolReachableNLRI(AddressFamily.IPv6, SubsequentAddressFamily.NLRI_UNICAST_FORWARDING, IPV6_NEXT_HOP);
+			mpReach.getNlris().addAll(prefixes((buffer == writer.getPackets().get(0)) ? 10 : 20));
+			packet.getPathAttributes().addAll(Arrays.asList(origin, mpReach, localPref));
+
+			assertBufferContents(contents(packet.encodePacket()), buffer);
+		}
+	}
+	
+	@Test
+	public void testWriteWithdrawnRoutesSharedChunk() throws Exception {
+		UpdatePacketWriter writer = new UpdatePacketWriter();
+		
+		writer.writeWithdrawnRoutes(AddressFamilyKey.IPV4_UNICAST_FORWARDING, prefixes(3000));
+		
+		Assert.assertEquals(3, writer.getPackets().size());
+		
+		// the first chunk is sized to the first packet, the second chunk has grown to take the remaining packets
+		Assert.assertEquals(writer.getPackets().get(0).readableBytes(), writer.getPackets().get(0).array().length);
+		Assert.assertNotSame(writer.getPackets().get(0).array(), writer.getPackets().get(1).array());
+		Assert.assertSame(writer.getPackets().get(1).array(), writer.getPackets().get(2).array());
+	}
+	
+	@Test
+	public void testSmallFirstChunk() throws Exception {
+		UpdatePacketWriter writer = new UpdatePacketWriter();
+		
+		writer.writeWithdrawnRoutes(AddressFamilyKey.IPV4_UNICAST_FORWARDING, prefixes(1));
+		
+		Assert.assertEquals(1, writer.getPackets().size());
+		Assert.assertEquals(27, writer.getPackets().get(0).readableBytes());
+		Assert.assertEquals(UpdatePacketWriter.INITIAL_CHUNK_SIZE, writer.getPackets().get(0).array().length);
+	}
+	
+	@Test
+	public void testChunksGrowUpToChunkSize() throws Exception {
+		UpdatePacketWriter writer = new UpdatePacketWriter(2048);
+		List<Integer> chunkSizes = new LinkedList<Integer>();
+		
+		for(int i=0; i<200; i++)
+			writer.writeWithdrawnRoutes(AddressFamilyKey.IPV4_UNICAST_FORWARDING, prefixes(1));
+		
+		for(ChannelBuffer buffer : writer.getPackets()) {
+			if(chunkSizes.isEmpty() || chunkSizes.get(chunkSizes.size() - 1) != buffer.array().length)
+				chunkSizes.add(buffer.array().length);
+		}
+		
+		Assert.assertEquals(Arrays.asList(512, 1024, 2048), chunkSizes.subList(0, 3));
+		for(int size : chunkSizes.subList(3, chunkSizes.size()))
+			Assert.assertEquals(2048, size);
+	}
+	
+	@Test
+	public void testWriteWithdrawnRoutesNewChunk() throws Exception {
+		UpdatePacketWriter writer = new UpdatePacketWriter(BGPv4Constants.BGP_PACKET_MAX_LENGTH);
+		
+		writer.writeWithdrawnRoutes(AddressFamilyKey.IPV4_UNICAST_FORWARDING, prefixes(1500));
+		
+		Assert.assertEquals(2, writer.getPackets().size());
+		Assert.assertNotSame(writer.getPackets().get(0).array(), writer.getPackets().get(1).array());
+	}
+}
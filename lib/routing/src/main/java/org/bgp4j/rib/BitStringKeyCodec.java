@@ -0,0 +1,126 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.rib.BitStringKeyCodec.java
+ */
+package org.bgp4j.rib;
+
+import org.bgp4j.net.NetworkLayerReachabilityInformation;
+
+/**
+ * Keys the trie nodes by the NLRI prefix octets. Prefixes of any address family and length are accepted.
+ *
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+class BitStringKeyCodec implements PrefixKeyCodec {
+
+	/**
+	 * Trie node keyed by a bit string
+	 *
+	 * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+	 *
+	 */
+	static final class BitStringTrieNode extends PatriciaRoutingTree.TrieNode {
+		private final byte[] bits;
+
+		BitStringTrieNode(byte[] bits, int length, Route route, PatriciaRoutingTree.TrieNode zeroChild, 
+				PatriciaRoutingTree.TrieNode oneChild) {
+			super(length, route, zeroChild, oneChild);
+
+			this.bits = bits;
+		}
+
+		@Override
+		PatriciaRoutingTree.TrieNode copy(int length, Route route, PatriciaRoutingTree.TrieNode zeroChild, 
+				PatriciaRoutingTree.TrieNode oneChild) {
+			return new BitStringTrieNode(bits, length, route, zeroChild, oneChild);
+		}
+
+		/**
+		 * Bit 0 is the most significant bit of the first octet.
+		 */
+		@Override
+		int bitAt(int bit) {
+			return (bits[bit >>> 3] >>> (7 - (bit & 7))) & 1;
+		}
+
+		@Override
+		int commonPrefixLength(PatriciaRoutingTree.TrieNode other) {
+			return BitStringKeyCodec.commonPrefixLength(bits, getLength(), ((BitStringTrieNode)other).bits, other.getLength());
+		}
+
+		/**
+		 * The address octets are compared to the bit string octets, no objects are allocated.
+		 */
+		@Override
+		boolean coversAddress(long high, long low) {
+			int octets = getLength() >>> 3;
+			int trailingBits = getLength() & 7;
+
+			for(int i=0; i<octets; i++) {
+				if(bits[i] != PatriciaRoutingTree.addressOctet(high, low, i))
+					return false;
+			}
+
+			if(trailingBits > 0)
+				return ((bits[octets] ^ PatriciaRoutingTree.addressOctet(high, low, octets)) & (0xff00 >>> trailingBits)) == 0;
+
+			return true;
+		}
+	}
+
+	static final BitStringKeyCodec INSTANCE = new BitStringKeyCodec();
+
+	private static final byte[] EMPTY_KEY = new byte[0];
+
+	private BitStringKeyCodec() {}
+
+	@Override
+	public boolean accepts(NetworkLayerReachabilityInformation nlri) {
+		return true;
+	}
+
+	@Override
+	public PatriciaRoutingTree.TrieNode keyNode(NetworkLayerReachabilityInformation nlri, Route route) {
+		return new BitStringTrieNode((nlri.getPrefixLength() > 0) ? nlri.getPrefix() : EMPTY_KEY, nlri.getPrefixLength(), 
+				route, null, null);
+	}
+
+	@Override
+	public PatriciaRoutingTree.TrieNode emptyRoot() {
+		return new BitStringTrieNode(EMPTY_KEY, 0, null, null, null);
+	}
+
+	/**
+	 * Calculate the number of leading bits two bit strings have in common. The result is capped by the shorter length.
+	 */
+	static int commonPrefixLength(byte[] bits, int length, byte[] otherBits, int otherLength) {
+		int maxLength = Math.min(length, otherLength);
+		int common = 0;
+
+		for(int i=0; common < maxLength; i++) {
+			int diff = (bits[i] ^ otherBits[i]) & 0xff;
+
+			if(diff != 0) {
+				common += Integer.numberOfLeadingZeros(diff) - 24;
+				break;
+			}
+			common += 8;
+		}
+
+		return Math.min(common, maxLength);
+	}
+}
@@ -0,0 +1,101 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.rib.IPv4KeyCodec.java
+ */
+package org.bgp4j.rib;
+
+import org.bgp4j.net.IPv4PrefixKey;
+import org.bgp4j.net.NetworkLayerReachabilityInformation;
+
+/**
+ * Keys the trie nodes by the address bits of the packed IPv4 prefix representation (see {@link IPv4PrefixKey}). The
+ * address is held in a primitive field of the node, the bit operations work on the primitive address bits. Only 
+ * prefixes of up to 32 bits are accepted.
+ *
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+class IPv4KeyCodec implements PrefixKeyCodec {
+
+	/**
+	 * Trie node keyed by the IPv4 address bits
+	 *
+	 * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+	 *
+	 */
+	static final class IPv4TrieNode extends PatriciaRoutingTree.TrieNode {
+		private final int address;
+
+		IPv4TrieNode(int address, int length, Route route, PatriciaRoutingTree.TrieNode zeroChild, 
+				PatriciaRoutingTree.TrieNode oneChild) {
+			super(length, route, zeroChild, oneChild);
+
+			this.address = address;
+		}
+
+		@Override
+		PatriciaRoutingTree.TrieNode copy(int length, Route route, PatriciaRoutingTree.TrieNode zeroChild, 
+				PatriciaRoutingTree.TrieNode oneChild) {
+			return new IPv4TrieNode(address, length, route, zeroChild, oneChild);
+		}
+
+		@Override
+		int bitAt(int bit) {
+			return (address >>> (31 - bit)) & 1;
+		}
+
+		@Override
+		int commonPrefixLength(PatriciaRoutingTree.TrieNode other) {
+			return Math.min(Integer.numberOfLeadingZeros(address ^ ((IPv4TrieNode)other).address), 
+					Math.min(getLength(), other.getLength()));
+		}
+
+		@Override
+		boolean coversAddress(long high, long low) {
+			return ((address ^ (int)(high >>> 32)) & IPv4PrefixKey.mask(getLength())) == 0;
+		}
+	}
+
+	static final IPv4KeyCodec INSTANCE = new IPv4KeyCodec();
+
+	private IPv4KeyCodec() {}
+
+	@Override
+	public boolean accepts(NetworkLayerReachabilityInformation nlri) {
+		return nlri.getPrefixLength() <= IPv4PrefixKey.MAX_PREFIX_LENGTH;
+	}
+
+	@Override
+	public PatriciaRoutingTree.TrieNode keyNode(NetworkLayerReachabilityInformation nlri, Route route) {
+		return keyNode(IPv4PrefixKey.fromNLRI(nlri), route);
+	}
+
+	/**
+	 * Create a node keyed by a packed IPv4 prefix
+	 *
+	 * @param key the packed prefix
+	 * @param route the route carried by the node or <code>null</code>
+	 * @return the node
+	 */
+	PatriciaRoutingTree.TrieNode keyNode(long key, Route route) {
+		return new IPv4TrieNode(IPv4PrefixKey.address(key), IPv4PrefixKey.prefixLength(key), route, null, null);
+	}
+
+	@Override
+	public PatriciaRoutingTree.TrieNode emptyRoot() {
+		return new IPv4TrieNode(0, 0, null, null, null);
+	}
+}
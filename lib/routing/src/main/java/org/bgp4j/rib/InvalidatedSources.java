@@ -0,0 +1,146 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.rib.InvalidatedSources.java 
+ */
+package org.bgp4j.rib;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import org.bgp4j.net.NetworkLayerReachabilityInformation;
+
+/**
+ * Immutable set of the ribIDs whose routes have been invalidated in a routing tree but not yet been removed from it.
+ * Lookups and visits on the routing tree are passed through this set in order to hide the invalidated routes 
+ * until the tree has been reconciled.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+class InvalidatedSources {
+
+	static final InvalidatedSources NONE = new InvalidatedSources(Collections.<UUID>emptySet());
+	
+	private final Set<UUID> ribIDs;
+	
+	private InvalidatedSources(Set<UUID> ribIDs) {
+		this.ribIDs = ribIDs;
+	}
+	
+	/**
+	 * @return a set containing the ribIDs of this set and the given ribID
+	 */
+	InvalidatedSources with(UUID ribID) {
+		Set<UUID> result = new HashSet<UUID>(ribIDs);
+		
+		result.add(ribID);
+		
+		return new InvalidatedSources(Collections.unmodifiableSet(result));
+	}
+	
+	/**
+	 * @return a set containing the ribIDs of this set except the given ribID
+	 */
+	InvalidatedSources without(UUID ribID) {
+		Set<UUID> result = new HashSet<UUID>(ribIDs);
+		
+		result.remove(ribID);
+		
+		return result.isEmpty() ? NONE : new InvalidatedSources(Collections.unmodifiableSet(result));
+	}
+	
+	boolean isEmpty() {
+		return ribIDs.isEmpty();
+	}
+	
+	boolean contains(UUID ribID) {
+		return ribIDs.contains(ribID);
+	}
+	
+	/**
+	 * @return <code>true</code> if the route has been learned from a RIB whose routes have been invalidated
+	 */
+	boolean isInvalidated(Route route) {
+		return route.getRibID() != null && ribIDs.contains(route.getRibID());
+	}
+	
+	/**
+	 * Lookup a route in the routing tree skipping invalidated routes. If the most specific route found is invalidated,
+	 * the lookup continues with the next less specific prefix.
+	 */
+	LookupResult lookupRoute(PrefixTree routingTree, NetworkLayerReachabilityInformation nlri) {
+		LookupResult result = routingTree.lookupRoute(nlri);
+		
+		while(result != null && isInvalidated(result.getRoute())) {
+			NetworkLayerReachabilityInformation match = result.getRoute().getNlri();
+			
+			if(match.getPrefixLength() == 0)
+				return null;
+			
+			result = routingTree.lookupRoute(lessSpecific(match));
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Longest prefix match of a host address skipping invalidated routes. The lookup falls back to the NLRI based lookup
+	 * only if the most specific route found is invalidated.
+	 */
+	Route lookupAddress(PrefixTree routingTree, long high, long low, int addressLength) {
+		Route route = routingTree.lookupAddress(high, low, addressLength);
+		
+		if(route == null || !isInvalidated(route))
+			return route;
+		if(route.getNlri().getPrefixLength() == 0)
+			return null;
+		
+		LookupResult result = lookupRoute(routingTree, lessSpecific(route.getNlri()));
+		
+		return (result != null) ? result.getRoute() : null;
+	}
+	
+	/**
+	 * Visit the routing tree skipping invalidated routes
+	 */
+	void visitTree(PrefixTree routingTree, final RoutingTreeVisitor visitor) {
+		if(isEmpty()) {
+			routingTree.visitTree(visitor);
+		} else {
+			routingTree.visitTree(new RoutingTreeVisitor() {
+				
+				@Override
+				public void visitRouteTreeNode(Route route) {
+					if(!isInvalidated(route))
+						visitor.visitRouteTreeNode(route);
+				}
+			});
+		}
+	}
+	
+	/**
+	 * @return the prefix one bit shorter than the given prefix
+	 */
+	private static NetworkLayerReachabilityInformation lessSpecific(NetworkLayerReachabilityInformation nlri) {
+		int prefixLength = nlri.getPrefixLength() - 1;
+		
+		return new NetworkLayerReachabilityInformation(prefixLength, 
+				Arrays.copyOf(nlri.getPrefix(), NetworkLayerReachabilityInformation.calculateOctetsForPrefixLength(prefixLength)));
+	}
+}
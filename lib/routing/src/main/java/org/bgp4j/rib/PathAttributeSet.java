@@ -0,0 +1,179 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * File: org.bgp4j.rib.PathAttributeSet.java
+ */
+package org.bgp4j.rib;
+
+import java.lang.ref.WeakReference;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+
+import org.bgp4j.net.attributes.PathAttribute;
+
+/**
+ * Immutable, interned set of path attributes. The attributes are held in path attribute order, the set hash code
+ * is calculated once on creation.
+ *
+ * Instances are obtained by {@link #valueOf(Collection)} only. Equal attribute sets yield the same instance as long
+ * as the instance is referenced by any route. Instances which are not referenced any more are evicted from the pool
+ * by the garbage collector. Thus all routes learned from the same UPDATE and all routes with identical attributes
+ * learned from other peers share one attribute set.
+ *
+ * The path attribute objects held in a set must not be modified after the set has been created.
+ *
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public final class PathAttributeSet extends AbstractSet<PathAttribute> {
+
+	private static final Map<PathAttributeSet, WeakReference<PathAttributeSet>> pool = new WeakHashMap<PathAttributeSet, WeakReference<PathAttributeSet>>();
+
+	/** the empty attribute set */
+	public static final PathAttributeSet EMPTY = valueOf(null);
+
+	private final PathAttribute[] attributes;
+	private final int hashCode;
+
+	private PathAttributeSet(PathAttribute[] attributes) {
+		int hash = 0;
+
+		for(PathAttribute attr : attributes)
+			hash += attr.hashCode();
+
+		this.attributes = attributes;
+		this.hashCode = hash;
+	}
+
+	/**
+	 * Obtain the shared attribute set holding the given attributes. Duplicate attributes are dropped.
+	 *
+	 * @param attributes the attributes or <code>null</code> for the empty set
+	 * @return the shared attribute set
+	 */
+	public static PathAttributeSet valueOf(Collection<PathAttribute> attributes) {
+		if(attributes instanceof PathAttributeSet)
+			return (PathAttributeSet)attributes;
+
+		PathAttribute[] sorted;
+
+		if(attributes == null || attributes.isEmpty())
+			sorted = new PathAttribute[0];
+		else
+			sorted = new TreeSet<PathAttribute>(attributes).toArray(new PathAttribute[0]);
+
+		return intern(new PathAttributeSet(sorted));
+	}
+
+	private static PathAttributeSet intern(PathAttributeSet candidate) {
+		synchronized (pool) {
+			WeakReference<PathAttributeSet> ref = pool.get(candidate);
+			PathAttributeSet shared = (ref != null) ? ref.get() : null;
+
+			if(shared == null) {
+				pool.put(candidate, new WeakReference<PathAttributeSet>(candidate));
+				shared = candidate;
+			}
+
+			return shared;
+		}
+	}
+
+	/**
+	 * @return the number of attribute sets currently held in the pool
+	 */
+	static int poolSize() {
+		synchronized (pool) {
+			return pool.size();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractCollection#iterator()
+	 */
+	@Override
+	public Iterator<PathAttribute> iterator() {
+		return new Iterator<PathAttribute>() {
+			private int index = 0;
+
+			@Override
+			public boolean hasNext() {
+				return index < attributes.length;
+			}
+
+			@Override
+			public PathAttribute next() {
+				if(index >= attributes.length)
+					throw new NoSuchElementException();
+
+				return attributes[index++];
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("path attribute set is immutable");
+			}
+		};
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractCollection#size()
+	 */
+	@Override
+	public int size() {
+		return attributes.length;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractCollection#contains(java.lang.Object)
+	 */
+	@Override
+	public boolean contains(Object o) {
+		if(!(o instanceof PathAttribute))
+			return false;
+
+		return Arrays.binarySearch(attributes, (PathAttribute)o) >= 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractSet#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractSet#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if(this == o)
+			return true;
+		if(o instanceof PathAttributeSet) {
+			PathAttributeSet other = (PathAttributeSet)o;
+
+			return hashCode == other.hashCode && Arrays.equals(attributes, other.attributes);
+		}
+
+		return super.equals(o);
+	}
+}
@@ -0,0 +1,556 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * File: org.bgp4j.rib.PatriciaRoutingTree.java
+ */
+package org.bgp4j.rib;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.bgp4j.net.AddressFamily;
+import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.PackedPrefixList;
+
+/**
+ * This class manages the (NLRI, Path attributes) tuples in a path-compressed binary trie (Patricia trie).
+ *
+ * Each node is keyed by a bit string (the NLRI prefix bits up to the node length). A node either carries a route
+ * or is a glue node which joins two sub-tries differing in the bit directly following the glue node prefix.
+ * Insert, withdraw and lookup operations descend at most one node per prefix bit and thus run in O(prefix length)
+ * independent of the number of routes held in the trie.
+ *
+ * The nodes are created by a {@link PrefixKeyCodec} which determines the representation of the node keys. The
+ * {@link BitStringKeyCodec} keys the nodes by the NLRI prefix octets and accepts prefixes of any address family, the
+ * {@link IPv4KeyCodec} keys the nodes by the primitive IPv4 address bits held in an <code>int</code> field. The NLRI
+ * of an operation is converted once into a key node which is compared to the nodes of the trie.
+ *
+ * The trie is persistent: Nodes are never modified once published. A modification copies the nodes on the path
+ * from the root to the modified node and publishes the new root in one volatile write. Modifications are serialized,
+ * lookups and visits work on the root published when the operation starts and never block.
+ *
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+class PatriciaRoutingTree implements PrefixTree {
+
+	/**
+	 * Immutable node of the trie. The node prefix is made up of the first <code>length</code> bits of the
+	 * key, the remaining bits are ignored. The key is held by the subclass supplied by the key codec, all nodes of
+	 * a trie are instances of the same subclass.
+	 *
+	 * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+	 *
+	 */
+	abstract static class TrieNode {
+		private final int length;
+		private final Route route;
+		private final TrieNode zeroChild;
+		private final TrieNode oneChild;
+
+		TrieNode(int length, Route route, TrieNode zeroChild, TrieNode oneChild) {
+			this.length = length;
+			this.route = route;
+			this.zeroChild = zeroChild;
+			this.oneChild = oneChild;
+		}
+
+		/**
+		 * @return a node with the key of this node and the given properties
+		 */
+		abstract TrieNode copy(int length, Route route, TrieNode zeroChild, TrieNode oneChild);
+
+		/**
+		 * Obtain the value of a key bit. Bit 0 is the most significant bit.
+		 */
+		abstract int bitAt(int bit);
+
+		/**
+		 * Calculate the number of leading bits the node prefix has in common with the prefix of another node created
+		 * by the same codec. The result is capped by the shorter length.
+		 */
+		abstract int commonPrefixLength(TrieNode other);
+
+		/**
+		 * check if the node prefix equals the leading bits of a left-aligned address. The most significant bit of the
+		 * address is the most significant bit of <code>high</code>.
+		 */
+		abstract boolean coversAddress(long high, long low);
+
+		TrieNode getChild(int bit) {
+			return (bit == 0) ? zeroChild : oneChild;
+		}
+
+		/**
+		 * @return a copy of this node with the child for the given bit replaced
+		 */
+		TrieNode withChild(int bit, TrieNode child) {
+			return (bit == 0) ? copy(length, route, child, oneChild) : copy(length, route, zeroChild, child);
+		}
+
+		/**
+		 * @return a copy of this node with the route replaced
+		 */
+		TrieNode withRoute(Route route) {
+			return copy(length, route, zeroChild, oneChild);
+		}
+
+		/**
+		 * @return the prefix length
+		 */
+		int getLength() {
+			return length;
+		}
+
+		/**
+		 * @return the route
+		 */
+		Route getRoute() {
+			return route;
+		}
+	}
+
+	/**
+	 * Sort nodes by the NLRI ordering of the attached routes. This yields the same sibling order as the
+	 * hierarchical RoutingTree implementation.
+	 */
+	private static final Comparator<TrieNode> NLRI_ORDER = new Comparator<TrieNode>() {
+
+		@Override
+		public int compare(TrieNode o1, TrieNode o2) {
+			return o1.getRoute().getNlri().compareTo(o2.getRoute().getNlri());
+		}
+	};
+
+	private final PrefixKeyCodec codec;
+	private final TrieNode emptyRoot;
+	// the root of the trie. It is keyed by the zero-length prefix and carries the default route if present
+	private volatile TrieNode rootNode;
+	private final PrefixCounters counters;
+	private final boolean readOnly;
+
+	PatriciaRoutingTree(PrefixKeyCodec codec) {
+		this.codec = codec;
+		this.emptyRoot = codec.emptyRoot();
+		this.rootNode = emptyRoot;
+		this.counters = new PrefixCounters();
+		this.readOnly = false;
+	}
+
+	private PatriciaRoutingTree(PrefixKeyCodec codec, TrieNode rootNode, PrefixCounters counters) {
+		this.codec = codec;
+		this.emptyRoot = codec.emptyRoot();
+		this.rootNode = rootNode;
+		this.counters = counters;
+		this.readOnly = true;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.bgp4j.rib.PrefixTree#destroy()
+	 */
+	@Override
+	public synchronized void destroy() {
+		checkWritable();
+
+		rootNode = emptyRoot;
+		counters.clear();
+	}
+
+	/**
+	 * Add a route to the trie. The rules for this process are as follows:
+	 * <ol>
+	 * <li>If a node with the exact NLRI prefix exists, the route attached to the node is replaced</li>
+	 * <li>If the child node on the path to the NLRI prefix covers the NLRI prefix, descend into the child node</li>
+	 * <li>If the NLRI prefix covers the child node, insert a new node between the parent node and the child node</li>
+	 * <li>Otherwise insert a glue node at the first differing bit with the child node and the new node as children</li>
+	 * </ol>
+	 *
+	 * @throws IllegalArgumentException if the key codec does not accept the route NLRI
+	 */
+	@Override
+	public synchronized boolean addRoute(Route route) {
+		checkWritable();
+
+		TrieNode leaf = codec.keyNode(route.getNlri(), route);
+
+		if(lookupExact(rootNode, leaf) == null)
+			counters.prefixAdded(leaf.length);
+
+		rootNode = insert(rootNode, leaf);
+
+		return true;
+	}
+
+	/**
+	 * insert a leaf node carrying a route below a node covering the route NLRI
+	 *
+	 * @return the copy of the node with the route inserted
+	 */
+	private TrieNode insert(TrieNode node, TrieNode leaf) {
+		if(node.length == leaf.length)
+			return node.withRoute(leaf.route);
+
+		int bit = leaf.bitAt(node.length);
+		TrieNode child = node.getChild(bit);
+
+		if(child == null)
+			return node.withChild(bit, leaf);
+
+		int common = leaf.commonPrefixLength(child);
+
+		if(common == child.length)
+			return node.withChild(bit, insert(child, leaf));
+
+		TrieNode inserted;
+
+		if(common == leaf.length) {
+			// the new node is less specific than the child node
+			inserted = leaf.withChild(child.bitAt(common), child);
+		} else {
+			// the new node and the child node diverge at the first non-common bit
+			inserted = leaf.copy(common, null, null, null)
+				.withChild(leaf.bitAt(common), leaf)
+				.withChild(child.bitAt(common), child);
+		}
+
+		return node.withChild(bit, inserted);
+	}
+
+	/**
+	 * Withdraw a route from the trie. Nodes which do not carry a route any more are removed from the trie unless they
+	 * are needed as glue nodes for two child nodes.
+	 */
+	@Override
+	public synchronized boolean withdrawRoute(Route route) {
+		checkWritable();
+
+		NetworkLayerReachabilityInformation nlri = route.getNlri();
+
+		if(!codec.accepts(nlri))
+			return false;
+
+		TrieNode root = rootNode;
+		TrieNode newRoot = remove(root, codec.keyNode(nlri, null), true);
+
+		if(newRoot == root)
+			return false;
+
+		rootNode = newRoot;
+		counters.prefixRemoved(nlri.getPrefixLength());
+
+		return true;
+	}
+
+	/**
+	 * Apply a batch of withdrawals and additions. The modifications are applied to a private copy of the path to the
+	 * modified nodes, the resulting root is published once after the whole batch has been applied.
+	 *
+	 * @throws IllegalArgumentException if the key codec does not accept the NLRI of an added route. The tree is left
+	 * unchanged in this case.
+	 */
+	@Override
+	public synchronized void updateRoutes(Collection<Route> withdrawals, Collection<Route> additions, Collection<Route> withdrawn, Collection<Route> added) {
+		checkWritable();
+
+		List<TrieNode> leaves = leaves(additions);
+		TrieNode root = rootNode;
+
+		for(Route route : withdrawals) {
+			NetworkLayerReachabilityInformation nlri = route.getNlri();
+
+			if(!codec.accepts(nlri))
+				continue;
+
+			TrieNode newRoot = remove(root, codec.keyNode(nlri, null), true);
+
+			if(newRoot != root) {
+				root = newRoot;
+				counters.prefixRemoved(nlri.getPrefixLength());
+				withdrawn.add(route);
+			}
+		}
+
+		rootNode = insertLeaves(root, additions, leaves, added);
+	}
+
+	/**
+	 * Apply a batch of packed withdrawals and additions. With the {@link IPv4KeyCodec}, the key nodes of the withdrawn 
+	 * prefixes are created from the packed keys directly, without converting the prefixes into NLRI.
+	 *
+	 * @throws IllegalArgumentException if the key codec does not accept the NLRI of an added route. The tree is left
+	 * unchanged in this case.
+	 */
+	@Override
+	public synchronized void updateRoutes(PackedPrefixList withdrawals, Collection<Route> additions, Collection<Route> withdrawn, Collection<Route> added) {
+		checkWritable();
+
+		List<TrieNode> leaves = leaves(additions);
+		TrieNode root = rootNode;
+
+		for(int i=0; i<withdrawals.size(); i++) {
+			TrieNode key = packedKeyNode(withdrawals, i);
+
+			if(key == null)
+				continue;
+
+			Route route = lookupExact(root, key);
+
+			if(route != null) {
+				root = remove(root, key, true);
+				counters.prefixRemoved(key.length);
+				withdrawn.add(route);
+			}
+		}
+
+		rootNode = insertLeaves(root, additions, leaves, added);
+	}
+
+	/**
+	 * convert the added NLRI up front, an invalid NLRI must not leave a partially applied batch behind
+	 */
+	private List<TrieNode> leaves(Collection<Route> additions) {
+		List<TrieNode> leaves = new ArrayList<TrieNode>(additions.size());
+
+		for(Route route : additions)
+			leaves.add(codec.keyNode(route.getNlri(), route));
+
+		return leaves;
+	}
+
+	private TrieNode insertLeaves(TrieNode root, Collection<Route> additions, List<TrieNode> leaves, Collection<Route> added) {
+		Iterator<TrieNode> leafIterator = leaves.iterator();
+
+		for(Route route : additions) {
+			TrieNode leaf = leafIterator.next();
+
+			if(lookupExact(root, leaf) == null)
+				counters.prefixAdded(leaf.length);
+
+			root = insert(root, leaf);
+			added.add(route);
+		}
+
+		return root;
+	}
+
+	/**
+	 * @return the key node of a packed prefix or <code>null</code> if the key codec does not accept the prefix
+	 */
+	private TrieNode packedKeyNode(PackedPrefixList prefixes, int index) {
+		if(codec instanceof IPv4KeyCodec && prefixes.getAddressFamily() == AddressFamily.IPv4)
+			return ((IPv4KeyCodec)codec).keyNode(prefixes.getIPv4Key(index), null);
+
+		NetworkLayerReachabilityInformation nlri = prefixes.toNLRI(index);
+
+		return codec.accepts(nlri) ? codec.keyNode(nlri, null) : null;
+	}
+
+	/**
+	 * remove the route with the given prefix below a node covering the prefix
+	 *
+	 * @return the replacement of the node, which may be <code>null</code>, or the node itself if no route was removed
+	 */
+	private TrieNode remove(TrieNode node, TrieNode key, boolean root) {
+		if(node.length == key.length) {
+			if(node.route == null)
+				return node;
+			if(root || (node.zeroChild != null && node.oneChild != null))
+				return node.withRoute(null);
+
+			return (node.zeroChild != null) ? node.zeroChild : node.oneChild;
+		}
+
+		int bit = key.bitAt(node.length);
+		TrieNode child = node.getChild(bit);
+
+		if(child == null || !covers(child, key))
+			return node;
+
+		TrieNode replacement = remove(child, key, false);
+
+		if(replacement == child)
+			return node;
+
+		// the node may have become a superfluous glue node
+		if(replacement == null && !root && node.route == null)
+			return node.getChild(1 - bit);
+
+		return node.withChild(bit, replacement);
+	}
+
+	/**
+	 * Lookup a route by a NLRI prefix. The trie is descended along the NLRI prefix bits, remembering the most specific
+	 * route seen on the path.
+	 */
+	@Override
+	public LookupResult lookupRoute(NetworkLayerReachabilityInformation nlri) {
+		if(!codec.accepts(nlri))
+			return null;
+
+		TrieNode key = codec.keyNode(nlri, null);
+		Route match = null;
+		TrieNode node = rootNode;
+
+		while(node != null && covers(node, key)) {
+			if(node.route != null)
+				match = node.route;
+			if(node.length == key.length)
+				break;
+
+			node = node.getChild(key.bitAt(node.length));
+		}
+
+		return (match != null) ? new LookupResult(match) : null;
+	}
+
+	/**
+	 * Longest prefix match of a host address. The trie is descended along the address bits, the node keys are
+	 * compared to the primitive address bits. The lookup does not allocate any objects.
+	 */
+	@Override
+	public Route lookupAddress(long high, long low, int addressLength) {
+		Route match = null;
+		TrieNode node = rootNode;
+
+		while(node != null && node.length <= addressLength && node.coversAddress(high, low)) {
+			if(node.route != null)
+				match = node.route;
+			if(node.length == addressLength)
+				break;
+
+			node = node.getChild(addressBitAt(high, low, node.length));
+		}
+
+		return match;
+	}
+
+	private Route lookupExact(TrieNode node, TrieNode key) {
+		while(node != null && covers(node, key)) {
+			if(node.length == key.length)
+				return node.route;
+
+			node = node.getChild(key.bitAt(node.length));
+		}
+
+		return null;
+	}
+
+	/**
+	 * check if the prefix of a node is a prefix of (or equal to) the prefix of the key node
+	 */
+	private boolean covers(TrieNode node, TrieNode key) {
+		return node.length <= key.length && node.commonPrefixLength(key) == node.length;
+	}
+
+	/**
+	 * @return a read-only tree sharing the currently published root. The snapshot is taken under the tree lock to
+	 * capture the counters matching the root.
+	 */
+	@Override
+	public synchronized PrefixTree snapshot() {
+		return new PatriciaRoutingTree(codec, rootNode, counters.copy());
+	}
+
+	/* (non-Javadoc)
+	 * @see org.bgp4j.rib.PrefixTree#getCounters()
+	 */
+	@Override
+	public PrefixCounters getCounters() {
+		return counters;
+	}
+
+	/**
+	 * recursively descend into the trie. Glue nodes are skipped, the routes covered by a route are visited in
+	 * NLRI order.
+	 */
+	@Override
+	public void visitTree(RoutingTreeVisitor visitor) {
+		TrieNode root = rootNode;
+
+		if(root.route != null)
+			visitor.visitRouteTreeNode(root.route);
+
+		visitTree(root, visitor);
+	}
+
+	private void visitTree(TrieNode parent, RoutingTreeVisitor visitor) {
+		List<TrieNode> routeNodes = new ArrayList<TrieNode>();
+
+		collectRouteNodes(parent, routeNodes);
+		Collections.sort(routeNodes, NLRI_ORDER);
+
+		for(TrieNode node : routeNodes) {
+			visitor.visitRouteTreeNode(node.route);
+
+			visitTree(node, visitor);
+		}
+	}
+
+	/**
+	 * collect the nearest nodes carrying a route below the given node
+	 *
+	 * @param parent
+	 * @param routeNodes
+	 */
+	private void collectRouteNodes(TrieNode parent, List<TrieNode> routeNodes) {
+		for(int bit=0; bit<2; bit++) {
+			TrieNode child = parent.getChild(bit);
+
+			if(child != null) {
+				if(child.route != null)
+					routeNodes.add(child);
+				else
+					collectRouteNodes(child, routeNodes);
+			}
+		}
+	}
+
+	private void checkWritable() {
+		if(readOnly)
+			throw new UnsupportedOperationException("routing tree snapshot cannot be modified");
+	}
+
+	/**
+	 * @return the codec converting the NLRI into the node keys
+	 */
+	PrefixKeyCodec getKeyCodec() {
+		return codec;
+	}
+
+	/**
+	 * @return the rootNode
+	 */
+	TrieNode getRootNode() {
+		return rootNode;
+	}
+
+	/**
+	 * Obtain an octet of a left-aligned address. Octet 0 is the most significant octet of <code>high</code>.
+	 */
+	static byte addressOctet(long high, long low, int octet) {
+		return (byte)((octet < 8) ? (high >>> (56 - 8*octet)) : (low >>> (120 - 8*octet)));
+	}
+
+	/**
+	 * Obtain the value of a bit of a left-aligned address. Bit 0 is the most significant bit of <code>high</code>.
+	 */
+	static int addressBitAt(long high, long low, int bit) {
+		return (int)(((bit < 64) ? (high >>> (63 - bit)) : (low >>> (127 - bit))) & 1);
+	}
+}
@@ -17,6 +17,7 @@
  */
 package org.bgp4j.rib;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -108,6 +109,22 @@ public class PeerRoutingInformationBase {
 		return rib;
 	}
 	
+	/**
+	 * Obtain the number of prefixes held in all RIBs of one side of the peer. The number is obtained in O(1) per
+	 * address family.
+	 * 
+	 * @param side the RIB side
+	 * @return the number of prefixes
+	 */
+	public int getNumberOfPrefixes(RIBSide side) {
+		int numberOfPrefixes = 0;
+		
+		for(RoutingInformationBase rib : ((side == RIBSide.Local) ? localRIBs : remoteRIBs).values())
+			numberOfPrefixes += rib.getNumberOfPrefixes();
+		
+		return numberOfPrefixes;
+	}
+	
 	public void visitRoutingBases(RIBSide side, RoutingInformationBaseVisitor visitor, Set<AddressFamilyKey> wanted) {
 		switch(side) {
 		case Local:
@@ -173,13 +190,10 @@ public class PeerRoutingInformationBase {
 	}
 
 	public void destroyAllRoutingInformationBases() {
-		for(Entry<AddressFamilyKey, RoutingInformationBase> entry : localRIBs.entrySet())
-			entry.getValue().destroyRIB();
-		for(Entry<AddressFamilyKey, RoutingInformationBase> entry : remoteRIBs.entrySet())
-			entry.getValue().destroyRIB();
-		
-		localRIBs.clear();
-		remoteRIBs.clear();
+		for(AddressFamilyKey afk : new ArrayList<AddressFamilyKey>(localRIBs.keySet()))
+			destroyRoutingInformationBase(RIBSide.Local, afk);
+		for(AddressFamilyKey afk : new ArrayList<AddressFamilyKey>(remoteRIBs.keySet()))
+			destroyRoutingInformationBase(RIBSide.Remote, afk);
 	}
 	
 	public void addRoutingListener(RoutingEventListener listener) {
@@ -0,0 +1,124 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.rib.PrefixCounters.java 
+ */
+package org.bgp4j.rib;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Counters of the prefixes held in a prefix tree: The total number of prefixes and the number of prefixes per prefix
+ * length. The counters are maintained by the tree as part of each modification, reading them is O(1).
+ *
+ * The counters are modified by the single thread holding the tree lock and may be read by any thread.
+ *
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+class PrefixCounters {
+
+	/**
+	 * the longest prefix length which can be encoded in a NLRI
+	 */
+	static final int MAX_PREFIX_LENGTH = 255;
+
+	private volatile int numberOfPrefixes;
+	private final AtomicIntegerArray histogram = new AtomicIntegerArray(MAX_PREFIX_LENGTH+1);
+
+	PrefixCounters() {}
+
+	/**
+	 * create a copy of the source counters
+	 *
+	 * @param source
+	 */
+	private PrefixCounters(PrefixCounters source) {
+		this.numberOfPrefixes = source.numberOfPrefixes;
+
+		for(int i=0; i<=MAX_PREFIX_LENGTH; i++)
+			this.histogram.lazySet(i, source.histogram.get(i));
+	}
+
+	/**
+	 * count a prefix which was not held in the tree before
+	 */
+	void prefixAdded(int prefixLength) {
+		histogram.lazySet(prefixLength, histogram.get(prefixLength) + 1);
+		numberOfPrefixes++;
+	}
+
+	/**
+	 * count a prefix which was removed from the tree
+	 */
+	void prefixRemoved(int prefixLength) {
+		histogram.lazySet(prefixLength, histogram.get(prefixLength) - 1);
+		numberOfPrefixes--;
+	}
+
+	/**
+	 * reset all counters
+	 */
+	void clear() {
+		for(int i=0; i<=MAX_PREFIX_LENGTH; i++)
+			histogram.lazySet(i, 0);
+
+		numberOfPrefixes = 0;
+	}
+
+	/**
+	 * @return a copy of the counters
+	 */
+	PrefixCounters copy() {
+		return new PrefixCounters(this);
+	}
+
+	/**
+	 * @return the number of prefixes
+	 */
+	int getNumberOfPrefixes() {
+		return numberOfPrefixes;
+	}
+
+	/**
+	 * @return the number of prefixes with the given prefix length
+	 */
+	int getNumberOfPrefixes(int prefixLength) {
+		if(prefixLength < 0 || prefixLength > MAX_PREFIX_LENGTH)
+			return 0;
+
+		return histogram.get(prefixLength);
+	}
+
+	/**
+	 * Obtain the prefix length histogram. The array element at index <i>n</i> holds the number of prefixes with
+	 * prefix length <i>n</i>, the array ends with the longest prefix length counted.
+	 *
+	 * @return the histogram
+	 */
+	int[] getHistogram() {
+		int longest = MAX_PREFIX_LENGTH;
+
+		while(longest >= 0 && histogram.get(longest) == 0)
+			longest--;
+
+		int[] result = new int[longest+1];
+
+		for(int i=0; i<result.length; i++)
+			result[i] = histogram.get(i);
+
+		return result;
+	}
+}
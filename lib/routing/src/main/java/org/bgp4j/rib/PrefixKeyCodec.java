@@ -0,0 +1,55 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.rib.PrefixKeyCodec.java
+ */
+package org.bgp4j.rib;
+
+import org.bgp4j.net.NetworkLayerReachabilityInformation;
+
+/**
+ * Converts NLRI prefixes into the nodes of a {@link PatriciaRoutingTree}. The codec determines the representation of
+ * the node keys, the nodes provide the bit operations the trie needs on that representation. A key holds at least
+ * the first <code>length</code> bits of a prefix, the bits beyond the prefix length are ignored by all operations.
+ *
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+interface PrefixKeyCodec {
+
+	/**
+	 * check if a NLRI can be converted into a key
+	 *
+	 * @param nlri
+	 * @return
+	 */
+	boolean accepts(NetworkLayerReachabilityInformation nlri);
+
+	/**
+	 * Create a node keyed by the prefix of a NLRI without children. The node is inserted into the trie as a leaf or
+	 * used as the key of a lookup or withdrawal.
+	 *
+	 * @param nlri the prefix
+	 * @param route the route carried by the node or <code>null</code>
+	 * @return the node
+	 * @throws IllegalArgumentException if the NLRI cannot be converted into a key
+	 */
+	PatriciaRoutingTree.TrieNode keyNode(NetworkLayerReachabilityInformation nlri, Route route);
+
+	/**
+	 * @return a node keyed by the zero-length prefix without a route and children
+	 */
+	PatriciaRoutingTree.TrieNode emptyRoot();
+}
@@ -0,0 +1,126 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * File: org.bgp4j.rib.PrefixTree.java
+ */
+package org.bgp4j.rib;
+
+import java.util.Collection;
+
+import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.PackedPrefixList;
+
+/**
+ * Storage structure for the (NLRI, Path attributes) tuples held by a RoutingInformationBase instance.
+ *
+ * Implementations must visit the routes top-down, that is a less specific route is always visited before
+ * the more specific routes it covers. Routes covered by the same less specific route are visited in
+ * NLRI order.
+ *
+ * Implementations must be safe for one writing thread and any number of concurrent reading threads. Lookups and
+ * visits must see a consistent state of the tree.
+ *
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+interface PrefixTree {
+
+	/**
+	 * Destroy the tree and delete all information held within.
+	 */
+	void destroy();
+
+	/**
+	 * Add a route to the tree. If a route with the same NLRI is already held in the tree, it is replaced.
+	 *
+	 * @param route the route to be added
+	 * @return <code>true<code> if the route was added, <code>false</code> if the route was not added
+	 */
+	boolean addRoute(Route route);
+
+	/**
+	 * Withdraw the route with the NLRI of the given route from the tree.
+	 *
+	 * @param route the route carrying the NLRI to be withdrawn
+	 * @return <code>true</code> if the route was removed, <code>false</code> otherwise
+	 */
+	boolean withdrawRoute(Route route);
+
+	/**
+	 * Apply a batch of withdrawals and additions to the tree in one operation. The withdrawals are applied before the
+	 * additions. Lookups and visits see either the state before or the state after the whole batch.
+	 *
+	 * @param withdrawals the routes carrying the NLRI to be withdrawn
+	 * @param additions the routes to be added
+	 * @param withdrawn receives the routes which were actually removed from the tree
+	 * @param added receives the routes which were actually added to the tree
+	 */
+	void updateRoutes(Collection<Route> withdrawals, Collection<Route> additions, Collection<Route> withdrawn, Collection<Route> added);
+
+	/**
+	 * Apply a batch of withdrawals given as packed prefixes and additions to the tree in one operation. No routes are
+	 * built for the withdrawn prefixes, the routes removed from the tree are reported instead.
+	 *
+	 * @param withdrawals the prefixes to be withdrawn
+	 * @param additions the routes to be added
+	 * @param withdrawn receives the routes held in the tree for the withdrawn prefixes which were removed
+	 * @param added receives the routes which were actually added to the tree
+	 * @see #updateRoutes(Collection, Collection, Collection, Collection)
+	 */
+	void updateRoutes(PackedPrefixList withdrawals, Collection<Route> additions, Collection<Route> withdrawn, Collection<Route> added);
+
+	/**
+	 * Lookup a route by a NLRI prefix. The lookup yields either the route with the exact NLRI or the most specific
+	 * route covering the NLRI.
+	 *
+	 * @param nlri the NLRI prefix to look up
+	 * @return the result or <code>null</code> if no route covers the NLRI
+	 */
+	LookupResult lookupRoute(NetworkLayerReachabilityInformation nlri);
+
+	/**
+	 * Longest prefix match of a host address. The address bits are passed left-aligned in two longs: The first address
+	 * bit is the most significant bit of <code>high</code>, an IPv4 address occupies the upper 32 bits of <code>high</code>.
+	 *
+	 * @param high the first 64 address bits
+	 * @param low the second 64 address bits
+	 * @param addressLength the number of address bits, 32 for IPv4 and 128 for IPv6 addresses
+	 * @return the most specific route covering the address or <code>null</code> if no route covers the address
+	 */
+	Route lookupAddress(long high, long low, int addressLength);
+
+	/**
+	 * visit all routes held in the tree
+	 *
+	 * @param visitor
+	 */
+	void visitTree(RoutingTreeVisitor visitor);
+
+	/**
+	 * Obtain a read-only point-in-time view of the tree. Modifications made to the tree after the snapshot has been
+	 * taken are not visible in the snapshot. Modifying the snapshot throws an <code>UnsupportedOperationException</code>.
+	 *
+	 * @return the snapshot
+	 */
+	PrefixTree snapshot();
+
+	/**
+	 * Obtain the prefix counters of the tree. The counters are updated as part of each modification. The counters
+	 * of a snapshot reflect the state of the tree when the snapshot was taken.
+	 *
+	 * @return the counters
+	 */
+	PrefixCounters getCounters();
+}
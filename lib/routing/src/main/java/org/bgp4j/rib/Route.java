@@ -20,7 +20,6 @@ package org.bgp4j.rib;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.UUID;
 
 import org.apache.commons.lang3.builder.CompareToBuilder;
@@ -41,7 +40,7 @@ public class Route implements Comparable<Route> {
 	
 	private AddressFamilyKey addressFamilyKey;
 	private NetworkLayerReachabilityInformation nlri;
-	private Set<PathAttribute> pathAttributes = new TreeSet<PathAttribute>();
+	private PathAttributeSet pathAttributes;
 	private NextHop nextHop;
 	private UUID ribID;
 	
@@ -49,8 +48,7 @@ public class Route implements Comparable<Route> {
 			Collection<PathAttribute> pathAttributes, NextHop nextHop) {
 		this.addressFamilyKey = addressFamilyKey;
 		this.nlri = nlri;
-		if(pathAttributes != null)
-			this.pathAttributes = new TreeSet<PathAttribute>(pathAttributes);
+		this.pathAttributes = PathAttributeSet.valueOf(pathAttributes);
 		this.nextHop = nextHop;
 	}
 
@@ -88,7 +86,7 @@ public class Route implements Comparable<Route> {
 	}
 
 	/**
-	 * @return the pathAttributes
+	 * @return the pathAttributes. The returned set is immutable and shared with all other routes carrying the same path attributes
 	 */
 	public Set<PathAttribute> getPathAttributes() {
 		return pathAttributes;
@@ -103,10 +101,8 @@ public class Route implements Comparable<Route> {
 				.append(getAddressFamilyKey())
 				.append(getNlri())
 				.append(getNextHop())
-				.append(getRibID());
-		
-		for(PathAttribute pa : getPathAttributes())
-			builder.append(pa);
+				.append(getRibID())
+				.append(pathAttributes.hashCode());
 		
 		return builder.toHashCode();
 	}
@@ -132,22 +128,13 @@ public class Route implements Comparable<Route> {
 		
 		Route o = (Route) obj;
 		
-		EqualsBuilder builder = (new EqualsBuilder())
+		return (new EqualsBuilder())
 				.append(getAddressFamilyKey(), o.getAddressFamilyKey())
 				.append(getNlri(), o.getNlri())
-				.append(getPathAttributes().size(), o.getPathAttributes().size())
 				.append(getNextHop(), o.getNextHop())
-				.append(getRibID(), o.getRibID());
-		
-		if(builder.isEquals()) {
-			Iterator<PathAttribute> lit = getPathAttributes().iterator();
-			Iterator<PathAttribute> rit = o.getPathAttributes().iterator();
-			
-			while(lit.hasNext())
-				builder.append(lit.next(), rit.next());
-		}
-		
-		return builder.isEquals();
+				.append(getRibID(), o.getRibID())
+				.append(pathAttributes, o.pathAttributes)
+				.isEquals();
 	}
 
 	@Override
@@ -197,21 +184,12 @@ public class Route implements Comparable<Route> {
 	 * @see java.lang.Object#equals(java.lang.Object)
 	 */
 	public boolean networkEquals(Route o) {
-		EqualsBuilder builder = (new EqualsBuilder())
+		return (new EqualsBuilder())
 				.append(getAddressFamilyKey(), o.getAddressFamilyKey())
 				.append(getNlri(), o.getNlri())
-				.append(getPathAttributes().size(), o.getPathAttributes().size())
-				.append(getNextHop(), o.getNextHop());
-		
-		if(builder.isEquals()) {
-			Iterator<PathAttribute> lit = getPathAttributes().iterator();
-			Iterator<PathAttribute> rit = o.getPathAttributes().iterator();
-			
-			while(lit.hasNext())
-				builder.append(lit.next(), rit.next());
-		}
-		
-		return builder.isEquals();
+				.append(getNextHop(), o.getNextHop())
+				.append(pathAttributes, o.pathAttributes)
+				.isEquals();
 	}
 	/**
 	 * @return the ribID
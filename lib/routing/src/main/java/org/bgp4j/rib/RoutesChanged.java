@@ -0,0 +1,113 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.rib.RoutesChanged.java 
+ */
+package org.bgp4j.rib;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.bgp4j.net.RIBSide;
+
+/**
+ * Event fired by a RoutingInformationBase instance when a batch of routes has been applied to the RIB in one 
+ * operation, for example all routes carried by one UPDATE message.
+ * 
+ * The withdrawals of the batch have been applied before the additions. A receiver must process the withdrawn routes
+ * before the added routes in order to reach the same state as the RIB.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class RoutesChanged {
+
+	private String peerName;
+	private RIBSide side;
+	private List<Route> addedRoutes;
+	private List<Route> withdrawnRoutes;
+	
+	RoutesChanged(String peerName, RIBSide side, List<Route> addedRoutes, List<Route> withdrawnRoutes) {
+		this.peerName = peerName;
+		this.side = side;
+		this.addedRoutes = Collections.unmodifiableList(addedRoutes);
+		this.withdrawnRoutes = Collections.unmodifiableList(withdrawnRoutes);
+	}
+
+	/**
+	 * @return the peerName
+	 */
+	public String getPeerName() {
+		return peerName;
+	}
+
+	/**
+	 * @return the side
+	 */
+	public RIBSide getSide() {
+		return side;
+	}
+
+	/**
+	 * @return the routes added to the RIB
+	 */
+	public List<Route> getAddedRoutes() {
+		return addedRoutes;
+	}
+
+	/**
+	 * @return the routes withdrawn from the RIB
+	 */
+	public List<Route> getWithdrawnRoutes() {
+		return withdrawnRoutes;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return (new HashCodeBuilder())
+				.append(getPeerName())
+				.append(getSide())
+				.append(getAddedRoutes())
+				.append(getWithdrawnRoutes())
+				.toHashCode();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		
+		RoutesChanged other = (RoutesChanged) obj;
+		
+		return (new EqualsBuilder())
+				.append(getPeerName(), other.getPeerName())
+				.append(getSide(), other.getSide())
+				.append(getAddedRoutes(), other.getAddedRoutes())
+				.append(getWithdrawnRoutes(), other.getWithdrawnRoutes())
+				.isEquals();
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.rib.RoutesInvalidated.java 
+ */
+package org.bgp4j.rib;
+
+import java.util.UUID;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.net.RIBSide;
+
+/**
+ * Event fired by a RoutingInformationBase instance when all routes held in the RIB have become invalid at once, for
+ * example because the RIB is destroyed after the BGP session of the peer has been lost.
+ * 
+ * The routes are identified by the ribID of the RIB. A RIB allocated for a new session gets a new ribID, thus routes
+ * learned in a later session are not affected by the invalidation. A receiver holding routes of the invalidated RIB
+ * should not process the routes one by one but hand the ribID to {@link RoutingInformationBase#invalidateRoutes(UUID)}
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class RoutesInvalidated {
+
+	private String peerName;
+	private RIBSide side;
+	private AddressFamilyKey addressFamilyKey;
+	private UUID ribID;
+	
+	RoutesInvalidated(String peerName, RIBSide side, AddressFamilyKey addressFamilyKey, UUID ribID) {
+		this.peerName = peerName;
+		this.side = side;
+		this.addressFamilyKey = addressFamilyKey;
+		this.ribID = ribID;
+	}
+
+	/**
+	 * @return the peerName
+	 */
+	public String getPeerName() {
+		return peerName;
+	}
+
+	/**
+	 * @return the side
+	 */
+	public RIBSide getSide() {
+		return side;
+	}
+
+	/**
+	 * @return the addressFamilyKey
+	 */
+	public AddressFamilyKey getAddressFamilyKey() {
+		return addressFamilyKey;
+	}
+
+	/**
+	 * @return the ribID of the RIB whose routes have been invalidated
+	 */
+	public UUID getRibID() {
+		return ribID;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return (new HashCodeBuilder())
+				.append(getPeerName())
+				.append(getSide())
+				.append(getAddressFamilyKey())
+				.append(getRibID())
+				.toHashCode();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		
+		RoutesInvalidated other = (RoutesInvalidated) obj;
+		
+		return (new EqualsBuilder())
+				.append(getPeerName(), other.getPeerName())
+				.append(getSide(), other.getSide())
+				.append(getAddressFamilyKey(), other.getAddressFamilyKey())
+				.append(getRibID(), other.getRibID())
+				.isEquals();
+	}
+}
@@ -36,4 +36,18 @@ public interface RoutingEventListener {
 	 * @param event
 	 */
 	public void routeWithdrawn(RouteWithdrawn event);
+	
+	/**
+	 * a batch of routes was withdrawn and added
+	 * 
+	 * @param event
+	 */
+	public void routesChanged(RoutesChanged event);
+	
+	/**
+	 * all routes of a RIB have become invalid at once
+	 * 
+	 * @param event
+	 */
+	public void routesInvalidated(RoutesInvalidated event);
 }
@@ -17,6 +17,8 @@
  */
 package org.bgp4j.rib;
 
+import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
@@ -29,6 +31,7 @@ import javax.inject.Inject;
 import org.bgp4j.net.AddressFamilyKey;
 import org.bgp4j.net.NetworkLayerReachabilityInformation;
 import org.bgp4j.net.NextHop;
+import org.bgp4j.net.PackedPrefixList;
 import org.bgp4j.net.RIBSide;
 import org.bgp4j.net.attributes.PathAttribute;
 
@@ -38,15 +41,26 @@ import org.bgp4j.net.attributes.PathAttribute;
  */
 public class RoutingInformationBase {
 
+	/**
+	 * maximum number of invalidated routes removed from the routing tree and signalled in one RoutesChanged event
+	 */
+	static final int RECONCILIATION_BATCH_SIZE = 1024;
+
 	private String peerName;
 	private RIBSide side;
 	private AddressFamilyKey addressFamilyKey;
-	private RoutingTree routingTree = new RoutingTree();
+	private volatile PrefixTree routingTree;
+	private @Inject RoutingTreeFactory routingTreeFactory;
 	private @Inject Event<RouteAdded> routeAddedEvent;
 	private @Inject Event<RouteWithdrawn> routeWithdrawnEvent;
+	private @Inject Event<RoutesChanged> routesChangedEvent;
+	private @Inject Event<RoutesInvalidated> routesInvalidatedEvent;
+	private @Inject RoutingInformationBaseReconciler reconciler;
 	private Collection<RoutingEventListener> listeners;
 	private List<RoutingEventListener> perRibListeners = Collections.synchronizedList(new LinkedList<RoutingEventListener>());
 	private UUID ribID = UUID.randomUUID();
+	private volatile InvalidatedSources invalidatedSources = InvalidatedSources.NONE;
+	private final Object writeLock = new Object();
 	
 	RoutingInformationBase() {
 	}
@@ -93,79 +107,383 @@ public class RoutingInformationBase {
 		this.addressFamilyKey = addressFamilyKey;
 	}
 
+	/**
+	 * obtain the routing tree. The tree is created on first use with the tree type selected for the address family
+	 * 
+	 * @return the routing tree
+	 */
+	private PrefixTree routingTree() {
+		PrefixTree tree = routingTree;
+		
+		if(tree == null) {
+			synchronized (this) {
+				if(routingTree == null)
+					routingTree = routingTreeFactory.createRoutingTree(getAddressFamilyKey());
+				
+				tree = routingTree;
+			}
+		}
+		
+		return tree;
+	}
+
+	/**
+	 * Destroy the RIB. The listeners are notified that all routes learned from this RIB have become invalid, they are
+	 * not notified about each route.
+	 */
 	void destroyRIB() {
-		routingTree.destroy();
+		RoutesInvalidated event = new RoutesInvalidated(getPeerName(), getSide(), getAddressFamilyKey(), getRibID());
+		
+		routesInvalidatedEvent.fire(event);
+		
+		if(listeners != null) {
+			for(RoutingEventListener listener : listeners)
+				listener.routesInvalidated(event);
+		}
+		for(RoutingEventListener listener : perRibListeners)
+			listener.routesInvalidated(event);
+		
+		synchronized (writeLock) {
+			routingTree().destroy();
+			invalidatedSources = InvalidatedSources.NONE;
+		}
 	}
 	
 	/**
-	 * Add a NLRI collection sharing a common collection of path attributes to the routing tree 
+	 * Invalidate all routes learned from a source RIB in one step. The invalidated routes are hidden from lookups, visits 
+	 * and snapshots at once. They are removed from the routing tree in the background, the removal is signalled in 
+	 * RoutesChanged events carrying at most {@link #RECONCILIATION_BATCH_SIZE} withdrawn routes each. 
 	 * 
-	 * @param nlris
-	 * @param pathAttributes
+	 * A route with the NLRI of an invalidated route added before the background removal reaches the NLRI replaces the
+	 * invalidated route and is not removed.
+	 * 
+	 * @param sourceRibID the ribID of the RIB the invalidated routes have been learned from
 	 */
-	public void addRoutes(Collection<NetworkLayerReachabilityInformation> nlris, Collection<PathAttribute> pathAttributes, NextHop nextHop) {
-		for(NetworkLayerReachabilityInformation nlri : nlris) {
-			Route route = new Route(getRibID(), getAddressFamilyKey(), nlri, pathAttributes, nextHop);
-
-			if(routingTree.addRoute(route)) {
-				RouteAdded event = new RouteAdded(getPeerName(), 
-						getSide(), 
-						route);
-				
-				routeAddedEvent.fire(event);
-				
-				if(listeners != null) {
-					for(RoutingEventListener listener : listeners)
-						listener.routeAdded(event);
+	public void invalidateRoutes(UUID sourceRibID) {
+		synchronized (writeLock) {
+			if(invalidatedSources.contains(sourceRibID))
+				return;
+			
+			invalidatedSources = invalidatedSources.with(sourceRibID);
+		}
+		
+		reconciler.reconcile(this, sourceRibID);
+	}
+	
+	/**
+	 * @return <code>true</code> if invalidated routes are still waiting for their removal from the RIB
+	 */
+	public boolean hasInvalidatedRoutes() {
+		return !invalidatedSources.isEmpty();
+	}
+	
+	/**
+	 * Remove the routes learned from an invalidated source RIB from the routing tree. The routes are collected from a 
+	 * snapshot of the routing tree and removed in batches, the write lock is released between two batches.
+	 * 
+	 * @param sourceRibID the ribID of the invalidated source RIB
+	 */
+	void reconcileInvalidatedRoutes(final UUID sourceRibID) {
+		final List<Route> batch = new ArrayList<Route>(RECONCILIATION_BATCH_SIZE);
+		
+		routingTree().snapshot().visitTree(new RoutingTreeVisitor() {
+			
+			@Override
+			public void visitRouteTreeNode(Route route) {
+				if(sourceRibID.equals(route.getRibID())) {
+					batch.add(route);
+					
+					if(batch.size() == RECONCILIATION_BATCH_SIZE) {
+						withdrawInvalidatedRoutes(sourceRibID, batch);
+						batch.clear();
+					}
 				}
-				for(RoutingEventListener listener : perRibListeners)
-					listener.routeAdded(event);
 			}
+		});
+		
+		if(!batch.isEmpty())
+			withdrawInvalidatedRoutes(sourceRibID, batch);
+		
+		synchronized (writeLock) {
+			invalidatedSources = invalidatedSources.without(sourceRibID);
 		}
 	}
-
+	
+	/**
+	 * withdraw a batch of invalidated routes unless the route has been replaced in the meantime 
+	 */
+	private void withdrawInvalidatedRoutes(UUID sourceRibID, List<Route> candidates) {
+		List<Route> withdrawals = new ArrayList<Route>(candidates.size());
+		List<Route> withdrawn = new ArrayList<Route>(candidates.size());
+		PrefixTree tree = routingTree();
+		
+		synchronized (writeLock) {
+			for(Route route : candidates) {
+				LookupResult current = tree.lookupRoute(route.getNlri());
+				
+				if(current != null 
+						&& current.getRoute().getNlri().equals(route.getNlri()) 
+						&& sourceRibID.equals(current.getRoute().getRibID()))
+					withdrawals.add(route);
+			}
+			
+			tree.updateRoutes(withdrawals, Collections.<Route>emptyList(), withdrawn, new ArrayList<Route>(0));
+		}
+		
+		fireRoutesChanged(Collections.<Route>emptyList(), withdrawn);
+	}
+	
 	/**
-	 * Withdraw a NLRI collection from the routing tree 
+	 * Add a NLRI collection sharing a common collection of path attributes to the routing tree. All routes added 
+	 * share one path attribute set instance. The additions are signalled in one RoutesChanged event.
 	 * 
 	 * @param nlris
 	 * @param pathAttributes
 	 */
+	public void addRoutes(Collection<NetworkLayerReachabilityInformation> nlris, Collection<PathAttribute> pathAttributes, NextHop nextHop) {
+		updateRoutes(Collections.<NetworkLayerReachabilityInformation>emptyList(), nlris, pathAttributes, nextHop);
+	}
+
+	/**
+	 * Withdraw a NLRI collection from the routing tree. The withdrawals are signalled in one RoutesChanged event.
+	 * 
+	 * @param nlris
+	 */
 	public void withdrawRoutes(Collection<NetworkLayerReachabilityInformation> nlris) {
-		for(NetworkLayerReachabilityInformation nlri : nlris) {
-			Route route = new Route(getRibID(), getAddressFamilyKey(), nlri, null, null);
+		updateRoutes(nlris, Collections.<NetworkLayerReachabilityInformation>emptyList(), null, null);
+	}
+	
+	/**
+	 * Apply the content of an UPDATE message to the routing tree: Withdraw a NLRI collection and add a NLRI collection 
+	 * sharing a common collection of path attributes. All routes added share one path attribute set instance.
+	 * 
+	 * @param withdrawnNlris the NLRI to be withdrawn
+	 * @param nlris the NLRI to be added
+	 * @param pathAttributes the path attributes of the added NLRI
+	 * @param nextHop the next hop of the added NLRI
+	 */
+	public void updateRoutes(Collection<NetworkLayerReachabilityInformation> withdrawnNlris, 
+			Collection<NetworkLayerReachabilityInformation> nlris, 
+			Collection<PathAttribute> pathAttributes, 
+			NextHop nextHop) {
+		List<Route> withdrawals = new ArrayList<Route>(withdrawnNlris.size());
+		List<Route> additions = new ArrayList<Route>(nlris.size());
+		
+		for(NetworkLayerReachabilityInformation nlri : withdrawnNlris)
+			withdrawals.add(new Route(getRibID(), getAddressFamilyKey(), nlri, null, null));
+
+		if(!nlris.isEmpty()) {
+			PathAttributeSet sharedAttributes = PathAttributeSet.valueOf(pathAttributes);
 			
-			if(routingTree.withdrawRoute(route)) {
-				RouteWithdrawn event = new RouteWithdrawn(getPeerName(), getSide(), route);
-				
-				routeWithdrawnEvent.fire(event);
-				
-				if(listeners != null) {
-					for(RoutingEventListener listener : listeners)
-						listener.routeWithdrawn(event);
-				}
-				for(RoutingEventListener listener : perRibListeners)
-					listener.routeWithdrawn(event);
-			}
+			for(NetworkLayerReachabilityInformation nlri : nlris)
+				additions.add(new Route(getRibID(), getAddressFamilyKey(), nlri, sharedAttributes, nextHop));
 		}
+		
+		applyRoutes(withdrawals, additions);
+	}
+
+	/**
+	 * Apply the content of an UPDATE message decoded into packed prefix lists to the routing tree. The prefixes are 
+	 * converted into NLRI only while building the routes of the added prefixes, the withdrawn prefixes are removed
+	 * from the routing tree by their packed keys. The routes removed from the tree are signalled as withdrawn. All 
+	 * routes added share one path attribute set instance.
+	 * 
+	 * @param withdrawnPrefixes the prefixes to be withdrawn
+	 * @param prefixes the prefixes to be added
+	 * @param pathAttributes the path attributes of the added prefixes
+	 * @param nextHop the next hop of the added prefixes
+	 */
+	public void updateRoutes(PackedPrefixList withdrawnPrefixes, 
+			PackedPrefixList prefixes, 
+			Collection<PathAttribute> pathAttributes, 
+			NextHop nextHop) {
+		List<Route> additions = new ArrayList<Route>(prefixes.size());
+		
+		if(!prefixes.isEmpty()) {
+			PathAttributeSet sharedAttributes = PathAttributeSet.valueOf(pathAttributes);
+			
+			for(int i=0; i<prefixes.size(); i++)
+				additions.add(new Route(getRibID(), getAddressFamilyKey(), prefixes.toNLRI(i), sharedAttributes, nextHop));
+		}
+		
+		List<Route> withdrawn = new ArrayList<Route>(withdrawnPrefixes.size());
+		List<Route> added = new ArrayList<Route>(additions.size());
+
+		synchronized (writeLock) {
+			routingTree().updateRoutes(withdrawnPrefixes, additions, withdrawn, added);
+		}
+		
+		fireRoutesChanged(added, withdrawn);
+	}
+
+	/**
+	 * Apply a batch of route withdrawals and additions to the routing tree in one pass. The withdrawals are applied 
+	 * before the additions. Readers of the RIB see either the state before or after the whole batch. The changes are 
+	 * signalled in one RoutesChanged event. No event is fired if the batch did not change the RIB.
+	 * 
+	 * @param withdrawals the routes carrying the NLRI to be withdrawn
+	 * @param additions the routes to be added
+	 */
+	public void updateRoutes(Collection<Route> withdrawals, Collection<Route> additions) {
+		List<Route> ownWithdrawals = new ArrayList<Route>(withdrawals.size());
+		List<Route> ownAdditions = new ArrayList<Route>(additions.size());
+		
+		for(Route route : withdrawals)
+			ownWithdrawals.add(ownRoute(route));
+		for(Route route : additions)
+			ownAdditions.add(ownRoute(route));
+		
+		applyRoutes(ownWithdrawals, ownAdditions);
 	}
 	
 	/**
-	 * Lookup a route by a NLRI prefix. The lookup process may result in a specific, less specific route or no route at all
+	 * Bulk load routes into the routing tree, for example when restoring the RIB from a dump file. The routes are 
+	 * attributed to this RIB and applied in one batch. No events are fired: The RIB is expected to be loaded before 
+	 * listeners are attached, listeners attached later pick up the loaded routes by visiting the RIB.
+	 * 
+	 * @param routes the routes to be loaded
+	 */
+	public void loadRoutes(Collection<Route> routes) {
+		List<Route> additions = new ArrayList<Route>(routes.size());
+		
+		for(Route route : routes)
+			additions.add(ownRoute(route));
+		
+		synchronized (writeLock) {
+			routingTree().updateRoutes(Collections.<Route>emptyList(), additions, new ArrayList<Route>(0), new ArrayList<Route>(additions.size()));
+		}
+	}
+	
+	private void applyRoutes(List<Route> withdrawals, List<Route> additions) {
+		List<Route> withdrawn = new ArrayList<Route>(withdrawals.size());
+		List<Route> added = new ArrayList<Route>(additions.size());
+
+		synchronized (writeLock) {
+			routingTree().updateRoutes(withdrawals, additions, withdrawn, added);
+		}
+		
+		fireRoutesChanged(added, withdrawn);
+	}
+	
+	private void fireRoutesChanged(List<Route> added, List<Route> withdrawn) {
+		if(withdrawn.isEmpty() && added.isEmpty())
+			return;
+		
+		RoutesChanged event = new RoutesChanged(getPeerName(), getSide(), added, withdrawn);
+		
+		routesChangedEvent.fire(event);
+		
+		if(listeners != null) {
+			for(RoutingEventListener listener : listeners)
+				listener.routesChanged(event);
+		}
+		for(RoutingEventListener listener : perRibListeners)
+			listener.routesChanged(event);
+	}
+	
+	/**
+	 * @return the route attributed to this RIB
+	 */
+	private Route ownRoute(Route route) {
+		if(route.getRibID() == null)
+			route = new Route(getRibID(), route.getAddressFamilyKey(), route.getNlri(), route.getPathAttributes(), route.getNextHop());
+		
+		return route;
+	}
+	
+	/**
+	 * Lookup a route by a NLRI prefix. The lookup process may result in a specific, less specific route or no route at all.
+	 * Invalidated routes are not found.
 	 * 
 	 * @param nlri prefix to look up
 	 * @return the result or <code>null</code> if no result can be found.
 	 */
 	public LookupResult lookupRoute(NetworkLayerReachabilityInformation nlri) {
-		return routingTree.lookupRoute(nlri);
+		return invalidatedSources.lookupRoute(routingTree(), nlri);
+	}
+	
+	/**
+	 * Longest prefix match of an IPv4 host address. The lookup does not allocate any objects unless invalidated routes
+	 * are waiting for their removal from the RIB. The RIB must hold IPv4 routes.
+	 * 
+	 * @param address the IPv4 address, the first address bit is the most significant bit
+	 * @return the most specific route covering the address or <code>null</code> if no route covers the address
+	 */
+	public Route lookupAddress(int address) {
+		return invalidatedSources.lookupAddress(routingTree(), ((long)address) << 32, 0L, 32);
+	}
+	
+	/**
+	 * Longest prefix match of an IPv6 host address. The lookup does not allocate any objects unless invalidated routes
+	 * are waiting for their removal from the RIB. The RIB must hold IPv6 routes.
+	 * 
+	 * @param high the first 64 address bits, the first address bit is the most significant bit
+	 * @param low the second 64 address bits
+	 * @return the most specific route covering the address or <code>null</code> if no route covers the address
+	 */
+	public Route lookupAddress(long high, long low) {
+		return invalidatedSources.lookupAddress(routingTree(), high, low, 128);
+	}
+	
+	/**
+	 * Longest prefix match of an IPv4 or IPv6 host address. 
+	 * 
+	 * @param address the host address
+	 * @return the most specific route covering the address or <code>null</code> if no route covers the address
+	 */
+	public Route lookupAddress(InetAddress address) {
+		byte[] octets = address.getAddress();
+		long high = 0;
+		long low = 0;
+		
+		for(int i=0; i<octets.length; i++) {
+			if(i < 8)
+				high |= (octets[i] & 0xffL) << (56 - 8*i);
+			else
+				low |= (octets[i] & 0xffL) << (120 - 8*i);
+		}
+		
+		return invalidatedSources.lookupAddress(routingTree(), high, low, 8*octets.length);
+	}
+	
+	/**
+	 * Obtain the number of prefixes held in the RIB in O(1). The number is maintained as part of each modification of the
+	 * RIB. Routes of invalidated sources are counted until they have been removed from the RIB.
+	 * 
+	 * @return the number of prefixes
+	 */
+	public int getNumberOfPrefixes() {
+		return routingTree().getCounters().getNumberOfPrefixes();
+	}
+	
+	/**
+	 * Obtain the number of prefixes of a prefix length held in the RIB in O(1).
+	 * 
+	 * @param prefixLength the prefix length
+	 * @return the number of prefixes
+	 */
+	public int getNumberOfPrefixes(int prefixLength) {
+		return routingTree().getCounters().getNumberOfPrefixes(prefixLength);
 	}
 	
 	/**
-	 * Visit all nodes in the routing tree
+	 * Obtain the prefix length histogram of the RIB. The array element at index <i>n</i> holds the number of prefixes
+	 * with prefix length <i>n</i>, the array ends with the longest prefix length held in the RIB.
+	 * 
+	 * @return the histogram
+	 */
+	public int[] getPrefixLengthHistogram() {
+		return routingTree().getCounters().getHistogram();
+	}
+	
+	/**
+	 * Visit all nodes in the routing tree. The visit works on the state of the routing tree at the time the visit starts,
+	 * modifications made during the visit are not visible to the visitor. Invalidated routes are not visited.
 	 * 
 	 * @param visitor
 	 */
 	public void visitRoutingNodes(final RoutingInformationBaseVisitor visitor) {
-		this.routingTree.visitTree(new RoutingTreeVisitor() {
+		invalidatedSources.visitTree(routingTree(), new RoutingTreeVisitor() {
 			
 			@Override
 			public void visitRouteTreeNode(Route route) {
@@ -173,6 +491,19 @@ public class RoutingInformationBase {
 			}
 		});
 	}
+	
+	/**
+	 * Obtain a point-in-time snapshot of the routing information base. Taking the snapshot waits for a modification
+	 * in progress at most, reading from it does not block modifications of the routing information base.
+	 * 
+	 * @return the snapshot
+	 */
+	public RoutingInformationBaseSnapshot snapshot() {
+		// read the invalidated sources before the tree: A source reconciled in the meantime is not visible in the tree
+		InvalidatedSources sources = invalidatedSources;
+		
+		return new RoutingInformationBaseSnapshot(getPeerName(), getSide(), getAddressFamilyKey(), getRibID(), routingTree().snapshot(), sources);
+	}
 
 	public void addPerRibListener(RoutingEventListener listener) {
 		this.perRibListeners.add(listener);
@@ -197,10 +528,15 @@ public class RoutingInformationBase {
 	}
 
 	public void withdrawRoute(Route route) {
-		if(route.getRibID() == null)
-			route = new Route(getRibID(), route.getAddressFamilyKey(), route.getNlri(), route.getPathAttributes(), route.getNextHop());
+		boolean withdrawn;
+		
+		route = ownRoute(route);
+		
+		synchronized (writeLock) {
+			withdrawn = routingTree().withdrawRoute(route);
+		}
 		
-		if(routingTree.withdrawRoute(route)) {
+		if(withdrawn) {
 			RouteWithdrawn event = new RouteWithdrawn(getPeerName(), getSide(), route);
 			
 			routeWithdrawnEvent.fire(event);
@@ -215,10 +551,15 @@ public class RoutingInformationBase {
 	}
 
 	public void addRoute(Route route) {
-		if(route.getRibID() == null)
-			route = new Route(getRibID(), route.getAddressFamilyKey(), route.getNlri(), route.getPathAttributes(), route.getNextHop());
+		boolean added;
+		
+		route = ownRoute(route);
+		
+		synchronized (writeLock) {
+			added = routingTree().addRoute(route);
+		}
 		
-		if(routingTree.addRoute(route)) {
+		if(added) {
 			RouteAdded event = new RouteAdded(getPeerName(), 
 					getSide(), 
 					route);
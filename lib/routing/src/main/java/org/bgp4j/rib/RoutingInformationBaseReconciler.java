@@ -0,0 +1,73 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.rib.RoutingInformationBaseReconciler.java 
+ */
+package org.bgp4j.rib;
+
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+
+/**
+ * Removes invalidated routes from routing information bases in the background. The reconciliation of all RIBs is 
+ * done by one thread, thus invalidating the routes of a RIB never blocks the thread invalidating the routes.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+@Singleton
+public class RoutingInformationBaseReconciler {
+
+	private @Inject Logger log;
+	
+	private ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "RIB reconciler");
+			
+			thread.setDaemon(true);
+			
+			return thread;
+		}
+	});
+	
+	/**
+	 * Schedule the removal of the routes learned from a RIB source.
+	 * 
+	 * @param rib the RIB to reconcile
+	 * @param sourceRibID the ribID of the invalidated routes
+	 */
+	void reconcile(final RoutingInformationBase rib, final UUID sourceRibID) {
+		executor.execute(new Runnable() {
+			
+			@Override
+			public void run() {
+				try {
+					rib.reconcileInvalidatedRoutes(sourceRibID);
+				} catch(Exception e) {
+					log.error("failed to remove invalidated routes of source " + sourceRibID + " from RIB " + rib.getRibID(), e);
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,105 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * File: org.bgp4j.rib.RoutingInformationBaseSnapshot.java
+ */
+package org.bgp4j.rib;
+
+import java.util.UUID;
+
+import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.RIBSide;
+
+/**
+ * Read-only point-in-time view of a RoutingInformationBase instance. All lookups and visits on a snapshot see the 
+ * routes held in the routing information base at the time the snapshot was taken. Routes invalidated at the time the
+ * snapshot was taken are hidden from the snapshot.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class RoutingInformationBaseSnapshot {
+
+	private String peerName;
+	private RIBSide side;
+	private AddressFamilyKey addressFamilyKey;
+	private UUID ribID;
+	private PrefixTree routingTree;
+	private InvalidatedSources invalidatedSources;
+	
+	RoutingInformationBaseSnapshot(String peerName, RIBSide side, AddressFamilyKey addressFamilyKey, UUID ribID, PrefixTree routingTree, 
+			InvalidatedSources invalidatedSources) {
+		this.peerName = peerName;
+		this.side = side;
+		this.addressFamilyKey = addressFamilyKey;
+		this.ribID = ribID;
+		this.routingTree = routingTree;
+		this.invalidatedSources = invalidatedSources;
+	}
+
+	/**
+	 * @return the peerName
+	 */
+	public String getPeerName() {
+		return peerName;
+	}
+
+	/**
+	 * @return the side
+	 */
+	public RIBSide getSide() {
+		return side;
+	}
+
+	/**
+	 * @return the addressFamilyKey
+	 */
+	public AddressFamilyKey getAddressFamilyKey() {
+		return addressFamilyKey;
+	}
+
+	/**
+	 * @return the ribID
+	 */
+	public UUID getRibID() {
+		return ribID;
+	}
+
+	/**
+	 * Lookup a route by a NLRI prefix. The lookup process may result in a specific, less specific route or no route at all
+	 * 
+	 * @param nlri prefix to look up
+	 * @return the result or <code>null</code> if no result can be found.
+	 */
+	public LookupResult lookupRoute(NetworkLayerReachabilityInformation nlri) {
+		return invalidatedSources.lookupRoute(routingTree, nlri);
+	}
+	
+	/**
+	 * Visit all nodes in the snapshot
+	 * 
+	 * @param visitor
+	 */
+	public void visitRoutingNodes(final RoutingInformationBaseVisitor visitor) {
+		invalidatedSources.visitTree(routingTree, new RoutingTreeVisitor() {
+			
+			@Override
+			public void visitRouteTreeNode(Route route) {
+				visitor.visitRouteNode(getPeerName(), getSide(), route);
+			}
+		});
+	}
+}
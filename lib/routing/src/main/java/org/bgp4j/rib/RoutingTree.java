@@ -17,19 +17,23 @@
  */
 package org.bgp4j.rib;
 
+import java.util.Collection;
 import java.util.NavigableSet;
 import java.util.TreeSet;
 
 import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.PackedPrefixList;
 
 /**
  * This class builds and manages a tree of (NLRI, Path attributes) tuples. The tree is build top-down
  * whereas the parent node always contains more coarse-grained routing information than the child nodes.
  * 
+ * All operations on the tree are synchronized. Snapshots are taken by copying the tree.
+ * 
  * @author Rainer Bieniek (Rainer.Bieniek@web.de)
  *
  */
-class RoutingTree {
+class RoutingTree implements PrefixTree {
 
 	/**
 	 * Internal node of the routing tree. The discriminating fact is the NLRI attached to the node. Therefore
@@ -78,16 +82,43 @@ class RoutingTree {
 		public Route getRoute() {
 			return route;
 		}
+
+		/**
+		 * @param route the route to set. The route must carry the same NLRI as the current route
+		 */
+		void setRoute(Route route) {
+			this.route = route;
+		}
 	}
 	
 	// the root of all nodes managed by this routing tree. This is the only node w/o a (NLRI prefix, Path attributes) tuple attached to it
 	private RoutingTreeNode rootNode = new RoutingTreeNode(null);
+	private PrefixCounters counters = new PrefixCounters();
+	private boolean readOnly;
+	
+	RoutingTree() {}
+	
+	/**
+	 * create a read-only copy of a source tree
+	 * 
+	 * @param source
+	 */
+	private RoutingTree(RoutingTree source) {
+		copyChildNodes(source.rootNode, this.rootNode);
+		
+		this.counters = source.counters.copy();
+		this.readOnly = true;
+	}
 	
 	/**
 	 * Destroy the routing tree and delete all information held within.
 	 */
-	void destroy() {
+	@Override
+	public synchronized void destroy() {
+		checkWritable();
+		
 		rootNode.getChildNodes().clear();
+		counters.clear();
 	}
 	
 	/**
@@ -97,7 +128,10 @@ class RoutingTree {
 	 * @param pathAttributes the path attributes belonging to this prefix
 	 * @return <code>true<code> if the node was added, <code>false</code> if the node was not added
 	 */
-	synchronized boolean addRoute(Route route) {
+	@Override
+	public synchronized boolean addRoute(Route route) {
+		checkWritable();
+		
 		return addRoute(this.rootNode, new RoutingTreeNode(route));
 	}
 
@@ -123,9 +157,9 @@ class RoutingTree {
 		
 		for(RoutingTreeNode child : parent.getChildNodes()) {
 			if(child.getRoute().getNlri().equals(newNode.getRoute().getNlri())) {
-				// we have an exact match on the NLRI preifxes --> just replace the path attributes but signal as addition
-				child.getRoute().getPathAttributes().clear();
-				child.getRoute().getPathAttributes().addAll(newNode.getRoute().getPathAttributes());
+				// we have an exact match on the NLRI preifxes --> just replace the route but signal as addition.
+				// The path attributes of a route are shared with other routes and must not be changed in place
+				child.setRoute(newNode.getRoute());
 				
 				handled = true;
 				added = true;
@@ -143,6 +177,7 @@ class RoutingTree {
 		
 		if(!handled) {
 			parent.getChildNodes().add(newNode);
+			counters.prefixAdded(newNode.getRoute().getNlri().getPrefixLength());
 			added = true;
 			
 			// we have nodes that need to be reparented to the new node
@@ -161,8 +196,46 @@ class RoutingTree {
 	 * @param nlri the NLRI prefix to withdraw
 	 * @return <code>true</code> if the node was removed, <code>false</code> otherwise
 	 */
-	synchronized boolean withdrawRoute(Route route) {
-		return withdrawRoute(this.rootNode, route);
+	@Override
+	public synchronized boolean withdrawRoute(Route route) {
+		checkWritable();
+		
+		return withdrawRoute(this.rootNode, route.getNlri()) != null;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.bgp4j.rib.PrefixTree#updateRoutes(java.util.Collection, java.util.Collection, java.util.Collection, java.util.Collection)
+	 */
+	@Override
+	public synchronized void updateRoutes(Collection<Route> withdrawals, Collection<Route> additions, Collection<Route> withdrawn, Collection<Route> added) {
+		checkWritable();
+		
+		for(Route route : withdrawals)
+			if(withdrawRoute(this.rootNode, route.getNlri()) != null)
+				withdrawn.add(route);
+		
+		for(Route route : additions)
+			if(addRoute(this.rootNode, new RoutingTreeNode(route)))
+				added.add(route);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.bgp4j.rib.PrefixTree#updateRoutes(org.bgp4j.net.PackedPrefixList, java.util.Collection, java.util.Collection, java.util.Collection)
+	 */
+	@Override
+	public synchronized void updateRoutes(PackedPrefixList withdrawals, Collection<Route> additions, Collection<Route> withdrawn, Collection<Route> added) {
+		checkWritable();
+		
+		for(int i=0; i<withdrawals.size(); i++) {
+			Route route = withdrawRoute(this.rootNode, withdrawals.toNLRI(i));
+			
+			if(route != null)
+				withdrawn.add(route);
+		}
+		
+		for(Route route : additions)
+			if(addRoute(this.rootNode, new RoutingTreeNode(route)))
+				added.add(route);
 	}
 
 	/**
@@ -170,7 +243,8 @@ class RoutingTree {
 	 * 
 	 * @param visitor
 	 */
-	synchronized void visitTree(RoutingTreeVisitor visitor) {
+	@Override
+	public synchronized void visitTree(RoutingTreeVisitor visitor) {
 		visitTree(this.rootNode, visitor);
 	}
 	
@@ -185,18 +259,18 @@ class RoutingTree {
 	 * 
 	 * @param parent
 	 * @param nlri
-	 * @return
+	 * @return the route removed from the tree or <code>null</code> if no route was removed
 	 */
-	private boolean withdrawRoute(RoutingTreeNode parent, Route route) {
-		boolean withdrawn = false;
+	private Route withdrawRoute(RoutingTreeNode parent, NetworkLayerReachabilityInformation nlri) {
+		Route withdrawn = null;
 		RoutingTreeNode candidate = null;
 		
 		for(RoutingTreeNode child : parent.getChildNodes()) {
-			if(child.getRoute().getNlri().equals(route.getNlri())) {
+			if(child.getRoute().getNlri().equals(nlri)) {
 				candidate = child;
 				break;
-			} else if(child.getRoute().getNlri().isPrefixOf(route.getNlri())) {
-				withdrawn = withdrawRoute(child, route);
+			} else if(child.getRoute().getNlri().isPrefixOf(nlri)) {
+				withdrawn = withdrawRoute(child, nlri);
 				break;
 			}
 		}
@@ -204,8 +278,9 @@ class RoutingTree {
 		if(candidate != null) {
 			parent.getChildNodes().addAll(candidate.getChildNodes());
 			parent.getChildNodes().remove(candidate);
+			counters.prefixRemoved(candidate.getRoute().getNlri().getPrefixLength());
 			
-			withdrawn = true;
+			withdrawn = candidate.getRoute();
 		}
 		
 		return withdrawn;
@@ -223,10 +298,26 @@ class RoutingTree {
 	 * @param nlri
 	 * @return
 	 */
-	LookupResult lookupRoute(NetworkLayerReachabilityInformation nlri) {
+	@Override
+	public synchronized LookupResult lookupRoute(NetworkLayerReachabilityInformation nlri) {
 		return lookupRoute(this.rootNode, nlri);
 	}
 	
+	/**
+	 * The hierarchical tree has no lookup on primitive address bits, the address is converted into a host NLRI.
+	 */
+	@Override
+	public synchronized Route lookupAddress(long high, long low, int addressLength) {
+		byte[] address = new byte[NetworkLayerReachabilityInformation.calculateOctetsForPrefixLength(addressLength)];
+		
+		for(int i=0; i<address.length; i++)
+			address[i] = PatriciaRoutingTree.addressOctet(high, low, i);
+		
+		LookupResult result = lookupRoute(this.rootNode, new NetworkLayerReachabilityInformation(addressLength, address));
+		
+		return (result != null) ? result.getRoute() : null;
+	}
+	
 	private LookupResult lookupRoute(RoutingTreeNode parent, NetworkLayerReachabilityInformation nlri) {
 		LookupResult result = null;
 		
@@ -241,6 +332,9 @@ class RoutingTree {
 				// child node lookup did not yield result --> build result from less specific child node NLRI
 				if(result == null)
 					result = new LookupResult(child.getRoute());
+				
+				// sibling nodes do not overlap, no other child node can match
+				break;
 			}
 		}
 		
@@ -258,4 +352,34 @@ class RoutingTree {
 			visitTree(child, visitor);
 		}
 	}
+
+	/**
+	 * @return a read-only copy of the tree
+	 */
+	@Override
+	public synchronized PrefixTree snapshot() {
+		return new RoutingTree(this);
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.bgp4j.rib.PrefixTree#getCounters()
+	 */
+	@Override
+	public PrefixCounters getCounters() {
+		return counters;
+	}
+	
+	private void copyChildNodes(RoutingTreeNode source, RoutingTreeNode target) {
+		for(RoutingTreeNode child : source.getChildNodes()) {
+			RoutingTreeNode copy = new RoutingTreeNode(child.getRoute());
+			
+			target.getChildNodes().add(copy);
+			copyChildNodes(child, copy);
+		}
+	}
+
+	private void checkWritable() {
+		if(readOnly)
+			throw new UnsupportedOperationException("routing tree snapshot cannot be modified");
+	}
 }
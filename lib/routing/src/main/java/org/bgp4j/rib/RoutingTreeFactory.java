@@ -0,0 +1,124 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * File: org.bgp4j.rib.RoutingTreeFactory.java
+ */
+package org.bgp4j.rib;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.inject.Singleton;
+
+import org.bgp4j.net.AddressFamily;
+import org.bgp4j.net.AddressFamilyKey;
+
+/**
+ * Creates the route storage structure for a RoutingInformationBase instance. The structure type can be selected
+ * per address family, address families without an explicit selection use the default type. The IPv4 unicast
+ * address family is preselected to use the packed IPv4 prefix index.
+ *
+ * The selection only affects RoutingInformationBase instances allocated after the selection has been made.
+ *
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+@Singleton
+public class RoutingTreeFactory {
+
+	private RoutingTreeType defaultType = RoutingTreeType.PATRICIA;
+	private Map<AddressFamilyKey, RoutingTreeType> familyTypes = Collections.synchronizedMap(new HashMap<AddressFamilyKey, RoutingTreeType>());
+
+	public RoutingTreeFactory() {
+		selectBuiltinTypes();
+	}
+
+	/**
+	 * @return the defaultType
+	 */
+	public RoutingTreeType getDefaultType() {
+		return defaultType;
+	}
+
+	/**
+	 * @param defaultType the defaultType to set
+	 */
+	public void setDefaultType(RoutingTreeType defaultType) {
+		if(defaultType == null)
+			throw new IllegalArgumentException("null routing tree type");
+		if(defaultType == RoutingTreeType.IPV4_PACKED)
+			throw new IllegalArgumentException("routing tree type " + defaultType + " cannot be used as default type");
+
+		this.defaultType = defaultType;
+	}
+
+	/**
+	 * get the tree type used for an address family
+	 *
+	 * @param afk the address family
+	 * @return the type selected for the address family or the default type if no type was selected
+	 */
+	public RoutingTreeType getRoutingTreeType(AddressFamilyKey afk) {
+		RoutingTreeType type = familyTypes.get(afk);
+
+		return (type != null) ? type : defaultType;
+	}
+
+	/**
+	 * select the tree type used for an address family
+	 *
+	 * @param afk the address family
+	 * @param type the tree type or <code>null</code> to fall back to the default type
+	 * @throws IllegalArgumentException if the tree type cannot hold the prefixes of the address family
+	 */
+	public void setRoutingTreeType(AddressFamilyKey afk, RoutingTreeType type) {
+		if(type == RoutingTreeType.IPV4_PACKED && (afk == null || afk.getAddressFamily() != AddressFamily.IPv4))
+			throw new IllegalArgumentException("routing tree type " + type + " cannot be used for address family " + afk);
+
+		if(type != null)
+			familyTypes.put(afk, type);
+		else
+			familyTypes.remove(afk);
+	}
+
+	/**
+	 * reset all address family selections and the default type
+	 */
+	public void resetFactory() {
+		familyTypes.clear();
+		defaultType = RoutingTreeType.PATRICIA;
+		selectBuiltinTypes();
+	}
+
+	/**
+	 * IPv4 unicast routes are held in the packed primitive key index unless configured otherwise
+	 */
+	private void selectBuiltinTypes() {
+		familyTypes.put(AddressFamilyKey.IPV4_UNICAST_FORWARDING, RoutingTreeType.IPV4_PACKED);
+	}
+
+	PrefixTree createRoutingTree(AddressFamilyKey afk) {
+		switch(getRoutingTreeType(afk)) {
+		case HIERARCHICAL:
+			return new RoutingTree();
+		case IPV4_PACKED:
+			return new PatriciaRoutingTree(IPv4KeyCodec.INSTANCE);
+		case PATRICIA:
+		default:
+			return new PatriciaRoutingTree(BitStringKeyCodec.INSTANCE);
+		}
+	}
+}
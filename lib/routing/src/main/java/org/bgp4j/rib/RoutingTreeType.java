@@ -0,0 +1,33 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * File: org.bgp4j.rib.RoutingTreeType.java
+ */
+package org.bgp4j.rib;
+
+/**
+ * The storage structures available for holding the routes of a RoutingInformationBase instance.
+ *
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public enum RoutingTreeType {
+	/** tree of route nodes with ordered child sets per node */
+	HIERARCHICAL,
+	/** path-compressed binary trie */
+	PATRICIA,
+	/** path-compressed binary trie keyed by primitive IPv4 address bits, only applicable to IPv4 address families */
+	IPV4_PACKED;
+}
@@ -18,10 +18,8 @@
 package org.bgp4j.rib;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.Set;
-import java.util.TreeSet;
 
 import org.apache.commons.lang3.builder.CompareToBuilder;
 import org.apache.commons.lang3.builder.EqualsBuilder;
@@ -37,23 +35,15 @@ import org.bgp4j.net.attributes.PathAttribute;
  */
 public class TopologicalTreeSortingKey implements Comparable<TopologicalTreeSortingKey> {
 	private AddressFamilyKey addressFamilyKey;
-	private Set<PathAttribute> pathAttributes = new TreeSet<PathAttribute>();
+	private PathAttributeSet pathAttributes;
 	
 	public TopologicalTreeSortingKey(AddressFamily afi, SubsequentAddressFamily safi, Collection<PathAttribute> attributes) {
-		this.addressFamilyKey = new AddressFamilyKey(afi, safi);
-		if(attributes != null)
-			pathAttributes.addAll(attributes);
-		
-		pathAttributes = Collections.unmodifiableSet(pathAttributes);
+		this(new AddressFamilyKey(afi, safi), attributes);
 	}
 
 	public TopologicalTreeSortingKey(AddressFamilyKey addressFamilyKey, Collection<PathAttribute> attributes) {
 		this.addressFamilyKey = addressFamilyKey;
-		
-		if(attributes != null)
-			pathAttributes.addAll(attributes);
-		
-		pathAttributes = Collections.unmodifiableSet(pathAttributes);
+		this.pathAttributes = PathAttributeSet.valueOf(attributes);
 	}
 
 	/**
@@ -92,13 +82,10 @@ public class TopologicalTreeSortingKey implements Comparable<TopologicalTreeSort
 	 */
 	@Override
 	public int hashCode() {
-		HashCodeBuilder builder = (new HashCodeBuilder())
-				.append(getAddressFamilyKey());
-				
-		for(PathAttribute attr : getPathAttributes())
-			builder.append(attr);
-		
-		return builder.toHashCode();
+		return (new HashCodeBuilder())
+				.append(getAddressFamilyKey())
+				.append(pathAttributes.hashCode())
+				.toHashCode();
 	}
 
 	/* (non-Javadoc)
@@ -111,18 +98,9 @@ public class TopologicalTreeSortingKey implements Comparable<TopologicalTreeSort
 		
 		TopologicalTreeSortingKey o = (TopologicalTreeSortingKey)obj;
 		
-		EqualsBuilder builder = (new EqualsBuilder())
+		return (new EqualsBuilder())
 				.append(getAddressFamilyKey(), o.getAddressFamilyKey())
-				.append(getPathAttributes().size(), o.getPathAttributes().size());
-		
-		if(builder.isEquals()) {
-			Iterator<PathAttribute> lit = getPathAttributes().iterator();
-			Iterator<PathAttribute> rit = o.getPathAttributes().iterator();
-			
-			while(lit.hasNext())
-				builder.append(lit.next(), rit.next());		
-		}
-		
-		return builder.isEquals();
+				.append(pathAttributes, o.pathAttributes)
+				.isEquals();
 	}
 }
@@ -0,0 +1,240 @@
+/**
+ * 
+ */
+package org.bgp4j.rib.processor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.bgp4j.net.Origin;
+import org.bgp4j.net.PathSegment;
+import org.bgp4j.net.attributes.ASPathAttribute;
+import org.bgp4j.net.attributes.LocalPrefPathAttribute;
+import org.bgp4j.net.attributes.MultiExitDiscPathAttribute;
+import org.bgp4j.net.attributes.OriginPathAttribute;
+import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.rib.Route;
+
+/**
+ * Route selection among the routes to the same destination learned from different peers (RFC 4271, section 9.1.2.2).
+ * The candidates are eliminated in the following order until one route is left:
+ * 
+ * <ol>
+ * <li>highest LOCAL_PREF. A route without LOCAL_PREF is treated as carrying the default value 100</li>
+ * <li>shortest AS_PATH. An AS_SET counts as one AS, confederation segments are not counted</li>
+ * <li>lowest ORIGIN (IGP before EGP before INCOMPLETE)</li>
+ * <li>lowest MED among the routes learned from the same neighbor AS. A route without MED is treated as carrying MED 0</li>
+ * <li>routes learned from external peers before routes learned from internal peers</li>
+ * <li>lowest BGP identifier of the peer</li>
+ * <li>lowest peer name, this makes the selection deterministic</li>
+ * </ol>
+ * 
+ * The interior cost to the next hop is not considered because no interior routing information is available.
+ * 
+ * @author rainer
+ *
+ */
+public class BestPathSelection {
+
+	/** LOCAL_PREF assumed for routes not carrying a LOCAL_PREF attribute */
+	public static final long DEFAULT_LOCAL_PREFERENCE = 100;
+	
+	/**
+	 * A route competing in the selection process. The values relevant for the selection are extracted from the 
+	 * path attributes once when the candidate is created.
+	 * 
+	 * @author rainer
+	 *
+	 */
+	public static class Candidate {
+		private LocRibPeer peer;
+		private Route route;
+		private long localPreference = DEFAULT_LOCAL_PREFERENCE;
+		private int asPathLength;
+		private Origin origin = Origin.INCOMPLETE;
+		private long multiExitDisc;
+		private int neighborAS;
+		
+		public Candidate(LocRibPeer peer, Route route) {
+			this.peer = peer;
+			this.route = route;
+			
+			for(PathAttribute pa : route.getPathAttributes()) {
+				if(pa instanceof LocalPrefPathAttribute) {
+					localPreference = ((LocalPrefPathAttribute)pa).getLocalPreference() & 0xffffffffL;
+				} else if(pa instanceof MultiExitDiscPathAttribute) {
+					multiExitDisc = ((MultiExitDiscPathAttribute)pa).getDiscriminator() & 0xffffffffL;
+				} else if(pa instanceof OriginPathAttribute) {
+					origin = ((OriginPathAttribute)pa).getOrigin();
+				} else if(pa instanceof ASPathAttribute) {
+					extractASPath((ASPathAttribute)pa);
+				}
+			}
+		}
+		
+		private void extractASPath(ASPathAttribute asPath) {
+			boolean first = true;
+			
+			for(PathSegment segment : asPath.getPathSegments()) {
+				switch(segment.getPathSegmentType()) {
+				case AS_SEQUENCE:
+					asPathLength += segment.getAses().size();
+					if(first && segment.getAses().size() > 0)
+						neighborAS = segment.getAses().get(0);
+					break;
+				case AS_SET:
+					asPathLength++;
+					break;
+				default:
+					break;
+				}
+				first = false;
+			}
+		}
+
+		/**
+		 * @return the peer the route was learned from
+		 */
+		public LocRibPeer getPeer() {
+			return peer;
+		}
+
+		/**
+		 * @return the route
+		 */
+		public Route getRoute() {
+			return route;
+		}
+
+		/**
+		 * @return the localPreference
+		 */
+		public long getLocalPreference() {
+			return localPreference;
+		}
+
+		/**
+		 * @return the asPathLength
+		 */
+		public int getAsPathLength() {
+			return asPathLength;
+		}
+
+		/**
+		 * @return the origin
+		 */
+		public Origin getOrigin() {
+			return origin;
+		}
+
+		/**
+		 * @return the multiExitDisc
+		 */
+		public long getMultiExitDisc() {
+			return multiExitDisc;
+		}
+
+		/**
+		 * @return the neighbor AS or 0 if the AS path does not start with an AS sequence
+		 */
+		public int getNeighborAS() {
+			return neighborAS;
+		}
+	}
+	
+	/**
+	 * select the best route among the candidates
+	 * 
+	 * @param candidates the candidates
+	 * @return the best route or <code>null</code> if no candidates are passed
+	 */
+	public Candidate select(Collection<Candidate> candidates) {
+		if(candidates.isEmpty())
+			return null;
+		if(candidates.size() == 1)
+			return candidates.iterator().next();
+		
+		List<Candidate> remaining = new ArrayList<Candidate>(candidates);
+		
+		// 1. highest local preference
+		long maxLocalPref = 0;
+		
+		for(Candidate candidate : remaining)
+			maxLocalPref = Math.max(maxLocalPref, candidate.getLocalPreference());
+		for(Iterator<Candidate> it = remaining.iterator(); it.hasNext(); )
+			if(it.next().getLocalPreference() != maxLocalPref)
+				it.remove();
+		if(remaining.size() == 1)
+			return remaining.get(0);
+
+		// 2. shortest AS path
+		int minASPathLength = Integer.MAX_VALUE;
+
+		for(Candidate candidate : remaining)
+			minASPathLength = Math.min(minASPathLength, candidate.getAsPathLength());
+		for(Iterator<Candidate> it = remaining.iterator(); it.hasNext(); )
+			if(it.next().getAsPathLength() != minASPathLength)
+				it.remove();
+		if(remaining.size() == 1)
+			return remaining.get(0);
+
+		// 3. lowest origin
+		Origin minOrigin = Origin.INCOMPLETE;
+
+		for(Candidate candidate : remaining)
+			if(candidate.getOrigin().compareTo(minOrigin) < 0)
+				minOrigin = candidate.getOrigin();
+		for(Iterator<Candidate> it = remaining.iterator(); it.hasNext(); )
+			if(it.next().getOrigin() != minOrigin)
+				it.remove();
+		if(remaining.size() == 1)
+			return remaining.get(0);
+		
+		// 4. lowest MED among the routes from the same neighbor AS
+		List<Candidate> medSurvivors = new ArrayList<Candidate>(remaining.size());
+		
+		for(Candidate candidate : remaining) {
+			boolean beaten = false;
+			
+			for(Candidate other : remaining) {
+				if(other.getNeighborAS() == candidate.getNeighborAS() && other.getMultiExitDisc() < candidate.getMultiExitDisc()) {
+					beaten = true;
+					break;
+				}
+			}
+			if(!beaten)
+				medSurvivors.add(candidate);
+		}
+		remaining = medSurvivors;
+		if(remaining.size() == 1)
+			return remaining.get(0);
+		
+		// 5. external peers before internal peers
+		boolean haveExternal = false;
+		
+		for(Candidate candidate : remaining)
+			haveExternal |= candidate.getPeer().isExternal();
+		if(haveExternal) {
+			for(Iterator<Candidate> it = remaining.iterator(); it.hasNext(); )
+				if(!it.next().getPeer().isExternal())
+					it.remove();
+			if(remaining.size() == 1)
+				return remaining.get(0);
+		}
+		
+		// 6. lowest BGP identifier, 7. lowest peer name
+		Candidate best = null;
+		
+		for(Candidate candidate : remaining) {
+			if(best == null 
+					|| candidate.getPeer().getBgpIdentifier() < best.getPeer().getBgpIdentifier()
+					|| (candidate.getPeer().getBgpIdentifier() == best.getPeer().getBgpIdentifier() 
+						&& candidate.getPeer().getPeerName().compareTo(best.getPeer().getPeerName()) < 0))
+				best = candidate;
+		}
+		
+		return best;
+	}
+}
@@ -0,0 +1,56 @@
+/**
+ * 
+ */
+package org.bgp4j.rib.processor;
+
+import org.bgp4j.config.nodes.PeerConfiguration;
+
+/**
+ * Peer properties used by the decision process of the Loc-RIB
+ * 
+ * @author rainer
+ *
+ */
+public class LocRibPeer {
+
+	private String peerName;
+	private boolean external;
+	private long bgpIdentifier;
+	
+	public LocRibPeer(String peerName, boolean external, long bgpIdentifier) {
+		this.peerName = peerName;
+		this.external = external;
+		this.bgpIdentifier = bgpIdentifier;
+	}
+
+	/**
+	 * create the peer properties from the peer configuration. A peer is an external (eBGP) peer if the local and 
+	 * the remote AS number differ.
+	 * 
+	 * @param peerConfig
+	 */
+	public LocRibPeer(PeerConfiguration peerConfig) {
+		this(peerConfig.getPeerName(), peerConfig.getLocalAS() != peerConfig.getRemoteAS(), peerConfig.getRemoteBgpIdentifier());
+	}
+	
+	/**
+	 * @return the peerName
+	 */
+	public String getPeerName() {
+		return peerName;
+	}
+
+	/**
+	 * @return <code>true</code> if the peer is an external (eBGP) peer, <code>false</code> if it is an internal (iBGP) peer 
+	 */
+	public boolean isExternal() {
+		return external;
+	}
+
+	/**
+	 * @return the BGP identifier of the peer
+	 */
+	public long getBgpIdentifier() {
+		return bgpIdentifier;
+	}
+}
@@ -0,0 +1,411 @@
+/**
+ * 
+ */
+package org.bgp4j.rib.processor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.inject.Inject;
+
+import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.RIBSide;
+import org.bgp4j.rib.Route;
+import org.bgp4j.rib.RouteAdded;
+import org.bgp4j.rib.RouteWithdrawn;
+import org.bgp4j.rib.RoutesChanged;
+import org.bgp4j.rib.RoutesInvalidated;
+import org.bgp4j.rib.RoutingEventListener;
+import org.bgp4j.rib.RoutingInformationBase;
+import org.bgp4j.rib.RoutingInformationBaseVisitor;
+import org.bgp4j.rib.processor.BestPathSelection.Candidate;
+
+/**
+ * The Loc-RIB of one address family. The Loc-RIB takes the routes held in the remote RIBs of all attached peers as
+ * input, selects the best route per prefix and publishes the selected routes to the local RIBs of the attached peers.
+ *
+ * The selection is incremental: A change in a remote RIB only triggers the selection process for the prefixes
+ * changed. The resulting changes are published to each local RIB as one batch.
+ *
+ * A selected route is not published to the peer it has been learned from. A route learned from an internal peer
+ * is not published to other internal peers (RFC 4271, section 9.2).
+ *
+ * The candidates of a lost peer are withdrawn in batches of at most {@link #INVALIDATION_BATCH_SIZE} prefixes. The
+ * Loc-RIB is released between two batches, thus the updates of the other peers are not blocked by the withdrawal
+ * of a full table.
+ *
+ * @author rainer
+ *
+ */
+public class LocalRoutingInformationBase implements RoutingEventListener {
+
+	/**
+	 * maximum number of prefixes of a lost peer processed while holding the Loc-RIB
+	 */
+	static final int INVALIDATION_BATCH_SIZE = 1024;
+
+	/**
+	 * The candidate routes of one prefix and the currently selected route
+	 *
+	 * @author rainer
+	 *
+	 */
+	private static class PrefixEntry {
+		private Map<String, Candidate> candidates = new HashMap<String, Candidate>(4);
+		private Candidate best;
+	}
+
+	/**
+	 * The RIBs attached to the Loc-RIB for one peer and the prefixes the peer contributes candidates for
+	 *
+	 * @author rainer
+	 *
+	 */
+	private static class PeerEntry {
+		private LocRibPeer peer;
+		private RoutingInformationBase remote;
+		private RoutingInformationBase local;
+		private Set<NetworkLayerReachabilityInformation> prefixes = new HashSet<NetworkLayerReachabilityInformation>();
+
+		PeerEntry(LocRibPeer peer) {
+			this.peer = peer;
+		}
+	}
+
+	private @Inject BestPathSelection selection;
+
+	private AddressFamilyKey addressFamilyKey;
+	private Map<NetworkLayerReachabilityInformation, PrefixEntry> prefixes = new HashMap<NetworkLayerReachabilityInformation, PrefixEntry>();
+	private Map<String, PeerEntry> peers = new HashMap<String, PeerEntry>();
+
+	/**
+	 * @return the addressFamilyKey
+	 */
+	public AddressFamilyKey getAddressFamilyKey() {
+		return addressFamilyKey;
+	}
+
+	/**
+	 * @param addressFamilyKey the addressFamilyKey to set
+	 */
+	void setAddressFamilyKey(AddressFamilyKey addressFamilyKey) {
+		this.addressFamilyKey = addressFamilyKey;
+	}
+
+	/**
+	 * Attach the RIBs of a peer. The routes already held in an attached remote RIB are fed into the selection process,
+	 * the currently selected routes are published to an attached local RIB.
+	 *
+	 * @param peer the peer properties
+	 * @param remote the remote RIB of the peer or <code>null</code>
+	 * @param local the local RIB of the peer or <code>null</code>
+	 */
+	public synchronized void attachPeer(LocRibPeer peer, RoutingInformationBase remote, RoutingInformationBase local) {
+		PeerEntry entry = peers.get(peer.getPeerName());
+
+		if(entry == null) {
+			entry = new PeerEntry(peer);
+			peers.put(peer.getPeerName(), entry);
+		}
+
+		if(local != null && entry.local == null) {
+			List<Route> additions = new LinkedList<Route>();
+
+			entry.local = local;
+
+			for(PrefixEntry prefixEntry : prefixes.values())
+				if(isPublishable(prefixEntry.best, entry.peer))
+					additions.add(prefixEntry.best.getRoute());
+
+			if(additions.size() > 0)
+				local.updateRoutes(Collections.<Route>emptyList(), additions);
+		}
+
+		if(remote != null && entry.remote == null) {
+			final List<Route> routes = new LinkedList<Route>();
+
+			entry.remote = remote;
+			remote.addPerRibListener(this);
+			remote.visitRoutingNodes(new RoutingInformationBaseVisitor() {
+
+				@Override
+				public void visitRouteNode(String peerName, RIBSide side, Route route) {
+					routes.add(route);
+				}
+			});
+
+			updateCandidates(entry, Collections.<Route>emptyList(), routes);
+		}
+	}
+
+	/**
+	 * Detach a RIB of a peer. Detaching the remote RIB withdraws all candidate routes learned from the peer.
+	 *
+	 * @param peerName the peer name
+	 * @param side the RIB side to detach
+	 */
+	public void detachPeer(String peerName, RIBSide side) {
+		Set<NetworkLayerReachabilityInformation> withdrawals = null;
+
+		synchronized (this) {
+			PeerEntry entry = peers.get(peerName);
+
+			if(entry == null)
+				return;
+
+			switch(side) {
+			case Local:
+				entry.local = null;
+				break;
+			case Remote:
+				if(entry.remote != null) {
+					entry.remote.removePerRibListener(this);
+
+					withdrawals = takePrefixes(entry);
+					entry.remote = null;
+				}
+				break;
+			}
+
+			if(entry.local == null && entry.remote == null)
+				peers.remove(peerName);
+		}
+
+		if(withdrawals != null)
+			withdrawCandidates(peerName, withdrawals);
+	}
+
+	/**
+	 * Detach all peers. The published routes are left in the local RIBs.
+	 */
+	public synchronized void detachAll() {
+		for(PeerEntry entry : peers.values())
+			if(entry.remote != null)
+				entry.remote.removePerRibListener(this);
+
+		peers.clear();
+		prefixes.clear();
+	}
+
+	/**
+	 * Obtain the route currently selected for a prefix
+	 *
+	 * @param nlri the prefix
+	 * @return the selected route or <code>null</code> if no route is known for the prefix
+	 */
+	public synchronized Route selectedRoute(NetworkLayerReachabilityInformation nlri) {
+		PrefixEntry entry = prefixes.get(nlri);
+
+		return (entry != null) ? entry.best.getRoute() : null;
+	}
+
+	/**
+	 * @return the number of prefixes with a selected route
+	 */
+	public synchronized int getNumberOfPrefixes() {
+		return prefixes.size();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.bgp4j.rib.RoutingEventListener#routeAdded(org.bgp4j.rib.RouteAdded)
+	 */
+	@Override
+	public void routeAdded(RouteAdded event) {
+		if(event.getSide() == RIBSide.Remote)
+			remoteRoutesChanged(event.getPeerName(), Collections.<Route>emptyList(), Arrays.asList(event.getRoute()));
+	}
+
+	/* (non-Javadoc)
+	 * @see org.bgp4j.rib.RoutingEventListener#routeWithdrawn(org.bgp4j.rib.RouteWithdrawn)
+	 */
+	@Override
+	public void routeWithdrawn(RouteWithdrawn event) {
+		if(event.getSide() == RIBSide.Remote)
+			remoteRoutesChanged(event.getPeerName(), Arrays.asList(event.getRoute()), Collections.<Route>emptyList());
+	}
+
+	/* (non-Javadoc)
+	 * @see org.bgp4j.rib.RoutingEventListener#routesChanged(org.bgp4j.rib.RoutesChanged)
+	 */
+	@Override
+	public void routesChanged(RoutesChanged event) {
+		if(event.getSide() == RIBSide.Remote)
+			remoteRoutesChanged(event.getPeerName(), event.getWithdrawnRoutes(), event.getAddedRoutes());
+	}
+
+	/**
+	 * The candidates learned from the destroyed remote RIB are withdrawn in batches. The remote RIB stays attached
+	 * until it is detached, the candidates are withdrawn before.
+	 * 
+	 * @see org.bgp4j.rib.RoutingEventListener#routesInvalidated(org.bgp4j.rib.RoutesInvalidated)
+	 */
+	@Override
+	public void routesInvalidated(RoutesInvalidated event) {
+		Set<NetworkLayerReachabilityInformation> withdrawals;
+
+		if(event.getSide() != RIBSide.Remote)
+			return;
+
+		synchronized (this) {
+			PeerEntry entry = peers.get(event.getPeerName());
+
+			if(entry == null || entry.remote == null || !event.getRibID().equals(entry.remote.getRibID()))
+				return;
+
+			withdrawals = takePrefixes(entry);
+		}
+
+		withdrawCandidates(event.getPeerName(), withdrawals);
+	}
+
+	private synchronized void remoteRoutesChanged(String peerName, Collection<Route> withdrawn, Collection<Route> added) {
+		PeerEntry entry = peers.get(peerName);
+
+		if(entry != null && entry.remote != null)
+			updateCandidates(entry, withdrawn, added);
+	}
+
+	/**
+	 * hand over the prefixes the peer contributes candidates for, the peer starts over with no prefixes
+	 */
+	private Set<NetworkLayerReachabilityInformation> takePrefixes(PeerEntry entry) {
+		Set<NetworkLayerReachabilityInformation> taken = entry.prefixes;
+
+		entry.prefixes = new HashSet<NetworkLayerReachabilityInformation>();
+
+		return taken;
+	}
+
+	/**
+	 * withdraw the candidates taken from a peer in batches. A prefix the peer has contributed a candidate for again in 
+	 * the meantime is not withdrawn.
+	 */
+	private void withdrawCandidates(String peerName, Collection<NetworkLayerReachabilityInformation> nlris) {
+		List<NetworkLayerReachabilityInformation> batch = new ArrayList<NetworkLayerReachabilityInformation>(INVALIDATION_BATCH_SIZE);
+		Iterator<NetworkLayerReachabilityInformation> it = nlris.iterator();
+
+		while(it.hasNext()) {
+			batch.add(it.next());
+
+			if(batch.size() == INVALIDATION_BATCH_SIZE || !it.hasNext()) {
+				withdrawCandidateBatch(peerName, batch);
+				batch.clear();
+			}
+		}
+	}
+
+	private synchronized void withdrawCandidateBatch(String peerName, List<NetworkLayerReachabilityInformation> nlris) {
+		List<NetworkLayerReachabilityInformation> changed = new ArrayList<NetworkLayerReachabilityInformation>(nlris.size());
+		PeerEntry entry = peers.get(peerName);
+
+		for(NetworkLayerReachabilityInformation nlri : nlris) {
+			PrefixEntry prefixEntry = prefixes.get(nlri);
+
+			if(prefixEntry == null || (entry != null && entry.prefixes.contains(nlri)))
+				continue;
+
+			if(prefixEntry.candidates.remove(peerName) != null)
+				changed.add(nlri);
+		}
+
+		selectRoutes(changed);
+	}
+
+	/**
+	 * update the candidates learned from a peer and run the selection process for the changed prefixes
+	 */
+	private void updateCandidates(PeerEntry entry, Collection<Route> withdrawn, Collection<Route> added) {
+		String peerName = entry.peer.getPeerName();
+		Set<NetworkLayerReachabilityInformation> changed = new LinkedHashSet<NetworkLayerReachabilityInformation>();
+
+		for(Route route : withdrawn) {
+			PrefixEntry prefixEntry = prefixes.get(route.getNlri());
+
+			if(prefixEntry != null && prefixEntry.candidates.remove(peerName) != null) {
+				entry.prefixes.remove(route.getNlri());
+				changed.add(route.getNlri());
+			}
+		}
+
+		for(Route route : added) {
+			PrefixEntry prefixEntry = prefixes.get(route.getNlri());
+
+			if(prefixEntry == null) {
+				prefixEntry = new PrefixEntry();
+				prefixes.put(route.getNlri(), prefixEntry);
+			}
+
+			prefixEntry.candidates.put(peerName, new Candidate(entry.peer, route));
+			entry.prefixes.add(route.getNlri());
+			changed.add(route.getNlri());
+		}
+
+		selectRoutes(changed);
+	}
+
+	/**
+	 * run the selection process for the given prefixes and publish the changed selections to the local RIBs
+	 */
+	private void selectRoutes(Collection<NetworkLayerReachabilityInformation> nlris) {
+		Map<PeerEntry, List<Route>> withdrawals = new HashMap<PeerEntry, List<Route>>();
+		Map<PeerEntry, List<Route>> additions = new HashMap<PeerEntry, List<Route>>();
+
+		for(PeerEntry entry : peers.values()) {
+			if(entry.local != null) {
+				withdrawals.put(entry, new LinkedList<Route>());
+				additions.put(entry, new LinkedList<Route>());
+			}
+		}
+
+		for(NetworkLayerReachabilityInformation nlri : nlris) {
+			PrefixEntry prefixEntry = prefixes.get(nlri);
+			Candidate best = selection.select(prefixEntry.candidates.values());
+
+			if(best == prefixEntry.best)
+				continue;
+
+			prefixEntry.best = best;
+			if(best == null)
+				prefixes.remove(nlri);
+
+			for(PeerEntry entry : withdrawals.keySet()) {
+				if(isPublishable(best, entry.peer))
+					additions.get(entry).add(best.getRoute());
+				else
+					withdrawals.get(entry).add(new Route(addressFamilyKey, nlri, null, null));
+			}
+		}
+
+		for(Entry<PeerEntry, List<Route>> withdrawalEntry : withdrawals.entrySet()) {
+			List<Route> peerWithdrawals = withdrawalEntry.getValue();
+			List<Route> peerAdditions = additions.get(withdrawalEntry.getKey());
+
+			if(peerWithdrawals.size() > 0 || peerAdditions.size() > 0)
+				withdrawalEntry.getKey().local.updateRoutes(peerWithdrawals, peerAdditions);
+		}
+	}
+
+	/**
+	 * check if a selected route may be published to a peer
+	 */
+	private boolean isPublishable(Candidate best, LocRibPeer target) {
+		if(best == null)
+			return false;
+		if(best.getPeer().getPeerName().equals(target.getPeerName()))
+			return false;
+
+		return best.getPeer().isExternal() || target.isExternal();
+	}
+}
@@ -0,0 +1,144 @@
+/**
+ * 
+ */
+package org.bgp4j.rib.processor;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.bgp4j.config.global.ApplicationConfiguration;
+import org.bgp4j.config.nodes.PeerConfiguration;
+import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.net.RIBSide;
+import org.bgp4j.rib.PeerRoutingInformationBaseManager;
+import org.bgp4j.rib.PeerRoutingInformationBaseVisitor;
+import org.bgp4j.rib.RoutingInformationBase;
+import org.bgp4j.rib.RoutingInformationBaseCreated;
+import org.bgp4j.rib.RoutingInformationBaseDestroyed;
+import org.slf4j.Logger;
+
+/**
+ * Connects the RIBs of all configured peers to the Loc-RIB of the respective address family. RIBs created or destroyed
+ * while the processor is running are attached to or detached from the Loc-RIB when created or destroyed.
+ *
+ * RIBs of peer routing bases without a peer configuration (for example extension routing bases) are not attached.
+ *
+ * @author rainer
+ *
+ */
+@Singleton
+public class LocalRoutingProcessor {
+
+	private @Inject Logger log;
+	private @Inject ApplicationConfiguration appConfig;
+	private @Inject PeerRoutingInformationBaseManager pribManager;
+	private @Inject Instance<LocalRoutingInformationBase> locRibProvider;
+
+	private Map<AddressFamilyKey, LocalRoutingInformationBase> locRibs = new HashMap<AddressFamilyKey, LocalRoutingInformationBase>();
+	private boolean active;
+
+	public synchronized void startService() {
+		active = true;
+
+		pribManager.vistPeerRoutingBases(new PeerRoutingInformationBaseVisitor() {
+
+			@Override
+			public void visitRoutingBase(String ribName, UUID ribID, AddressFamilyKey afk, RIBSide side) {
+				attachRoutingBase(ribName, afk, side);
+			}
+		});
+	}
+
+	public synchronized void stopService() {
+		active = false;
+
+		for(LocalRoutingInformationBase locRib : locRibs.values())
+			locRib.detachAll();
+
+		locRibs.clear();
+	}
+
+	public synchronized void routingBaseCreated(@Observes RoutingInformationBaseCreated event) {
+		if(active)
+			attachRoutingBase(event.getPeerName(), event.getAddressFamilyKey(), event.getSide());
+	}
+
+	public synchronized void routingBaseDestroyed(@Observes RoutingInformationBaseDestroyed event) {
+		if(active && locRibs.containsKey(event.getAddressFamilyKey()))
+			locRibs.get(event.getAddressFamilyKey()).detachPeer(event.getPeerName(), event.getSide());
+	}
+
+	/**
+	 * @param afk the address family
+	 * @return the Loc-RIB of the address family or <code>null</code> if no RIB of the address family is attached
+	 */
+	public synchronized LocalRoutingInformationBase localRoutingInformationBase(AddressFamilyKey afk) {
+		return locRibs.get(afk);
+	}
+
+	/**
+	 * Run an action while no Loc-RIB publishes routes to the local RIBs of the peers. A change selected by a Loc-RIB 
+	 * is written to the local RIBs of the attached peers one after another, the action sees either all or none of 
+	 * these writes. The Loc-RIBs are locked in the order of their address families.
+	 * 
+	 * @param action the action
+	 */
+	public synchronized void runQuiescent(Runnable action) {
+		runQuiescent(new TreeMap<AddressFamilyKey, LocalRoutingInformationBase>(locRibs).values().iterator(), action);
+	}
+
+	/**
+	 * @return the active
+	 */
+	public synchronized boolean isActive() {
+		return active;
+	}
+
+	private void runQuiescent(Iterator<LocalRoutingInformationBase> remaining, Runnable action) {
+		if(!remaining.hasNext()) {
+			action.run();
+
+			return;
+		}
+
+		synchronized (remaining.next()) {
+			runQuiescent(remaining, action);
+		}
+	}
+
+	private void attachRoutingBase(String peerName, AddressFamilyKey afk, RIBSide side) {
+		PeerConfiguration peerConfig = appConfig.getPeer(peerName);
+
+		if(peerConfig == null) {
+			log.info("not attaching routing base of unconfigured peer " + peerName + " to the Loc-RIB");
+
+			return;
+		}
+
+		RoutingInformationBase rib = pribManager.peerRoutingInformationBase(peerName).routingBase(side, afk);
+		LocalRoutingInformationBase locRib = locRibs.get(afk);
+
+		if(rib == null)
+			return;
+
+		if(locRib == null) {
+			locRib = locRibProvider.get();
+			locRib.setAddressFamilyKey(afk);
+			locRibs.put(afk, locRib);
+		}
+
+		log.info("attaching " + side + " routing base of peer " + peerName + " for " + afk + " to the Loc-RIB");
+
+		locRib.attachPeer(new LocRibPeer(peerConfig),
+				(side == RIBSide.Remote) ? rib : null,
+				(side == RIBSide.Local) ? rib : null);
+	}
+}
@@ -3,6 +3,7 @@
  */
 package org.bgp4j.rib.processor;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -13,8 +14,11 @@ import javax.inject.Inject;
 import org.bgp4j.config.nodes.PathAttributeConfiguration;
 import org.bgp4j.config.nodes.PrefixRoutingFilterConfiguration;
 import org.bgp4j.config.nodes.RoutingFilterConfiguration;
+import org.bgp4j.rib.Route;
 import org.bgp4j.rib.RouteAdded;
 import org.bgp4j.rib.RouteWithdrawn;
+import org.bgp4j.rib.RoutesChanged;
+import org.bgp4j.rib.RoutesInvalidated;
 import org.bgp4j.rib.RoutingEventListener;
 import org.bgp4j.rib.RoutingInformationBase;
 import org.bgp4j.rib.filter.DefaultPathAttributesInjector;
@@ -38,16 +42,7 @@ public class RouteTransportListener implements RoutingEventListener {
 	 */
 	@Override
 	public void routeAdded(RouteAdded event) {
-		boolean match = false;
-		
-		for(RoutingFilter filter : filters) {
-			match |= filter.matchFilter(event.getRoute());
-			
-			if(match)
-				break;
-		}
-		
-		if(!match)
+		if(!isFiltered(event.getRoute()))
 			target.addRoute(injector.injectMissingPathAttribute(event.getRoute()));
 	}
 
@@ -56,19 +51,56 @@ public class RouteTransportListener implements RoutingEventListener {
 	 */
 	@Override
 	public void routeWithdrawn(RouteWithdrawn event) {
-		boolean match = false;
+		if(!isFiltered(event.getRoute()))
+			target.withdrawRoute(event.getRoute());
+	}
+
+	/**
+	 * Transport the batch into the target RIB as one batch
+	 * 
+	 * @see org.bgp4j.rib.RoutingEventListener#routesChanged(org.bgp4j.rib.RoutesChanged)
+	 */
+	@Override
+	public void routesChanged(RoutesChanged event) {
+		List<Route> withdrawals = new ArrayList<Route>(event.getWithdrawnRoutes().size());
+		List<Route> additions = new ArrayList<Route>(event.getAddedRoutes().size());
+		
+		for(Route route : event.getWithdrawnRoutes())
+			if(!isFiltered(route))
+				withdrawals.add(route);
+		
+		for(Route route : event.getAddedRoutes())
+			if(!isFiltered(route))
+				additions.add(injector.injectMissingPathAttribute(route));
 		
+		if(withdrawals.size() > 0 || additions.size() > 0)
+			target.updateRoutes(withdrawals, additions);
+	}
+
+	/**
+	 * The transported routes carry the ribID of the source RIB, thus the target RIB can invalidate all routes 
+	 * transported from the source RIB in one step.
+	 * 
+	 * @see org.bgp4j.rib.RoutingEventListener#routesInvalidated(org.bgp4j.rib.RoutesInvalidated)
+	 */
+	@Override
+	public void routesInvalidated(RoutesInvalidated event) {
+		if(target != null)
+			target.invalidateRoutes(event.getRibID());
+	}
+
+	/**
+	 * @return <code>true</code> if any filter matches the route, thus the route must not be transported
+	 */
+	private boolean isFiltered(Route route) {
 		for(RoutingFilter filter : filters) {
-			match |= filter.matchFilter(event.getRoute());
-			
-			if(match)
-				break;
+			if(filter.matchFilter(route))
+				return true;
 		}
 		
-		if(!match)
-			target.withdrawRoute(event.getRoute());
+		return false;
 	}
-
+	
 	/**
 	 * @param target the target to set
 	 */
@@ -21,6 +21,8 @@ import org.slf4j.Logger;
 public class RoutingProcessor {
 	private @Inject Instance<RoutingInstance> instanceProvider;
 	private @Inject Logger log;
+	private @Inject LocalRoutingProcessor localRoutingProcessor;
+	private boolean localRibEnabled;
 
 	private List<RoutingInstance> instances = new LinkedList<RoutingInstance>();
 	
@@ -33,9 +35,16 @@ public class RoutingProcessor {
 		}
 		
 		instances = Collections.unmodifiableList(instances);
+		localRibEnabled = configuration.isLocalRibEnabled();
 	}
 	
 	public void startService() {
+		if(localRibEnabled) {
+			log.info("Starting Loc-RIB decision process");
+			
+			localRoutingProcessor.startService();
+		}
+		
 		for(RoutingInstance instance : instances) {
 			log.info("Starting routing instance between " + instance.getFirstPeerName() + " and " + instance.getSecondPeerName()); 
 			
@@ -50,6 +59,12 @@ public class RoutingProcessor {
 	}
 
 	public void stopService() {
+		if(localRibEnabled) {
+			log.info("Stopping Loc-RIB decision process");
+			
+			localRoutingProcessor.stopService();
+		}
+		
 		for(RoutingInstance instance : instances) {
 			log.info("Stopping routing instance between " + instance.getFirstPeerName() + " and " + instance.getSecondPeerName()); 
 			
@@ -0,0 +1,488 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * File: org.bgp4j.rib.IPv4KeyCodecTest.java
+ */
+package org.bgp4j.rib;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.bgp4j.net.AddressFamily;
+import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.net.IPv4PrefixKey;
+import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.PackedPrefixList;
+import org.bgp4j.net.attributes.LocalPrefPathAttribute;
+import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.rib.RoutingTreeTest.RecordingNodeVisitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the Patricia trie keyed by the IPv4 key codec behaves exactly like the Patricia trie keyed by the NLRI
+ * prefix octets, including the visitor ordering.
+ *
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class IPv4KeyCodecTest {
+
+	@Before
+	public void before() {
+		tree = new PatriciaRoutingTree(IPv4KeyCodec.INSTANCE);
+		attrs1 = new HashSet<PathAttribute>();
+		attrs1.add(new LocalPrefPathAttribute(100));
+
+		attrs2 = new HashSet<PathAttribute>();
+		attrs2.add(new LocalPrefPathAttribute(200));
+	}
+
+	@After
+	public void after() {
+		tree = null;
+		attrs1 = null;
+		attrs2 = null;
+	}
+
+	private PatriciaRoutingTree tree;
+	private Collection<PathAttribute> attrs1;
+	private Collection<PathAttribute> attrs2;
+
+	@Test
+	public void testAddAndRemoveDefaultRoute() {
+		NetworkLayerReachabilityInformation nlri = new NetworkLayerReachabilityInformation(0, null); // default route prefix
+
+		Assert.assertTrue(tree.addRoute(new Route(null, nlri, attrs1, null)));
+		Assert.assertEquals(nlri, tree.lookupRoute(nlri).getRoute().getNlri());
+		Assert.assertEquals(attrs1, tree.lookupRoute(nlri).getRoute().getPathAttributes());
+
+		Assert.assertTrue(tree.withdrawRoute(new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, nlri, null, null)));
+		Assert.assertFalse(tree.withdrawRoute(new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, nlri, null, null)));
+		Assert.assertNull(tree.lookupRoute(nlri));
+		Assert.assertEquals(0, tree.getCounters().getNumberOfPrefixes());
+	}
+
+	@Test
+	public void testAddSingleNodeReplacePathAttributes() {
+		NetworkLayerReachabilityInformation nlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04 }); // prefix 192.168.4/24
+
+		Assert.assertTrue(tree.addRoute(new Route(null, nlri, attrs1, null)));
+		Assert.assertTrue(tree.addRoute(new Route(null, nlri, attrs2, null)));
+
+		RecordingNodeVisitor visitor = new RecordingNodeVisitor();
+
+		tree.visitTree(visitor);
+
+		Assert.assertEquals(1, tree.getCounters().getNumberOfPrefixes());
+		Assert.assertEquals(1, visitor.getRecords().size());
+		Assert.assertEquals(attrs2, visitor.getRecords().get(0).getPathAttributes());
+	}
+
+	@Test
+	public void testLookupInexactMatch() {
+		NetworkLayerReachabilityInformation lessNlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04 }); // prefix 192.168.4/24
+		NetworkLayerReachabilityInformation moreNlri = new NetworkLayerReachabilityInformation(28,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x10 }); // prefix 192.168.4.16/28
+		NetworkLayerReachabilityInformation lookupNlri = new NetworkLayerReachabilityInformation(32,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x11 }); // host 192.168.4.17
+		NetworkLayerReachabilityInformation otherNlri = new NetworkLayerReachabilityInformation(32,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x21 }); // host 192.168.4.33
+		NetworkLayerReachabilityInformation noMatchNlri = new NetworkLayerReachabilityInformation(24,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x05 }); // prefix 192.168.5.0/24
+
+		Assert.assertTrue(tree.addRoute(new Route(null, lessNlri, attrs1, null)));
+		Assert.assertTrue(tree.addRoute(new Route(null, moreNlri, attrs2, null)));
+
+		Assert.assertEquals(moreNlri, tree.lookupRoute(lookupNlri).getRoute().getNlri());
+		Assert.assertEquals(lessNlri, tree.lookupRoute(otherNlri).getRoute().getNlri());
+		Assert.assertNull(tree.lookupRoute(noMatchNlri));
+	}
+
+	@Test
+	public void testVisitNodes() {
+		NetworkLayerReachabilityInformation lessNlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04 }); // prefix 192.168.4/24
+		NetworkLayerReachabilityInformation moreNlri1 = new NetworkLayerReachabilityInformation(28,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x10 }); // prefix 192.168.4.16/28
+		NetworkLayerReachabilityInformation moreNlri2 = new NetworkLayerReachabilityInformation(28,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x20 }); // prefix 192.168.4.32/28
+		RecordingNodeVisitor visitor = new RecordingNodeVisitor();
+
+		Assert.assertTrue(tree.addRoute(new Route(null, moreNlri2, attrs2, null)));
+		Assert.assertTrue(tree.addRoute(new Route(null, moreNlri1, attrs2, null)));
+		Assert.assertTrue(tree.addRoute(new Route(null, lessNlri, attrs1, null)));
+
+		tree.visitTree(visitor);
+
+		Iterator<Route> it = visitor.getRecords().iterator();
+
+		Assert.assertEquals(new Route(null, lessNlri, attrs1, null), it.next());
+		Assert.assertEquals(new Route(null, moreNlri1, attrs2, null), it.next());
+		Assert.assertEquals(new Route(null, moreNlri2, attrs2, null), it.next());
+		Assert.assertFalse(it.hasNext());
+	}
+
+	@Test
+	public void testSnapshotIsolatedFromModifications() {
+		NetworkLayerReachabilityInformation lessNlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04 }); // prefix 192.168.4/24
+		NetworkLayerReachabilityInformation moreNlri = new NetworkLayerReachabilityInformation(28,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x10 }); // prefix 192.168.4.16/28
+
+		Assert.assertTrue(tree.addRoute(new Route(null, lessNlri, attrs1, null)));
+
+		PrefixTree snapshot = tree.snapshot();
+
+		Assert.assertTrue(tree.addRoute(new Route(null, moreNlri, attrs2, null)));
+		Assert.assertTrue(tree.addRoute(new Route(null, lessNlri, attrs2, null)));
+
+		Assert.assertEquals(lessNlri, snapshot.lookupRoute(moreNlri).getRoute().getNlri());
+		Assert.assertEquals(attrs1, snapshot.lookupRoute(lessNlri).getRoute().getPathAttributes());
+		Assert.assertEquals(moreNlri, tree.lookupRoute(moreNlri).getRoute().getNlri());
+		Assert.assertEquals(attrs2, tree.lookupRoute(lessNlri).getRoute().getPathAttributes());
+
+		Assert.assertTrue(tree.withdrawRoute(new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, lessNlri, null, null)));
+
+		RecordingNodeVisitor visitor = new RecordingNodeVisitor();
+
+		snapshot.visitTree(visitor);
+
+		Assert.assertEquals(1, visitor.getRecords().size());
+		Assert.assertEquals(lessNlri, visitor.getRecords().get(0).getNlri());
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void testSnapshotReadOnly() {
+		tree.snapshot().addRoute(new Route(null, new NetworkLayerReachabilityInformation(0, null), attrs1, null));
+	}
+
+	/**
+	 * A writer must be able to modify the tree while a visit is in progress. The visit sees the tree as it was
+	 * when the visit started.
+	 */
+	@Test
+	public void testVisitDoesNotBlockWriter() throws Exception {
+		final NetworkLayerReachabilityInformation lessNlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04 }); // prefix 192.168.4/24
+		final NetworkLayerReachabilityInformation moreNlri = new NetworkLayerReachabilityInformation(28,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x10 }); // prefix 192.168.4.16/28
+		final List<Route> visited = new LinkedList<Route>();
+
+		Assert.assertTrue(tree.addRoute(new Route(null, lessNlri, attrs1, null)));
+
+		tree.visitTree(new RoutingTreeVisitor() {
+
+			@Override
+			public void visitRouteTreeNode(Route route) {
+				Thread writer = new Thread(new Runnable() {
+
+					@Override
+					public void run() {
+						tree.addRoute(new Route(null, moreNlri, attrs2, null));
+					}
+				});
+
+				writer.start();
+				try {
+					writer.join(5000);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				Assert.assertFalse(writer.isAlive());
+
+				visited.add(route);
+			}
+		});
+
+		Assert.assertEquals(1, visited.size());
+		Assert.assertEquals(moreNlri, tree.lookupRoute(moreNlri).getRoute().getNlri());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testRejectNonIPv4Prefix() {
+		tree.addRoute(new Route(null, new NetworkLayerReachabilityInformation(48, new byte[] { 0x20, 0x01, 0x0d, (byte)0xb8, 0x00, 0x01 }), attrs1, null));
+	}
+
+	@Test
+	public void testBatchWithInvalidPrefixLeavesTreeUnchanged() {
+		NetworkLayerReachabilityInformation lessNlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04 }); // prefix 192.168.4/24
+		List<Route> withdrawn = new LinkedList<Route>();
+		List<Route> added = new LinkedList<Route>();
+
+		Assert.assertTrue(tree.addRoute(new Route(null, lessNlri, attrs1, null)));
+
+		try {
+			tree.updateRoutes(Arrays.asList(new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, lessNlri, null, null)),
+					Arrays.asList(new Route(null, new NetworkLayerReachabilityInformation(48, new byte[] { 0x20, 0x01, 0x0d, (byte)0xb8, 0x00, 0x01 }), attrs1, null)),
+					withdrawn, added);
+			Assert.fail();
+		} catch(IllegalArgumentException e) {
+		}
+
+		Assert.assertEquals(0, withdrawn.size());
+		Assert.assertEquals(0, added.size());
+		Assert.assertEquals(lessNlri, tree.lookupRoute(lessNlri).getRoute().getNlri());
+		Assert.assertEquals(1, tree.getCounters().getNumberOfPrefixes());
+	}
+
+	/**
+	 * Apply random batches to the IPv4 keyed trie and the same operations one by one to the octet keyed trie. Both trees
+	 * must report the same withdrawals and end up in the same state.
+	 */
+	@Test
+	public void testBatchSameAsSingleOperations() {
+		PatriciaRoutingTree patricia = new PatriciaRoutingTree(BitStringKeyCodec.INSTANCE);
+		Random random = new Random(4711);
+		List<NetworkLayerReachabilityInformation> held = new LinkedList<NetworkLayerReachabilityInformation>();
+
+		for(int i=0; i<200; i++) {
+			List<Route> withdrawals = new LinkedList<Route>();
+			List<Route> additions = new LinkedList<Route>();
+			List<Route> expectedWithdrawn = new LinkedList<Route>();
+			List<Route> withdrawn = new LinkedList<Route>();
+			List<Route> added = new LinkedList<Route>();
+
+			for(int j=random.nextInt(10); j>0; j--) {
+				NetworkLayerReachabilityInformation nlri = (held.size() > 0 && random.nextBoolean()) ? held.get(random.nextInt(held.size())) : randomNlri(random);
+
+				withdrawals.add(new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, nlri, null, null));
+			}
+			for(int j=random.nextInt(20); j>0; j--)
+				additions.add(new Route(null, randomNlri(random), random.nextBoolean() ? attrs1 : attrs2, null));
+
+			for(Route route : withdrawals) {
+				if(patricia.withdrawRoute(route)) {
+					expectedWithdrawn.add(route);
+					held.remove(route.getNlri());
+				}
+			}
+			for(Route route : additions) {
+				patricia.addRoute(route);
+				if(!held.contains(route.getNlri()))
+					held.add(route.getNlri());
+			}
+
+			tree.updateRoutes(withdrawals, additions, withdrawn, added);
+
+			Assert.assertEquals(expectedWithdrawn, withdrawn);
+			Assert.assertEquals(additions, added);
+			Assert.assertEquals(held.size(), tree.getCounters().getNumberOfPrefixes());
+		}
+
+		assertSameVisitorOrder(patricia, tree);
+		Assert.assertTrue(Arrays.equals(patricia.getCounters().getHistogram(), tree.getCounters().getHistogram()));
+	}
+
+	/**
+	 * Apply batches with packed withdrawals to the IPv4 keyed trie, which withdraws by the packed keys, and to the 
+	 * octet keyed trie and the hierarchical tree, which convert the packed prefixes. The routes held in the tree are 
+	 * reported as withdrawn.
+	 */
+	@Test
+	public void testPackedBatchSameAsSingleOperations() {
+		PatriciaRoutingTree patricia = new PatriciaRoutingTree(BitStringKeyCodec.INSTANCE);
+		PrefixTree[] batched = new PrefixTree[] { tree, new PatriciaRoutingTree(BitStringKeyCodec.INSTANCE), new RoutingTree() };
+		Random random = new Random(1213);
+		List<NetworkLayerReachabilityInformation> held = new LinkedList<NetworkLayerReachabilityInformation>();
+
+		for(int i=0; i<200; i++) {
+			PackedPrefixList withdrawals = new PackedPrefixList(AddressFamily.IPv4);
+			List<Route> additions = new LinkedList<Route>();
+			List<Route> expectedWithdrawn = new LinkedList<Route>();
+
+			for(int j=random.nextInt(10); j>0; j--) {
+				NetworkLayerReachabilityInformation nlri = (held.size() > 0 && random.nextBoolean()) ? held.get(random.nextInt(held.size())) : randomNlri(random);
+				long key = IPv4PrefixKey.fromNLRI(nlri);
+
+				withdrawals.addIPv4(IPv4PrefixKey.address(key), IPv4PrefixKey.prefixLength(key));
+			}
+			for(int j=random.nextInt(20); j>0; j--)
+				additions.add(new Route(null, randomNlri(random), random.nextBoolean() ? attrs1 : attrs2, null));
+
+			for(int j=0; j<withdrawals.size(); j++) {
+				NetworkLayerReachabilityInformation nlri = withdrawals.toNLRI(j);
+				LookupResult result = patricia.lookupRoute(nlri);
+
+				if(result != null && result.getRoute().getNlri().equals(nlri)) {
+					patricia.withdrawRoute(result.getRoute());
+					expectedWithdrawn.add(result.getRoute());
+					held.remove(nlri);
+				}
+			}
+			for(Route route : additions) {
+				patricia.addRoute(route);
+				if(!held.contains(route.getNlri()))
+					held.add(route.getNlri());
+			}
+
+			for(PrefixTree prefixTree : batched) {
+				List<Route> withdrawn = new LinkedList<Route>();
+				List<Route> added = new LinkedList<Route>();
+
+				prefixTree.updateRoutes(withdrawals, additions, withdrawn, added);
+
+				Assert.assertEquals(expectedWithdrawn.size(), withdrawn.size());
+				for(int j=0; j<withdrawn.size(); j++)
+					Assert.assertSame(expectedWithdrawn.get(j), withdrawn.get(j));
+				Assert.assertEquals(additions, added);
+				Assert.assertEquals(held.size(), prefixTree.getCounters().getNumberOfPrefixes());
+			}
+		}
+
+		for(PrefixTree prefixTree : batched)
+			assertSameVisitorOrder(patricia, prefixTree);
+	}
+
+	/**
+	 * Feed the same random sequence of additions and withdrawals into the IPv4 keyed trie and the octet keyed trie and
+	 * compare the visitor output and lookup results. The prefixes cover the whole address range to exercise the
+	 * signed octet ordering of sibling routes and the table growth.
+	 */
+	@Test
+	public void testSameBehaviourAsPatriciaTree() {
+		PatriciaRoutingTree patricia = new PatriciaRoutingTree(BitStringKeyCodec.INSTANCE);
+		Random random = new Random(9173);
+		List<NetworkLayerReachabilityInformation> added = new LinkedList<NetworkLayerReachabilityInformation>();
+
+		for(int i=0; i<5000; i++) {
+			if(added.size() > 0 && random.nextInt(3) == 0) {
+				NetworkLayerReachabilityInformation nlri = added.remove(random.nextInt(added.size()));
+				Route route = new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, nlri, null, null);
+
+				Assert.assertEquals(patricia.withdrawRoute(route), tree.withdrawRoute(route));
+			} else {
+				NetworkLayerReachabilityInformation nlri = randomNlri(random);
+				Route route = new Route(null, nlri, random.nextBoolean() ? attrs1 : attrs2, null);
+
+				Assert.assertEquals(patricia.addRoute(route), tree.addRoute(route));
+				if(!added.contains(nlri))
+					added.add(nlri);
+			}
+
+			if(i % 250 == 0)
+				assertSameVisitorOrder(patricia, tree);
+
+			NetworkLayerReachabilityInformation lookup = randomNlri(random);
+			LookupResult expected = patricia.lookupRoute(lookup);
+			LookupResult actual = tree.lookupRoute(lookup);
+
+			if(expected == null)
+				Assert.assertNull(actual);
+			else
+				Assert.assertEquals(expected.getRoute().getNlri(), actual.getRoute().getNlri());
+		}
+
+		Assert.assertEquals(added.size(), tree.getCounters().getNumberOfPrefixes());
+		Assert.assertEquals(added.size(), patricia.getCounters().getNumberOfPrefixes());
+		Assert.assertTrue(Arrays.equals(patricia.getCounters().getHistogram(), tree.getCounters().getHistogram()));
+		assertSameVisitorOrder(patricia, tree);
+	}
+
+	private void assertSameVisitorOrder(PrefixTree expected, PrefixTree actual) {
+		RecordingNodeVisitor expectedVisitor = new RecordingNodeVisitor();
+		RecordingNodeVisitor actualVisitor = new RecordingNodeVisitor();
+
+		expected.visitTree(expectedVisitor);
+		actual.visitTree(actualVisitor);
+
+		Assert.assertEquals(expectedVisitor.getRecords().size(), actualVisitor.getRecords().size());
+
+		Iterator<Route> eit = expectedVisitor.getRecords().iterator();
+		Iterator<Route> ait = actualVisitor.getRecords().iterator();
+
+		while(eit.hasNext()) {
+			Route expectedRoute = eit.next();
+			Route actualRoute = ait.next();
+
+			Assert.assertEquals(expectedRoute.getNlri(), actualRoute.getNlri());
+			Assert.assertEquals(expectedRoute.getPathAttributes(), actualRoute.getPathAttributes());
+		}
+	}
+
+	/**
+	 * build a random prefix. The first octet is limited to a few values spread over the signed range
+	 * so that prefixes nest frequently
+	 */
+	private NetworkLayerReachabilityInformation randomNlri(Random random) {
+		int[] firstOctets = new int[] { 0x0a, 0x7f, 0x80, 0xc0 };
+		int prefixLength = random.nextInt(33);
+		int address = (firstOctets[random.nextInt(firstOctets.length)] << 24) | (random.nextInt() & 0x00f0ff0f);
+
+		return IPv4PrefixKey.toNLRI(IPv4PrefixKey.pack(address, prefixLength));
+	}
+
+	@Test
+	public void testLookupAddress() {
+		NetworkLayerReachabilityInformation defaultNlri = new NetworkLayerReachabilityInformation(0, null);
+		NetworkLayerReachabilityInformation lessNlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04 }); // prefix 192.168.4/24
+		NetworkLayerReachabilityInformation moreNlri = new NetworkLayerReachabilityInformation(28,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x10 }); // prefix 192.168.4.16/28
+
+		Assert.assertNull(tree.lookupAddress(0xc0a80411L << 32, 0, 32));
+
+		tree.addRoute(new Route(null, lessNlri, attrs1, null));
+		tree.addRoute(new Route(null, moreNlri, attrs2, null));
+
+		Assert.assertEquals(moreNlri, tree.lookupAddress(0xc0a80411L << 32, 0, 32).getNlri());
+		Assert.assertEquals(lessNlri, tree.lookupAddress(0xc0a80421L << 32, 0, 32).getNlri());
+		Assert.assertNull(tree.lookupAddress(0xc0a80511L << 32, 0, 32));
+
+		tree.addRoute(new Route(null, defaultNlri, attrs1, null));
+
+		Assert.assertEquals(defaultNlri, tree.lookupAddress(0xc0a80511L << 32, 0, 32).getNlri());
+	}
+
+	/**
+	 * The address lookup must yield the same route as the NLRI lookup of the host prefix in both trie implementations
+	 */
+	@Test
+	public void testLookupAddressSameAsHostPrefixLookup() {
+		PatriciaRoutingTree patricia = new PatriciaRoutingTree(BitStringKeyCodec.INSTANCE);
+		Random random = new Random(815);
+
+		for(int i=0; i<2000; i++) {
+			Route route = new Route(null, randomNlri(random), attrs1, null);
+
+			tree.addRoute(route);
+			patricia.addRoute(route);
+		}
+
+		for(int i=0; i<5000; i++) {
+			NetworkLayerReachabilityInformation host = randomNlri(random);
+			int address = IPv4PrefixKey.address(IPv4PrefixKey.fromNLRI(host));
+
+			host = IPv4PrefixKey.toNLRI(IPv4PrefixKey.pack(address, 32));
+
+			LookupResult expected = tree.lookupRoute(host);
+			Route actual = tree.lookupAddress(((long)address) << 32, 0, 32);
+			Route actualPatricia = patricia.lookupAddress(((long)address) << 32, 0, 32);
+
+			if(expected == null) {
+				Assert.assertNull(actual);
+				Assert.assertNull(actualPatricia);
+			} else {
+				Assert.assertSame(expected.getRoute(), actual);
+				Assert.assertSame(expected.getRoute(), actualPatricia);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,151 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * 
+ * File: org.bgp4j.rib.LookupBenchmark.java 
+ */
+package org.bgp4j.rib;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.net.IPv4PrefixKey;
+
+/**
+ * Measures the longest prefix match throughput of the address lookup of the IPv4 capable routing trees on a large 
+ * table. The table is made up of prefixes with lengths between 8 and 24 bits, most of them /24 prefixes. Three 
+ * quarters of the looked up addresses fall into a prefix of the table.
+ * 
+ * The benchmark is not part of the unit tests. Run it from the test class path with
+ * 
+ * <pre>
+ * java -Xmx2g -cp &lt;class path&gt; org.bgp4j.rib.LookupBenchmark [number of prefixes] [number of lookups]
+ * </pre>
+ * 
+ * The defaults are 1000000 prefixes and 10000000 lookups per round. The number of bytes allocated per lookup is 
+ * reported if the JVM supports measuring the thread allocation.
+ * 
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class LookupBenchmark {
+
+	private static final int DEFAULT_PREFIXES = 1000000;
+	private static final int DEFAULT_LOOKUPS = 10000000;
+	private static final int LOAD_BATCH_SIZE = 10000;
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int MEASURED_ROUNDS = 5;
+	
+	// sink for the lookup results, prevents the JIT from eliminating the lookups
+	private static long matches;
+	
+	public static void main(String[] args) {
+		int numberOfPrefixes = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PREFIXES;
+		int numberOfLookups = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_LOOKUPS;
+		Random random = new Random(4711);
+		List<Route> routes = new ArrayList<Route>(numberOfPrefixes);
+		int[] addresses = new int[numberOfLookups];
+		
+		for(int i=0; i<numberOfPrefixes; i++)
+			routes.add(new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, IPv4PrefixKey.toNLRI(IPv4PrefixKey.pack(random.nextInt(), randomPrefixLength(random))), null, null));
+		
+		for(int i=0; i<numberOfLookups; i++) {
+			if(random.nextInt(4) == 0) {
+				addresses[i] = random.nextInt();
+			} else {
+				long key = IPv4PrefixKey.fromNLRI(routes.get(random.nextInt(routes.size())).getNlri());
+				
+				addresses[i] = IPv4PrefixKey.address(key) | (random.nextInt() & ~IPv4PrefixKey.mask(IPv4PrefixKey.prefixLength(key)));
+			}
+		}
+		
+		benchmark("IPV4_PACKED", new PatriciaRoutingTree(IPv4KeyCodec.INSTANCE), routes, addresses);
+		benchmark("PATRICIA", new PatriciaRoutingTree(BitStringKeyCodec.INSTANCE), routes, addresses);
+		
+		System.out.println("matches: " + matches);
+	}
+	
+	/**
+	 * @return a prefix length following roughly the distribution found in the Internet routing table
+	 */
+	private static int randomPrefixLength(Random random) {
+		int selector = random.nextInt(100);
+		
+		if(selector < 60)
+			return 24;
+		else if(selector < 95)
+			return 16 + random.nextInt(8);
+		else
+			return 8 + random.nextInt(8);
+	}
+	
+	private static void benchmark(String name, PrefixTree tree, List<Route> routes, int[] addresses) {
+		long start = System.nanoTime();
+		
+		for(int i=0; i<routes.size(); i += LOAD_BATCH_SIZE) {
+			tree.updateRoutes(Collections.<Route>emptyList(), routes.subList(i, Math.min(i + LOAD_BATCH_SIZE, routes.size())), 
+					new ArrayList<Route>(), new ArrayList<Route>());
+		}
+		
+		System.out.println(name + ": loaded " + routes.size() + " prefixes in " + ((System.nanoTime() - start) / 1000000) + "ms");
+
+		for(int round=0; round<WARMUP_ROUNDS; round++)
+			lookup(tree, addresses);
+		
+		for(int round=0; round<MEASURED_ROUNDS; round++) {
+			long allocatedBefore = allocatedBytes();
+			long elapsed = lookup(tree, addresses);
+			double allocated = (allocatedBefore < 0) ? Double.NaN : (double)(allocatedBytes() - allocatedBefore) / addresses.length;
+			
+			System.out.println(String.format("%s: round %d, %.2f million lookups/s, %.3f bytes allocated/lookup", 
+					name, round, (addresses.length * 1000.0) / elapsed, allocated));
+		}
+	}
+	
+	/**
+	 * @return the elapsed time in nanoseconds
+	 */
+	private static long lookup(PrefixTree tree, int[] addresses) {
+		long found = 0;
+		long start = System.nanoTime();
+		
+		for(int address : addresses) {
+			if(tree.lookupAddress(((long)address) << 32, 0L, 32) != null)
+				found++;
+		}
+		
+		long elapsed = System.nanoTime() - start;
+		
+		matches += found;
+		
+		return elapsed;
+	}
+	
+	/**
+	 * @return the number of bytes allocated by the current thread or -1 if the JVM cannot measure the allocation 
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		
+		if(bean instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		
+		return -1;
+	}
+}
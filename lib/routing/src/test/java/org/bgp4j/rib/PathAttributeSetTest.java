@@ -0,0 +1,112 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * File: org.bgp4j.rib.PathAttributeSetTest.java
+ */
+package org.bgp4j.rib;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.Origin;
+import org.bgp4j.net.attributes.LocalPrefPathAttribute;
+import org.bgp4j.net.attributes.MultiExitDiscPathAttribute;
+import org.bgp4j.net.attributes.OriginPathAttribute;
+import org.bgp4j.net.attributes.PathAttribute;
+import org.junit.Test;
+
+/**
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class PathAttributeSetTest {
+
+	@Test
+	public void testEqualAttributesShareInstance() {
+		List<PathAttribute> first = new LinkedList<PathAttribute>();
+		Set<PathAttribute> second = new HashSet<PathAttribute>();
+
+		first.add(new OriginPathAttribute(Origin.IGP));
+		first.add(new LocalPrefPathAttribute(100));
+		second.add(new LocalPrefPathAttribute(100));
+		second.add(new OriginPathAttribute(Origin.IGP));
+
+		PathAttributeSet set = PathAttributeSet.valueOf(first);
+
+		Assert.assertSame(set, PathAttributeSet.valueOf(second));
+		Assert.assertSame(set, PathAttributeSet.valueOf(set));
+		Assert.assertNotSame(set, PathAttributeSet.valueOf(Arrays.asList((PathAttribute)new LocalPrefPathAttribute(200))));
+		Assert.assertSame(PathAttributeSet.EMPTY, PathAttributeSet.valueOf(null));
+		Assert.assertSame(PathAttributeSet.EMPTY, PathAttributeSet.valueOf(new LinkedList<PathAttribute>()));
+	}
+
+	@Test
+	public void testSetSemantics() {
+		Set<PathAttribute> attrs = new HashSet<PathAttribute>();
+
+		attrs.add(new LocalPrefPathAttribute(100));
+		attrs.add(new MultiExitDiscPathAttribute(10));
+
+		PathAttributeSet set = PathAttributeSet.valueOf(attrs);
+
+		Assert.assertEquals(2, set.size());
+		Assert.assertEquals(attrs, set);
+		Assert.assertEquals(set, attrs);
+		Assert.assertEquals(attrs.hashCode(), set.hashCode());
+		Assert.assertTrue(set.contains(new LocalPrefPathAttribute(100)));
+		Assert.assertFalse(set.contains(new LocalPrefPathAttribute(200)));
+		Assert.assertFalse(set.contains("foo"));
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void testImmutable() {
+		PathAttributeSet.valueOf(Arrays.asList((PathAttribute)new LocalPrefPathAttribute(100))).add(new LocalPrefPathAttribute(200));
+	}
+
+	@Test
+	public void testRoutesShareAttributes() {
+		Collection<PathAttribute> attrs = new HashSet<PathAttribute>();
+		Collection<PathAttribute> otherAttrs = new LinkedList<PathAttribute>();
+
+		attrs.add(new LocalPrefPathAttribute(100));
+		otherAttrs.add(new LocalPrefPathAttribute(100));
+
+		Route first = new Route(null, new NetworkLayerReachabilityInformation(8, new byte[] { 0x0a }), attrs, null);
+		Route second = new Route(null, new NetworkLayerReachabilityInformation(8, new byte[] { 0x0b }), otherAttrs, null);
+
+		Assert.assertSame(first.getPathAttributes(), second.getPathAttributes());
+	}
+
+	@Test
+	public void testUnreferencedSetIsEvicted() throws Exception {
+		WeakReference<PathAttributeSet> ref = new WeakReference<PathAttributeSet>(
+				PathAttributeSet.valueOf(Arrays.asList((PathAttribute)new LocalPrefPathAttribute(47114711))));
+
+		for(int i=0; i<50 && ref.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+
+		Assert.assertNull(ref.get());
+	}
+}
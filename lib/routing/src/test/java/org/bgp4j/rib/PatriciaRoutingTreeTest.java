@@ -0,0 +1,451 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * File: org.bgp4j.rib.PatriciaRoutingTreeTest.java
+ */
+package org.bgp4j.rib;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.net.InetAddressNextHop;
+import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.attributes.LocalPrefPathAttribute;
+import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.rib.RoutingTreeTest.RecordingNodeVisitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the Patricia trie behaves exactly like the hierarchical routing tree, including the visitor ordering.
+ *
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class PatriciaRoutingTreeTest {
+
+	@Before
+	public void before() {
+		tree = new PatriciaRoutingTree(BitStringKeyCodec.INSTANCE);
+		attrs1 = new HashSet<PathAttribute>();
+		attrs1.add(new LocalPrefPathAttribute(100));
+
+		attrs2 = new HashSet<PathAttribute>();
+		attrs2.add(new LocalPrefPathAttribute(200));
+	}
+
+	@After
+	public void after() {
+		tree = null;
+		attrs1 = null;
+		attrs2 = null;
+	}
+
+	private PatriciaRoutingTree tree;
+	private Collection<PathAttribute> attrs1;
+	private Collection<PathAttribute> attrs2;
+
+	@Test
+	public void testCommonPrefixLength() {
+		Assert.assertEquals(0, BitStringKeyCodec.commonPrefixLength(new byte[] { (byte)0x80 }, 8, new byte[] { 0 }, 8));
+		Assert.assertEquals(8, BitStringKeyCodec.commonPrefixLength(new byte[] { (byte)0xc0 }, 8, new byte[] { (byte)0xc0, 0x01 }, 16));
+		Assert.assertEquals(15, BitStringKeyCodec.commonPrefixLength(new byte[] { (byte)0xc0, 0x00 }, 16, new byte[] { (byte)0xc0, 0x01 }, 16));
+		Assert.assertEquals(4, BitStringKeyCodec.commonPrefixLength(new byte[] { (byte)0xc0 }, 4, new byte[] { (byte)0xcf }, 8));
+		Assert.assertEquals(0, BitStringKeyCodec.commonPrefixLength(new byte[0], 0, new byte[] { (byte)0xcf }, 8));
+	}
+
+	@Test
+	public void testAddSingleNode() {
+		NetworkLayerReachabilityInformation nlri = new NetworkLayerReachabilityInformation(0, null); // default route prefix
+
+		Assert.assertTrue(tree.addRoute(new Route(null, nlri, attrs1, null)));
+		Assert.assertEquals(nlri, tree.getRootNode().getRoute().getNlri());
+
+		LookupResult result = tree.lookupRoute(nlri);
+
+		Assert.assertNotNull(result);
+		Assert.assertEquals(nlri, result.getRoute().getNlri());
+		Assert.assertEquals(attrs1, result.getRoute().getPathAttributes());
+	}
+
+	@Test
+	public void testAddSingleNodeReplacePathAttributes() {
+		NetworkLayerReachabilityInformation nlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04 }); // prefix 192.168.4/24
+
+		Assert.assertTrue(tree.addRoute(new Route(null, nlri, attrs1, null)));
+		Assert.assertTrue(tree.addRoute(new Route(null, nlri, attrs2, null)));
+
+		RecordingNodeVisitor visitor = new RecordingNodeVisitor();
+
+		tree.visitTree(visitor);
+
+		Assert.assertEquals(1, visitor.getRecords().size());
+		Assert.assertEquals(attrs2, visitor.getRecords().get(0).getPathAttributes());
+	}
+
+	@Test
+	public void testAddAndRemoveSingleNode() {
+		NetworkLayerReachabilityInformation nlri = new NetworkLayerReachabilityInformation(0, null); // default route prefix
+
+		Assert.assertTrue(tree.addRoute(new Route(null, nlri, attrs1, null)));
+		Assert.assertTrue(tree.withdrawRoute(new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, nlri, null, null)));
+		Assert.assertFalse(tree.withdrawRoute(new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, nlri, null, null)));
+		Assert.assertNull(tree.lookupRoute(nlri));
+	}
+
+	@Test
+	public void testRemoveNotExisting() {
+		NetworkLayerReachabilityInformation lessNlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04 }); // prefix 192.168.4/24
+		NetworkLayerReachabilityInformation moreNlri = new NetworkLayerReachabilityInformation(28,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x40 }); // prefix 192.168.4.64/28
+		NetworkLayerReachabilityInformation notExistingNlri = new NetworkLayerReachabilityInformation(28,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x80 }); // prefix 192.168.4.128/28
+		NetworkLayerReachabilityInformation glueNlri = new NetworkLayerReachabilityInformation(25,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x00 }); // prefix 192.168.4.0/25
+
+		Assert.assertTrue(tree.addRoute(new Route(null, lessNlri, attrs1, null)));
+		Assert.assertTrue(tree.addRoute(new Route(null, moreNlri, attrs2, null)));
+
+		Assert.assertFalse(tree.withdrawRoute(new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, notExistingNlri, null, null)));
+		Assert.assertFalse(tree.withdrawRoute(new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, glueNlri, null, null)));
+
+		Assert.assertEquals(moreNlri, tree.lookupRoute(moreNlri).getRoute().getNlri());
+		Assert.assertEquals(lessNlri, tree.lookupRoute(notExistingNlri).getRoute().getNlri());
+	}
+
+	@Test
+	public void testLookupExactMatchNextHop() throws Exception {
+		NetworkLayerReachabilityInformation lessNlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04 }); // prefix 192.168.4/24
+		NetworkLayerReachabilityInformation moreNlri = new NetworkLayerReachabilityInformation(28,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x40 }); // prefix 192.168.4.64/28
+		InetAddress lessNextHop = InetAddress.getByAddress(new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x01, (byte)0x01 });
+		InetAddress moreNextHop = InetAddress.getByAddress(new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x01, (byte)0x02 });
+
+		Assert.assertTrue(tree.addRoute(new Route(null, lessNlri, attrs1,  new InetAddressNextHop<InetAddress>(lessNextHop))));
+		Assert.assertTrue(tree.addRoute(new Route(null, moreNlri, attrs2,  new InetAddressNextHop<InetAddress>(moreNextHop))));
+
+		LookupResult result = tree.lookupRoute(moreNlri);
+
+		Assert.assertNotNull(result);
+		Assert.assertEquals(moreNlri, result.getRoute().getNlri());
+		Assert.assertEquals(attrs2, result.getRoute().getPathAttributes());
+		Assert.assertEquals(new InetAddressNextHop<InetAddress>(moreNextHop), result.getRoute().getNextHop());
+	}
+
+	@Test
+	public void testLookupInexactMatch() {
+		NetworkLayerReachabilityInformation lessNlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04 }); // prefix 192.168.4/24
+		NetworkLayerReachabilityInformation moreNlri = new NetworkLayerReachabilityInformation(28,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x10 }); // prefix 192.168.4.16/28
+		NetworkLayerReachabilityInformation lookupNlri = new NetworkLayerReachabilityInformation(26,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x00 }); // prefix 192.168.4.0/26
+
+		Assert.assertTrue(tree.addRoute(new Route(null, lessNlri, attrs1, null)));
+		Assert.assertTrue(tree.addRoute(new Route(null, moreNlri, attrs2, null)));
+
+		LookupResult result = tree.lookupRoute(lookupNlri);
+
+		Assert.assertNotNull(result);
+		Assert.assertEquals(lessNlri, result.getRoute().getNlri());
+		Assert.assertEquals(attrs1, result.getRoute().getPathAttributes());
+	}
+
+	@Test
+	public void testLookupNoMatch() {
+		NetworkLayerReachabilityInformation lessNlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04 }); // prefix 192.168.4/24
+		NetworkLayerReachabilityInformation moreNlri = new NetworkLayerReachabilityInformation(28,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x10 }); // prefix 192.168.4.16/28
+		NetworkLayerReachabilityInformation lookupNlri = new NetworkLayerReachabilityInformation(24,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x05 }); // prefix 192.168.5.0/24
+
+		Assert.assertTrue(tree.addRoute(new Route(null, lessNlri, attrs1, null)));
+		Assert.assertTrue(tree.addRoute(new Route(null, moreNlri, attrs2, null)));
+
+		Assert.assertNull(tree.lookupRoute(lookupNlri));
+	}
+
+	@Test
+	public void testVisitNodes() {
+		NetworkLayerReachabilityInformation lessNlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04 }); // prefix 192.168.4/24
+		NetworkLayerReachabilityInformation moreNlri1 = new NetworkLayerReachabilityInformation(28,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x10 }); // prefix 192.168.4.16/28
+		NetworkLayerReachabilityInformation moreNlri2 = new NetworkLayerReachabilityInformation(28,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x20 }); // prefix 192.168.4.32/28
+		RecordingNodeVisitor visitor = new RecordingNodeVisitor();
+
+		Assert.assertTrue(tree.addRoute(new Route(null, moreNlri1, attrs2, null)));
+		Assert.assertTrue(tree.addRoute(new Route(null, lessNlri, attrs1, null)));
+		Assert.assertTrue(tree.addRoute(new Route(null, moreNlri2, attrs2, null)));
+
+		tree.visitTree(visitor);
+
+		Iterator<Route> it = visitor.getRecords().iterator();
+
+		Assert.assertTrue(it.hasNext());
+		Assert.assertEquals(new Route(null, lessNlri, attrs1, null), it.next());
+		Assert.assertTrue(it.hasNext());
+		Assert.assertEquals(new Route(null, moreNlri1, attrs2, null), it.next());
+		Assert.assertTrue(it.hasNext());
+		Assert.assertEquals(new Route(null, moreNlri2, attrs2, null), it.next());
+		Assert.assertFalse(it.hasNext());
+	}
+
+	@Test
+	public void testSnapshotIsolatedFromModifications() {
+		NetworkLayerReachabilityInformation lessNlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04 }); // prefix 192.168.4/24
+		NetworkLayerReachabilityInformation moreNlri = new NetworkLayerReachabilityInformation(28,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x10 }); // prefix 192.168.4.16/28
+
+		Assert.assertTrue(tree.addRoute(new Route(null, lessNlri, attrs1, null)));
+
+		PrefixTree snapshot = tree.snapshot();
+
+		Assert.assertTrue(tree.addRoute(new Route(null, moreNlri, attrs2, null)));
+		Assert.assertTrue(tree.addRoute(new Route(null, lessNlri, attrs2, null)));
+
+		Assert.assertEquals(lessNlri, snapshot.lookupRoute(moreNlri).getRoute().getNlri());
+		Assert.assertEquals(attrs1, snapshot.lookupRoute(lessNlri).getRoute().getPathAttributes());
+		Assert.assertEquals(moreNlri, tree.lookupRoute(moreNlri).getRoute().getNlri());
+		Assert.assertEquals(attrs2, tree.lookupRoute(lessNlri).getRoute().getPathAttributes());
+
+		Assert.assertTrue(tree.withdrawRoute(new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, lessNlri, null, null)));
+
+		RecordingNodeVisitor visitor = new RecordingNodeVisitor();
+
+		snapshot.visitTree(visitor);
+
+		Assert.assertEquals(1, visitor.getRecords().size());
+		Assert.assertEquals(lessNlri, visitor.getRecords().get(0).getNlri());
+	}
+
+	@Test
+	public void testUpdateRoutesBatch() {
+		NetworkLayerReachabilityInformation lessNlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04 }); // prefix 192.168.4/24
+		NetworkLayerReachabilityInformation moreNlri1 = new NetworkLayerReachabilityInformation(28,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x10 }); // prefix 192.168.4.16/28
+		NetworkLayerReachabilityInformation moreNlri2 = new NetworkLayerReachabilityInformation(28,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x20 }); // prefix 192.168.4.32/28
+		List<Route> withdrawn = new LinkedList<Route>();
+		List<Route> added = new LinkedList<Route>();
+
+		Assert.assertTrue(tree.addRoute(new Route(null, lessNlri, attrs1, null)));
+		Assert.assertTrue(tree.addRoute(new Route(null, moreNlri1, attrs1, null)));
+
+		PrefixTree snapshot = tree.snapshot();
+		Route withdrawal1 = new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, moreNlri1, null, null);
+		Route withdrawal2 = new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, moreNlri2, null, null);
+		Route addition1 = new Route(null, moreNlri2, attrs2, null);
+		Route addition2 = new Route(null, lessNlri, attrs2, null);
+
+		tree.updateRoutes(Arrays.asList(withdrawal1, withdrawal2), Arrays.asList(addition1, addition2), withdrawn, added);
+
+		Assert.assertEquals(Arrays.asList(withdrawal1), withdrawn);
+		Assert.assertEquals(Arrays.asList(addition1, addition2), added);
+		Assert.assertEquals(lessNlri, tree.lookupRoute(moreNlri1).getRoute().getNlri());
+		Assert.assertEquals(moreNlri2, tree.lookupRoute(moreNlri2).getRoute().getNlri());
+		Assert.assertEquals(attrs2, tree.lookupRoute(lessNlri).getRoute().getPathAttributes());
+
+		// the state published before the batch is not affected
+		Assert.assertEquals(moreNlri1, snapshot.lookupRoute(moreNlri1).getRoute().getNlri());
+		Assert.assertEquals(lessNlri, snapshot.lookupRoute(moreNlri2).getRoute().getNlri());
+		Assert.assertEquals(attrs1, snapshot.lookupRoute(lessNlri).getRoute().getPathAttributes());
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void testSnapshotReadOnly() {
+		tree.snapshot().addRoute(new Route(null, new NetworkLayerReachabilityInformation(0, null), attrs1, null));
+	}
+
+	/**
+	 * A writer must be able to modify the tree while a visit is in progress. The visit sees the tree as it was
+	 * when the visit started.
+	 */
+	@Test
+	public void testVisitDoesNotBlockWriter() throws Exception {
+		final NetworkLayerReachabilityInformation lessNlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04 }); // prefix 192.168.4/24
+		final NetworkLayerReachabilityInformation moreNlri = new NetworkLayerReachabilityInformation(28,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x10 }); // prefix 192.168.4.16/28
+		final List<Route> visited = new LinkedList<Route>();
+
+		Assert.assertTrue(tree.addRoute(new Route(null, lessNlri, attrs1, null)));
+
+		tree.visitTree(new RoutingTreeVisitor() {
+
+			@Override
+			public void visitRouteTreeNode(Route route) {
+				Thread writer = new Thread(new Runnable() {
+
+					@Override
+					public void run() {
+						tree.addRoute(new Route(null, moreNlri, attrs2, null));
+					}
+				});
+
+				writer.start();
+				try {
+					writer.join(5000);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				Assert.assertFalse(writer.isAlive());
+
+				visited.add(route);
+			}
+		});
+
+		Assert.assertEquals(1, visited.size());
+		Assert.assertEquals(moreNlri, tree.lookupRoute(moreNlri).getRoute().getNlri());
+	}
+
+	/**
+	 * Feed the same random sequence of additions and withdrawals into both tree implementations and compare the
+	 * visitor output and lookup results after each step.
+	 */
+	@Test
+	public void testMigrationFromHierarchicalTree() {
+		RoutingTree hierarchical = new RoutingTree();
+		Random random = new Random(4271);
+		List<NetworkLayerReachabilityInformation> added = new LinkedList<NetworkLayerReachabilityInformation>();
+
+		for(int i=0; i<2000; i++) {
+			if(added.size() > 0 && random.nextInt(3) == 0) {
+				NetworkLayerReachabilityInformation nlri = added.remove(random.nextInt(added.size()));
+				Route route = new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, nlri, null, null);
+
+				Assert.assertEquals(hierarchical.withdrawRoute(route), tree.withdrawRoute(route));
+			} else {
+				NetworkLayerReachabilityInformation nlri = randomNlri(random);
+				Route route = new Route(null, nlri, random.nextBoolean() ? attrs1 : attrs2, null);
+
+				Assert.assertEquals(hierarchical.addRoute(route), tree.addRoute(route));
+				if(!added.contains(nlri))
+					added.add(nlri);
+			}
+
+			if(i % 100 == 0)
+				assertSameVisitorOrder(hierarchical, tree);
+
+			NetworkLayerReachabilityInformation lookup = randomNlri(random);
+			LookupResult expected = hierarchical.lookupRoute(lookup);
+			LookupResult actual = tree.lookupRoute(lookup);
+
+			if(expected == null)
+				Assert.assertNull(actual);
+			else
+				Assert.assertEquals(expected.getRoute().getNlri(), actual.getRoute().getNlri());
+		}
+
+		assertSameVisitorOrder(hierarchical, tree);
+		Assert.assertEquals(added.size(), hierarchical.getCounters().getNumberOfPrefixes());
+		Assert.assertEquals(added.size(), tree.getCounters().getNumberOfPrefixes());
+		Assert.assertTrue(Arrays.equals(hierarchical.getCounters().getHistogram(), tree.getCounters().getHistogram()));
+	}
+
+	private void assertSameVisitorOrder(PrefixTree expected, PrefixTree actual) {
+		RecordingNodeVisitor expectedVisitor = new RecordingNodeVisitor();
+		RecordingNodeVisitor actualVisitor = new RecordingNodeVisitor();
+
+		expected.visitTree(expectedVisitor);
+		actual.visitTree(actualVisitor);
+
+		Assert.assertEquals(expectedVisitor.getRecords().size(), actualVisitor.getRecords().size());
+
+		Iterator<Route> eit = expectedVisitor.getRecords().iterator();
+		Iterator<Route> ait = actualVisitor.getRecords().iterator();
+
+		while(eit.hasNext()) {
+			Route expectedRoute = eit.next();
+			Route actualRoute = ait.next();
+
+			Assert.assertEquals(expectedRoute.getNlri(), actualRoute.getNlri());
+			Assert.assertEquals(expectedRoute.getPathAttributes(), actualRoute.getPathAttributes());
+		}
+	}
+
+	/**
+	 * build a random prefix inside 10.0.0.0/12 so that prefixes nest frequently
+	 */
+	private NetworkLayerReachabilityInformation randomNlri(Random random) {
+		int prefixLength = random.nextInt(25);
+		int address = 0x0a000000 | (random.nextInt() & 0x000fffff);
+		byte[] prefix = new byte[NetworkLayerReachabilityInformation.calculateOctetsForPrefixLength(prefixLength)];
+
+		for(int i=0; i<prefix.length; i++)
+			prefix[i] = (byte)(address >>> (24 - 8*i));
+
+		return new NetworkLayerReachabilityInformation(prefixLength, prefixLength > 0 ? prefix : null);
+	}
+
+	@Test
+	public void testLookupIPv6Address() throws Exception {
+		// 2001:db8::/32, 2001:db8:0:1::/64, 2001:db8:0:1::1/128
+		NetworkLayerReachabilityInformation lessNlri = new NetworkLayerReachabilityInformation(32, new byte[] { 0x20, 0x01, 0x0d, (byte)0xb8 });
+		NetworkLayerReachabilityInformation moreNlri = new NetworkLayerReachabilityInformation(64, new byte[] { 0x20, 0x01, 0x0d, (byte)0xb8, 0, 0, 0, 1 });
+		NetworkLayerReachabilityInformation hostNlri = new NetworkLayerReachabilityInformation(128, 
+				InetAddress.getByName("2001:db8:0:1::1").getAddress());
+
+		tree.addRoute(new Route(null, lessNlri, attrs1, null));
+		tree.addRoute(new Route(null, moreNlri, attrs2, null));
+		tree.addRoute(new Route(null, hostNlri, attrs2, null));
+
+		Assert.assertEquals(hostNlri, tree.lookupAddress(0x20010db800000001L, 1L, 128).getNlri());
+		Assert.assertEquals(moreNlri, tree.lookupAddress(0x20010db800000001L, 2L, 128).getNlri());
+		Assert.assertEquals(lessNlri, tree.lookupAddress(0x20010db800000002L, 1L, 128).getNlri());
+		Assert.assertNull(tree.lookupAddress(0x20010db900000001L, 1L, 128));
+	}
+
+	@Test
+	public void testLookupAddressSameAsHierarchicalTree() {
+		RoutingTree hierarchical = new RoutingTree();
+		Random random = new Random(2342);
+
+		for(int i=0; i<500; i++) {
+			int prefixLength = random.nextInt(129);
+			byte[] prefix = new byte[NetworkLayerReachabilityInformation.calculateOctetsForPrefixLength(prefixLength)];
+
+			random.nextBytes(prefix);
+			if(prefix.length > 0)
+				prefix[0] = (byte)((prefix[0] & 0x0f) | 0x20);
+
+			Route route = new Route(null, new NetworkLayerReachabilityInformation(prefixLength, prefix), attrs1, null);
+
+			tree.addRoute(route);
+			hierarchical.addRoute(route);
+		}
+
+		for(int i=0; i<2000; i++) {
+			long high = (random.nextLong() & 0x0fffffffffffffffL) | 0x2000000000000000L;
+			long low = random.nextLong();
+			Route expected = hierarchical.lookupAddress(high, low, 128);
+			Route actual = tree.lookupAddress(high, low, 128);
+
+			if(expected == null)
+				Assert.assertNull(actual);
+			else
+				Assert.assertEquals(expected.getNlri(), actual.getNlri());
+		}
+	}
+
+}
@@ -17,12 +17,17 @@
  */
 package org.bgp4j.rib;
 
+import java.util.Arrays;
+import java.util.Collections;
+
 import junit.framework.Assert;
 
 import org.bgp4j.net.AddressFamily;
 import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.net.NetworkLayerReachabilityInformation;
 import org.bgp4j.net.RIBSide;
 import org.bgp4j.net.SubsequentAddressFamily;
+import org.bgp4j.net.attributes.PathAttribute;
 import org.bgp4j.weld.WeldTestCaseBase;
 import org.junit.After;
 import org.junit.Before;
@@ -136,4 +141,29 @@ public class PeerRoutingInformationBaseTest extends WeldTestCaseBase {
 		Assert.assertEquals(0, destroyCatcher.ribSize());
 		Assert.assertEquals(0, destroyCatcher.getRIBCreatedCount(new AddressFamilyKey(AddressFamily.IPv4, SubsequentAddressFamily.NLRI_UNICAST_FORWARDING)));
 	}
+	
+	@Test
+	public void testNumberOfPrefixesSummedOverAddressFamilies() {
+		AddressFamilyKey ipv4 = new AddressFamilyKey(AddressFamily.IPv4, SubsequentAddressFamily.NLRI_UNICAST_FORWARDING);
+		AddressFamilyKey ipv6 = new AddressFamilyKey(AddressFamily.IPv6, SubsequentAddressFamily.NLRI_UNICAST_FORWARDING);
+		
+		prib.allocateRoutingInformationBase(RIBSide.Remote, ipv4);
+		prib.allocateRoutingInformationBase(RIBSide.Remote, ipv6);
+		prib.allocateRoutingInformationBase(RIBSide.Local, ipv4);
+		
+		prib.routingBase(RIBSide.Remote, ipv4).addRoutes(Arrays.asList(
+				new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, 0x01 }),
+				new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, 0x02 })), 
+				Collections.<PathAttribute>emptyList(), null);
+		prib.routingBase(RIBSide.Remote, ipv6).addRoutes(Arrays.asList(
+				new NetworkLayerReachabilityInformation(32, new byte[] { 0x20, 0x01, 0x0d, (byte)0xb8 })), 
+				Collections.<PathAttribute>emptyList(), null);
+		
+		Assert.assertEquals(3, prib.getNumberOfPrefixes(RIBSide.Remote));
+		Assert.assertEquals(0, prib.getNumberOfPrefixes(RIBSide.Local));
+		
+		prib.destroyAllRoutingInformationBases();
+
+		Assert.assertEquals(0, prib.getNumberOfPrefixes(RIBSide.Remote));
+	}
 }
@@ -28,6 +28,8 @@ public class RouteEventCatchListener implements RoutingEventListener {
 
 	private List<RouteAdded> routeAddedEvents = new LinkedList<RouteAdded>();
 	private List<RouteWithdrawn> routeWithdrawnEvents = new LinkedList<RouteWithdrawn>();
+	private List<RoutesChanged> routesChangedEvents = new LinkedList<RoutesChanged>();
+	private List<RoutesInvalidated> routesInvalidatedEvents = new LinkedList<RoutesInvalidated>();
 	
 	public void routeAdded(RouteAdded event) {
 		routeAddedEvents.add(event);
@@ -37,6 +39,22 @@ public class RouteEventCatchListener implements RoutingEventListener {
 		routeWithdrawnEvents.add(event);
 	}
 
+	/**
+	 * record the batch and the contained routes as single route events
+	 */
+	public void routesChanged(RoutesChanged event) {
+		routesChangedEvents.add(event);
+		
+		for(Route route : event.getWithdrawnRoutes())
+			routeWithdrawnEvents.add(new RouteWithdrawn(event.getPeerName(), event.getSide(), route));
+		for(Route route : event.getAddedRoutes())
+			routeAddedEvents.add(new RouteAdded(event.getPeerName(), event.getSide(), route));
+	}
+
+	public void routesInvalidated(RoutesInvalidated event) {
+		routesInvalidatedEvents.add(event);
+	}
+
 	/**
 	 * @return the routeAddedEvents
 	 */
@@ -51,8 +69,24 @@ public class RouteEventCatchListener implements RoutingEventListener {
 		return routeWithdrawnEvents;
 	}
 	
+	/**
+	 * @return the routesChangedEvents
+	 */
+	public List<RoutesChanged> getRoutesChangedEvents() {
+		return routesChangedEvents;
+	}
+	
+	/**
+	 * @return the routesInvalidatedEvents
+	 */
+	public List<RoutesInvalidated> getRoutesInvalidatedEvents() {
+		return routesInvalidatedEvents;
+	}
+	
 	public void reset() {
 		routeAddedEvents.clear();
 		routeWithdrawnEvents.clear();
+		routesChangedEvents.clear();
+		routesInvalidatedEvents.clear();
 	}
 }
@@ -32,6 +32,7 @@ public class RouteEventCatcher {
 
 	private List<RouteAdded> routeAddedEvents = new LinkedList<RouteAdded>();
 	private List<RouteWithdrawn> routeWithdrawnEvents = new LinkedList<RouteWithdrawn>();
+	private List<RoutesChanged> routesChangedEvents = new LinkedList<RoutesChanged>();
 	
 	public void routeAdded(@Observes RouteAdded event) {
 		routeAddedEvents.add(event);
@@ -41,6 +42,18 @@ public class RouteEventCatcher {
 		routeWithdrawnEvents.add(event);
 	}
 
+	/**
+	 * record the batch and the contained routes as single route events
+	 */
+	public void routesChanged(@Observes RoutesChanged event) {
+		routesChangedEvents.add(event);
+		
+		for(Route route : event.getWithdrawnRoutes())
+			routeWithdrawnEvents.add(new RouteWithdrawn(event.getPeerName(), event.getSide(), route));
+		for(Route route : event.getAddedRoutes())
+			routeAddedEvents.add(new RouteAdded(event.getPeerName(), event.getSide(), route));
+	}
+
 	/**
 	 * @return the routeAddedEvents
 	 */
@@ -55,8 +68,16 @@ public class RouteEventCatcher {
 		return routeWithdrawnEvents;
 	}
 	
+	/**
+	 * @return the routesChangedEvents
+	 */
+	public List<RoutesChanged> getRoutesChangedEvents() {
+		return routesChangedEvents;
+	}
+	
 	public void reset() {
 		routeAddedEvents.clear();
 		routeWithdrawnEvents.clear();
+		routesChangedEvents.clear();
 	}
 }
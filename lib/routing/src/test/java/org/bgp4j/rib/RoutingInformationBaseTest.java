@@ -24,6 +24,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.UUID;
 
 import junit.framework.Assert;
 
@@ -33,6 +34,7 @@ import org.bgp4j.net.AddressFamily;
 import org.bgp4j.net.AddressFamilyKey;
 import org.bgp4j.net.InetAddressNextHop;
 import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.PackedPrefixList;
 import org.bgp4j.net.RIBSide;
 import org.bgp4j.net.SubsequentAddressFamily;
 import org.bgp4j.net.attributes.PathAttribute;
@@ -318,4 +320,248 @@ public class RoutingInformationBaseTest extends WeldTestCaseBase {
 		Assert.assertFalse(it.hasNext());
 	}
 
+	@Test
+	public void testSnapshotIsolatedFromModifications() {
+		rib.addRoutes(Arrays.asList(LESS_NLRI, MORE_NLRI_1), attrs, null);
+		
+		RoutingInformationBaseSnapshot snapshot = rib.snapshot();
+		
+		rib.addRoutes(Arrays.asList(MORE_NLRI_2), attrs, null);
+		rib.withdrawRoutes(Arrays.asList(MORE_NLRI_1));
+		
+		RecordingNodeVisitor visitor = new RecordingNodeVisitor();
+		
+		snapshot.visitRoutingNodes(visitor);
+
+		Iterator<RecordingNodeVisitor.Record> it = visitor.getRecords().iterator();
+		
+		Assert.assertEquals(new RecordingNodeVisitor.Record(RIB_NAME, RIB_SIDE, new Route(rib.getRibID(), RIB_AFK, LESS_NLRI, attrs, null)), it.next());
+		Assert.assertEquals(new RecordingNodeVisitor.Record(RIB_NAME, RIB_SIDE, new Route(rib.getRibID(), RIB_AFK, MORE_NLRI_1, attrs, null)), it.next());
+		Assert.assertFalse(it.hasNext());
+		
+		Assert.assertEquals(MORE_NLRI_1, snapshot.lookupRoute(MORE_NLRI_1).getRoute().getNlri());
+		Assert.assertEquals(LESS_NLRI, snapshot.lookupRoute(MORE_NLRI_2).getRoute().getNlri());
+		Assert.assertEquals(LESS_NLRI, rib.lookupRoute(MORE_NLRI_1).getRoute().getNlri());
+		Assert.assertEquals(MORE_NLRI_2, rib.lookupRoute(MORE_NLRI_2).getRoute().getNlri());
+		Assert.assertEquals(RIB_AFK, snapshot.getAddressFamilyKey());
+		Assert.assertEquals(rib.getRibID(), snapshot.getRibID());
+	}
+
+	@Test
+	public void testPrefixCounters() {
+		rib.addRoutes(Arrays.asList(LESS_NLRI, MORE_NLRI_1), attrs, null);
+		
+		Assert.assertEquals(2, rib.getNumberOfPrefixes());
+		Assert.assertEquals(1, rib.getNumberOfPrefixes(24));
+		Assert.assertEquals(1, rib.getNumberOfPrefixes(28));
+		Assert.assertEquals(0, rib.getNumberOfPrefixes(32));
+		
+		// replacing a route does not change the counters
+		rib.updateRoutes(Arrays.asList(MORE_NLRI_2), Arrays.asList(LESS_NLRI, MORE_NLRI_1), attrs, null);
+		
+		Assert.assertEquals(2, rib.getNumberOfPrefixes());
+		
+		rib.updateRoutes(Arrays.asList(MORE_NLRI_1), Arrays.asList(MORE_NLRI_2), attrs, null);
+
+		int[] histogram = rib.getPrefixLengthHistogram();
+		
+		Assert.assertEquals(2, rib.getNumberOfPrefixes());
+		Assert.assertEquals(29, histogram.length);
+		Assert.assertEquals(1, histogram[24]);
+		Assert.assertEquals(1, histogram[28]);
+		
+		rib.withdrawRoutes(Arrays.asList(MORE_NLRI_2));
+		
+		Assert.assertEquals(1, rib.getNumberOfPrefixes());
+		Assert.assertEquals(25, rib.getPrefixLengthHistogram().length);
+		
+		rib.destroyRIB();
+		
+		Assert.assertEquals(0, rib.getNumberOfPrefixes());
+		Assert.assertEquals(0, rib.getPrefixLengthHistogram().length);
+	}
+
+	@Test
+	public void testAddThreePrefixOneBatchEvent() {
+		rib.addRoutes(Arrays.asList(MORE_NLRI_1, MORE_NLRI_2, LESS_NLRI), attrs, null);
+		
+		Assert.assertEquals(1, catcher.getRoutesChangedEvents().size());
+		Assert.assertEquals(1, listener.getRoutesChangedEvents().size());
+		
+		RoutesChanged event = catcher.getRoutesChangedEvents().get(0);
+		
+		Assert.assertEquals(RIB_NAME, event.getPeerName());
+		Assert.assertEquals(RIB_SIDE, event.getSide());
+		Assert.assertEquals(3, event.getAddedRoutes().size());
+		Assert.assertEquals(0, event.getWithdrawnRoutes().size());
+		Assert.assertSame(event.getAddedRoutes().get(0).getPathAttributes(), event.getAddedRoutes().get(2).getPathAttributes());
+		Assert.assertEquals(event, listener.getRoutesChangedEvents().get(0));
+	}
+	
+	@Test
+	public void testUpdateRoutesWithdrawAndAddInOneBatch() {
+		rib.addRoutes(Arrays.asList(LESS_NLRI, MORE_NLRI_1), attrs, null);
+		catcher.reset();
+		listener.reset();
+		
+		rib.updateRoutes(Arrays.asList(MORE_NLRI_1, MORE_NLRI_2), Arrays.asList(MORE_NLRI_2), attrs, null);
+		
+		Assert.assertEquals(1, catcher.getRoutesChangedEvents().size());
+		Assert.assertEquals(1, listener.getRoutesChangedEvents().size());
+		
+		RoutesChanged event = catcher.getRoutesChangedEvents().get(0);
+
+		// MORE_NLRI_2 is not held in the RIB when the withdrawals are applied
+		Assert.assertEquals(Arrays.asList(new Route(rib.getRibID(), RIB_AFK, MORE_NLRI_1, null, null)), event.getWithdrawnRoutes());
+		Assert.assertEquals(Arrays.asList(new Route(rib.getRibID(), RIB_AFK, MORE_NLRI_2, attrs, null)), event.getAddedRoutes());
+		
+		Assert.assertEquals(LESS_NLRI, rib.lookupRoute(MORE_NLRI_1).getRoute().getNlri());
+		Assert.assertEquals(MORE_NLRI_2, rib.lookupRoute(MORE_NLRI_2).getRoute().getNlri());
+	}
+	
+	@Test
+	public void testUpdateRoutesFromPackedPrefixes() {
+		rib.addRoutes(Arrays.asList(LESS_NLRI, MORE_NLRI_1), attrs, null);
+		catcher.reset();
+		listener.reset();
+		
+		PackedPrefixList withdrawn = new PackedPrefixList(AddressFamily.IPv4);
+		PackedPrefixList prefixes = new PackedPrefixList(AddressFamily.IPv4);
+		
+		withdrawn.addIPv4(0xc0a80410, 28);
+		withdrawn.addIPv4(0x0a000000, 8);
+		prefixes.addIPv4(0xc0a80420, 28);
+		
+		rib.updateRoutes(withdrawn, prefixes, attrs, null);
+		
+		Assert.assertEquals(1, catcher.getRoutesChangedEvents().size());
+		
+		RoutesChanged event = catcher.getRoutesChangedEvents().get(0);
+
+		// the route removed from the RIB is signalled, the prefix not held in the RIB is not
+		Assert.assertEquals(Arrays.asList(new Route(rib.getRibID(), RIB_AFK, MORE_NLRI_1, attrs, null)), event.getWithdrawnRoutes());
+		Assert.assertEquals(Arrays.asList(new Route(rib.getRibID(), RIB_AFK, MORE_NLRI_2, attrs, null)), event.getAddedRoutes());
+		Assert.assertEquals(MORE_NLRI_2, rib.lookupRoute(MORE_NLRI_2).getRoute().getNlri());
+	}
+	
+	@Test
+	public void testUpdateRoutesWithoutChangeFiresNoEvent() {
+		rib.withdrawRoutes(Arrays.asList(MORE_NLRI_1));
+		rib.updateRoutes(new LinkedList<Route>(), new LinkedList<Route>());
+		
+		Assert.assertEquals(0, catcher.getRoutesChangedEvents().size());
+		Assert.assertEquals(0, listener.getRoutesChangedEvents().size());
+	}
+	
+	private void awaitReconciliation() throws InterruptedException {
+		for(int i=0; i<200 && rib.hasInvalidatedRoutes(); i++)
+			Thread.sleep(50);
+		
+		Assert.assertFalse(rib.hasInvalidatedRoutes());
+	}
+	
+	@Test
+	public void testInvalidateRoutesHidesAndWithdrawsRoutesOfSource() throws Exception {
+		UUID sourceRibID = UUID.randomUUID();
+		final List<Route> visited = new LinkedList<Route>();
+		
+		rib.addRoutes(Arrays.asList(LESS_NLRI), attrs, null);
+		rib.updateRoutes(new LinkedList<Route>(), Arrays.asList(new Route(sourceRibID, RIB_AFK, MORE_NLRI_1, attrs, null), 
+				new Route(sourceRibID, RIB_AFK, MORE_NLRI_2, attrs, null)));
+		listener.reset();
+		
+		rib.invalidateRoutes(sourceRibID);
+		
+		// the invalidated routes are hidden at once
+		Assert.assertEquals(LESS_NLRI, rib.lookupRoute(MORE_NLRI_1).getRoute().getNlri());
+		Assert.assertEquals(LESS_NLRI, rib.snapshot().lookupRoute(MORE_NLRI_2).getRoute().getNlri());
+		
+		rib.visitRoutingNodes(new RoutingInformationBaseVisitor() {
+			
+			@Override
+			public void visitRouteNode(String ribName, RIBSide side, Route route) {
+				visited.add(route);
+			}
+		});
+		
+		Assert.assertEquals(1, visited.size());
+		Assert.assertEquals(LESS_NLRI, visited.get(0).getNlri());
+		
+		awaitReconciliation();
+		
+		Assert.assertEquals(1, listener.getRoutesChangedEvents().size());
+		Assert.assertEquals(0, listener.getRoutesChangedEvents().get(0).getAddedRoutes().size());
+		Assert.assertEquals(2, listener.getRoutesChangedEvents().get(0).getWithdrawnRoutes().size());
+		Assert.assertEquals(LESS_NLRI, rib.lookupRoute(MORE_NLRI_1).getRoute().getNlri());
+		Assert.assertEquals(LESS_NLRI, rib.lookupRoute(MORE_NLRI_2).getRoute().getNlri());
+	}
+	
+	@Test
+	public void testInvalidateRoutesWithdrawsInBatches() throws Exception {
+		UUID sourceRibID = UUID.randomUUID();
+		List<Route> routes = new LinkedList<Route>();
+		int numberOfRoutes = 2*RoutingInformationBase.RECONCILIATION_BATCH_SIZE + 1;
+		int withdrawn = 0;
+		
+		for(int i=0; i<numberOfRoutes; i++)
+			routes.add(new Route(sourceRibID, RIB_AFK, new NetworkLayerReachabilityInformation(32, 
+					new byte[] { (byte)0x0a, (byte)0x00, (byte)(i >> 8), (byte)i }), attrs, null));
+		
+		rib.updateRoutes(new LinkedList<Route>(), routes);
+		listener.reset();
+		
+		rib.invalidateRoutes(sourceRibID);
+		awaitReconciliation();
+		
+		Assert.assertEquals(3, listener.getRoutesChangedEvents().size());
+		
+		for(RoutesChanged event : listener.getRoutesChangedEvents()) {
+			Assert.assertTrue(event.getWithdrawnRoutes().size() <= RoutingInformationBase.RECONCILIATION_BATCH_SIZE);
+			withdrawn += event.getWithdrawnRoutes().size();
+		}
+		
+		Assert.assertEquals(numberOfRoutes, withdrawn);
+		Assert.assertNull(rib.lookupRoute(routes.get(0).getNlri()));
+	}
+	
+	@Test
+	public void testDestroyFiresRoutesInvalidated() {
+		rib.addRoutes(Arrays.asList(LESS_NLRI, MORE_NLRI_1), attrs, null);
+		listener.reset();
+		
+		rib.destroyRIB();
+		
+		Assert.assertEquals(0, listener.getRouteWithdrawnEvents().size());
+		Assert.assertEquals(Arrays.asList(new RoutesInvalidated(RIB_NAME, RIB_SIDE, RIB_AFK, rib.getRibID())), 
+				listener.getRoutesInvalidatedEvents());
+		Assert.assertNull(rib.lookupRoute(LESS_NLRI));
+	}
+
+	@Test
+	public void testLookupAddress() throws Exception {
+		rib.addRoutes(Arrays.asList(LESS_NLRI, MORE_NLRI_1), attrs, null);
+		
+		Assert.assertEquals(MORE_NLRI_1, rib.lookupAddress(0xc0a80411).getNlri());
+		Assert.assertEquals(LESS_NLRI, rib.lookupAddress(0xc0a80421).getNlri());
+		Assert.assertEquals(MORE_NLRI_1, rib.lookupAddress(InetAddress.getByName("192.168.4.17")).getNlri());
+		Assert.assertNull(rib.lookupAddress(0xc0a80511));
+	}
+	
+	@Test
+	public void testLookupAddressSkipsInvalidatedRoutes() throws Exception {
+		UUID sourceRibID = UUID.randomUUID();
+		
+		rib.addRoutes(Arrays.asList(LESS_NLRI), attrs, null);
+		rib.updateRoutes(new LinkedList<Route>(), Arrays.asList(new Route(sourceRibID, RIB_AFK, MORE_NLRI_1, attrs, null)));
+
+		Assert.assertEquals(MORE_NLRI_1, rib.lookupAddress(0xc0a80411).getNlri());
+		
+		rib.invalidateRoutes(sourceRibID);
+		
+		Assert.assertEquals(LESS_NLRI, rib.lookupAddress(0xc0a80411).getNlri());
+		
+		awaitReconciliation();
+
+		Assert.assertEquals(LESS_NLRI, rib.lookupAddress(0xc0a80411).getNlri());
+	}
 }
@@ -0,0 +1,86 @@
+/**
+ *  Copyright 2012 Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ * File: org.bgp4j.rib.RoutingTreeFactoryTest.java
+ */
+package org.bgp4j.rib;
+
+import junit.framework.Assert;
+
+import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.weld.WeldTestCaseBase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Rainer Bieniek (Rainer.Bieniek@web.de)
+ *
+ */
+public class RoutingTreeFactoryTest extends WeldTestCaseBase {
+
+	@Before
+	public void before() {
+		factory = obtainInstance(RoutingTreeFactory.class);
+	}
+
+	@After
+	public void after() {
+		factory.resetFactory();
+		factory = null;
+	}
+
+	private RoutingTreeFactory factory;
+
+	@Test
+	public void testDefaultType() {
+		Assert.assertEquals(RoutingTreeType.IPV4_PACKED, factory.getRoutingTreeType(AddressFamilyKey.IPV4_UNICAST_FORWARDING));
+		Assert.assertEquals(RoutingTreeType.PATRICIA, factory.getRoutingTreeType(AddressFamilyKey.IPV6_UNICAST_FORWARDING));
+		Assert.assertTrue(((PatriciaRoutingTree)factory.createRoutingTree(AddressFamilyKey.IPV4_UNICAST_FORWARDING)).getKeyCodec() == IPv4KeyCodec.INSTANCE);
+		Assert.assertTrue(factory.createRoutingTree(AddressFamilyKey.IPV6_UNICAST_FORWARDING) instanceof PatriciaRoutingTree);
+		Assert.assertTrue(factory.createRoutingTree(null) instanceof PatriciaRoutingTree);
+	}
+
+	@Test
+	public void testSelectPerAddressFamily() {
+		factory.setRoutingTreeType(AddressFamilyKey.IPV6_UNICAST_FORWARDING, RoutingTreeType.HIERARCHICAL);
+
+		Assert.assertTrue(((PatriciaRoutingTree)factory.createRoutingTree(AddressFamilyKey.IPV4_UNICAST_FORWARDING)).getKeyCodec() == IPv4KeyCodec.INSTANCE);
+		Assert.assertTrue(factory.createRoutingTree(AddressFamilyKey.IPV6_UNICAST_FORWARDING) instanceof RoutingTree);
+
+		factory.setRoutingTreeType(AddressFamilyKey.IPV6_UNICAST_FORWARDING, null);
+
+		Assert.assertTrue(factory.createRoutingTree(AddressFamilyKey.IPV6_UNICAST_FORWARDING) instanceof PatriciaRoutingTree);
+	}
+
+	@Test
+	public void testChangeDefaultType() {
+		factory.setDefaultType(RoutingTreeType.HIERARCHICAL);
+		factory.setRoutingTreeType(AddressFamilyKey.IPV4_UNICAST_FORWARDING, RoutingTreeType.PATRICIA);
+
+		Assert.assertTrue(factory.createRoutingTree(AddressFamilyKey.IPV4_UNICAST_FORWARDING) instanceof PatriciaRoutingTree);
+		Assert.assertTrue(factory.createRoutingTree(AddressFamilyKey.IPV6_UNICAST_FORWARDING) instanceof RoutingTree);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testPackedTypeRejectedForIPv6() {
+		factory.setRoutingTreeType(AddressFamilyKey.IPV6_UNICAST_FORWARDING, RoutingTreeType.IPV4_PACKED);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testPackedTypeRejectedAsDefault() {
+		factory.setDefaultType(RoutingTreeType.IPV4_PACKED);
+	}
+}
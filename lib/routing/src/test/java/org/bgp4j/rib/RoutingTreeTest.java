@@ -563,6 +563,28 @@ public class RoutingTreeTest {
 		Assert.assertFalse(it.hasNext());		
 	}
 
+	@Test
+	public void testSnapshotIsACopy() {
+		NetworkLayerReachabilityInformation lessNlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04 }); // prefix 192.168.4/24
+		NetworkLayerReachabilityInformation moreNlri = new NetworkLayerReachabilityInformation(28, 
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x10 }); // prefix 192.168.4.16/28
+		
+		Assert.assertTrue(tree.addRoute(new Route(null, lessNlri, attrs1, null)));
+		Assert.assertTrue(tree.addRoute(new Route(null, moreNlri, attrs2, null)));
+
+		PrefixTree snapshot = tree.snapshot();
+		
+		Assert.assertTrue(tree.withdrawRoute(new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, moreNlri, null, null)));
+		
+		Assert.assertEquals(moreNlri, snapshot.lookupRoute(moreNlri).getRoute().getNlri());
+		Assert.assertEquals(lessNlri, tree.lookupRoute(moreNlri).getRoute().getNlri());
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void testSnapshotReadOnly() {
+		tree.snapshot().addRoute(new Route(null, new NetworkLayerReachabilityInformation(0, null), attrs1, null));
+	}
+
 	private <T> boolean equalCollections(Collection<T> col1, Collection<T> col2) {
 		if(col1.size() != col2.size())
 			return false;
@@ -573,4 +595,22 @@ public class RoutingTreeTest {
 		
 		return true;
 	}
+
+	@Test
+	public void testLookupAddress() {
+		NetworkLayerReachabilityInformation lessNlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04 }); // prefix 192.168.4/24
+		NetworkLayerReachabilityInformation moreNlri = new NetworkLayerReachabilityInformation(28,
+				new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x04, (byte)0x10 }); // prefix 192.168.4.16/28
+		NetworkLayerReachabilityInformation siblingNlri = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, (byte)0x05 }); // prefix 192.168.5/24
+
+		tree.addRoute(new Route(null, lessNlri, attrs1, null));
+		tree.addRoute(new Route(null, moreNlri, attrs2, null));
+		tree.addRoute(new Route(null, siblingNlri, attrs2, null));
+
+		Assert.assertEquals(moreNlri, tree.lookupAddress(0xc0a80411L << 32, 0, 32).getNlri());
+		Assert.assertEquals(lessNlri, tree.lookupAddress(0xc0a80421L << 32, 0, 32).getNlri());
+		Assert.assertEquals(siblingNlri, tree.lookupAddress(0xc0a80511L << 32, 0, 32).getNlri());
+		Assert.assertNull(tree.lookupAddress(0xc0a80611L << 32, 0, 32));
+	}
+
 }
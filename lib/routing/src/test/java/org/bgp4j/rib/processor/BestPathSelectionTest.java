@@ -0,0 +1,147 @@
+/**
+ * 
+ */
+package org.bgp4j.rib.processor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.bgp4j.net.ASType;
+import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.Origin;
+import org.bgp4j.net.PathSegment;
+import org.bgp4j.net.PathSegmentType;
+import org.bgp4j.net.attributes.ASPathAttribute;
+import org.bgp4j.net.attributes.LocalPrefPathAttribute;
+import org.bgp4j.net.attributes.MultiExitDiscPathAttribute;
+import org.bgp4j.net.attributes.OriginPathAttribute;
+import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.rib.Route;
+import org.bgp4j.rib.processor.BestPathSelection.Candidate;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author rainer
+ *
+ */
+public class BestPathSelectionTest {
+
+	private static final NetworkLayerReachabilityInformation NLRI = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, 0x02});
+
+	private static final LocRibPeer EXTERNAL_1 = new LocRibPeer("ext1", true, 1);
+	private static final LocRibPeer EXTERNAL_2 = new LocRibPeer("ext2", true, 2);
+	private static final LocRibPeer INTERNAL_1 = new LocRibPeer("int1", false, 0);
+
+	private BestPathSelection selection;
+
+	@Before
+	public void before() {
+		selection = new BestPathSelection();
+	}
+
+	private Candidate candidate(LocRibPeer peer, int localPref, Origin origin, int med, int... ases) {
+		List<PathAttribute> attrs = new LinkedList<PathAttribute>();
+
+		attrs.add(new LocalPrefPathAttribute(localPref));
+		attrs.add(new OriginPathAttribute(origin));
+		attrs.add(new MultiExitDiscPathAttribute(med));
+		attrs.add(new ASPathAttribute(ASType.AS_NUMBER_2OCTETS, new PathSegment[] {
+				new PathSegment(ASType.AS_NUMBER_2OCTETS, PathSegmentType.AS_SEQUENCE, ases) }));
+
+		return new Candidate(peer, new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, NLRI, attrs, null));
+	}
+
+	@Test
+	public void testNoCandidate() {
+		Assert.assertNull(selection.select(Collections.<Candidate>emptyList()));
+	}
+
+	@Test
+	public void testDefaults() {
+		Candidate candidate = new Candidate(EXTERNAL_1, new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, NLRI, null, null));
+
+		Assert.assertEquals(BestPathSelection.DEFAULT_LOCAL_PREFERENCE, candidate.getLocalPreference());
+		Assert.assertEquals(0, candidate.getAsPathLength());
+		Assert.assertEquals(0, candidate.getMultiExitDisc());
+		Assert.assertEquals(Origin.INCOMPLETE, candidate.getOrigin());
+		Assert.assertSame(candidate, selection.select(Arrays.asList(candidate)));
+	}
+
+	@Test
+	public void testHighestLocalPreference() {
+		Candidate worse = candidate(EXTERNAL_1, 100, Origin.IGP, 0, 10);
+		Candidate better = candidate(INTERNAL_1, 200, Origin.INCOMPLETE, 100, 10, 20, 30);
+
+		Assert.assertSame(better, selection.select(Arrays.asList(worse, better)));
+	}
+
+	@Test
+	public void testShortestASPath() {
+		Candidate worse = candidate(EXTERNAL_1, 100, Origin.IGP, 0, 10, 20);
+		Candidate better = candidate(EXTERNAL_2, 100, Origin.INCOMPLETE, 100, 30);
+
+		Assert.assertSame(better, selection.select(Arrays.asList(worse, better)));
+	}
+
+	@Test
+	public void testASSetCountsAsOne() {
+		Candidate set = new Candidate(EXTERNAL_2, new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, NLRI,
+				Arrays.asList((PathAttribute)new ASPathAttribute(ASType.AS_NUMBER_2OCTETS, new PathSegment[] {
+						new PathSegment(ASType.AS_NUMBER_2OCTETS, PathSegmentType.AS_SEQUENCE, new int[] { 10 }),
+						new PathSegment(ASType.AS_NUMBER_2OCTETS, PathSegmentType.AS_SET, new int[] { 20, 30, 40 }) })),
+				null));
+		Candidate sequence = candidate(EXTERNAL_1, 100, Origin.INCOMPLETE, 0, 10, 20, 30);
+
+		Assert.assertEquals(2, set.getAsPathLength());
+		Assert.assertEquals(10, set.getNeighborAS());
+		Assert.assertSame(set, selection.select(Arrays.asList(sequence, set)));
+	}
+
+	@Test
+	public void testLowestOrigin() {
+		Candidate worse = candidate(EXTERNAL_1, 100, Origin.EGP, 0, 10);
+		Candidate better = candidate(EXTERNAL_2, 100, Origin.IGP, 100, 20);
+
+		Assert.assertSame(better, selection.select(Arrays.asList(worse, better)));
+	}
+
+	@Test
+	public void testLowestMultiExitDiscSameNeighborAS() {
+		Candidate worse = candidate(EXTERNAL_1, 100, Origin.IGP, 20, 10);
+		Candidate better = candidate(EXTERNAL_2, 100, Origin.IGP, 10, 10);
+
+		Assert.assertSame(better, selection.select(Arrays.asList(worse, better)));
+	}
+
+	@Test
+	public void testMultiExitDiscIgnoredForDifferentNeighborAS() {
+		Candidate higherMed = candidate(EXTERNAL_1, 100, Origin.IGP, 20, 10);
+		Candidate lowerMed = candidate(EXTERNAL_2, 100, Origin.IGP, 10, 20);
+
+		// decided by the BGP identifier
+		Assert.assertSame(higherMed, selection.select(Arrays.asList(lowerMed, higherMed)));
+	}
+
+	@Test
+	public void testExternalBeforeInternal() {
+		Candidate internal = candidate(INTERNAL_1, 100, Origin.IGP, 0, 10);
+		Candidate external = candidate(EXTERNAL_2, 100, Origin.IGP, 0, 20);
+
+		Assert.assertSame(external, selection.select(Arrays.asList(internal, external)));
+	}
+
+	@Test
+	public void testLowestBgpIdentifier() {
+		Candidate first = candidate(EXTERNAL_1, 100, Origin.IGP, 0, 10);
+		Candidate second = candidate(EXTERNAL_2, 100, Origin.IGP, 0, 20);
+
+		Assert.assertSame(first, selection.select(Arrays.asList(second, first)));
+		Assert.assertSame(first, selection.select(Arrays.asList(first, second)));
+	}
+}
@@ -0,0 +1,261 @@
+/**
+ * 
+ */
+package org.bgp4j.rib.processor;
+
+import java.net.Inet4Address;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.bgp4j.net.AddressFamilyKey;
+import org.bgp4j.net.InetAddressNextHop;
+import org.bgp4j.net.NetworkLayerReachabilityInformation;
+import org.bgp4j.net.NextHop;
+import org.bgp4j.net.RIBSide;
+import org.bgp4j.net.attributes.LocalPrefPathAttribute;
+import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.rib.LookupResult;
+import org.bgp4j.rib.PeerRoutingInformationBase;
+import org.bgp4j.rib.PeerRoutingInformationBaseManager;
+import org.bgp4j.rib.Route;
+import org.bgp4j.rib.RouteEventCatchListener;
+import org.bgp4j.rib.RoutesChanged;
+import org.bgp4j.rib.RoutingInformationBase;
+import org.bgp4j.weld.WeldTestCaseBase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author rainer
+ *
+ */
+public class LocalRoutingInformationBaseTest extends WeldTestCaseBase {
+
+	private static final String EXTERNAL_1 = "ext1";
+	private static final String EXTERNAL_2 = "ext2";
+	private static final String INTERNAL_1 = "int1";
+	private static final String INTERNAL_2 = "int2";
+
+	private static final NetworkLayerReachabilityInformation FIRST_NLRI = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, 0x02});
+	private static final NetworkLayerReachabilityInformation SECOND_NLRI = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, 0x03});
+	private static final NetworkLayerReachabilityInformation THIRD_NLRI = new NetworkLayerReachabilityInformation(24, new byte[] { (byte)0xc0, (byte)0xa8, 0x04});
+
+	@Before
+	public void before() throws Exception {
+		pribManager = obtainInstance(PeerRoutingInformationBaseManager.class);
+		pribManager.resetManager();
+
+		locRib = obtainInstance(LocalRoutingInformationBase.class);
+		locRib.setAddressFamilyKey(AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+
+		for(String peerName : new String[] { EXTERNAL_1, EXTERNAL_2, INTERNAL_1, INTERNAL_2 }) {
+			PeerRoutingInformationBase prib = pribManager.peerRoutingInformationBase(peerName);
+
+			prib.allocateRoutingInformationBase(RIBSide.Local, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+			prib.allocateRoutingInformationBase(RIBSide.Remote, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		}
+	}
+
+	@After
+	public void after() {
+		locRib.detachAll();
+		pribManager.resetManager();
+
+		locRib = null;
+		pribManager = null;
+	}
+
+	private PeerRoutingInformationBaseManager pribManager;
+	private LocalRoutingInformationBase locRib;
+
+	private RoutingInformationBase rib(String peerName, RIBSide side) {
+		return pribManager.peerRoutingInformationBase(peerName).routingBase(side, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+	}
+
+	private void attach(String peerName, boolean external, long bgpIdentifier) {
+		locRib.attachPeer(new LocRibPeer(peerName, external, bgpIdentifier), rib(peerName, RIBSide.Remote), rib(peerName, RIBSide.Local));
+	}
+
+	private void attachAll() {
+		attach(EXTERNAL_1, true, 1);
+		attach(EXTERNAL_2, true, 2);
+		attach(INTERNAL_1, false, 3);
+		attach(INTERNAL_2, false, 4);
+	}
+
+	private Route route(NetworkLayerReachabilityInformation nlri, int localPref, int nextHop) throws Exception {
+		return new Route(AddressFamilyKey.IPV4_UNICAST_FORWARDING, nlri,
+				Arrays.asList((PathAttribute)new LocalPrefPathAttribute(localPref)),
+				new InetAddressNextHop<Inet4Address>((Inet4Address)Inet4Address.getByAddress(new byte[] {(byte)0xc0, (byte)0xa8, 0x01, (byte)nextHop})));
+	}
+
+	private NextHop nextHop(int nextHop) throws Exception {
+		return new InetAddressNextHop<Inet4Address>((Inet4Address)Inet4Address.getByAddress(new byte[] {(byte)0xc0, (byte)0xa8, 0x01, (byte)nextHop}));
+	}
+
+	/**
+	 * @return the next hop of the route published to a local RIB or <code>null</code> if no route is published
+	 */
+	private NextHop published(String peerName, NetworkLayerReachabilityInformation nlri) {
+		LookupResult result = rib(peerName, RIBSide.Local).lookupRoute(nlri);
+
+		return (result != null) ? result.getRoute().getNextHop() : null;
+	}
+
+	@Test
+	public void testExternalRoutePublishedToOtherPeers() throws Exception {
+		attachAll();
+
+		rib(EXTERNAL_1, RIBSide.Remote).addRoute(route(FIRST_NLRI, 100, 1));
+
+		Assert.assertEquals(1, locRib.getNumberOfPrefixes());
+		Assert.assertEquals(nextHop(1), locRib.selectedRoute(FIRST_NLRI).getNextHop());
+		Assert.assertNull(published(EXTERNAL_1, FIRST_NLRI));
+		Assert.assertEquals(nextHop(1), published(EXTERNAL_2, FIRST_NLRI));
+		Assert.assertEquals(nextHop(1), published(INTERNAL_1, FIRST_NLRI));
+		Assert.assertEquals(nextHop(1), published(INTERNAL_2, FIRST_NLRI));
+	}
+
+	@Test
+	public void testInternalRouteNotPublishedToInternalPeers() throws Exception {
+		attachAll();
+
+		rib(INTERNAL_1, RIBSide.Remote).addRoute(route(FIRST_NLRI, 100, 3));
+
+		Assert.assertEquals(nextHop(3), published(EXTERNAL_1, FIRST_NLRI));
+		Assert.assertEquals(nextHop(3), published(EXTERNAL_2, FIRST_NLRI));
+		Assert.assertNull(published(INTERNAL_1, FIRST_NLRI));
+		Assert.assertNull(published(INTERNAL_2, FIRST_NLRI));
+	}
+
+	@Test
+	public void testBetterRouteReplacesSelectedRoute() throws Exception {
+		attachAll();
+
+		rib(EXTERNAL_1, RIBSide.Remote).addRoute(route(FIRST_NLRI, 100, 1));
+		rib(EXTERNAL_2, RIBSide.Remote).addRoute(route(FIRST_NLRI, 200, 2));
+
+		Assert.assertEquals(nextHop(2), locRib.selectedRoute(FIRST_NLRI).getNextHop());
+		Assert.assertEquals(nextHop(2), published(EXTERNAL_1, FIRST_NLRI));
+		Assert.assertNull(published(EXTERNAL_2, FIRST_NLRI));
+		Assert.assertEquals(nextHop(2), published(INTERNAL_1, FIRST_NLRI));
+
+		rib(EXTERNAL_2, RIBSide.Remote).withdrawRoute(route(FIRST_NLRI, 200, 2));
+
+		Assert.assertEquals(nextHop(1), locRib.selectedRoute(FIRST_NLRI).getNextHop());
+		Assert.assertNull(published(EXTERNAL_1, FIRST_NLRI));
+		Assert.assertEquals(nextHop(1), published(EXTERNAL_2, FIRST_NLRI));
+		Assert.assertEquals(nextHop(1), published(INTERNAL_1, FIRST_NLRI));
+
+		rib(EXTERNAL_1, RIBSide.Remote).withdrawRoute(route(FIRST_NLRI, 100, 1));
+
+		Assert.assertEquals(0, locRib.getNumberOfPrefixes());
+		Assert.assertNull(locRib.selectedRoute(FIRST_NLRI));
+		Assert.assertNull(published(EXTERNAL_2, FIRST_NLRI));
+		Assert.assertNull(published(INTERNAL_1, FIRST_NLRI));
+	}
+
+	@Test
+	public void testChangedPrefixesPublishedInOneBatch() throws Exception {
+		RouteEventCatchListener catcher = new RouteEventCatchListener();
+
+		attachAll();
+		rib(INTERNAL_1, RIBSide.Local).addPerRibListener(catcher);
+
+		rib(EXTERNAL_1, RIBSide.Remote).updateRoutes(Collections.<Route>emptyList(),
+				Arrays.asList(route(FIRST_NLRI, 100, 1), route(SECOND_NLRI, 100, 1), route(THIRD_NLRI, 100, 1)));
+
+		Assert.assertEquals(3, locRib.getNumberOfPrefixes());
+		Assert.assertEquals(1, catcher.getRoutesChangedEvents().size());
+		Assert.assertEquals(3, catcher.getRoutesChangedEvents().get(0).getAddedRoutes().size());
+		Assert.assertEquals(0, catcher.getRoutesChangedEvents().get(0).getWithdrawnRoutes().size());
+
+		catcher.reset();
+
+		// a worse route does not change the selection and is not published
+		rib(EXTERNAL_2, RIBSide.Remote).addRoute(route(SECOND_NLRI, 50, 2));
+
+		Assert.assertEquals(0, catcher.getRoutesChangedEvents().size());
+		Assert.assertEquals(nextHop(1), published(INTERNAL_1, SECOND_NLRI));
+	}
+
+	@Test
+	public void testExistingRoutesImportedAndPublishedOnAttach() throws Exception {
+		rib(EXTERNAL_1, RIBSide.Remote).addRoute(route(FIRST_NLRI, 100, 1));
+		attach(EXTERNAL_1, true, 1);
+
+		Assert.assertEquals(nextHop(1), locRib.selectedRoute(FIRST_NLRI).getNextHop());
+
+		attach(INTERNAL_1, false, 3);
+
+		Assert.assertEquals(nextHop(1), published(INTERNAL_1, FIRST_NLRI));
+	}
+
+	@Test
+	public void testDetachRemoteWithdrawsRoutes() throws Exception {
+		attachAll();
+
+		rib(EXTERNAL_1, RIBSide.Remote).addRoute(route(FIRST_NLRI, 200, 1));
+		rib(EXTERNAL_2, RIBSide.Remote).addRoute(route(FIRST_NLRI, 100, 2));
+
+		Assert.assertEquals(nextHop(1), published(INTERNAL_1, FIRST_NLRI));
+
+		locRib.detachPeer(EXTERNAL_1, RIBSide.Remote);
+
+		Assert.assertEquals(nextHop(2), locRib.selectedRoute(FIRST_NLRI).getNextHop());
+		Assert.assertEquals(nextHop(2), published(INTERNAL_1, FIRST_NLRI));
+		Assert.assertEquals(nextHop(2), published(EXTERNAL_1, FIRST_NLRI));
+
+		// changes in a detached remote RIB are ignored
+		rib(EXTERNAL_1, RIBSide.Remote).addRoute(route(SECOND_NLRI, 100, 1));
+
+		Assert.assertNull(locRib.selectedRoute(SECOND_NLRI));
+	}
+
+	@Test
+	public void testInvalidatedRoutesWithdrawnInBatches() throws Exception {
+		RouteEventCatchListener catcher = new RouteEventCatchListener();
+		List<Route> routes = new LinkedList<Route>();
+		int count = LocalRoutingInformationBase.INVALIDATION_BATCH_SIZE + 100;
+
+		attachAll();
+
+		for(int i=0; i<count; i++)
+			routes.add(route(new NetworkLayerReachabilityInformation(24, new byte[] { 0x0a, (byte)(i >> 8), (byte)i }), 100, 1));
+
+		rib(EXTERNAL_1, RIBSide.Remote).updateRoutes(Collections.<Route>emptyList(), routes);
+		rib(EXTERNAL_1, RIBSide.Remote).addRoute(route(FIRST_NLRI, 200, 1));
+		rib(EXTERNAL_2, RIBSide.Remote).addRoute(route(FIRST_NLRI, 100, 2));
+		rib(INTERNAL_1, RIBSide.Local).addPerRibListener(catcher);
+
+		Assert.assertEquals(count + 1, locRib.getNumberOfPrefixes());
+
+		// destroying the remote RIB invalidates the routes of the lost peer
+		pribManager.peerRoutingInformationBase(EXTERNAL_1).destroyRoutingInformationBase(RIBSide.Remote, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+
+		Assert.assertEquals(1, locRib.getNumberOfPrefixes());
+		Assert.assertEquals(nextHop(2), locRib.selectedRoute(FIRST_NLRI).getNextHop());
+		Assert.assertEquals(nextHop(2), published(INTERNAL_1, FIRST_NLRI));
+		Assert.assertEquals(nextHop(2), published(EXTERNAL_1, FIRST_NLRI));
+		Assert.assertEquals(2, catcher.getRoutesChangedEvents().size());
+
+		int withdrawn = 0;
+
+		for(RoutesChanged event : catcher.getRoutesChangedEvents()) {
+			Assert.assertTrue(event.getWithdrawnRoutes().size() <= LocalRoutingInformationBase.INVALIDATION_BATCH_SIZE);
+			withdrawn += event.getWithdrawnRoutes().size();
+		}
+		Assert.assertEquals(count, withdrawn);
+
+		// detaching the destroyed RIB afterwards does not change the selection
+		locRib.detachPeer(EXTERNAL_1, RIBSide.Remote);
+
+		Assert.assertEquals(nextHop(2), locRib.selectedRoute(FIRST_NLRI).getNextHop());
+		Assert.assertEquals(2, catcher.getRoutesChangedEvents().size());
+	}
+}
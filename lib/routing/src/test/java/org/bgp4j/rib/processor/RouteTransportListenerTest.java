@@ -17,11 +17,15 @@ import org.bgp4j.net.AddressFamilyKey;
 import org.bgp4j.net.InetAddressNextHop;
 import org.bgp4j.net.NetworkLayerReachabilityInformation;
 import org.bgp4j.net.Origin;
+import org.bgp4j.net.RIBSide;
 import org.bgp4j.net.attributes.LocalPrefPathAttribute;
 import org.bgp4j.net.attributes.MultiExitDiscPathAttribute;
 import org.bgp4j.net.attributes.OriginPathAttribute;
 import org.bgp4j.net.attributes.PathAttribute;
+import org.bgp4j.rib.PeerRoutingInformationBase;
+import org.bgp4j.rib.PeerRoutingInformationBaseManager;
 import org.bgp4j.rib.Route;
+import org.bgp4j.rib.RouteEventCatchListener;
 import org.bgp4j.rib.RoutingInformationBase;
 import org.bgp4j.weld.WeldTestCaseBase;
 import org.junit.After;
@@ -300,4 +304,50 @@ public class RouteTransportListenerTest  extends WeldTestCaseBase {
 		Assert.assertFalse(secondChecker.isFound());
 	}
 
+	@Test
+	public void testDestroyedSourceInvalidatesTransportedRoutes() throws Exception {
+		PeerRoutingInformationBaseManager pribManager = obtainInstance(PeerRoutingInformationBaseManager.class);
+		RouteEventCatchListener targetListener = new RouteEventCatchListener();
+		
+		pribManager.resetManager();
+		
+		PeerRoutingInformationBase prib = pribManager.peerRoutingInformationBase("source");
+		
+		prib.allocateRoutingInformationBase(RIBSide.Remote, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		
+		RoutingInformationBase remoteRib = prib.routingBase(RIBSide.Remote, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		RouteChecker firstChecker = new RouteChecker(remoteRib.getRibID(), firstRoute);
+		RouteChecker secondChecker = new RouteChecker(remoteRib.getRibID(), secondRoute);
+
+		sourceRib.removePerRibListener(listener);
+		listener.setSource(remoteRib);
+		remoteRib.addPerRibListener(listener);
+		targetRib.addPerRibListener(targetListener);
+		
+		remoteRib.addRoute(firstRoute);
+		remoteRib.addRoute(secondRoute);
+		
+		targetRib.visitRoutingNodes(firstChecker);
+		targetRib.visitRoutingNodes(secondChecker);
+		
+		Assert.assertTrue(firstChecker.isFound());
+		Assert.assertTrue(secondChecker.isFound());
+
+		targetListener.reset();
+		prib.destroyRoutingInformationBase(RIBSide.Remote, AddressFamilyKey.IPV4_UNICAST_FORWARDING);
+		
+		// hidden at once, withdrawn in the background
+		Assert.assertNull(targetRib.lookupRoute(firstRoute.getNlri()));
+		Assert.assertNull(targetRib.lookupRoute(secondRoute.getNlri()));
+		
+		for(int i=0; i<200 && targetRib.hasInvalidatedRoutes(); i++)
+			Thread.sleep(50);
+		
+		Assert.assertFalse(targetRib.hasInvalidatedRoutes());
+		Assert.assertEquals(0, targetListener.getRouteAddedEvents().size());
+		Assert.assertEquals(2, targetListener.getRouteWithdrawnEvents().size());
+		Assert.assertEquals(1, targetListener.getRoutesChangedEvents().size());
+		
+		pribManager.resetManager();
+	}
 }